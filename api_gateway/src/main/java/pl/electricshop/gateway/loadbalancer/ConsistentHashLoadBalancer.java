@@ -0,0 +1,135 @@
+package pl.electricshop.gateway.loadbalancer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Load balancer picking the instance from a hash ring keyed by a request header (X-User-Id).
+ * <p>
+ * Every instance owns {@code virtualNodes} points on the ring, so requests of one user keep hitting
+ * the same instance (and its local cache) while the instance list is stable. When an instance joins
+ * or leaves, only the users between its points move - the rest keep their instance.
+ * Requests without the header are spread round-robin.
+ */
+@Slf4j
+public class ConsistentHashLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+    private final ObjectProvider<ServiceInstanceListSupplier> supplierProvider;
+    private final String serviceId;
+    private final String hashHeader;
+    private final int virtualNodes;
+    private final AtomicInteger roundRobin = new AtomicInteger();
+
+    private volatile Ring ring = new Ring("", new TreeMap<>());
+
+    /**
+     * Ring built for one instance list - rebuilt only when the list changes.
+     *
+     * @param signature sorted instance ids the ring was built from
+     */
+    private record Ring(String signature, NavigableMap<Long, ServiceInstance> points) {
+    }
+
+    public ConsistentHashLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> supplierProvider,
+                                      String serviceId, String hashHeader, int virtualNodes) {
+        this.supplierProvider = supplierProvider;
+        this.serviceId = serviceId;
+        this.hashHeader = hashHeader;
+        this.virtualNodes = virtualNodes;
+    }
+
+    @Override
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        ServiceInstanceListSupplier supplier = supplierProvider.getIfAvailable(NoopServiceInstanceListSupplier::new);
+        return supplier.get(request).next().map(instances -> choose(instances, hashKey(request)));
+    }
+
+    private Response<ServiceInstance> choose(List<ServiceInstance> instances, String key) {
+        if (instances.isEmpty()) {
+            log.warn("No instances available for service: {}", serviceId);
+            return new EmptyResponse();
+        }
+        if (key == null || key.isEmpty()) {
+            int position = Math.floorMod(roundRobin.getAndIncrement(), instances.size());
+            return new DefaultResponse(instances.get(position));
+        }
+
+        NavigableMap<Long, ServiceInstance> points = ringFor(instances).points();
+        Map.Entry<Long, ServiceInstance> owner = points.ceilingEntry(hash(key));
+        return new DefaultResponse(owner != null ? owner.getValue() : points.firstEntry().getValue());
+    }
+
+    private Ring ringFor(List<ServiceInstance> instances) {
+        String signature = instances.stream()
+                .map(ConsistentHashLoadBalancer::nodeId)
+                .sorted()
+                .collect(Collectors.joining(","));
+        Ring current = ring;
+        if (current.signature().equals(signature)) {
+            return current;
+        }
+
+        NavigableMap<Long, ServiceInstance> points = new TreeMap<>();
+        for (ServiceInstance instance : instances) {
+            String nodeId = nodeId(instance);
+            for (int i = 0; i < virtualNodes; i++) {
+                points.put(hash(nodeId + "#" + i), instance);
+            }
+        }
+        Ring rebuilt = new Ring(signature, points);
+        ring = rebuilt;
+        log.info("Hash ring for {} rebuilt: {} instances, {} points", serviceId, instances.size(), points.size());
+        return rebuilt;
+    }
+
+    private String hashKey(Request request) {
+        if (request.getContext() instanceof RequestDataContext context && context.getClientRequest() != null) {
+            return context.getClientRequest().getHeaders().getFirst(hashHeader);
+        }
+        return null;
+    }
+
+    /**
+     * Instance id on the ring - host and port, so a restarted instance at the same address keeps its points.
+     */
+    private static String nodeId(ServiceInstance instance) {
+        return instance.getHost() + ":" + instance.getPort();
+    }
+
+    private static long hash(String value) {
+        byte[] digest = md5().digest(value.getBytes(StandardCharsets.UTF_8));
+        long hash = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash = (hash << 8) | (digest[i] & 0xFF);
+        }
+        return hash;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}
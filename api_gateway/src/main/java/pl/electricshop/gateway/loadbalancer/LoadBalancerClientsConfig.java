@@ -0,0 +1,12 @@
+package pl.electricshop.gateway.loadbalancer;
+
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClient;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Per-service load balancer overrides. Service ids must match the route URIs ({@code lb://CART-SERVICE}).
+ */
+@Configuration
+@LoadBalancerClient(name = "CART-SERVICE", configuration = UserAffinityLoadBalancerConfig.class)
+public class LoadBalancerClientsConfig {
+}
@@ -0,0 +1,31 @@
+package pl.electricshop.gateway.loadbalancer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+import pl.electricshop.gateway.filter.JwtAuthenticationFilter;
+
+/**
+ * Load balancer configuration for services keeping per-user state in local memory (Cart Service):
+ * consistent hashing on the X-User-Id header set by {@link JwtAuthenticationFilter}.
+ * <p>
+ * Not a {@code @Configuration} on purpose - it is applied only to clients listed in
+ * {@link LoadBalancerClientsConfig}, other routes keep the default round-robin.
+ */
+public class UserAffinityLoadBalancerConfig {
+
+    @Bean
+    public ReactorLoadBalancer<ServiceInstance> userAffinityLoadBalancer(
+            Environment environment,
+            LoadBalancerClientFactory clientFactory,
+            @Value("${app.gateway.user-affinity.virtual-nodes:160}") int virtualNodes) {
+        String serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        return new ConsistentHashLoadBalancer(
+                clientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class),
+                serviceId, JwtAuthenticationFilter.USER_ID_HEADER, virtualNodes);
+    }
+}
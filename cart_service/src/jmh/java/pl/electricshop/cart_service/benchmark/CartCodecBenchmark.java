@@ -0,0 +1,100 @@
+package pl.electricshop.cart_service.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import pl.electricshop.cart_service.model.Cart;
+import pl.electricshop.cart_service.model.CartItem;
+import pl.electricshop.cart_service.repository.CartHashLayout;
+import pl.electricshop.cart_service.repository.LegacyCartMapping;
+import pl.electricshop.cart_service.repository.codec.BinaryCartItemCodec;
+import pl.electricshop.cart_service.repository.codec.CartItemCodec;
+import pl.electricshop.cart_service.repository.codec.JsonCartItemCodec;
+import pl.electricshop.common.money.Money;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formaty koszyka w Redis: czas kodowania i dekodowania całego koszyka oraz rozmiar hasha
+ * (suma bajtów nazw pól i wartości, wypisywana przy starcie każdej kombinacji parametrów).
+ * <ul>
+ *     <li>{@code legacy} - dotychczasowe mapowanie {@code @RedisHash} (pola {@code items.[3].productPrice})</li>
+ *     <li>{@code json} - hash pozycji ze snapshotem w JSON</li>
+ *     <li>{@code binary} - hash pozycji ze snapshotem w formacie {@link BinaryCartItemCodec}</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CartCodecBenchmark {
+
+    @Param({"legacy", "json", "binary"})
+    public String format;
+
+    @Param({"1", "10", "100"})
+    public int items;
+
+    private LegacyCartMapping legacyMapping;
+    private CartHashLayout layout;
+    private Cart cart;
+    private Map<byte[], byte[]> encoded;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        legacyMapping = new LegacyCartMapping();
+        List<CartItemCodec> codecs = List.of(new BinaryCartItemCodec(), new JsonCartItemCodec(new ObjectMapper()));
+        CartItemCodec writeCodec = codecs.stream()
+                .filter(codec -> codec.name().equals(format))
+                .findFirst()
+                .orElse(codecs.get(0));
+        layout = new CartHashLayout(writeCodec, codecs);
+
+        UUID userId = UUID.randomUUID();
+        List<CartItem> cartItems = new ArrayList<>();
+        for (int i = 0; i < items; i++) {
+            String productNumber = "PRD-" + (100000 + i);
+            cartItems.add(new CartItem(productNumber, "Słuchawki bezprzewodowe model " + i, 1 + i % 3,
+                    i % 4 == 0 ? Money.ofMinor(1000) : Money.zero(), Money.ofMinor(19999 + i * 100L),
+                    userId + ":" + productNumber));
+        }
+        cart = new Cart(userId, cartItems);
+        cart.setReservationUntil(LocalDateTime.now().plusMinutes(15));
+        encoded = encode();
+        if (!describe(decode()).equals(describe(cart))) {
+            throw new IllegalStateException("Format " + format + " nie odtwarza koszyka: " + describe(decode()));
+        }
+
+        long bytes = encoded.entrySet().stream()
+                .mapToLong(entry -> entry.getKey().length + entry.getValue().length)
+                .sum();
+        System.out.printf("%n[rozmiar] format=%s, pozycji=%d: %d B w %d polach%n", format, items, bytes, encoded.size());
+    }
+
+    private static List<String> describe(Cart cart) {
+        return cart.getItems().stream()
+                .map(item -> String.join("|", item.getProductNumber(), item.getProductName(),
+                        String.valueOf(item.getQuantity()), String.valueOf(item.getProductPrice()),
+                        String.valueOf(item.getDiscount()), item.getReservationId()))
+                .sorted()
+                .toList();
+    }
+
+    @Benchmark
+    public Map<byte[], byte[]> encode() {
+        return format.equals("legacy") ? legacyMapping.write(cart) : layout.encode(cart);
+    }
+
+    @Benchmark
+    public Cart decode() {
+        return format.equals("legacy")
+                ? legacyMapping.read(cart.getUserId(), encoded)
+                : layout.decode(cart.getUserId(), encoded);
+    }
+}
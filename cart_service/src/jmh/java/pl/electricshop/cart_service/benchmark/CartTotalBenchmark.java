@@ -0,0 +1,77 @@
+package pl.electricshop.cart_service.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import pl.electricshop.cart_service.model.Cart;
+import pl.electricshop.cart_service.model.CartItem;
+import pl.electricshop.common.money.Money;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Suma koszyka liczona przy każdym odczycie:
+ * <ul>
+ *     <li>{@code bigDecimal} - poprzednia wersja {@code Cart.getTotalPrice()}: kwoty jako {@code Double},
+ *     kilka obiektów {@link BigDecimal} na pozycję</li>
+ *     <li>{@code money} - obecna: grosze na {@code long}, jeden {@link Money} na wynik</li>
+ * </ul>
+ * Alokacje widać z profilerem GC: {@code ./gradlew :cart_service:jmh -Pjmh.includes=CartTotal -Pjmh.profilers=gc}
+ * albo {@code java -jar cart_service-*-jmh.jar CartTotal -prof gc}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CartTotalBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int items;
+
+    private Cart cart;
+    private double[] prices;
+    private double[] discounts;
+    private int[] quantities;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        UUID userId = UUID.randomUUID();
+        List<CartItem> cartItems = new ArrayList<>();
+        prices = new double[items];
+        discounts = new double[items];
+        quantities = new int[items];
+        for (int i = 0; i < items; i++) {
+            quantities[i] = 1 + i % 3;
+            prices[i] = (19999 + i * 100L) / 100.0;
+            discounts[i] = i % 4 == 0 ? 10.0 : 0.0;
+            cartItems.add(new CartItem("PRD-" + (100000 + i), "Produkt " + i, quantities[i],
+                    Money.ofMinor(Math.round(discounts[i] * 100)), Money.ofMinor(19999 + i * 100L)));
+        }
+        cart = new Cart(userId, cartItems);
+
+        if (bigDecimal().compareTo(money().toBigDecimal()) != 0) {
+            throw new IllegalStateException("Różne sumy: " + bigDecimal() + " i " + money());
+        }
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimal() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < prices.length; i++) {
+            BigDecimal price = BigDecimal.valueOf(prices[i]);
+            BigDecimal qty = BigDecimal.valueOf(quantities[i]);
+            BigDecimal discount = BigDecimal.valueOf(discounts[i]);
+            total = total.add(price.multiply(qty).subtract(discount));
+        }
+        return total;
+    }
+
+    @Benchmark
+    public Money money() {
+        return cart.getTotalPrice();
+    }
+}
@@ -0,0 +1,25 @@
+package pl.electricshop.cart_service.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import pl.electricshop.cart_service.repository.CheckoutTicketStore;
+import pl.electricshop.cart_service.service.CheckoutTracker;
+
+/**
+ * Subskrypcja kanału zmian statusu biletów checkoutu - każda instancja powiadamia swoje strumienie SSE.
+ */
+@Configuration
+public class CheckoutEventsConfig {
+
+    @Bean
+    public RedisMessageListenerContainer checkoutStatusListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                        CheckoutTracker checkoutTracker) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(checkoutTracker, new ChannelTopic(CheckoutTicketStore.CHANNEL));
+        return container;
+    }
+}
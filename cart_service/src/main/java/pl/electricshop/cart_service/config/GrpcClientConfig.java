@@ -0,0 +1,42 @@
+package pl.electricshop.cart_service.config;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Infrastruktura wywołań gRPC: wirtualne wątki dla callbacków i rejestry circuit breakerów/bulkheadów
+ * z metrykami w Micrometer ({@code resilience4j.circuitbreaker.*}, {@code resilience4j.bulkhead.*}).
+ */
+@Configuration
+public class GrpcClientConfig {
+
+    /**
+     * Callbacki odpowiedzi gRPC i ich kontynuacje - osobno od wspólnej puli ForkJoin i od wątków Netty.
+     */
+    @Bean(destroyMethod = "close")
+    public ExecutorService grpcExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("grpc-client-", 0).factory());
+    }
+
+    @Bean
+    public CircuitBreakerRegistry circuitBreakerRegistry(MeterRegistry meterRegistry) {
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.ofDefaults();
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+        return registry;
+    }
+
+    @Bean
+    public BulkheadRegistry bulkheadRegistry(MeterRegistry meterRegistry) {
+        BulkheadRegistry registry = BulkheadRegistry.ofDefaults();
+        TaggedBulkheadMetrics.ofBulkheadRegistry(registry).bindTo(meterRegistry);
+        return registry;
+    }
+}
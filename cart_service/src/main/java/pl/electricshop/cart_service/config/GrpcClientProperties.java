@@ -0,0 +1,62 @@
+package pl.electricshop.cart_service.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Limity wywołań gRPC per serwis docelowy - klucze jak w {@code grpc.client.*}
+ * ({@code product-service}, {@code inventory-service}). Serwis bez wpisu dostaje wartości domyślne.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "cart.grpc")
+@Data
+public class GrpcClientProperties {
+
+    private Map<String, Downstream> clients = new HashMap<>();
+
+    public Downstream forClient(String name) {
+        return clients.getOrDefault(name, new Downstream());
+    }
+
+    @Data
+    public static class Downstream {
+
+        /**
+         * Deadline pojedynczego wywołania - po nim wywołanie jest anulowane także po stronie serwera.
+         */
+        private long deadlineMs = 1000;
+
+        /**
+         * Bulkhead: maksymalna liczba jednoczesnych wywołań; nadmiarowe są odrzucane od razu.
+         */
+        private int maxConcurrentCalls = 64;
+
+        /**
+         * Procent błędów (w oknie ostatnich wywołań), po którym obwód się otwiera.
+         */
+        private float failureRateThreshold = 50;
+
+        /**
+         * Wywołania wolniejsze niż próg liczą się do progu wolnych wywołań.
+         */
+        private long slowCallMs = 500;
+
+        private float slowCallRateThreshold = 80;
+
+        /**
+         * Liczba ostatnich wywołań branych pod uwagę przez circuit breaker.
+         */
+        private int slidingWindowSize = 50;
+
+        private int minimumNumberOfCalls = 20;
+
+        /**
+         * Jak długo obwód pozostaje otwarty, zanim przepuści wywołania próbne.
+         */
+        private long openStateMs = 5000;
+    }
+}
@@ -3,16 +3,24 @@ package pl.electricshop.cart_service.controller;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import pl.electricshop.cart_service.dto.AddToCartRequest;
+import pl.electricshop.cart_service.dto.BatchAddToCartRequest;
+import pl.electricshop.cart_service.dto.BatchAddToCartResponse;
 import pl.electricshop.cart_service.dto.CartResponse;
 import pl.electricshop.cart_service.dto.CheckoutRequest;
+import pl.electricshop.cart_service.dto.CheckoutTicketResponse;
 import pl.electricshop.cart_service.dto.UpdateQuantityRequest;
 import pl.electricshop.cart_service.mapper.CartMapper;
 import pl.electricshop.cart_service.model.Cart;
+import pl.electricshop.cart_service.model.CheckoutTicket;
 import pl.electricshop.cart_service.service.CartService;
+import pl.electricshop.cart_service.service.CheckoutTracker;
 
+import java.net.URI;
 import java.util.UUID;
 
 /**
@@ -26,6 +34,7 @@ import java.util.UUID;
 public class CartController {
 
     private final CartService cartService;
+    private final CheckoutTracker checkoutTracker;
     private final CartMapper cartMapper;
 
     /**
@@ -58,6 +67,23 @@ public class CartController {
         return ResponseEntity.ok(cartMapper.toResponse(cart));
     }
 
+    /**
+     * Add many products at once - one product lookup, one reservation call and one cart write.
+     * Items that cannot be added are reported per item and do not fail the request.
+     */
+    @PostMapping("/items/batch")
+    public ResponseEntity<BatchAddToCartResponse> addItemsToCart(
+            @RequestHeader("X-User-ID") UUID userId,
+            @Valid @RequestBody BatchAddToCartRequest request) {
+        log.info("POST /api/v1/cart/items/batch for user: {}, items: {}", userId, request.getItems().size());
+
+        CartService.BatchAddResult result = cartService.addItemsToCart(userId, request.getItems());
+        return ResponseEntity.ok(BatchAddToCartResponse.builder()
+                .cart(cartMapper.toResponse(result.cart()))
+                .results(result.results())
+                .build());
+    }
+
     /**
      * Update item quantity in cart.
      */
@@ -89,6 +115,18 @@ public class CartController {
         return ResponseEntity.ok(cartMapper.toResponse(cart));
     }
 
+    /**
+     * Extend reservations of all cart items - one call, one TTL for the whole cart.
+     */
+    @PostMapping("/reservation/extend")
+    public ResponseEntity<CartResponse> extendReservation(
+            @RequestHeader("X-User-ID") UUID userId) {
+        log.info("POST /api/v1/cart/reservation/extend for user: {}", userId);
+
+        Cart cart = cartService.extendReservation(userId);
+        return ResponseEntity.ok(cartMapper.toResponse(cart));
+    }
+
     /**
      * Clear entire cart.
      */
@@ -105,18 +143,49 @@ public class CartController {
      * Checkout - składa zamówienie.
      * Email jest pobierany z headera X-User-Email (przekazywany przez API Gateway z JWT).
      * AddressId użytkownik wybiera z listy swoich adresów.
+     * Zwraca bilet checkoutu - jego status śledzi się przez GET /checkout/{checkoutId} albo strumień SSE.
      */
     @PostMapping("/checkout")
-    public ResponseEntity<Void> checkout(
+    public ResponseEntity<CheckoutTicketResponse> checkout(
             @RequestHeader("X-User-ID") UUID userId,
             @RequestHeader("X-User-Email") String email,
             @Valid @RequestBody CheckoutRequest request) {
 
         // Wywołanie logiki biznesowej (rzucenie eventu na Kafkę)
-        cartService.checkout(userId, request.getAddressId(), email);
+        CheckoutTicket ticket = cartService.checkout(userId, request.getAddressId(), email);
 
         // Zwracamy 202 ACCEPTED, bo proces dzieje się w tle (asynchronicznie)
-        return ResponseEntity.accepted().build();
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/v1/cart/checkout/" + ticket.getCheckoutId()))
+                .body(cartMapper.toResponse(ticket));
+    }
+
+    /**
+     * Checkout ticket status - one Redis read, no calls to Order or Payment Service.
+     */
+    @GetMapping("/checkout/{checkoutId}")
+    public ResponseEntity<CheckoutTicketResponse> getCheckoutStatus(
+            @RequestHeader("X-User-ID") UUID userId,
+            @PathVariable UUID checkoutId) {
+        return checkoutTracker.find(userId, checkoutId)
+                .map(cartMapper::toResponse)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Checkout ticket status pushed as Server-Sent Events ({@code status}) until the order is paid or failed.
+     */
+    @GetMapping(value = "/checkout/{checkoutId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamCheckoutStatus(
+            @RequestHeader("X-User-ID") UUID userId,
+            @PathVariable UUID checkoutId) {
+        log.info("GET /api/v1/cart/checkout/{}/events for user: {}", checkoutId, userId);
+
+        return checkoutTracker.find(userId, checkoutId)
+                .map(checkoutTracker::stream)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
 }
@@ -0,0 +1,38 @@
+package pl.electricshop.cart_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchAddToCartResponse {
+
+    private CartResponse cart;
+    private List<ItemResult> results;
+
+    /**
+     * Wynik jednej pozycji - pozycje tego samego produktu z żądania są sumowane.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ItemResult {
+        private String productNumber;
+        private int quantity;
+        private Status status;
+        private String message;
+    }
+
+    public enum Status {
+        ADDED,
+        NOT_FOUND,
+        OUT_OF_STOCK
+    }
+}
@@ -28,8 +28,16 @@ public class CartResponse {
         private String productNumber;
         private String productName;
         private int quantity;
-        private Double unitPrice;
-        private Double discount;
-        private Double totalPrice;
+        private BigDecimal unitPrice;
+        private BigDecimal discount;
+        private BigDecimal totalPrice;
+        /**
+         * Stan magazynowy z ostatniej aktualizacji produktu; null - brak aktualizacji od dodania do koszyka.
+         */
+        private Integer availableQuantity;
+        /**
+         * Stan magazynowy mniejszy niż ilość w koszyku.
+         */
+        private boolean stockWarning;
     }
 }
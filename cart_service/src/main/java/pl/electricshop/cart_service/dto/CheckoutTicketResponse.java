@@ -0,0 +1,28 @@
+package pl.electricshop.cart_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import pl.electricshop.cart_service.model.CheckoutStatus;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckoutTicketResponse {
+
+    private UUID checkoutId;
+    private CheckoutStatus status;
+    private UUID orderId;
+    /**
+     * Sekret PaymentIntent do potwierdzenia płatności po stronie klienta - od statusu PAYMENT_READY.
+     */
+    private String clientSecret;
+    private String reason;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
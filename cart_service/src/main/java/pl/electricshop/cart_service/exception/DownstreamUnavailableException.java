@@ -0,0 +1,12 @@
+package pl.electricshop.cart_service.exception;
+
+/**
+ * Serwis docelowy jest niedostępny z punktu widzenia koszyka: otwarty circuit breaker, pełny bulkhead
+ * albo przekroczony deadline. Mapowany na 503 - klient może ponowić żądanie później.
+ */
+public class DownstreamUnavailableException extends RuntimeException {
+
+    public DownstreamUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -5,8 +5,11 @@ import org.mapstruct.Mapping;
 import org.mapstruct.Named;
 import pl.electricshop.cart_service.dto.CartResponse;
 import pl.electricshop.cart_service.dto.CartResponse.CartItemResponse;
+import pl.electricshop.cart_service.dto.CheckoutTicketResponse;
 import pl.electricshop.cart_service.model.Cart;
 import pl.electricshop.cart_service.model.CartItem;
+import pl.electricshop.cart_service.model.CheckoutTicket;
+import pl.electricshop.common.money.Money;
 
 import java.math.BigDecimal;
 import java.util.List;
@@ -21,8 +24,11 @@ public interface CartMapper {
 
     @Mapping(source = "productPrice", target = "unitPrice")
     @Mapping(target = "totalPrice", expression = "java(calculateItemTotal(item))")
+    @Mapping(target = "stockWarning", expression = "java(hasStockWarning(item))")
     CartItemResponse toItemResponse(CartItem item);
 
+    CheckoutTicketResponse toResponse(CheckoutTicket ticket);
+
     default int calculateTotalItems(Cart cart) {
         if (cart.getItems() == null) return 0;
         return cart.getItems().stream()
@@ -30,9 +36,15 @@ public interface CartMapper {
                 .sum();
     }
 
-    default Double calculateItemTotal(CartItem item) {
-        double price = item.getProductPrice() != null ? item.getProductPrice() : 0.0;
-        double discount = item.getDiscount() != null ? item.getDiscount() : 0.0;
-        return (price * item.getQuantity()) - discount;
+    default boolean hasStockWarning(CartItem item) {
+        return item.getAvailableQuantity() != null && item.getAvailableQuantity() < item.getQuantity();
+    }
+
+    default BigDecimal calculateItemTotal(CartItem item) {
+        return Money.ofMinor(item.lineTotalMinor()).toBigDecimal();
+    }
+
+    default BigDecimal toAmount(Money money) {
+        return money != null ? money.toBigDecimal() : null;
     }
 }
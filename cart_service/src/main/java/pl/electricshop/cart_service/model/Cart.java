@@ -3,27 +3,24 @@ package pl.electricshop.cart_service.model;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import org.springframework.data.annotation.Id;
-import org.springframework.data.redis.core.RedisHash;
+import org.springframework.data.annotation.Transient;
+import pl.electricshop.common.money.Money;
 
 import java.io.Serializable;
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
 /**
- * Koszyk użytkownika przechowywany w Redis.
- * TTL: 259200 sekund = 3 dni
+ * Koszyk użytkownika przechowywany w Redis jako hash {@code cart:{userId}} (zob. CartStore).
+ * TTL: 900 sekund od ostatniej zmiany
  */
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
-@RedisHash(value = "carts", timeToLive = 900)
 public class Cart implements Serializable {
 
-    @Id
     private UUID userId;
 
     private List<CartItem> items = new ArrayList<>();
@@ -32,17 +29,20 @@ public class Cart implements Serializable {
     private LocalDateTime  reservationUntil;
 
     /**
-     * Oblicza całkowitą cenę koszyka.
+     * Wersja koszyka w Redis - zmiany zapisywane są tylko, jeśli nie zmieniła się od odczytu.
      */
-    public BigDecimal getTotalPrice() {
-        return items.stream()
-                .map(item -> {
-                    BigDecimal price = BigDecimal.valueOf(item.getProductPrice());
-                    BigDecimal qty = BigDecimal.valueOf(item.getQuantity());
-                    BigDecimal discount = BigDecimal.valueOf(item.getDiscount() != null ? item.getDiscount() : 0);
-                    return price.multiply(qty).subtract(discount);
-                })
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    @Transient
+    private long version;
+
+    /**
+     * Oblicza całkowitą cenę koszyka - suma w groszach na {@code long}, jeden obiekt na wynik.
+     */
+    public Money getTotalPrice() {
+        long total = 0;
+        for (CartItem item : items) {
+            total = Math.addExact(total, item.lineTotalMinor());
+        }
+        return Money.ofMinor(total);
     }
 
     public Cart(UUID userId, List<CartItem> items) {
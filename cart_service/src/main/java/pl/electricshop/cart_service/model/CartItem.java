@@ -1,6 +1,7 @@
 package pl.electricshop.cart_service.model;
 
 import lombok.*;
+import pl.electricshop.common.money.Money;
 
 import java.io.Serializable;
 
@@ -17,16 +18,40 @@ public class CartItem implements Serializable {
     private String productNumber;
     private String productName;
     private Integer quantity;
-    private Double discount;
-    private Double productPrice;
+    private Money discount;      // kwota rabatu na całą pozycję
+    private Money productPrice;
     private String reservationId;  // format: "userId:productNumber"
 
+    /**
+     * Stan magazynowy z ostatniej aktualizacji produktu (product-update-topic); null - brak aktualizacji
+     * od dodania. Nie jest częścią snapshotu - osobne pole hasha koszyka.
+     */
+    private Integer availableQuantity;
+
+    public CartItem(String productNumber, String productName, Integer quantity,
+                    Money discount, Money productPrice, String reservationId) {
+        this.productNumber = productNumber;
+        this.productName = productName;
+        this.quantity = quantity;
+        this.discount = discount;
+        this.productPrice = productPrice;
+        this.reservationId = reservationId;
+    }
+
     public CartItem(String productNumber, String productName, int quantity,
-                    double discount, double price) {
+                    Money discount, Money price) {
         this.productNumber = productNumber;
         this.productName = productName;
         this.quantity = quantity;
         this.discount = discount;
         this.productPrice = price;
     }
+
+    /**
+     * Wartość pozycji w groszach (cena × ilość − rabat), bez tworzenia obiektów - do sum koszyka.
+     */
+    public long lineTotalMinor() {
+        return Money.lineTotalMinor(productPrice != null ? productPrice.minor() : 0, quantity,
+                discount != null ? discount.minor() : 0);
+    }
 }
@@ -0,0 +1,37 @@
+package pl.electricshop.cart_service.model;
+
+/**
+ * Etap sagi checkoutu widziany przez klienta. Ranga porządkuje statusy - bilet przechodzi tylko do statusu
+ * o wyższej randze, więc spóźniony event nie cofa biletu.
+ */
+public enum CheckoutStatus {
+
+    /**
+     * Event checkoutu wysłany, zamówienie jeszcze nie powstało.
+     */
+    PENDING(0),
+    ORDER_CREATED(1),
+    /**
+     * Płatność zainicjowana - bilet zawiera clientSecret do potwierdzenia płatności.
+     */
+    PAYMENT_READY(2),
+    PAID(3),
+    FAILED(3);
+
+    private final int rank;
+
+    CheckoutStatus(int rank) {
+        this.rank = rank;
+    }
+
+    public int rank() {
+        return rank;
+    }
+
+    /**
+     * Status końcowy - po nim bilet już się nie zmienia, a strumień SSE jest zamykany.
+     */
+    public boolean terminal() {
+        return this == PAID || this == FAILED;
+    }
+}
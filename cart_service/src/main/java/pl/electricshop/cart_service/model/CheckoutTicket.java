@@ -0,0 +1,29 @@
+package pl.electricshop.cart_service.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Bilet checkoutu przechowywany w Redis jako hash {@code checkout:{checkoutId}} (zob. CheckoutTicketStore).
+ * Status zmieniają eventy sagi zamówienia z Order Service i Payment Service.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckoutTicket {
+
+    private UUID checkoutId;
+    private UUID userId;
+    private CheckoutStatus status;
+    private UUID orderId;
+    private String clientSecret;   // od PAYMENT_READY
+    private String reason;         // przy FAILED
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
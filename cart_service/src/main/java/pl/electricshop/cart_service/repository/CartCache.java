@@ -0,0 +1,128 @@
+package pl.electricshop.cart_service.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Lokalna pamięć ostatnio używanych koszyków (LRU, najwyżej {@code cart.cache.max-entries}) - surowe pola hasha
+ * z ostatniego odczytu lub zapisu tej instancji.
+ * <p>
+ * Wpis nie jest nigdy oddawany na ślepo: {@link CartStore#find} porównuje jego stempel z Redis (HMGET trzech pól)
+ * i dopiero przy zgodności dekoduje koszyk z pamięci zamiast pobierać cały hash. Stempel to:
+ * <ul>
+ *     <li>{@code v} - wersja, zwiększana przy każdej zmianie koszyka (także z innej instancji)</li>
+ *     <li>{@code r} - licznik odświeżeń pozycji po aktualizacji produktu (te nie zmieniają wersji)</li>
+ *     <li>{@code c} - chwila utworzenia hasha, odróżnia nowy koszyk od usuniętego lub wygasłego o tej samej wersji</li>
+ * </ul>
+ * Dzięki temu wynik jest poprawny także po przeniesieniu użytkownika na inną instancję (zmiana listy instancji
+ * w gatewayu) i z powrotem - nieaktualny wpis kosztuje tylko pełny odczyt.
+ * Koszyki bez pola {@code c} (świeżo przeniesione ze starego formatu) nie są zapamiętywane.
+ */
+@Component
+public class CartCache {
+
+    static final byte[] REFRESH_FIELD = "r".getBytes(StandardCharsets.UTF_8);
+    static final byte[] CREATED_FIELD = "c".getBytes(StandardCharsets.UTF_8);
+
+    private static final String VERSION = "v";
+    private static final String REFRESH = "r";
+    private static final String CREATED = "c";
+
+    private final boolean enabled;
+    private final Map<UUID, Entry> entries;
+    private final Counter hits;
+    private final Counter stale;
+    private final Counter misses;
+
+    /**
+     * Pola koszyka ze stemplem z chwili odczytu.
+     */
+    record Entry(byte[] version, byte[] refresh, byte[] created, Map<byte[], byte[]> fields) {
+
+        /**
+         * @param current wartości pól v, r, c z Redis (w tej kolejności)
+         */
+        boolean matches(List<byte[]> current) {
+            return current != null && current.size() == 3
+                    && Arrays.equals(version, current.get(0))
+                    && Arrays.equals(refresh, current.get(1))
+                    && Arrays.equals(created, current.get(2));
+        }
+    }
+
+    public CartCache(@Value("${cart.cache.enabled:true}") boolean enabled,
+                     @Value("${cart.cache.max-entries:10000}") int maxEntries,
+                     MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.entries = Collections.synchronizedMap(new LinkedHashMap<>(Math.min(maxEntries, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        });
+        this.hits = Counter.builder("cart.cache.reads").tag("result", "hit").register(meterRegistry);
+        this.stale = Counter.builder("cart.cache.reads").tag("result", "stale").register(meterRegistry);
+        this.misses = Counter.builder("cart.cache.reads").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("cart.cache.size", entries, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * @return wpis do sprawdzenia stempla albo null (brak wpisu lub pamięć wyłączona)
+     */
+    Entry get(UUID userId) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = entries.get(userId);
+        if (entry == null) {
+            misses.increment();
+        }
+        return entry;
+    }
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordStale() {
+        stale.increment();
+    }
+
+    /**
+     * Zapamiętuje pola koszyka (wynik HGETALL). Bez stempla utworzenia wpis jest tylko usuwany.
+     */
+    void put(UUID userId, Map<byte[], byte[]> fields) {
+        if (!enabled) {
+            return;
+        }
+        byte[] version = null;
+        byte[] refresh = null;
+        byte[] created = null;
+        for (Map.Entry<byte[], byte[]> field : fields.entrySet()) {
+            switch (new String(field.getKey(), StandardCharsets.UTF_8)) {
+                case VERSION -> version = field.getValue();
+                case REFRESH -> refresh = field.getValue();
+                case CREATED -> created = field.getValue();
+                default -> {
+                }
+            }
+        }
+        if (created == null) {
+            entries.remove(userId);
+            return;
+        }
+        entries.put(userId, new Entry(version, refresh, created, fields));
+    }
+
+    void invalidate(UUID userId) {
+        if (enabled) {
+            entries.remove(userId);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package pl.electricshop.cart_service.repository;
+
+import pl.electricshop.cart_service.model.Cart;
+import pl.electricshop.cart_service.model.CartItem;
+import pl.electricshop.cart_service.repository.codec.CartItemCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Układ pól hasha koszyka i ich kodowanie:
+ * <pre>
+ * q:{productNumber} -> ilość (tekst dziesiętny - wymaga tego HINCRBY)
+ * p:{productNumber} -> snapshot produktu w formacie {@link CartItemCodec}
+ * s:{productNumber} -> stan magazynowy z ostatniej aktualizacji produktu (pole opcjonalne)
+ * until             -> termin rezerwacji (epoch ms)
+ * v                 -> wersja koszyka, zwiększana przy każdej zmianie (compare-and-set w cart-cas.lua)
+ * r                 -> licznik odświeżeń pozycji po aktualizacji produktu (stempel {@link CartCache})
+ * c                 -> chwila utworzenia hasha (stempel {@link CartCache})
+ * </pre>
+ */
+public class CartHashLayout {
+
+    static final byte[] UNTIL_FIELD = "until".getBytes(StandardCharsets.UTF_8);
+    static final byte[] VERSION_FIELD = "v".getBytes(StandardCharsets.UTF_8);
+
+    static final String QUANTITY_PREFIX = "q:";
+    private static final String PRODUCT_PREFIX = "p:";
+    private static final String STOCK_PREFIX = "s:";
+    private static final String UNTIL = "until";
+    private static final String VERSION = "v";
+
+    private final CartItemCodec writeCodec;
+    private final List<CartItemCodec> readCodecs;
+
+    /**
+     * @param writeCodec format nowych zapisów
+     * @param readCodecs wszystkie znane formaty - snapshot dekoduje pierwszy, który go rozpozna
+     */
+    public CartHashLayout(CartItemCodec writeCodec, List<CartItemCodec> readCodecs) {
+        this.writeCodec = writeCodec;
+        this.readCodecs = List.copyOf(readCodecs);
+    }
+
+    public byte[] quantityField(String productNumber) {
+        return (QUANTITY_PREFIX + productNumber).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public byte[] productField(String productNumber) {
+        return (PRODUCT_PREFIX + productNumber).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public byte[] stockField(String productNumber) {
+        return (STOCK_PREFIX + productNumber).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public byte[] encodeItem(UUID userId, CartItem item) {
+        return writeCodec.encode(userId, item);
+    }
+
+    /**
+     * Pełny koszyk jako pola hasha - dla migracji i benchmarku; zmiany pozycji zapisują tylko swoje pola.
+     */
+    public Map<byte[], byte[]> encode(Cart cart) {
+        Map<byte[], byte[]> fields = new LinkedHashMap<>();
+        for (CartItem item : cart.getItems()) {
+            fields.put(quantityField(item.getProductNumber()), encodeNumber(item.getQuantity()));
+            fields.put(productField(item.getProductNumber()), encodeItem(cart.getUserId(), item));
+        }
+        if (cart.getReservationUntil() != null) {
+            fields.put(UNTIL_FIELD, encodeUntil(cart.getReservationUntil()));
+        }
+        return fields;
+    }
+
+    public Cart decode(UUID userId, Map<byte[], byte[]> rawFields) {
+        Map<String, byte[]> fields = new HashMap<>(rawFields.size() * 2);
+        rawFields.forEach((field, value) -> fields.put(new String(field, StandardCharsets.UTF_8), value));
+
+        Cart cart = new Cart(userId, new ArrayList<>());
+        fields.forEach((field, value) -> {
+            if (field.startsWith(QUANTITY_PREFIX)) {
+                String productNumber = field.substring(QUANTITY_PREFIX.length());
+                byte[] snapshot = fields.get(PRODUCT_PREFIX + productNumber);
+                if (snapshot != null) {
+                    CartItem item = decodeItem(userId, productNumber, value, snapshot);
+                    byte[] stock = fields.get(STOCK_PREFIX + productNumber);
+                    if (stock != null) {
+                        item.setAvailableQuantity(Math.toIntExact(decodeNumber(stock)));
+                    }
+                    cart.getItems().add(item);
+                }
+            } else if (field.equals(UNTIL)) {
+                cart.setReservationUntil(LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(decodeNumber(value)), ZoneId.systemDefault()));
+            } else if (field.equals(VERSION)) {
+                cart.setVersion(decodeNumber(value));
+            }
+        });
+        return cart;
+    }
+
+    public CartItem decodeItem(UUID userId, String productNumber, byte[] quantity, byte[] snapshot) {
+        int parsedQuantity = Math.toIntExact(decodeNumber(quantity));
+        for (CartItemCodec codec : readCodecs) {
+            if (codec.canDecode(snapshot)) {
+                return codec.decode(userId, productNumber, parsedQuantity, snapshot);
+            }
+        }
+        throw new IllegalStateException("Nieznany format pozycji koszyka: " + productNumber);
+    }
+
+    public static byte[] encodeUntil(LocalDateTime reservationUntil) {
+        return encodeNumber(reservationUntil.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+
+    public static byte[] encodeNumber(long value) {
+        return Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return liczba zapisana w polu albo 0 dla pola nieobecnego
+     */
+    public static long decodeNumber(byte[] value) {
+        if (value == null) {
+            return 0;
+        }
+        return Long.parseLong(new String(value, StandardCharsets.US_ASCII));
+    }
+}
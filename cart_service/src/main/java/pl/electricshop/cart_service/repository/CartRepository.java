@@ -1,13 +0,0 @@
-package pl.electricshop.cart_service.repository;
-
-import org.springframework.data.repository.CrudRepository;
-import org.springframework.stereotype.Repository;
-import pl.electricshop.cart_service.model.Cart;
-
-import java.util.Optional;
-import java.util.UUID;
-
-@Repository
-public interface CartRepository extends CrudRepository<Cart, String> {
-    Optional<Cart> findByUserId(UUID userId);
-}
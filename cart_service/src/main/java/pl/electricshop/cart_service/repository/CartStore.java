@@ -0,0 +1,465 @@
+package pl.electricshop.cart_service.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Repository;
+import pl.electricshop.cart_service.model.Cart;
+import pl.electricshop.cart_service.model.CartItem;
+import pl.electricshop.cart_service.repository.codec.CartItemCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Koszyk jako jeden hash Redis - zmiana pozycji dotyka tylko jej pól, niezależnie od wielkości koszyka.
+ * Układ pól opisuje {@link CartHashLayout}, format snapshotu produktu wybiera {@code cart.storage.codec}.
+ * <p>
+ * Każda zmiana to jedno wywołanie skryptu: zapis pól, odświeżenie TTL i odczyt koszyka do odpowiedzi.
+ * Zmiana przechodzi tylko, jeśli wersja koszyka ({@code v}) nie zmieniła się od odczytu - przy konflikcie
+ * metody zwracają pusty wynik, a wywołujący powtarza operację na świeżym stanie.
+ * Przy włączonej migracji ({@code cart.storage.legacy-migration}) koszyk zapisany jeszcze przez
+ * {@code @RedisHash} jest przepisywany do nowego układu przy pierwszym odczycie - każda zmiana poprzedzona jest
+ * odczytem, z którego pochodzi oczekiwana wersja.
+ * <p>
+ * Indeks {@code cart-index:{productNumber}} (SET identyfikatorów użytkowników) wskazuje koszyki zawierające produkt -
+ * aktualizacja produktu poprawia tylko te pozycje ({@link #refreshProduct}), więc odczyt koszyka nie pyta
+ * Product Service o dane pozycji. Indeks zmieniany jest tym samym skryptem co koszyk; wpisy koszyków, które
+ * wygasły, usuwa dopiero najbliższe odświeżenie produktu.
+ * <p>
+ * Odczyt całego koszyka przechodzi przez {@link CartCache}: przy zgodnym stemplu (wersja, licznik odświeżeń,
+ * chwila utworzenia) z Redis pobierane są tylko trzy pola, a koszyk dekodowany jest z pamięci instancji.
+ * Każdy zapis tej instancji aktualizuje pamięć wynikiem skryptu.
+ */
+@Slf4j
+@Repository
+public class CartStore {
+
+    public static final String CART_KEY_PREFIX = "cart:";
+    public static final String INDEX_KEY_PREFIX = "cart-index:";
+    public static final Duration CART_TTL = Duration.ofSeconds(900);
+
+    private static final RedisScript<List> CAS_SCRIPT = RedisScript.of(new ClassPathResource("scripts/cart-cas.lua"), List.class);
+    private static final RedisScript<List> REFRESH_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/cart-product-refresh.lua"), List.class);
+    private static final int REFRESH_CHUNK = 200;
+    private static final byte[] OP_SET = {'S'};
+    private static final byte[] OP_INCREMENT = {'I'};
+    private static final byte[] OP_DELETE = {'D'};
+    private static final byte[] OP_CLEAR = {'K'};
+    private static final byte[] OP_INDEX_ADD = {'A'};
+    private static final byte[] OP_INDEX_REMOVE = {'R'};
+
+    private final StringRedisTemplate redisTemplate;
+    private final LegacyCartMapping legacyMapping;
+    private final CartHashLayout layout;
+    private final CartCache cache;
+    private final boolean legacyMigration;
+
+    public CartStore(StringRedisTemplate redisTemplate,
+                     LegacyCartMapping legacyMapping,
+                     CartCache cache,
+                     List<CartItemCodec> codecs,
+                     @Value("${cart.storage.codec:binary}") String codecName,
+                     @Value("${cart.storage.legacy-migration:true}") boolean legacyMigration) {
+        this.redisTemplate = redisTemplate;
+        this.legacyMapping = legacyMapping;
+        this.cache = cache;
+        this.legacyMigration = legacyMigration;
+        CartItemCodec writeCodec = codecs.stream()
+                .filter(codec -> codec.name().equals(codecName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Nieznany format koszyka: " + codecName));
+        this.layout = new CartHashLayout(writeCodec, codecs);
+    }
+
+    public Optional<Cart> find(UUID userId) {
+        CartCache.Entry cached = cache.get(userId);
+        if (cached != null) {
+            List<byte[]> stamp = execute(connection -> connection.hashCommands().hMGet(key(userId),
+                    CartHashLayout.VERSION_FIELD, CartCache.REFRESH_FIELD, CartCache.CREATED_FIELD));
+            if (cached.matches(stamp)) {
+                cache.recordHit();
+                return Optional.of(layout.decode(userId, cached.fields()));
+            }
+            cache.recordStale();
+        }
+
+        Map<byte[], byte[]> fields = execute(connection -> connection.hashCommands().hGetAll(key(userId)));
+        if (fields == null || fields.isEmpty()) {
+            cache.invalidate(userId);
+            return migrateLegacy(userId);
+        }
+        cache.put(userId, fields);
+        return Optional.of(layout.decode(userId, fields));
+    }
+
+    /**
+     * Czyta jedną pozycję i wersję koszyka (HMGET trzech pól), bez wczytywania całego koszyka.
+     */
+    public VersionedItem findItem(UUID userId, String productNumber) {
+        List<byte[]> values = execute(connection -> connection.hashCommands().hMGet(key(userId),
+                layout.quantityField(productNumber), layout.productField(productNumber), CartHashLayout.VERSION_FIELD));
+        if (values == null || values.get(0) == null || values.get(1) == null) {
+            return migrateLegacy(userId)
+                    .map(cart -> new VersionedItem(cart.getItems().stream()
+                            .filter(item -> item.getProductNumber().equals(productNumber))
+                            .findFirst()
+                            .orElse(null), cart.getVersion()))
+                    .orElseGet(() -> new VersionedItem(null, CartHashLayout.decodeNumber(values == null ? null : values.get(2))));
+        }
+        return new VersionedItem(layout.decodeItem(userId, productNumber, values.get(0), values.get(1)),
+                CartHashLayout.decodeNumber(values.get(2)));
+    }
+
+    /**
+     * Dodaje pozycję lub zwiększa ilość istniejącej (HINCRBY) i nadpisuje jej snapshot.
+     *
+     * @return koszyk po zmianie albo pusty, jeśli od odczytu {@code expectedVersion} ktoś zmienił koszyk
+     */
+    public Optional<Cart> addItem(UUID userId, CartItem item, LocalDateTime reservationUntil, long expectedVersion) {
+        return compareAndSet(userId, expectedVersion, reservationUntil, change -> change
+                .set(layout.productField(item.getProductNumber()), layout.encodeItem(userId, item))
+                .increment(layout.quantityField(item.getProductNumber()), item.getQuantity())
+                .index(item.getProductNumber()));
+    }
+
+    /**
+     * Dodaje wiele pozycji jednym skryptem - jak {@link #addItem} dla każdej z nich, z jedną zmianą wersji.
+     *
+     * @return koszyk po zmianie albo pusty przy konflikcie wersji
+     */
+    public Optional<Cart> addItems(UUID userId, Collection<CartItem> items, LocalDateTime reservationUntil,
+                                   long expectedVersion) {
+        return compareAndSet(userId, expectedVersion, reservationUntil, change -> items.forEach(item -> change
+                .set(layout.productField(item.getProductNumber()), layout.encodeItem(userId, item))
+                .increment(layout.quantityField(item.getProductNumber()), item.getQuantity())
+                .index(item.getProductNumber())));
+    }
+
+    /**
+     * @return koszyk po zmianie albo pusty przy konflikcie wersji
+     */
+    public Optional<Cart> setQuantity(UUID userId, String productNumber, int quantity,
+                                      LocalDateTime reservationUntil, long expectedVersion) {
+        return compareAndSet(userId, expectedVersion, reservationUntil, change -> change
+                .set(layout.quantityField(productNumber), CartHashLayout.encodeNumber(quantity)));
+    }
+
+    /**
+     * @return koszyk po zmianie albo pusty przy konflikcie wersji
+     */
+    public Optional<Cart> removeItem(UUID userId, String productNumber, long expectedVersion) {
+        return compareAndSet(userId, expectedVersion, null, change -> change
+                .delete(layout.quantityField(productNumber))
+                .delete(layout.productField(productNumber))
+                .delete(layout.stockField(productNumber))
+                .unindex(productNumber));
+    }
+
+    /**
+     * Zapisuje nowy termin rezerwacji koszyka (po przedłużeniu pakietu rezerwacji w Inventory Service).
+     *
+     * @return koszyk po zmianie albo pusty przy konflikcie wersji
+     */
+    public Optional<Cart> setReservationUntil(UUID userId, LocalDateTime reservationUntil, long expectedVersion) {
+        return compareAndSet(userId, expectedVersion, reservationUntil, change -> {
+        });
+    }
+
+    /**
+     * Usuwa wszystkie pozycje, jeśli koszyk nie zmienił się od odczytu.
+     *
+     * @param cart koszyk z odczytu - jego wersja i pozycje (do usunięcia z indeksu produktów)
+     * @return false przy konflikcie wersji
+     */
+    public boolean clear(Cart cart) {
+        return compareAndSet(cart.getUserId(), cart.getVersion(), null, change -> {
+            change.clear();
+            cart.getItems().forEach(item -> change.unindex(item.getProductNumber()));
+        }).isPresent();
+    }
+
+    /**
+     * Usuwa koszyk bezwarunkowo - po złożeniu zamówienia.
+     */
+    public void delete(UUID userId) {
+        cache.invalidate(userId);
+        unindexAll(userId);
+        List<byte[]> keys = new ArrayList<>();
+        keys.add(key(userId));
+        if (legacyMigration) {
+            keys.add(legacyMapping.key(userId));
+            keys.addAll(legacyMapping.auxiliaryKeys(userId));
+        }
+        execute(connection -> connection.keyCommands().del(keys.toArray(byte[][]::new)));
+    }
+
+    /**
+     * Poprawia snapshot i stan magazynowy produktu we wszystkich koszykach z indeksu - paczkami po
+     * {@value #REFRESH_CHUNK} koszyków: jeden pipeline odczytu pozycji i jeden skrypt zapisu na paczkę.
+     * Wersja i TTL koszyków się nie zmieniają - zmienia się licznik odświeżeń {@code r}, więc
+     * {@link CartCache} wszystkich instancji zauważy nowy snapshot. Wpisy indeksu bez pozycji w koszyku są usuwane.
+     *
+     * @param product nowe dane produktu (ilość i rezerwacja pozycji zostają z koszyka)
+     * @param stock   stan magazynowy produktu
+     * @return liczba poprawionych koszyków
+     */
+    public int refreshProduct(CartItem product, int stock) {
+        String productNumber = product.getProductNumber();
+        byte[] indexKey = indexKey(productNumber);
+        List<byte[]> members = execute(connection -> {
+            List<byte[]> found = new ArrayList<>();
+            try (Cursor<byte[]> cursor = connection.setCommands().sScan(indexKey,
+                    ScanOptions.scanOptions().count(REFRESH_CHUNK).build())) {
+                cursor.forEachRemaining(found::add);
+            }
+            return found;
+        });
+        if (members == null || members.isEmpty()) {
+            return 0;
+        }
+
+        int refreshed = 0;
+        for (int from = 0; from < members.size(); from += REFRESH_CHUNK) {
+            refreshed += refreshChunk(product, stock, indexKey, members.subList(from, Math.min(from + REFRESH_CHUNK, members.size())));
+        }
+        return refreshed;
+    }
+
+    private int refreshChunk(CartItem product, int stock, byte[] indexKey, List<byte[]> members) {
+        String productNumber = product.getProductNumber();
+        byte[] quantityField = layout.quantityField(productNumber);
+        byte[] productField = layout.productField(productNumber);
+        List<Object> current = pipelined(connection -> members.forEach(member -> connection.hashCommands()
+                .hMGet(key(UUID.fromString(new String(member, StandardCharsets.UTF_8))), quantityField, productField)));
+
+        List<byte[]> stale = new ArrayList<>();
+        List<byte[]> live = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        List<byte[]> args = new ArrayList<>(List.of(quantityField, productField, layout.stockField(productNumber),
+                CartHashLayout.encodeNumber(stock)));
+        for (int i = 0; i < members.size(); i++) {
+            @SuppressWarnings("unchecked")
+            List<byte[]> values = (List<byte[]>) current.get(i);
+            if (values == null || values.get(0) == null || values.get(1) == null) {
+                stale.add(members.get(i));
+                continue;
+            }
+            UUID userId = UUID.fromString(new String(members.get(i), StandardCharsets.UTF_8));
+            CartItem item = layout.decodeItem(userId, productNumber, values.get(0), values.get(1));
+            item.setProductName(product.getProductName());
+            item.setProductPrice(product.getProductPrice());
+            item.setDiscount(product.getDiscount());
+            live.add(members.get(i));
+            keys.add(CART_KEY_PREFIX + userId);
+            args.add(layout.encodeItem(userId, item));
+        }
+
+        int refreshed = 0;
+        if (!keys.isEmpty()) {
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            List<Long> removed = (List<Long>) redisTemplate.execute((RedisScript) REFRESH_SCRIPT, RedisSerializer.byteArray(),
+                    (RedisSerializer) RedisSerializer.byteArray(), keys, args.toArray());
+            List<Long> gone = removed == null ? List.of() : removed;
+            gone.forEach(position -> stale.add(live.get(Math.toIntExact(position) - 1)));
+            refreshed = keys.size() - gone.size();
+        }
+        if (!stale.isEmpty()) {
+            execute(connection -> connection.setCommands().sRem(indexKey, stale.toArray(byte[][]::new)));
+        }
+        return refreshed;
+    }
+
+    /**
+     * Usuwa koszyk z indeksów wszystkich jego produktów (przed bezwarunkowym usunięciem koszyka).
+     */
+    private void unindexAll(UUID userId) {
+        Set<byte[]> fields = execute(connection -> connection.hashCommands().hKeys(key(userId)));
+        if (fields == null || fields.isEmpty()) {
+            return;
+        }
+        byte[] member = userId.toString().getBytes(StandardCharsets.UTF_8);
+        pipelined(connection -> fields.stream()
+                .map(field -> new String(field, StandardCharsets.UTF_8))
+                .filter(field -> field.startsWith(CartHashLayout.QUANTITY_PREFIX))
+                .forEach(field -> connection.setCommands().sRem(
+                        indexKey(field.substring(CartHashLayout.QUANTITY_PREFIX.length())), member)));
+    }
+
+    /**
+     * Pozycja koszyka (null, jeśli jej nie ma) z wersją koszyka z chwili odczytu.
+     */
+    public record VersionedItem(CartItem item, long version) {
+
+        public boolean present() {
+            return item != null;
+        }
+    }
+
+    /**
+     * Zmiana, zapis terminu rezerwacji, zwiększenie wersji, odświeżenie TTL i odczyt koszyka do odpowiedzi -
+     * jednym skryptem, tylko jeśli wersja w Redis nadal równa się {@code expectedVersion}.
+     */
+    private Optional<Cart> compareAndSet(UUID userId, long expectedVersion, LocalDateTime reservationUntil,
+                                         Consumer<CasChange> change) {
+        CasChange operations = new CasChange(userId, expectedVersion);
+        change.accept(operations);
+        if (reservationUntil != null) {
+            operations.set(CartHashLayout.UNTIL_FIELD, CartHashLayout.encodeUntil(reservationUntil));
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        List<byte[]> fields = (List<byte[]>) redisTemplate.execute((RedisScript) CAS_SCRIPT, RedisSerializer.byteArray(),
+                (RedisSerializer) RedisSerializer.byteArray(), operations.keys(), operations.args());
+        if (fields == null || fields.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Map<byte[], byte[]> hash = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < fields.size(); i += 2) {
+            hash.put(fields.get(i), fields.get(i + 1));
+        }
+        cache.put(userId, hash);
+        return Optional.of(layout.decode(userId, hash));
+    }
+
+    /**
+     * Klucze i argumenty skryptu cart-cas.lua: oczekiwana wersja, TTL i lista operacji na polach i indeksach.
+     */
+    private static final class CasChange {
+
+        private final List<String> keys = new ArrayList<>();
+        private final List<byte[]> args = new ArrayList<>();
+        private final byte[] member;
+
+        CasChange(UUID userId, long expectedVersion) {
+            keys.add(CART_KEY_PREFIX + userId);
+            member = userId.toString().getBytes(StandardCharsets.UTF_8);
+            args.add(CartHashLayout.encodeNumber(expectedVersion));
+            args.add(CartHashLayout.encodeNumber(CART_TTL.toSeconds()));
+        }
+
+        CasChange set(byte[] field, byte[] value) {
+            return add(OP_SET, field, value);
+        }
+
+        CasChange increment(byte[] field, long delta) {
+            return add(OP_INCREMENT, field, CartHashLayout.encodeNumber(delta));
+        }
+
+        CasChange delete(byte[] field) {
+            return add(OP_DELETE, field);
+        }
+
+        CasChange clear() {
+            return add(OP_CLEAR);
+        }
+
+        CasChange index(String productNumber) {
+            return add(OP_INDEX_ADD, indexKeyNumber(productNumber), member);
+        }
+
+        CasChange unindex(String productNumber) {
+            return add(OP_INDEX_REMOVE, indexKeyNumber(productNumber), member);
+        }
+
+        private byte[] indexKeyNumber(String productNumber) {
+            String indexKey = INDEX_KEY_PREFIX + productNumber;
+            int position = keys.indexOf(indexKey);
+            if (position < 0) {
+                keys.add(indexKey);
+                position = keys.size() - 1;
+            }
+            return CartHashLayout.encodeNumber(position + 1);
+        }
+
+        private CasChange add(byte[]... values) {
+            args.addAll(Arrays.asList(values));
+            return this;
+        }
+
+        List<String> keys() {
+            return keys;
+        }
+
+        Object[] args() {
+            return args.toArray();
+        }
+    }
+
+    /**
+     * Przepisuje koszyk ze starego mapowania {@code @RedisHash} do hasha {@code cart:{userId}}.
+     * Pola zapisywane są przez HSETNX, więc nie nadpisują zmian wprowadzonych w międzyczasie w nowym układzie.
+     *
+     * @return koszyk po migracji albo pusty, jeśli starego wpisu nie było
+     */
+    private Optional<Cart> migrateLegacy(UUID userId) {
+        if (!legacyMigration) {
+            return Optional.empty();
+        }
+        byte[] legacyKey = legacyMapping.key(userId);
+        Map<byte[], byte[]> legacyFields = execute(connection -> connection.hashCommands().hGetAll(legacyKey));
+        if (legacyFields == null || legacyFields.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Cart legacyCart = legacyMapping.read(userId, legacyFields);
+        byte[] key = key(userId);
+        List<Object> results = pipelined(connection -> {
+            layout.encode(legacyCart).forEach((field, value) -> connection.hashCommands().hSetNX(key, field, value));
+            connection.keyCommands().expire(key, CART_TTL.toSeconds());
+            connection.keyCommands().del(legacyKey);
+            legacyMapping.auxiliaryKeys(userId).forEach(connection.keyCommands()::del);
+            connection.setCommands().sRem(legacyMapping.keyspaceSet(), userId.toString().getBytes(StandardCharsets.UTF_8));
+            legacyCart.getItems().forEach(item -> connection.setCommands().sAdd(indexKey(item.getProductNumber()),
+                    userId.toString().getBytes(StandardCharsets.UTF_8)));
+            connection.hashCommands().hGetAll(key);
+        });
+        log.info("Przeniesiono koszyk użytkownika {} ze starego formatu ({} pozycji)", userId, legacyCart.getItems().size());
+        return Optional.of(layout.decode(userId, lastResult(results)));
+    }
+
+    private <T> T execute(RedisCallback<T> callback) {
+        return redisTemplate.execute(callback);
+    }
+
+    /**
+     * Pipeline na surowym połączeniu - wyniki zostają bajtami, bez serializerów szablonu tekstowego.
+     */
+    private List<Object> pipelined(Consumer<RedisConnection> commands) {
+        return redisTemplate.execute((RedisCallback<List<Object>>) connection -> {
+            connection.openPipeline();
+            try {
+                commands.accept(connection);
+            } catch (RuntimeException e) {
+                connection.closePipeline();
+                throw e;
+            }
+            return connection.closePipeline();
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<byte[], byte[]> lastResult(List<Object> results) {
+        return (Map<byte[], byte[]>) results.get(results.size() - 1);
+    }
+
+    private static byte[] key(UUID userId) {
+        return (CART_KEY_PREFIX + userId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] indexKey(String productNumber) {
+        return (INDEX_KEY_PREFIX + productNumber).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,128 @@
+package pl.electricshop.cart_service.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+import pl.electricshop.cart_service.model.CheckoutStatus;
+import pl.electricshop.cart_service.model.CheckoutTicket;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+/**
+ * Bilety checkoutu w Redis:
+ * <pre>
+ * checkout:{checkoutId}        HASH    userId, status, rank, orderId, clientSecret, reason, createdAt, updatedAt (epoch ms)
+ * checkout-order:{orderId}     STRING  checkoutId - eventy z samym orderId (OrderPlaced, OrderFailed) trafiają do biletu
+ * </pre>
+ * Oba klucze wygasają po {@code cart.checkout.ticket-ttl-minutes}. Zmiana statusu to skrypt checkout-status.lua:
+ * tylko do przodu (ranga), z publikacją checkoutId na kanale {@value #CHANNEL} - instancja, do której podłączony
+ * jest strumień SSE klienta, dowiaduje się o zmianie niezależnie od tego, która instancja obsłużyła event.
+ */
+@Repository
+public class CheckoutTicketStore {
+
+    public static final String TICKET_KEY_PREFIX = "checkout:";
+    public static final String ORDER_KEY_PREFIX = "checkout-order:";
+    public static final String CHANNEL = "checkout-status";
+
+    private static final RedisScript<Long> STATUS_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/checkout-status.lua"), Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final Duration ttl;
+
+    public CheckoutTicketStore(StringRedisTemplate redisTemplate,
+                               @Value("${cart.checkout.ticket-ttl-minutes:60}") long ttlMinutes) {
+        this.redisTemplate = redisTemplate;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+    }
+
+    /**
+     * Zakłada bilet w statusie PENDING - przed wysłaniem eventu checkoutu, żeby kolejne statusy miały go gdzie zapisać.
+     */
+    public CheckoutTicket create(UUID userId) {
+        UUID checkoutId = UUID.randomUUID();
+        long now = System.currentTimeMillis();
+        String key = TICKET_KEY_PREFIX + checkoutId;
+        redisTemplate.opsForHash().putAll(key, Map.of(
+                "userId", userId.toString(),
+                "status", CheckoutStatus.PENDING.name(),
+                "rank", Integer.toString(CheckoutStatus.PENDING.rank()),
+                "createdAt", Long.toString(now),
+                "updatedAt", Long.toString(now)));
+        redisTemplate.expire(key, ttl);
+        return CheckoutTicket.builder()
+                .checkoutId(checkoutId)
+                .userId(userId)
+                .status(CheckoutStatus.PENDING)
+                .createdAt(time(Long.toString(now)))
+                .updatedAt(time(Long.toString(now)))
+                .build();
+    }
+
+    public Optional<CheckoutTicket> find(UUID checkoutId) {
+        Map<Object, Object> fields = redisTemplate.opsForHash().entries(TICKET_KEY_PREFIX + checkoutId);
+        if (fields.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(CheckoutTicket.builder()
+                .checkoutId(checkoutId)
+                .userId(uuid(fields.get("userId")))
+                .status(CheckoutStatus.valueOf((String) fields.get("status")))
+                .orderId(uuid(fields.get("orderId")))
+                .clientSecret((String) fields.get("clientSecret"))
+                .reason((String) fields.get("reason"))
+                .createdAt(time(fields.get("createdAt")))
+                .updatedAt(time(fields.get("updatedAt")))
+                .build());
+    }
+
+    /**
+     * Przestawia bilet na {@code status}, jeśli ma on wyższą rangę niż obecny, i zapisuje powiązanie
+     * zamówienia z biletem (także gdy status się nie zmienia).
+     *
+     * @param orderId zamówienie biletu; null - bez powiązania
+     * @param fields  dodatkowe pola biletu zapisywane razem ze statusem (np. clientSecret, reason)
+     * @return true, jeśli status się zmienił
+     */
+    public boolean advance(UUID checkoutId, CheckoutStatus status, UUID orderId, Map<String, String> fields) {
+        List<String> keys = new ArrayList<>();
+        keys.add(TICKET_KEY_PREFIX + checkoutId);
+        List<String> args = new ArrayList<>(List.of(status.name(), Integer.toString(status.rank()), CHANNEL,
+                checkoutId.toString(), Long.toString(ttl.toSeconds()),
+                "updatedAt", Long.toString(System.currentTimeMillis())));
+        if (orderId != null) {
+            keys.add(ORDER_KEY_PREFIX + orderId);
+            args.add("orderId");
+            args.add(orderId.toString());
+        }
+        fields.forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+        Long changed = redisTemplate.execute(STATUS_SCRIPT, keys, args.toArray());
+        return changed != null && changed == 1;
+    }
+
+    /**
+     * @return bilet zamówienia, jeśli Cart Service widział już jego OrderCreated lub PaymentIntentCreated
+     */
+    public Optional<UUID> checkoutIdForOrder(UUID orderId) {
+        return Optional.ofNullable(redisTemplate.opsForValue().get(ORDER_KEY_PREFIX + orderId)).map(UUID::fromString);
+    }
+
+    private static UUID uuid(Object value) {
+        return value == null ? null : UUID.fromString((String) value);
+    }
+
+    private static LocalDateTime time(Object value) {
+        return value == null ? null
+                : LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong((String) value)), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,95 @@
+package pl.electricshop.cart_service.repository;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+import org.springframework.data.redis.core.convert.Bucket;
+import org.springframework.data.redis.core.convert.MappingRedisConverter;
+import org.springframework.data.redis.core.convert.RedisCustomConversions;
+import org.springframework.data.redis.core.convert.RedisData;
+import org.springframework.data.redis.core.mapping.RedisMappingContext;
+import org.springframework.stereotype.Component;
+import pl.electricshop.cart_service.model.Cart;
+import pl.electricshop.common.money.Money;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Poprzedni zapis koszyka - mapowanie Spring Data {@code @RedisHash("carts")}: hash {@code carts:{userId}}
+ * z polami w rodzaju {@code items.[3].productPrice}, zbiór identyfikatorów {@code carts} i klucze pomocnicze.
+ * Służy do migracji starych wpisów ({@link CartStore}) i jako punkt odniesienia w benchmarku formatów.
+ */
+@Component
+public class LegacyCartMapping {
+
+    private static final String KEYSPACE = "carts";
+    private static final String TYPE_HINT_FIELD = "_class";
+
+    private final MappingRedisConverter converter;
+
+    public LegacyCartMapping() {
+        // Kwoty zapisane przez stare mapowanie jako Double ("19.99") czytane są jako Money
+        RedisCustomConversions conversions = new RedisCustomConversions(
+                List.of(BytesToMoneyConverter.INSTANCE, MoneyToBytesConverter.INSTANCE));
+        RedisMappingContext mappingContext = new RedisMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        converter = new MappingRedisConverter(mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+    }
+
+    public byte[] key(UUID userId) {
+        return (KEYSPACE + ":" + userId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Klucze, które Spring Data utrzymywał obok hasha koszyka.
+     */
+    public List<byte[]> auxiliaryKeys(UUID userId) {
+        return List.of(
+                (KEYSPACE + ":" + userId + ":phantom").getBytes(StandardCharsets.UTF_8),
+                (KEYSPACE + ":" + userId + ":idx").getBytes(StandardCharsets.UTF_8));
+    }
+
+    public byte[] keyspaceSet() {
+        return KEYSPACE.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public Cart read(UUID userId, Map<byte[], byte[]> fields) {
+        Bucket bucket = Bucket.newBucketFromRawMap(fields);
+        bucket.remove(TYPE_HINT_FIELD);
+        Cart cart = converter.read(Cart.class, new RedisData(bucket));
+        cart.setUserId(userId);
+        return cart;
+    }
+
+    public Map<byte[], byte[]> write(Cart cart) {
+        RedisData data = new RedisData();
+        converter.write(cart, data);
+        return data.getBucket().rawMap();
+    }
+
+    @ReadingConverter
+    private enum BytesToMoneyConverter implements Converter<byte[], Money> {
+        INSTANCE;
+
+        @Override
+        public Money convert(byte[] source) {
+            return Money.of(new BigDecimal(new String(source, StandardCharsets.UTF_8)));
+        }
+    }
+
+    @WritingConverter
+    private enum MoneyToBytesConverter implements Converter<Money, byte[]> {
+        INSTANCE;
+
+        @Override
+        public byte[] convert(Money source) {
+            return source.toBigDecimal().toPlainString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
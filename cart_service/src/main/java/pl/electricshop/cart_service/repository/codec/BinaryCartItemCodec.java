@@ -0,0 +1,201 @@
+package pl.electricshop.cart_service.repository.codec;
+
+import org.springframework.stereotype.Component;
+import pl.electricshop.cart_service.model.CartItem;
+import pl.electricshop.common.money.Money;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Zwarty format binarny snapshotu pozycji:
+ * <pre>
+ * [0x01][flagi][nazwa: varint długość + UTF-8][cena][rabat][reservationId: varint długość + UTF-8]
+ * </pre>
+ * Pola oznaczone flagą jako nieobecne nie zajmują miejsca. Kwoty ({@link Money}, tylko PLN) zapisywane są jako
+ * zigzag-varint w groszach - 1-3 bajty zamiast 8. Flaga {@code *_RAW} (pełny double) pochodzi ze snapshotów
+ * zapisanych, zanim kwoty były w groszach - jest tylko czytana. reservationId w standardowym formacie
+ * {@code userId:productNumber} to tylko flaga - obie części są znane z klucza i pola hasha.
+ */
+@Component
+public class BinaryCartItemCodec implements CartItemCodec {
+
+    static final byte FORMAT = 0x01;
+
+    private static final int NAME = 1;
+    private static final int PRICE = 1 << 1;
+    private static final int PRICE_RAW = 1 << 2;
+    private static final int DISCOUNT = 1 << 3;
+    private static final int DISCOUNT_RAW = 1 << 4;
+    private static final int RESERVATION = 1 << 5;
+    private static final int RESERVATION_DEFAULT = 1 << 6;
+
+    @Override
+    public String name() {
+        return "binary";
+    }
+
+    @Override
+    public boolean canDecode(byte[] payload) {
+        return payload.length > 1 && payload[0] == FORMAT;
+    }
+
+    @Override
+    public byte[] encode(UUID userId, CartItem item) {
+        byte[] name = item.getProductName() == null ? null : item.getProductName().getBytes(StandardCharsets.UTF_8);
+        String reservationId = item.getReservationId();
+        boolean defaultReservation = reservationId != null
+                && reservationId.equals(defaultReservationId(userId, item.getProductNumber()));
+        byte[] reservation = reservationId == null || defaultReservation
+                ? null : reservationId.getBytes(StandardCharsets.UTF_8);
+
+        int flags = 0;
+        if (name != null) {
+            flags |= NAME;
+        }
+        if (item.getProductPrice() != null) {
+            flags |= PRICE;
+        }
+        if (item.getDiscount() != null) {
+            flags |= DISCOUNT;
+        }
+        if (defaultReservation) {
+            flags |= RESERVATION_DEFAULT;
+        } else if (reservation != null) {
+            flags |= RESERVATION;
+        }
+
+        Writer out = new Writer(2 + (name == null ? 0 : name.length + 2) + 20 + (reservation == null ? 0 : reservation.length + 2));
+        out.write(FORMAT);
+        out.write(flags);
+        if (name != null) {
+            out.bytes(name);
+        }
+        if ((flags & PRICE) != 0) {
+            out.amount(item.getProductPrice());
+        }
+        if ((flags & DISCOUNT) != 0) {
+            out.amount(item.getDiscount());
+        }
+        if (reservation != null) {
+            out.bytes(reservation);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public CartItem decode(UUID userId, String productNumber, int quantity, byte[] payload) {
+        Reader in = new Reader(payload, 1);
+        int flags = in.read();
+        String name = (flags & NAME) != 0 ? in.string() : null;
+        Money price = (flags & PRICE) != 0 ? in.amount((flags & PRICE_RAW) != 0) : null;
+        Money discount = (flags & DISCOUNT) != 0 ? in.amount((flags & DISCOUNT_RAW) != 0) : null;
+        String reservationId = (flags & RESERVATION_DEFAULT) != 0
+                ? defaultReservationId(userId, productNumber)
+                : (flags & RESERVATION) != 0 ? in.string() : null;
+        return new CartItem(productNumber, name, quantity, discount, price, reservationId);
+    }
+
+    private static String defaultReservationId(UUID userId, String productNumber) {
+        return userId + ":" + productNumber;
+    }
+
+    private static final class Writer {
+
+        private byte[] buffer;
+        private int size;
+
+        Writer(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void write(int value) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void bytes(byte[] value) {
+            varint(value.length);
+            if (size + value.length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + value.length));
+            }
+            System.arraycopy(value, 0, buffer, size, value.length);
+            size += value.length;
+        }
+
+        void amount(Money value) {
+            if (!Money.PLN.equals(value.currency())) {
+                throw new IllegalArgumentException("Format binarny koszyka obsługuje tylko kwoty w PLN: " + value);
+            }
+            long cents = value.minor();
+            varint((cents << 1) ^ (cents >> 63));
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    private static final class Reader {
+
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        int read() {
+            if (position >= buffer.length) {
+                throw new IllegalStateException("Ucięty snapshot pozycji koszyka");
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        long varint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("Nieprawidłowy varint w snapshocie pozycji koszyka");
+        }
+
+        String string() {
+            int length = Math.toIntExact(varint());
+            if (position + length > buffer.length) {
+                throw new IllegalStateException("Ucięty snapshot pozycji koszyka");
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        Money amount(boolean raw) {
+            if (raw) {
+                long bits = 0;
+                for (int i = 0; i < 8; i++) {
+                    bits = (bits << 8) | read();
+                }
+                return Money.ofMajor(Double.longBitsToDouble(bits));
+            }
+            long zigzag = varint();
+            return Money.ofMinor((zigzag >>> 1) ^ -(zigzag & 1));
+        }
+    }
+}
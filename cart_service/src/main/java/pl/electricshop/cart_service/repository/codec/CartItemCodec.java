@@ -0,0 +1,29 @@
+package pl.electricshop.cart_service.repository.codec;
+
+import pl.electricshop.cart_service.model.CartItem;
+
+import java.util.UUID;
+
+/**
+ * Format snapshotu pozycji koszyka (pole {@code p:{productNumber}} hasha koszyka).
+ * <p>
+ * Ilość nie należy do snapshotu - leży w osobnym polu, żeby działał HINCRBY. Format zapisu wybiera
+ * {@code cart.storage.codec}; odczyt rozpoznaje format po pierwszym bajcie, więc wpisy zapisane
+ * wcześniejszym formatem pozostają czytelne do czasu nadpisania albo wygaśnięcia koszyka.
+ */
+public interface CartItemCodec {
+
+    /**
+     * Nazwa formatu używana w {@code cart.storage.codec}.
+     */
+    String name();
+
+    /**
+     * @return true jeśli snapshot został zapisany tym formatem
+     */
+    boolean canDecode(byte[] payload);
+
+    byte[] encode(UUID userId, CartItem item);
+
+    CartItem decode(UUID userId, String productNumber, int quantity, byte[] payload);
+}
@@ -0,0 +1,80 @@
+package pl.electricshop.cart_service.repository.codec;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import pl.electricshop.cart_service.model.CartItem;
+import pl.electricshop.common.money.Money;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Snapshot jako JSON - czytelny w redis-cli, ale kilkukrotnie większy od {@link BinaryCartItemCodec}.
+ */
+@Component
+@RequiredArgsConstructor
+public class JsonCartItemCodec implements CartItemCodec {
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Kwoty w groszach ({@code priceMinor}, {@code discountMinor}); {@code productPrice} i {@code discount}
+     * (double) mają tylko snapshoty zapisane wcześniej - są czytane, nie zapisywane.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private record ProductSnapshot(String productName, Long priceMinor, Long discountMinor, String reservationId,
+                                   Double productPrice, Double discount) {
+    }
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public boolean canDecode(byte[] payload) {
+        return payload.length > 0 && payload[0] == '{';
+    }
+
+    @Override
+    public byte[] encode(UUID userId, CartItem item) {
+        try {
+            return objectMapper.writeValueAsBytes(new ProductSnapshot(item.getProductName(),
+                    minor(item.getProductPrice()), minor(item.getDiscount()), item.getReservationId(), null, null));
+        } catch (IOException e) {
+            throw new IllegalStateException("Nie udało się zapisać pozycji koszyka: " + item.getProductNumber(), e);
+        }
+    }
+
+    @Override
+    public CartItem decode(UUID userId, String productNumber, int quantity, byte[] payload) {
+        ProductSnapshot snapshot;
+        try {
+            snapshot = objectMapper.readValue(payload, ProductSnapshot.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("Nieczytelna pozycja koszyka: " + productNumber, e);
+        }
+        return new CartItem(productNumber, snapshot.productName(), quantity,
+                amount(snapshot.discountMinor(), snapshot.discount()),
+                amount(snapshot.priceMinor(), snapshot.productPrice()), snapshot.reservationId());
+    }
+
+    private static Long minor(Money amount) {
+        if (amount == null) {
+            return null;
+        }
+        if (!Money.PLN.equals(amount.currency())) {
+            throw new IllegalArgumentException("Snapshot koszyka obsługuje tylko kwoty w PLN: " + amount);
+        }
+        return amount.minor();
+    }
+
+    private static Money amount(Long minor, Double legacy) {
+        if (minor != null) {
+            return Money.ofMinor(minor);
+        }
+        return legacy != null ? Money.ofMajor(legacy) : null;
+    }
+}
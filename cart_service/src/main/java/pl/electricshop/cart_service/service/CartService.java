@@ -2,26 +2,39 @@ package pl.electricshop.cart_service.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import pl.electricshop.cart_service.dto.AddToCartRequest;
+import pl.electricshop.cart_service.dto.BatchAddToCartResponse.ItemResult;
+import pl.electricshop.cart_service.dto.BatchAddToCartResponse.Status;
 import pl.electricshop.cart_service.model.Cart;
 import pl.electricshop.cart_service.model.CartItem;
-import pl.electricshop.cart_service.repository.CartRepository;
-import pl.electricshop.cart_service.service.gRPC.CartGrpcService;
+import pl.electricshop.cart_service.model.CheckoutTicket;
+import pl.electricshop.cart_service.repository.CartStore;
+import pl.electricshop.cart_service.repository.CheckoutTicketStore;
+import pl.electricshop.cart_service.service.gRPC.GrpcCallGuard;
 import pl.electricshop.cart_service.service.gRPC.InventoryGrpcClient;
 import pl.electricshop.common.events.cart.CartCheckoutEvent;
 import pl.electricshop.common.events.cart.CartItemPayload;
 import pl.electricshop.common.events.payment.OrderPlacedEvent;
-import pl.electricshop.grpc.AvailabilityResponse;
+import pl.electricshop.common.events.product.ProductUpdatedEvent;
+import pl.electricshop.common.money.Money;
+import pl.electricshop.grpc.BatchReservationResponse;
 import pl.electricshop.grpc.ProductCartResponse;
+import pl.electricshop.grpc.ReservationBundleResponse;
+import pl.electricshop.grpc.ReservationItemResult;
 import pl.electricshop.grpc.ReservationResponse;
 
-import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -29,15 +42,26 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class CartService {
 
-    private final CartRepository cartRepository;
-    private final CartGrpcService cartGrpcService;
+    private final CartStore cartStore;
+    private final CheckoutTicketStore checkoutTicketStore;
+    private final ProductCatalog productCatalog;
+    private final ProductNumberFilter productNumberFilter;
     private final InventoryGrpcClient inventoryGrpcClient;
     private final KafkaTemplate<String, Object> kafkaTemplate;
 
     private static final int RESERVATION_MINUTES = 15;
 
+    @Value("${cart.concurrency.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${cart.concurrency.backoff-ms:10}")
+    private long backoffMs;
+
+    @Value("${cart.batch.max-items:50}")
+    private int batchMaxItems;
+
     public Cart getCart(UUID userId) {
-        return cartRepository.findByUserId(userId)
+        return cartStore.find(userId)
                 .orElse(new Cart(userId, new ArrayList<>()));
     }
 
@@ -47,22 +71,33 @@ public class CartService {
     public Cart addToCart(UUID userId, String productNumber, int quantity) {
         log.info("Dodawanie produktu {} (qty: {}) do koszyka użytkownika {}", productNumber, quantity, userId);
 
-        // Oba gRPC calle są niezależne — wykonujemy równolegle zamiast sekwencyjnie
-        CompletableFuture<ProductCartResponse> productFuture = CompletableFuture.supplyAsync(
-                () -> cartGrpcService.getProductDetails(productNumber)
-        );
-        CompletableFuture<ReservationResponse> reservationFuture = CompletableFuture.supplyAsync(
-                () -> inventoryGrpcClient.reserveProduct(productNumber, quantity, userId.toString())
-        );
+        // Nieznany numer odrzucany bez odczytu koszyka i wywołań gRPC
+        if (!productNumberFilter.mightExist(productNumber)) {
+            throw new IllegalArgumentException("Produkt " + productNumber + " nie istnieje");
+        }
 
-        CompletableFuture.allOf(productFuture, reservationFuture).join();
+        // Wersja sprzed rezerwacji - zmianę koszyka w trakcie wywołań gRPC wykryje compare-and-set
+        CartStore.VersionedItem before = cartStore.findItem(userId, productNumber);
 
-        ProductCartResponse productData = productFuture.join();
-        if (productData.getProductNumber().isEmpty()) {
-            throw new IllegalArgumentException("Produkt " + productNumber + " nie istnieje");
+        // Dane produktu zwykle z lokalnej repliki katalogu (gRPC tylko przy braku) - rezerwacja idzie
+        // równolegle stubem asynchronicznym (z deadlinem), wątek żądania czeka tylko na dłuższe z nich
+        CompletableFuture<ProductCartResponse> productFuture = productCatalog.getProduct(productNumber);
+        CompletableFuture<ReservationResponse> reservationFuture =
+                inventoryGrpcClient.reserveProductAsync(productNumber, quantity, userId.toString());
+
+        ProductCartResponse productData;
+        try {
+            productData = GrpcCallGuard.await(productFuture);
+            if (productData.getProductNumber().isEmpty()) {
+                throw new IllegalArgumentException("Produkt " + productNumber + " nie istnieje");
+            }
+        } catch (RuntimeException e) {
+            // Rezerwacja mogła się już udać - jak w addItemsToCart wracamy do ilości sprzed dodania
+            releaseIfReserved(reservationFuture, productNumber, before.present() ? before.item().getQuantity() : 0);
+            throw e;
         }
 
-        ReservationResponse reservation = reservationFuture.join();
+        ReservationResponse reservation = GrpcCallGuard.await(reservationFuture);
         if (!reservation.getSuccess()) {
             // Produkt istnieje ale rezerwacja się nie powiodła — nie ma czego anulować
             throw new IllegalStateException("Nie udało się zarezerwować produktu: " + reservation.getMessage());
@@ -70,79 +105,267 @@ public class CartService {
 
         log.info("Rezerwacja utworzona: {}", reservation.getReservationId());
 
-        // 3. Pobierz lub utwórz koszyk
-        Cart cart = getCart(userId);
-
-        // 4. Utwórz CartItem z danymi produktu
+        // 3. Utwórz CartItem z danymi produktu
         CartItem newItem = new CartItem(
                 productData.getProductNumber(),
                 productData.getProductName(),
                 quantity,
-                productData.getDiscount(),
-                productData.getPrice()
+                ProductCatalog.discountOf(productData),
+                ProductCatalog.priceOf(productData)
         );
         newItem.setReservationId(reservation.getReservationId());  // format: "userId:productNumber"
 
-        // 5. Dodaj/aktualizuj w koszyku
-        addOrUpdateItem(cart, newItem);
+        // 4. Dodaj/aktualizuj pozycję (HINCRBY ilości) i odśwież czas wygaśnięcia rezerwacji
+        Cart cart;
+        try {
+            cart = withOptimisticRetry(userId, "dodanie " + productNumber, attempt -> {
+                if (attempt == 1) {
+                    return cartStore.addItem(userId, newItem, reservationDeadline(), before.version());
+                }
+                // Koszyk zmienił się w trakcie (np. równoległe usunięcie tego produktu anulowało rezerwację) -
+                // ustawiamy rezerwację na ilość, którą pozycja będzie miała po tym dodaniu
+                CartStore.VersionedItem current = cartStore.findItem(userId, productNumber);
+                int target = (current.present() ? current.item().getQuantity() : 0) + quantity;
+                alignReservation(userId, newItem.getReservationId(), productNumber, target, current);
+                return cartStore.addItem(userId, newItem, reservationDeadline(), current.version());
+            });
+        } catch (RuntimeException e) {
+            restoreReservations(userId, List.of(newItem));
+            throw e;
+        }
+        log.info("Dodano produkt {} do koszyka użytkownika {}", productNumber, userId);
+        return cart;
+    }
+
+    /**
+     * Dodaje wiele produktów naraz: dane produktów z repliki katalogu (brakujące jednym wywołaniem
+     * Product Service) i jedno wywołanie Inventory Service po rezerwacje (równolegle), potem jeden zapis
+     * koszyka. Pozycje, których nie udało się dodać (brak produktu, brak stanu), nie przerywają reszty -
+     * ich wynik jest w {@link BatchAddResult#results()}.
+     */
+    public BatchAddResult addItemsToCart(UUID userId, List<AddToCartRequest> requestedItems) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        requestedItems.forEach(item -> quantities.merge(item.getProductNumber(), item.getQuantity(), Integer::sum));
+        if (quantities.size() > batchMaxItems) {
+            throw new IllegalArgumentException("Można dodać naraz najwyżej " + batchMaxItems + " produktów");
+        }
+        log.info("Dodawanie {} produktów do koszyka użytkownika {}", quantities.size(), userId);
+
+        // Wersja sprzed rezerwacji - jak przy pojedynczym dodaniu
+        Cart before = getCart(userId);
+
+        // Produkty odrzucone przez filtr SKU nie idą do Product i Inventory Service - dostaną NOT_FOUND
+        Map<String, Integer> known = new LinkedHashMap<>(quantities);
+        known.keySet().removeIf(productNumber -> !productNumberFilter.mightExist(productNumber));
+
+        CompletableFuture<Map<String, ProductCartResponse>> productsFuture = known.isEmpty()
+                ? CompletableFuture.completedFuture(Map.of())
+                : productCatalog.getProducts(known.keySet());
+        CompletableFuture<BatchReservationResponse> reservationFuture = known.isEmpty()
+                ? CompletableFuture.completedFuture(BatchReservationResponse.getDefaultInstance())
+                : inventoryGrpcClient.reserveProductsAsync(known, userId.toString(), false);
+
+        Map<String, ProductCartResponse> products = GrpcCallGuard.await(productsFuture);
+        BatchReservationResponse reservation = GrpcCallGuard.await(reservationFuture);
+        Map<String, ReservationItemResult> reservations = reservation.getResultsList().stream()
+                .collect(Collectors.toMap(ReservationItemResult::getProductNumber, result -> result, (first, second) -> first));
+
+        Map<String, ItemResult> results = new LinkedHashMap<>();
+        Map<String, CartItem> added = new LinkedHashMap<>();
+        quantities.forEach((productNumber, quantity) -> {
+            ProductCartResponse product = products.get(productNumber);
+            ReservationItemResult reserved = reservations.get(productNumber);
+            boolean reservedOk = reserved != null && reserved.getSuccess();
+
+            if (product == null) {
+                if (reservedOk) {
+                    releaseReservation(reserved.getReservationId(), productNumber, quantityIn(before, productNumber));
+                }
+                results.put(productNumber, itemResult(productNumber, quantity, Status.NOT_FOUND,
+                        "Produkt " + productNumber + " nie istnieje"));
+            } else if (!reservedOk) {
+                results.put(productNumber, itemResult(productNumber, quantity, Status.OUT_OF_STOCK,
+                        reserved != null ? reserved.getMessage() : reservation.getMessage()));
+            } else {
+                CartItem item = new CartItem(product.getProductNumber(), product.getProductName(), quantity,
+                        ProductCatalog.discountOf(product), ProductCatalog.priceOf(product));
+                item.setReservationId(reserved.getReservationId());
+                added.put(productNumber, item);
+                results.put(productNumber, itemResult(productNumber, quantity, Status.ADDED, null));
+            }
+        });
+
+        if (added.isEmpty()) {
+            return new BatchAddResult(before, List.copyOf(results.values()));
+        }
 
-        // 6. Ustaw czas wygaśnięcia rezerwacji
-        cart.setReservationUntil(LocalDateTime.now().plusMinutes(RESERVATION_MINUTES));
+        Cart cart;
+        try {
+            cart = withOptimisticRetry(userId, "dodanie " + added.size() + " produktów", attempt -> {
+                if (attempt == 1) {
+                    return cartStore.addItems(userId, added.values(), reservationDeadline(), before.getVersion());
+                }
+                // Jak przy pojedynczym dodaniu: rezerwacje każdej pozycji na ilość po tym dodaniu
+                Cart current = getCart(userId);
+                for (Iterator<CartItem> it = added.values().iterator(); it.hasNext(); ) {
+                    CartItem item = it.next();
+                    String productNumber = item.getProductNumber();
+                    CartItem inCart = findItem(current, productNumber);
+                    try {
+                        alignReservation(userId, item.getReservationId(), productNumber,
+                                quantityIn(current, productNumber) + item.getQuantity(),
+                                new CartStore.VersionedItem(inCart, current.getVersion()));
+                    } catch (IllegalStateException e) {
+                        it.remove();
+                        results.put(productNumber, itemResult(productNumber, item.getQuantity(), Status.OUT_OF_STOCK,
+                                e.getMessage()));
+                    }
+                }
+                return added.isEmpty()
+                        ? Optional.of(current)
+                        : cartStore.addItems(userId, added.values(), reservationDeadline(), current.getVersion());
+            });
+        } catch (RuntimeException e) {
+            restoreReservations(userId, added.values());
+            throw e;
+        }
 
-        return cartRepository.save(cart);
+        log.info("Dodano {} z {} produktów do koszyka użytkownika {}", added.size(), quantities.size(), userId);
+        return new BatchAddResult(cart, List.copyOf(results.values()));
     }
 
     /**
-     * Dodaje nowy item lub aktualizuje ilość istniejącego.
+     * Koszyk po dodaniu wsadowym i wynik każdego produktu (w kolejności z żądania).
      */
-    private void addOrUpdateItem(Cart cart, CartItem newItem) {
-        Optional<CartItem> existing = cart.getItems().stream()
-                .filter(item -> item.getProductNumber().equals(newItem.getProductNumber()))
-                .findFirst();
-
-        if (existing.isPresent()) {
-            existing.get().setQuantity(existing.get().getQuantity() + newItem.getQuantity());
-            existing.get().setReservationId(newItem.getReservationId());
-            log.info("Zaktualizowano ilość produktu {} w koszyku", newItem.getProductNumber());
-        } else {
-            cart.getItems().add(newItem);
-            log.info("Dodano nowy produkt {} do koszyka", newItem.getProductNumber());
+    public record BatchAddResult(Cart cart, List<ItemResult> results) {
+    }
+
+    /**
+     * Czeka na rezerwację wysłaną równolegle z odczytem produktu i cofa ją, jeśli się udała.
+     */
+    private void releaseIfReserved(CompletableFuture<ReservationResponse> reservationFuture, String productNumber,
+                                   int quantityInCart) {
+        ReservationResponse reservation;
+        try {
+            reservation = GrpcCallGuard.await(reservationFuture);
+        } catch (RuntimeException e) {
+            log.warn("Brak wyniku rezerwacji produktu {} - nie cofnięto jej: {}", productNumber, e.getMessage());
+            return;
+        }
+        if (reservation.getSuccess()) {
+            releaseReservation(reservation.getReservationId(), productNumber, quantityInCart);
         }
     }
 
     /**
-     * Aktualizuje ilość produktu w koszyku wraz z rezerwacją w Inventory Service.
+     * Cofa rezerwację zrobioną dla produktu, którego nie da się dodać - do ilości, którą trzyma koszyk.
      */
-    public Cart updateQuantity(UUID userId, String productNumber, int newQuantity) {
-        log.info("Aktualizacja ilości produktu {} na {} dla użytkownika {}", productNumber, newQuantity, userId);
+    private void releaseReservation(String reservationId, String productNumber, int quantityInCart) {
+        try {
+            if (quantityInCart > 0) {
+                inventoryGrpcClient.updateReservation(reservationId, quantityInCart);
+            } else {
+                inventoryGrpcClient.cancelReservation(reservationId);
+            }
+        } catch (Exception e) {
+            log.warn("Nie udało się cofnąć rezerwacji produktu {}: {}", productNumber, e.getMessage());
+        }
+    }
 
-        Cart cart = getCart(userId);
+    /**
+     * Zapis koszyka się nie powiódł (np. konflikty wersji wyczerpały próby) - rezerwacje pozycji wracają do ilości,
+     * którą koszyk faktycznie trzyma (albo są anulowane, gdy pozycji nie ma), żeby dodane sztuki nie były
+     * zablokowane do wygaśnięcia rezerwacji.
+     */
+    private void restoreReservations(UUID userId, Collection<CartItem> items) {
+        Cart current;
+        try {
+            current = getCart(userId);
+        } catch (RuntimeException e) {
+            log.warn("Nie udało się odczytać koszyka {} - rezerwacje wygasną same: {}", userId, e.getMessage());
+            return;
+        }
+        items.forEach(item -> releaseReservation(item.getReservationId(), item.getProductNumber(),
+                quantityIn(current, item.getProductNumber())));
+    }
 
-        // Znajdź item w koszyku
-        CartItem item = cart.getItems().stream()
-                .filter(i -> i.getProductNumber().equals(productNumber))
+    private static CartItem findItem(Cart cart, String productNumber) {
+        return cart.getItems().stream()
+                .filter(item -> item.getProductNumber().equals(productNumber))
                 .findFirst()
-                .orElseThrow(() -> new IllegalArgumentException("Produkt " + productNumber + " nie znajduje się w koszyku"));
+                .orElse(null);
+    }
 
-        if (item.getReservationId() == null) {
-            throw new IllegalStateException("Brak rezerwacji dla produktu " + productNumber);
-        }
+    private static int quantityIn(Cart cart, String productNumber) {
+        CartItem item = findItem(cart, productNumber);
+        return item != null ? item.getQuantity() : 0;
+    }
 
-        // Aktualizuj rezerwację w Inventory Service
-        var updateResponse = inventoryGrpcClient.updateReservation(item.getReservationId(), newQuantity);
+    private static ItemResult itemResult(String productNumber, int quantity, Status status, String message) {
+        return ItemResult.builder()
+                .productNumber(productNumber)
+                .quantity(quantity)
+                .status(status)
+                .message(message)
+                .build();
+    }
 
-        if (!updateResponse.getSuccess()) {
-            throw new IllegalStateException("Nie udało się zaktualizować rezerwacji: " + updateResponse.getMessage());
+    /**
+     * Po konflikcie przy dodawaniu: nadpisuje rezerwację ilością {@code target}. Jeśli rezerwacji już nie ma
+     * (anulowało ją równoległe usunięcie pozycji), tworzy ją od nowa.
+     */
+    private void alignReservation(UUID userId, String reservationId, String productNumber, int target,
+                                  CartStore.VersionedItem current) {
+        if (inventoryGrpcClient.updateReservation(reservationId, target).getSuccess()) {
+            return;
+        }
+        if (!current.present()) {
+            // Bez pozycji w koszyku rezerwacja trzymałaby co najmniej nasze sztuki - nieudana zmiana oznacza,
+            // że została anulowana
+            ReservationResponse created = inventoryGrpcClient.reserveProduct(productNumber, target, userId.toString());
+            if (created.getSuccess()) {
+                return;
+            }
+            throw new IllegalStateException("Nie udało się zarezerwować produktu: " + created.getMessage());
+        }
+        // Brak stanu - przywróć rezerwację do ilości z koszyka, żeby nie trzymała sztuk spoza koszyka
+        if (!inventoryGrpcClient.updateReservation(reservationId, current.item().getQuantity()).getSuccess()) {
+            log.warn("Nie udało się wyrównać rezerwacji {} do ilości w koszyku ({})",
+                    reservationId, current.item().getQuantity());
         }
+        throw new IllegalStateException("Nie udało się zarezerwować produktu " + productNumber);
+    }
+
+    /**
+     * Aktualizuje ilość produktu w koszyku wraz z rezerwacją w Inventory Service.
+     */
+    public Cart updateQuantity(UUID userId, String productNumber, int newQuantity) {
+        log.info("Aktualizacja ilości produktu {} na {} dla użytkownika {}", productNumber, newQuantity, userId);
 
-        // Zaktualizuj ilość w koszyku
-        item.setQuantity(newQuantity);
+        Cart cart = withOptimisticRetry(userId, "zmiana ilości " + productNumber, attempt -> {
+            // Znajdź item w koszyku
+            CartStore.VersionedItem current = cartStore.findItem(userId, productNumber);
+            if (!current.present()) {
+                throw new IllegalArgumentException("Produkt " + productNumber + " nie znajduje się w koszyku");
+            }
+            CartItem item = current.item();
+            if (item.getReservationId() == null) {
+                throw new IllegalStateException("Brak rezerwacji dla produktu " + productNumber);
+            }
+
+            // Aktualizuj rezerwację w Inventory Service - ilość bezwzględna, więc ponowienie jest bezpieczne
+            var updateResponse = inventoryGrpcClient.updateReservation(item.getReservationId(), newQuantity);
+
+            if (!updateResponse.getSuccess()) {
+                throw new IllegalStateException("Nie udało się zaktualizować rezerwacji: " + updateResponse.getMessage());
+            }
 
-        // Odśwież czas wygaśnięcia rezerwacji
-        cart.setReservationUntil(LocalDateTime.now().plusMinutes(RESERVATION_MINUTES));
+            // Zaktualizuj ilość w koszyku i odśwież czas wygaśnięcia rezerwacji
+            return cartStore.setQuantity(userId, productNumber, newQuantity, reservationDeadline(), current.version());
+        });
 
-        log.info("Zaktualizowano ilość produktu {} na {} (rezerwacja: {})", productNumber, newQuantity, item.getReservationId());
-        return cartRepository.save(cart);
+        log.info("Zaktualizowano ilość produktu {} na {}", productNumber, newQuantity);
+        return cart;
     }
 
     /**
@@ -151,21 +374,21 @@ public class CartService {
     public Cart removeProductFromCart(UUID userId, String productNumber) {
         log.info("Usuwanie produktu {} z koszyka użytkownika {}", productNumber, userId);
 
-        Cart cart = getCart(userId);
+        return withOptimisticRetry(userId, "usunięcie " + productNumber, attempt -> {
+            CartStore.VersionedItem current = cartStore.findItem(userId, productNumber);
+            if (!current.present()) {
+                return Optional.of(getCart(userId));
+            }
 
-        // Znajdź item i anuluj rezerwację
-        cart.getItems().stream()
-                .filter(item -> item.getProductNumber().equals(productNumber))
-                .findFirst()
-                .ifPresent(item -> {
-                    if (item.getReservationId() != null) {
-                        inventoryGrpcClient.cancelReservation(item.getReservationId());
-                        log.info("Anulowano rezerwację: {}", item.getReservationId());
-                    }
-                });
+            // Anuluj rezerwację - przy ponowieniu może już nie istnieć, co nie jest błędem
+            String reservationId = current.item().getReservationId();
+            if (reservationId != null) {
+                inventoryGrpcClient.cancelReservation(reservationId);
+                log.info("Anulowano rezerwację: {}", reservationId);
+            }
 
-        cart.getItems().removeIf(item -> item.getProductNumber().equals(productNumber));
-        return cartRepository.save(cart);
+            return cartStore.removeItem(userId, productNumber, current.version());
+        });
     }
 
     /**
@@ -174,26 +397,84 @@ public class CartService {
     public void clearCart(UUID userId) {
         log.info("Czyszczenie koszyka użytkownika {}", userId);
 
-        Cart cart = getCart(userId);
+        withOptimisticRetry(userId, "czyszczenie", attempt -> {
+            Cart cart = getCart(userId);
 
-        // Anuluj wszystkie rezerwacje
-        cart.getItems().forEach(item -> {
-            if (item.getReservationId() != null) {
+            // Wszystkie rezerwacje koszyka to jeden pakiet w Inventory Service - zwalniamy go jednym wywołaniem
+            if (!cart.getItems().isEmpty()) {
                 try {
-                    inventoryGrpcClient.cancelReservation(item.getReservationId());
+                    ReservationBundleResponse released = inventoryGrpcClient.releaseReservations(userId.toString());
+                    if (!released.getSuccess()) {
+                        log.warn("Nie udało się zwolnić rezerwacji użytkownika {}: {}", userId, released.getMessage());
+                    }
                 } catch (Exception e) {
-                    log.warn("Nie udało się anulować rezerwacji {}: {}", item.getReservationId(), e.getMessage());
+                    log.warn("Nie udało się zwolnić rezerwacji użytkownika {}: {}", userId, e.getMessage());
                 }
             }
+
+            // Pozycja dodana po odczycie ma własną rezerwację - konflikt wersji powtórzy zwolnienie z nią włącznie
+            return cartStore.clear(cart) ? Optional.of(cart) : Optional.empty();
         });
+    }
 
-        cartRepository.deleteById(userId.toString());
+    /**
+     * Przedłuża rezerwacje całego koszyka - jedno wywołanie Inventory Service (jeden TTL pakietu)
+     * i zapis nowego terminu w koszyku.
+     */
+    public Cart extendReservation(UUID userId) {
+        log.info("Przedłużanie rezerwacji koszyka użytkownika {}", userId);
+
+        ReservationBundleResponse extended = inventoryGrpcClient.extendReservations(userId.toString());
+        if (!extended.getSuccess()) {
+            throw new IllegalStateException("Twoja rezerwacja wygasła. Odśwież koszyk, aby spróbować ponownie.");
+        }
+        LocalDateTime until = LocalDateTime.ofInstant(Instant.ofEpochMilli(extended.getExpiresAt()), ZoneId.systemDefault());
+
+        return withOptimisticRetry(userId, "przedłużenie rezerwacji", attempt ->
+                cartStore.setReservationUntil(userId, until, getCart(userId).getVersion()));
+    }
+
+    /**
+     * Wykonuje zmianę koszyka, powtarzając ją na świeżym stanie, dopóki zapis nie trafi w wersję z odczytu
+     * (pusty wynik próby = konflikt). Po {@code cart.concurrency.max-attempts} próbach zgłasza konflikt (409).
+     */
+    private <T> T withOptimisticRetry(UUID userId, String operation, IntFunction<Optional<T>> attempt) {
+        for (int i = 1; ; i++) {
+            Optional<T> result = attempt.apply(i);
+            if (result.isPresent()) {
+                return result.get();
+            }
+            if (i >= maxAttempts) {
+                log.warn("Konflikt wersji koszyka użytkownika {} ({}) po {} próbach", userId, operation, i);
+                throw new IllegalStateException("Koszyk jest jednocześnie zmieniany w innym miejscu. Spróbuj ponownie.");
+            }
+            log.info("Konflikt wersji koszyka użytkownika {} ({}), próba {}/{}", userId, operation, i, maxAttempts);
+            backOff(i);
+        }
+    }
+
+    /**
+     * Losowe opóźnienie rosnące z numerem próby - równoległe żądania nie ponawiają w tej samej chwili.
+     */
+    private void backOff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(backoffMs * attempt + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Przerwano zmianę koszyka", e);
+        }
+    }
+
+    private static LocalDateTime reservationDeadline() {
+        return LocalDateTime.now().plusMinutes(RESERVATION_MINUTES);
     }
 
     /**
      * Główna metoda checkoutu - zbiera dane i wysyła na Kafkę.
+     *
+     * @return bilet checkoutu (PENDING) - dalsze statusy zapisuje {@link CheckoutTracker}
      */
-    public void checkout(UUID userId, UUID addressId, String email) {
+    public CheckoutTicket checkout(UUID userId, UUID addressId, String email) {
         log.info("Rozpoczynam checkout dla usera: {}", userId);
 
         // 1. Pobierz koszyk
@@ -208,38 +489,43 @@ public class CartService {
             throw new IllegalStateException("Twoja rezerwacja wygasła. Odśwież koszyk, aby spróbować ponownie.");
         }
 
+        // Rezerwacje muszą przetrwać obsługę zamówienia - przedłużamy cały pakiet jednym wywołaniem
+        if (!inventoryGrpcClient.extendReservations(userId.toString()).getSuccess()) {
+            throw new IllegalStateException("Twoja rezerwacja wygasła. Odśwież koszyk, aby spróbować ponownie.");
+        }
+
         // 3. Mapowanie CartItem -> CartItemPayload
         List<CartItemPayload> eventItems = cart.getItems().stream()
-                .map(item -> {
-                    BigDecimal price = BigDecimal.valueOf(item.getProductPrice());
-                    BigDecimal quantity = BigDecimal.valueOf(item.getQuantity());
-
-                    return new CartItemPayload(
-                            item.getProductNumber(),
-                            item.getProductName(),
-                            item.getQuantity(),
-                            price,
-                            price.multiply(quantity)
-                    );
-                })
+                .map(item -> new CartItemPayload(
+                        item.getProductNumber(),
+                        item.getProductName(),
+                        item.getQuantity(),
+                        item.getProductPrice(),
+                        item.getDiscount() != null ? item.getDiscount() : Money.zero()
+                ))
                 .collect(Collectors.toList());
 
         // 4. Obliczanie całkowitej kwoty
-        BigDecimal totalPrice = cart.getTotalPrice();
+        Money totalPrice = cart.getTotalPrice();
 
-        // 5. Tworzenie Eventu
+        // 5. Bilet przed eventem - statusy z sagi zamówienia muszą mieć go gdzie zapisać
+        CheckoutTicket ticket = checkoutTicketStore.create(userId);
+
+        // 6. Tworzenie Eventu
         CartCheckoutEvent event = new CartCheckoutEvent(
                 userId,
                 email,
                 addressId,
                 totalPrice,
-                eventItems
+                eventItems,
+                ticket.getCheckoutId()
         );
 
-        // 6. Wysyłka na Kafkę
+        // 7. Wysyłka na Kafkę
         kafkaTemplate.send("cart-checkout-topic", event);
 
-        log.info("Wysłano event checkoutu na Kafkę dla usera: {}. Kwota: {}", userId, totalPrice);
+        log.info("Wysłano event checkoutu {} na Kafkę dla usera: {}. Kwota: {}", ticket.getCheckoutId(), userId, totalPrice);
+        return ticket;
     }
 
     /**
@@ -256,7 +542,26 @@ public class CartService {
 
         log.info("Odebrano OrderPlacedEvent dla usera {}. Usuwanie koszyka (bez anulowania rezerwacji)...", event.getUserId());
         // Tylko usuwamy koszyk z Redis - rezerwacje są już obsługiwane przez Inventory Service
-        cartRepository.deleteById(event.getUserId().toString());
+        cartStore.delete(UUID.fromString(event.getUserId()));
+    }
+
+    /**
+     * Aktualizacja produktu - poprawia snapshot (nazwa, cena, rabat) i stan magazynowy tylko w koszykach,
+     * które zawierają produkt (indeks produkt -> koszyki w CartStore). Odczyt koszyka nie wymaga przez to
+     * wywołań Product Service dla pozycji.
+     */
+    @KafkaListener(topics = "product-update-topic", groupId = "cart-service-group")
+    public void handleProductUpdate(ProductUpdatedEvent event) {
+        ProductCartResponse data = ProductCatalog.toCartResponse(event);
+        CartItem product = new CartItem(
+                data.getProductNumber(),
+                data.getProductName(),
+                0,
+                ProductCatalog.discountOf(data),
+                ProductCatalog.priceOf(data)
+        );
+        int refreshed = cartStore.refreshProduct(product, event.quantity());
+        log.info("Aktualizacja produktu {}: odświeżono {} koszyków", event.productNumber(), refreshed);
     }
 
 }
@@ -0,0 +1,168 @@
+package pl.electricshop.cart_service.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import pl.electricshop.cart_service.mapper.CartMapper;
+import pl.electricshop.cart_service.model.CheckoutStatus;
+import pl.electricshop.cart_service.model.CheckoutTicket;
+import pl.electricshop.cart_service.repository.CheckoutTicketStore;
+import pl.electricshop.common.events.payment.OrderCreatedEvent;
+import pl.electricshop.common.events.payment.OrderFailedEvent;
+import pl.electricshop.common.events.payment.OrderPlacedEvent;
+import pl.electricshop.common.events.payment.PaymentIntentCreatedEvent;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Śledzi sagę checkoutu: eventy Order Service i Payment Service przestawiają bilet w {@link CheckoutTicketStore},
+ * a klienci czytają status jednym GET-em albo dostają go strumieniem SSE zamiast odpytywać inne serwisy.
+ * <p>
+ * Listenery mają własną grupę konsumentów - {@code order-placed-topic} czyta też {@link CartService#cleanUpCart}
+ * w grupie {@code cart-service-group}. Zmiana statusu jest publikowana na kanale Redis, więc każda instancja
+ * powiadamia swoje strumienie SSE, niezależnie od tego, która obsłużyła event.
+ */
+@Slf4j
+@Service
+public class CheckoutTracker implements MessageListener {
+
+    private static final String CONSUMER_GROUP = "cart-checkout-group";
+
+    private final CheckoutTicketStore ticketStore;
+    private final CartMapper cartMapper;
+    private final long streamTimeoutMs;
+
+    private final Map<UUID, Set<SseEmitter>> streams = new ConcurrentHashMap<>();
+
+    public CheckoutTracker(CheckoutTicketStore ticketStore,
+                           CartMapper cartMapper,
+                           @Value("${cart.checkout.stream-timeout-ms:300000}") long streamTimeoutMs) {
+        this.ticketStore = ticketStore;
+        this.cartMapper = cartMapper;
+        this.streamTimeoutMs = streamTimeoutMs;
+    }
+
+    /**
+     * @return bilet, jeśli istnieje i należy do użytkownika
+     */
+    public Optional<CheckoutTicket> find(UUID userId, UUID checkoutId) {
+        return ticketStore.find(checkoutId)
+                .filter(ticket -> userId.equals(ticket.getUserId()));
+    }
+
+    /**
+     * Strumień SSE zdarzeń {@code status} biletu - pierwszy to stan bieżący, strumień kończy się
+     * po statusie końcowym albo po {@code cart.checkout.stream-timeout-ms}.
+     */
+    public SseEmitter stream(CheckoutTicket ticket) {
+        UUID checkoutId = ticket.getCheckoutId();
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        streams.computeIfAbsent(checkoutId, id -> ConcurrentHashMap.newKeySet()).add(emitter);
+        emitter.onCompletion(() -> detach(checkoutId, emitter));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(failure -> detach(checkoutId, emitter));
+
+        // Stan czytany po rejestracji - zmiana w międzyczasie dojdzie najwyżej dwa razy, ale nie zginie
+        ticketStore.find(checkoutId).ifPresentOrElse(
+                current -> send(emitter, current),
+                emitter::complete);
+        return emitter;
+    }
+
+    /**
+     * Zmiana statusu biletu (kanał {@value CheckoutTicketStore#CHANNEL}, treść: checkoutId).
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        UUID checkoutId = UUID.fromString(new String(message.getBody(), StandardCharsets.UTF_8));
+        Set<SseEmitter> emitters = streams.get(checkoutId);
+        if (emitters == null || emitters.isEmpty()) {
+            return;
+        }
+        ticketStore.find(checkoutId).ifPresent(ticket -> emitters.forEach(emitter -> send(emitter, ticket)));
+    }
+
+    @KafkaListener(topics = "order-created-topic", groupId = CONSUMER_GROUP)
+    public void handleOrderCreated(OrderCreatedEvent event) {
+        if (event.getCheckoutId() == null) {
+            return;
+        }
+        advance(event.getCheckoutId(), CheckoutStatus.ORDER_CREATED, event.getOrderId(), Map.of());
+    }
+
+    @KafkaListener(topics = "payment-intent-created-topic", groupId = CONSUMER_GROUP)
+    public void handlePaymentIntentCreated(PaymentIntentCreatedEvent event) {
+        if (event.checkoutId() == null) {
+            return;
+        }
+        advance(event.checkoutId(), CheckoutStatus.PAYMENT_READY, event.orderId(),
+                Map.of("clientSecret", event.clientSecret()));
+    }
+
+    @KafkaListener(topics = "order-placed-topic", groupId = CONSUMER_GROUP)
+    public void handleOrderPlaced(OrderPlacedEvent event) {
+        UUID orderId = UUID.fromString(event.getOrderId());
+        checkoutIdOf(event.getCheckoutId(), orderId).ifPresent(checkoutId ->
+                advance(checkoutId, CheckoutStatus.PAID, orderId, Map.of()));
+    }
+
+    @KafkaListener(topics = "order-failed-topic", groupId = CONSUMER_GROUP)
+    public void handleOrderFailed(OrderFailedEvent event) {
+        checkoutIdOf(event.checkoutId(), event.orderId()).ifPresent(checkoutId ->
+                advance(checkoutId, CheckoutStatus.FAILED, event.orderId(),
+                        Map.of("reason", event.reason() != null ? event.reason() : "ORDER_FAILED")));
+    }
+
+    /**
+     * Bilet z eventu - niezależnie od tego, czy OrderCreated / PaymentIntentCreated (inne topici) zostały już
+     * obsłużone; mapowanie zamówienie -> bilet tylko dla eventów sprzed dodania {@code checkoutId}.
+     */
+    private Optional<UUID> checkoutIdOf(UUID fromEvent, UUID orderId) {
+        if (fromEvent != null) {
+            return Optional.of(fromEvent);
+        }
+        Optional<UUID> mapped = ticketStore.checkoutIdForOrder(orderId);
+        if (mapped.isEmpty()) {
+            log.warn("Zamówienie {} bez biletu checkoutu - status biletu nie zostanie zmieniony", orderId);
+        }
+        return mapped;
+    }
+
+    private void advance(UUID checkoutId, CheckoutStatus status, UUID orderId, Map<String, String> fields) {
+        if (ticketStore.advance(checkoutId, status, orderId, fields)) {
+            log.info("Checkout {} (zamówienie {}): {}", checkoutId, orderId, status);
+        }
+    }
+
+    private void send(SseEmitter emitter, CheckoutTicket ticket) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .name("status")
+                    .id(ticket.getStatus().name())
+                    .data(cartMapper.toResponse(ticket)));
+            if (ticket.getStatus().terminal()) {
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Klient się rozłączył albo strumień jest już zamknięty
+            detach(ticket.getCheckoutId(), emitter);
+        }
+    }
+
+    private void detach(UUID checkoutId, SseEmitter emitter) {
+        streams.computeIfPresent(checkoutId, (id, emitters) -> {
+            emitters.remove(emitter);
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+}
@@ -0,0 +1,160 @@
+package pl.electricshop.cart_service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.PartitionOffset;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.stereotype.Service;
+import pl.electricshop.cart_service.service.gRPC.CartGrpcService;
+import pl.electricshop.common.events.product.ProductUpdatedEvent;
+import pl.electricshop.common.money.Money;
+import pl.electricshop.grpc.ProductCartResponse;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lokalna replika danych produktów potrzebnych koszykowi, odtwarzana z kompaktowanego
+ * {@value #CATALOG_TOPIC} (Product Service) i aktualizowana na bieżąco jego kolejnymi rekordami.
+ * Każda instancja czyta wszystkie partycje od początku przy starcie - partycje przypisane ręcznie
+ * (bez rebalansu grupy) i własna grupa konsumentów instancji ({@code cart-catalog-replica-<uuid>}), więc
+ * żadna instancja nie dzieli partycji ani offsetów z inną i każda ma pełny katalog.
+ * Produkt, którego jeszcze nie ma w replice, pobierany jest przez gRPC i dopisywany.
+ * <p>
+ * Wyłączenie ({@code cart.catalog.replica-enabled: false}) zatrzymuje konsumenta - wtedy każde
+ * zapytanie idzie do Product Service, jak wcześniej.
+ */
+@Slf4j
+@Service
+public class ProductCatalog {
+
+    public static final String CATALOG_TOPIC = "product-catalog-topic";
+
+    private final CartGrpcService cartGrpcService;
+    private final Map<String, ProductCartResponse> products = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+
+    public ProductCatalog(CartGrpcService cartGrpcService, MeterRegistry meterRegistry) {
+        this.cartGrpcService = cartGrpcService;
+        this.hits = Counter.builder("cart.catalog.lookups").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("cart.catalog.lookups").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("cart.catalog.size", products, Map::size).register(meterRegistry);
+    }
+
+    /**
+     * Rekord katalogu - stan produktu albo tombstone (usunięty produkt).
+     */
+    @KafkaListener(id = "product-catalog-replica", groupId = "cart-catalog-replica-${random.uuid}",
+            autoStartup = "${cart.catalog.replica-enabled:true}",
+            topicPartitions = @TopicPartition(topic = CATALOG_TOPIC,
+                    partitionOffsets = @PartitionOffset(partition = "*", initialOffset = "0")))
+    public void onCatalogRecord(ConsumerRecord<String, ProductUpdatedEvent> record) {
+        ProductUpdatedEvent event = record.value();
+        if (event == null) {
+            products.remove(record.key());
+            return;
+        }
+        products.put(event.productNumber(), toCartResponse(event));
+    }
+
+    /**
+     * Dane produktu z repliki; przy braku - z Product Service przez gRPC.
+     *
+     * @return dane produktu albo pusty response (pusty productNumber), jeśli produkt nie istnieje
+     */
+    public CompletableFuture<ProductCartResponse> getProduct(String productNumber) {
+        ProductCartResponse local = products.get(productNumber);
+        if (local != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(local);
+        }
+        misses.increment();
+        return cartGrpcService.getProductDetailsAsync(productNumber)
+                .thenApply(response -> {
+                    if (!response.getProductNumber().isEmpty()) {
+                        remember(response);
+                    }
+                    return response;
+                });
+    }
+
+    /**
+     * Dane wielu produktów - z repliki, a brakujące jednym wywołaniem gRPC.
+     *
+     * @return productNumber -> dane produktu; nieistniejących produktów nie ma w mapie
+     */
+    public CompletableFuture<Map<String, ProductCartResponse>> getProducts(Collection<String> productNumbers) {
+        Map<String, ProductCartResponse> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String productNumber : productNumbers) {
+            ProductCartResponse local = products.get(productNumber);
+            if (local != null) {
+                found.put(productNumber, local);
+            } else {
+                missing.add(productNumber);
+            }
+        }
+        hits.increment(found.size());
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(found);
+        }
+        misses.increment(missing.size());
+        return cartGrpcService.getProductsDetailsAsync(missing)
+                .thenApply(fetched -> {
+                    fetched.values().forEach(this::remember);
+                    found.putAll(fetched);
+                    return found;
+                });
+    }
+
+    /**
+     * Wynik gRPC nie nadpisuje rekordu z topicu, który mógł przyjść w trakcie wywołania - ten jest nowszy.
+     */
+    private void remember(ProductCartResponse response) {
+        products.putIfAbsent(response.getProductNumber(), response);
+    }
+
+    /**
+     * Cena produktu - w groszach, a od starszego serwera (bez waluty) z pola {@code price}.
+     */
+    public static Money priceOf(ProductCartResponse product) {
+        if (product.getCurrency().isEmpty()) {
+            return Money.ofMajor(product.getPrice());
+        }
+        return Money.ofMinor(product.getPriceMinor(), Currency.getInstance(product.getCurrency()));
+    }
+
+    /**
+     * Rabat pozycji jak dotąd - wartość {@code discount} traktowana jako kwota w złotych.
+     */
+    public static Money discountOf(ProductCartResponse product) {
+        return Money.ofMinor(product.getDiscount() * 100L);
+    }
+
+    /**
+     * Te same pola i zaokrąglenia co {@code ProductGrpcEndpoint} w Product Service.
+     */
+    static ProductCartResponse toCartResponse(ProductUpdatedEvent event) {
+        ProductCartResponse.Builder response = ProductCartResponse.newBuilder()
+                .setProductNumber(event.productNumber())
+                .setProductName(event.productName() != null ? event.productName() : "")
+                .setDiscount(event.discount() != null ? event.discount().intValue() : 0)
+                .setQuantity(event.quantity());
+        if (event.price() != null) {
+            response.setPrice(event.price().toBigDecimal().doubleValue())
+                    .setPriceMinor(event.price().minor())
+                    .setCurrency(event.price().currency().getCurrencyCode());
+        }
+        if (event.specialPrice() != null) {
+            response.setSpecialPrice(event.specialPrice().toBigDecimal().intValue())
+                    .setSpecialPriceMinor(event.specialPrice().minor());
+        }
+        return response.build();
+    }
+}
@@ -0,0 +1,135 @@
+package pl.electricshop.cart_service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.PartitionOffset;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pl.electricshop.cart_service.service.gRPC.CartGrpcService;
+import pl.electricshop.common.events.product.ProductUpdatedEvent;
+import pl.electricshop.common.util.BloomFilter;
+
+import java.util.List;
+
+/**
+ * Filtr Blooma numerów istniejących produktów - dodanie do koszyka nieznanego SKU (boty, zepsuci klienci)
+ * kończy się przed jakimkolwiek wywołaniem Product i Inventory Service.
+ * <p>
+ * Filtr budowany jest przy starcie i co {@code cart.sku-filter.rebuild-interval-ms} z listy numerów
+ * z Product Service (strony keyset), a nowe produkty dopisuje rekordami {@value ProductCatalog#CATALOG_TOPIC}
+ * od bieżącego końca topicu. Usunięte produkty zostają w filtrze do najbliższej przebudowy - przejdą
+ * zwykłą ścieżką i dostaną "nie istnieje" od Product Service.
+ * Dopóki pierwsza przebudowa się nie uda (np. Product Service niedostępny), filtr przepuszcza wszystko.
+ */
+@Slf4j
+@Component
+public class ProductNumberFilter {
+
+    private final CartGrpcService cartGrpcService;
+    private final Counter rejected;
+
+    @Value("${cart.sku-filter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${cart.sku-filter.expected-products:100000}")
+    private long expectedProducts;
+
+    @Value("${cart.sku-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${cart.sku-filter.page-size:5000}")
+    private int pageSize;
+
+    private volatile BloomFilter active;
+    /**
+     * Filtr w trakcie przebudowy - nowe produkty trafiają do obu, żeby dodany w trakcie ładowania nie zginął.
+     */
+    private volatile BloomFilter building;
+
+    public ProductNumberFilter(CartGrpcService cartGrpcService, MeterRegistry meterRegistry) {
+        this.cartGrpcService = cartGrpcService;
+        this.rejected = Counter.builder("cart.sku.filter.rejected").register(meterRegistry);
+    }
+
+    /**
+     * @return false tylko dla numeru, którego na pewno nie ma w katalogu
+     */
+    public boolean mightExist(String productNumber) {
+        BloomFilter filter = active;
+        if (filter == null || filter.mightContain(productNumber)) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    @KafkaListener(id = "product-number-filter", groupId = "cart-sku-filter",
+            autoStartup = "${cart.sku-filter.enabled:true}",
+            topicPartitions = @TopicPartition(topic = ProductCatalog.CATALOG_TOPIC,
+                    partitionOffsets = @PartitionOffset(partition = "*", initialOffset = "-1")))
+    public void onCatalogRecord(ConsumerRecord<String, ProductUpdatedEvent> record) {
+        if (record.value() != null) {
+            put(record.key());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${cart.sku-filter.rebuild-interval-ms:3600000}",
+            initialDelayString = "${cart.sku-filter.rebuild-interval-ms:3600000}")
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        try {
+            // Rozmiar z ostatniego filtra nie jest znany - zapas przez dwukrotność spodziewanej liczby
+            BloomFilter next = new BloomFilter(expectedProducts * 2, falsePositiveRate);
+            building = next;
+            long count = 0;
+            String after = "";
+            List<String> page;
+            do {
+                page = cartGrpcService.listProductNumbers(after, pageSize);
+                page.forEach(next::put);
+                count += page.size();
+                if (!page.isEmpty()) {
+                    after = page.get(page.size() - 1);
+                }
+            } while (page.size() == pageSize);
+
+            if (count > expectedProducts * 2) {
+                log.warn("Filtr SKU: {} produktów ponad rozmiar filtra ({}) - zwiększ cart.sku-filter.expected-products",
+                        count, expectedProducts * 2);
+            }
+            active = next;
+            log.info("Filtr SKU przebudowany: {} produktów, {} bitów, {} ms",
+                    count, next.bitSize(), System.currentTimeMillis() - started);
+        } catch (RuntimeException e) {
+            log.warn("Nie udało się przebudować filtra SKU: {}", e.getMessage());
+        } finally {
+            building = null;
+        }
+    }
+
+    private void put(String productNumber) {
+        BloomFilter current = active;
+        if (current != null) {
+            current.put(productNumber);
+        }
+        BloomFilter next = building;
+        if (next != null) {
+            next.put(productNumber);
+        }
+    }
+}
@@ -1,44 +1,98 @@
 package pl.electricshop.cart_service.service.gRPC;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.devh.boot.grpc.client.inject.GrpcClient;
 import org.springframework.stereotype.Service;
 import pl.electricshop.grpc.ProductCartRequest;
 import pl.electricshop.grpc.ProductCartResponse;
 import pl.electricshop.grpc.ProductGrpcServiceGrpc;
+import pl.electricshop.grpc.ProductNumbersRequest;
+import pl.electricshop.grpc.ProductsCartRequest;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 /**
  * Serwis do komunikacji z Product Service przez gRPC.
- * Używa grpc-spring (net.devh) z adnotacją @GrpcClient.
+ * Używa grpc-spring (net.devh) z adnotacją @GrpcClient - stub asynchroniczny, wywołania przez {@link GrpcCallGuard}.
  */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class CartGrpcService {
 
-    @GrpcClient("product-service")
-    private ProductGrpcServiceGrpc.ProductGrpcServiceBlockingStub productStub;
+    private static final String DOWNSTREAM = "product-service";
+
+    @GrpcClient(DOWNSTREAM)
+    private ProductGrpcServiceGrpc.ProductGrpcServiceFutureStub productStub;
+
+    private final GrpcCallGuard callGuard;
 
     /**
-     * Pobiera dane produktu z Product Service przez gRPC.
+     * Pobiera dane produktu z Product Service przez gRPC, bez blokowania wątku.
      *
      * @param productNumber numer produktu (np. "EL-000001")
      * @return dane produktu lub pusty response jeśli nie znaleziono
      */
-    public ProductCartResponse getProductDetails(String productNumber) {
+    public CompletableFuture<ProductCartResponse> getProductDetailsAsync(String productNumber) {
         log.info("gRPC call: getProductDetails for productNumber: {}", productNumber);
 
         ProductCartRequest request = ProductCartRequest.newBuilder()
                 .setProductNumber(productNumber)
                 .build();
 
-        try {
-            ProductCartResponse response = productStub.getProductForCart(request);
-            log.info("gRPC response received for {}: found={}",
-                    productNumber, !response.getProductNumber().isEmpty());
-            return response;
-        } catch (Exception e) {
-            log.error("gRPC error calling Product Service for {}: {}", productNumber, e.getMessage());
-            throw new RuntimeException("Błąd komunikacji gRPC z Product Service: " + e.getMessage(), e);
-        }
+        return callGuard.call(DOWNSTREAM, "getProductForCart", productStub, stub -> stub.getProductForCart(request))
+                .thenApply(response -> {
+                    log.info("gRPC response received for {}: found={}",
+                            productNumber, !response.getProductNumber().isEmpty());
+                    return response;
+                });
+    }
+
+    public ProductCartResponse getProductDetails(String productNumber) {
+        return GrpcCallGuard.await(getProductDetailsAsync(productNumber));
+    }
+
+    /**
+     * Pobiera dane wielu produktów jednym wywołaniem.
+     *
+     * @return productNumber -> dane produktu; nieistniejących produktów nie ma w mapie
+     */
+    public CompletableFuture<Map<String, ProductCartResponse>> getProductsDetailsAsync(Collection<String> productNumbers) {
+        log.info("gRPC call: getProductsForCart for {} products", productNumbers.size());
+
+        ProductsCartRequest request = ProductsCartRequest.newBuilder()
+                .addAllProductNumbers(productNumbers)
+                .build();
+
+        return callGuard.call(DOWNSTREAM, "getProductsForCart", productStub, stub -> stub.getProductsForCart(request))
+                .thenApply(response -> {
+                    log.info("gRPC response received: {} of {} products found",
+                            response.getProductsCount(), productNumbers.size());
+                    return response.getProductsList().stream()
+                            .collect(Collectors.toMap(ProductCartResponse::getProductNumber, Function.identity(),
+                                    (first, second) -> first));
+                });
+    }
+
+    /**
+     * Strona numerów produktów po {@code after} (rosnąco) - do budowy filtra znanych SKU.
+     *
+     * @return mniej niż {@code limit} numerów oznacza ostatnią stronę
+     */
+    public List<String> listProductNumbers(String after, int limit) {
+        ProductNumbersRequest request = ProductNumbersRequest.newBuilder()
+                .setAfter(after)
+                .setLimit(limit)
+                .build();
+
+        return GrpcCallGuard.await(callGuard.call(DOWNSTREAM, "listProductNumbers", productStub,
+                stub -> stub.listProductNumbers(request))).getProductNumbersList();
     }
 
     /**
@@ -48,4 +102,4 @@ public class CartGrpcService {
         ProductCartResponse response = getProductDetails(productNumber);
         return response != null && !response.getProductNumber().isEmpty();
     }
-}
\ No newline at end of file
+}
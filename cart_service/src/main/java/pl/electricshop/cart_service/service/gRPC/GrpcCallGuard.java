@@ -0,0 +1,199 @@
+package pl.electricshop.cart_service.service.gRPC;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.grpc.Status;
+import io.grpc.stub.AbstractStub;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import pl.electricshop.cart_service.config.GrpcClientProperties;
+import pl.electricshop.cart_service.exception.DownstreamUnavailableException;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Wspólna obudowa asynchronicznych wywołań gRPC koszyka. Dla każdego serwisu docelowego:
+ * <ul>
+ *     <li>deadline na każde wywołanie ({@code cart.grpc.clients.*.deadline-ms})</li>
+ *     <li>bulkhead - limit jednoczesnych wywołań, nadmiar odrzucany od razu zamiast czekać w kolejce</li>
+ *     <li>circuit breaker - po serii błędów infrastruktury lub wolnych odpowiedzi wywołania są odrzucane
+ *     bez kontaktu z serwisem, dopóki nie minie {@code open-state-ms}</li>
+ *     <li>histogram opóźnień {@code cart.grpc.client} z tagami downstream, rpc i status</li>
+ * </ul>
+ * Odpowiedzi i ich kontynuacje wykonywane są na wirtualnych wątkach {@code grpcExecutor}.
+ */
+@Slf4j
+@Component
+public class GrpcCallGuard {
+
+    /**
+     * Statusy świadczące o problemie z serwisem docelowym - tylko one liczą się do progu circuit breakera.
+     * Pozostałe (np. INVALID_ARGUMENT) to odpowiedź działającego serwisu.
+     */
+    private static final Set<Status.Code> DOWNSTREAM_FAILURES = EnumSet.of(
+            Status.Code.UNAVAILABLE, Status.Code.DEADLINE_EXCEEDED, Status.Code.RESOURCE_EXHAUSTED,
+            Status.Code.INTERNAL, Status.Code.UNKNOWN);
+
+    private final GrpcClientProperties properties;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final BulkheadRegistry bulkheadRegistry;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService grpcExecutor;
+
+    private final Map<String, Guard> guards = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private record Guard(CircuitBreaker circuitBreaker, Bulkhead bulkhead, long deadlineMs) {
+    }
+
+    public GrpcCallGuard(GrpcClientProperties properties,
+                         CircuitBreakerRegistry circuitBreakerRegistry,
+                         BulkheadRegistry bulkheadRegistry,
+                         MeterRegistry meterRegistry,
+                         @Qualifier("grpcExecutor") ExecutorService grpcExecutor) {
+        this.properties = properties;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.bulkheadRegistry = bulkheadRegistry;
+        this.meterRegistry = meterRegistry;
+        this.grpcExecutor = grpcExecutor;
+    }
+
+    /**
+     * Wywołuje RPC na stubie z nałożonym deadlinem i executorem callbacków.
+     * Anulowanie zwróconego future anuluje wywołanie gRPC.
+     *
+     * @param downstream nazwa klienta z {@code grpc.client.*}
+     * @param rpc        nazwa metody - tag metryk
+     */
+    public <S extends AbstractStub<S>, T> CompletableFuture<T> call(String downstream, String rpc, S stub,
+                                                                     Function<S, ListenableFuture<T>> invocation) {
+        Guard guard = guards.computeIfAbsent(downstream, this::createGuard);
+
+        if (!guard.bulkhead().tryAcquirePermission()) {
+            timer(downstream, rpc, "BULKHEAD_FULL").record(Duration.ZERO);
+            return CompletableFuture.failedFuture(new DownstreamUnavailableException(
+                    downstream + ": przekroczony limit jednoczesnych wywołań", null));
+        }
+        if (!guard.circuitBreaker().tryAcquirePermission()) {
+            guard.bulkhead().onComplete();
+            timer(downstream, rpc, "CIRCUIT_OPEN").record(Duration.ZERO);
+            return CompletableFuture.failedFuture(new DownstreamUnavailableException(
+                    downstream + ": serwis chwilowo niedostępny (otwarty circuit breaker)", null));
+        }
+
+        long start = System.nanoTime();
+        ListenableFuture<T> call;
+        try {
+            call = invocation.apply(stub
+                    .withDeadlineAfter(guard.deadlineMs(), TimeUnit.MILLISECONDS)
+                    .withExecutor(grpcExecutor));
+        } catch (RuntimeException e) {
+            guard.circuitBreaker().releasePermission();
+            guard.bulkhead().onComplete();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Futures.addCallback(call, new FutureCallback<>() {
+            @Override
+            public void onSuccess(T response) {
+                long elapsed = System.nanoTime() - start;
+                guard.circuitBreaker().onSuccess(elapsed, TimeUnit.NANOSECONDS);
+                guard.bulkhead().onComplete();
+                timer(downstream, rpc, Status.Code.OK.name()).record(elapsed, TimeUnit.NANOSECONDS);
+                result.complete(response);
+            }
+
+            @Override
+            public void onFailure(Throwable failure) {
+                long elapsed = System.nanoTime() - start;
+                Status status = Status.fromThrowable(failure);
+                boolean downstreamFailure = DOWNSTREAM_FAILURES.contains(status.getCode());
+                if (downstreamFailure) {
+                    guard.circuitBreaker().onError(elapsed, TimeUnit.NANOSECONDS, failure);
+                } else if (status.getCode() == Status.Code.CANCELLED) {
+                    guard.circuitBreaker().releasePermission();
+                } else {
+                    guard.circuitBreaker().onSuccess(elapsed, TimeUnit.NANOSECONDS);
+                }
+                guard.bulkhead().onComplete();
+                timer(downstream, rpc, status.getCode().name()).record(elapsed, TimeUnit.NANOSECONDS);
+
+                log.error("Błąd gRPC {}.{} ({}): {}", downstream, rpc, status.getCode(), status.getDescription());
+                result.completeExceptionally(downstreamFailure
+                        ? new DownstreamUnavailableException(downstream + ": " + status.getCode(), failure)
+                        : new RuntimeException("Błąd komunikacji gRPC z " + downstream + ": " + failure.getMessage(), failure));
+            }
+        }, MoreExecutors.directExecutor());
+
+        result.whenComplete((response, failure) -> {
+            if (result.isCancelled()) {
+                call.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Czeka na wynik wywołania, zgłaszając jego właściwy wyjątek zamiast {@link CompletionException}.
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private Guard createGuard(String downstream) {
+        GrpcClientProperties.Downstream config = properties.forClient(downstream);
+
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(downstream, CircuitBreakerConfig.custom()
+                .failureRateThreshold(config.getFailureRateThreshold())
+                .slowCallDurationThreshold(Duration.ofMillis(config.getSlowCallMs()))
+                .slowCallRateThreshold(config.getSlowCallRateThreshold())
+                .slidingWindowSize(config.getSlidingWindowSize())
+                .minimumNumberOfCalls(config.getMinimumNumberOfCalls())
+                .waitDurationInOpenState(Duration.ofMillis(config.getOpenStateMs()))
+                .build());
+        circuitBreaker.getEventPublisher().onStateTransition(event ->
+                log.warn("Circuit breaker {}: {}", downstream, event.getStateTransition()));
+
+        Bulkhead bulkhead = bulkheadRegistry.bulkhead(downstream, BulkheadConfig.custom()
+                .maxConcurrentCalls(config.getMaxConcurrentCalls())
+                .maxWaitDuration(Duration.ZERO)
+                .build());
+
+        return new Guard(circuitBreaker, bulkhead, config.getDeadlineMs());
+    }
+
+    private Timer timer(String downstream, String rpc, String status) {
+        return timers.computeIfAbsent(downstream + "|" + rpc + "|" + status, key -> Timer.builder("cart.grpc.client")
+                .description("Czas wywołań gRPC z koszyka")
+                .tag("downstream", downstream)
+                .tag("rpc", rpc)
+                .tag("status", status)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry));
+    }
+}
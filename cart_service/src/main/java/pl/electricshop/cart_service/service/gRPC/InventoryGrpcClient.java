@@ -1,22 +1,39 @@
 package pl.electricshop.cart_service.service.gRPC;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.devh.boot.grpc.client.inject.GrpcClient;
 import org.springframework.stereotype.Service;
 import pl.electricshop.grpc.*;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Klient Inventory Service na stubie asynchronicznym - każde wywołanie przechodzi przez {@link GrpcCallGuard}
+ * (deadline, bulkhead, circuit breaker, metryki). Metody {@code *Async} nie blokują wątku; wersje synchroniczne
+ * czekają na wynik i zgłaszają wyjątek wywołania.
+ */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class InventoryGrpcClient {
 
-    @GrpcClient("inventory-service")
-    private InventoryGrpcServiceGrpc.InventoryGrpcServiceBlockingStub inventoryStub;
+    private static final String DOWNSTREAM = "inventory-service";
+
+    @GrpcClient(DOWNSTREAM)
+    private InventoryGrpcServiceGrpc.InventoryGrpcServiceFutureStub inventoryStub;
+
+    private final GrpcCallGuard callGuard;
 
     /**
      * Tworzy tymczasową rezerwację produktu w magazynie.
      * @return ReservationResponse z reservationId w formacie "userId:productNumber"
      */
-    public ReservationResponse reserveProduct(String productNumber, int quantity, String userId) {
+    public CompletableFuture<ReservationResponse> reserveProductAsync(String productNumber, int quantity, String userId) {
         log.info("gRPC: reserveProduct({}, qty={}, user={})", productNumber, quantity, userId);
 
         ReservationRequest request = ReservationRequest.newBuilder()
@@ -25,14 +42,15 @@ public class InventoryGrpcClient {
                 .setUserId(userId)
                 .build();
 
-        try {
-            ReservationResponse response = inventoryStub.reserveProduct(request);
-            log.info("Rezerwacja: success={}, reservationId={}", response.getSuccess(), response.getReservationId());
-            return response;
-        } catch (Exception e) {
-            log.error("Błąd gRPC reserveProduct: {}", e.getMessage());
-            throw new RuntimeException("Błąd komunikacji z Inventory Service: " + e.getMessage(), e);
-        }
+        return call("reserveProduct", stub -> stub.reserveProduct(request))
+                .thenApply(response -> {
+                    log.info("Rezerwacja: success={}, reservationId={}", response.getSuccess(), response.getReservationId());
+                    return response;
+                });
+    }
+
+    public ReservationResponse reserveProduct(String productNumber, int quantity, String userId) {
+        return GrpcCallGuard.await(reserveProductAsync(productNumber, quantity, userId));
     }
 
     /**
@@ -45,14 +63,9 @@ public class InventoryGrpcClient {
                 .setProductNumber(productNumber)
                 .build();
 
-        try {
-            AvailabilityResponse response = inventoryStub.checkAvailability(request);
-            log.info("Dostępność {}: {}", productNumber, response.getAvailableQuantity());
-            return response;
-        } catch (Exception e) {
-            log.error("Błąd gRPC checkAvailability: {}", e.getMessage());
-            throw new RuntimeException("Błąd komunikacji z Inventory Service: " + e.getMessage(), e);
-        }
+        AvailabilityResponse response = GrpcCallGuard.await(call("checkAvailability", stub -> stub.checkAvailability(request)));
+        log.info("Dostępność {}: {}", productNumber, response.getAvailableQuantity());
+        return response;
     }
 
     /**
@@ -66,14 +79,9 @@ public class InventoryGrpcClient {
                 .setReservationId(reservationId)
                 .build();
 
-        try {
-            CancelReservationResponse response = inventoryStub.cancelReservation(request);
-            log.info("Anulowanie rezerwacji: success={}", response.getSuccess());
-            return response;
-        } catch (Exception e) {
-            log.error("Błąd gRPC cancelReservation: {}", e.getMessage());
-            throw new RuntimeException("Błąd komunikacji z Inventory Service: " + e.getMessage(), e);
-        }
+        CancelReservationResponse response = GrpcCallGuard.await(call("cancelReservation", stub -> stub.cancelReservation(request)));
+        log.info("Anulowanie rezerwacji: success={}", response.getSuccess());
+        return response;
     }
 
     /**
@@ -89,13 +97,104 @@ public class InventoryGrpcClient {
                 .setNewQuantity(newQuantity)
                 .build();
 
-        try {
-            UpdateReservationResponse response = inventoryStub.updateReservation(request);
-            log.info("Aktualizacja rezerwacji: success={}, reservedQty={}", response.getSuccess(), response.getReservedQuantity());
-            return response;
-        } catch (Exception e) {
-            log.error("Błąd gRPC updateReservation: {}", e.getMessage());
-            throw new RuntimeException("Błąd komunikacji z Inventory Service: " + e.getMessage(), e);
-        }
+        UpdateReservationResponse response = GrpcCallGuard.await(call("updateReservation", stub -> stub.updateReservation(request)));
+        log.info("Aktualizacja rezerwacji: success={}, reservedQty={}", response.getSuccess(), response.getReservedQuantity());
+        return response;
+    }
+
+    /**
+     * Rezerwuje wiele produktów jednym wywołaniem (jedna transakcja po stronie Inventory Service).
+     * @param items productNumber -> ilość
+     * @param allOrNothing true - przy braku stanu dowolnej pozycji nic nie jest rezerwowane
+     */
+    public CompletableFuture<BatchReservationResponse> reserveProductsAsync(Map<String, Integer> items, String userId,
+                                                                            boolean allOrNothing) {
+        log.info("gRPC: reserveProducts({} pozycji, user={}, allOrNothing={})", items.size(), userId, allOrNothing);
+
+        BatchReservationRequest.Builder request = BatchReservationRequest.newBuilder()
+                .setUserId(userId)
+                .setAllOrNothing(allOrNothing);
+        items.forEach((productNumber, quantity) -> request.addItems(ReservationItem.newBuilder()
+                .setProductNumber(productNumber)
+                .setQuantity(quantity)));
+
+        return call("reserveProducts", stub -> stub.reserveProducts(request.build()))
+                .thenApply(response -> {
+                    log.info("Rezerwacja wsadowa: success={}, {}", response.getSuccess(), response.getMessage());
+                    return response;
+                });
+    }
+
+    public BatchReservationResponse reserveProducts(Map<String, Integer> items, String userId, boolean allOrNothing) {
+        return GrpcCallGuard.await(reserveProductsAsync(items, userId, allOrNothing));
+    }
+
+    /**
+     * Anuluje wiele rezerwacji jednym wywołaniem.
+     * @param reservationIds format: "userId:productNumber"
+     */
+    public BatchReservationResponse cancelReservations(List<String> reservationIds) {
+        log.info("gRPC: cancelReservations({} rezerwacji)", reservationIds.size());
+
+        BatchCancelReservationRequest request = BatchCancelReservationRequest.newBuilder()
+                .addAllReservationIds(reservationIds)
+                .build();
+
+        BatchReservationResponse response = GrpcCallGuard.await(call("cancelReservations", stub -> stub.cancelReservations(request)));
+        log.info("Anulowanie wsadowe: success={}, {}", response.getSuccess(), response.getMessage());
+        return response;
+    }
+
+    /**
+     * Aktualizuje ilości wielu rezerwacji jednym wywołaniem.
+     * @param quantities reservationId -> nowa ilość
+     */
+    public BatchReservationResponse updateReservations(Map<String, Integer> quantities, boolean allOrNothing) {
+        log.info("gRPC: updateReservations({} rezerwacji, allOrNothing={})", quantities.size(), allOrNothing);
+
+        BatchUpdateReservationRequest.Builder request = BatchUpdateReservationRequest.newBuilder()
+                .setAllOrNothing(allOrNothing);
+        quantities.forEach((reservationId, quantity) -> request.addItems(UpdateReservationRequest.newBuilder()
+                .setReservationId(reservationId)
+                .setNewQuantity(quantity)));
+
+        BatchReservationResponse response = GrpcCallGuard.await(call("updateReservations", stub -> stub.updateReservations(request.build())));
+        log.info("Aktualizacja wsadowa: success={}, {}", response.getSuccess(), response.getMessage());
+        return response;
+    }
+
+    /**
+     * Przedłuża wszystkie rezerwacje użytkownika (pakiet koszyka) jednym wywołaniem.
+     */
+    public ReservationBundleResponse extendReservations(String userId) {
+        log.info("gRPC: extendReservations(user={})", userId);
+
+        ReservationBundleRequest request = ReservationBundleRequest.newBuilder()
+                .setUserId(userId)
+                .build();
+
+        ReservationBundleResponse response = GrpcCallGuard.await(call("extendReservations", stub -> stub.extendReservations(request)));
+        log.info("Przedłużenie rezerwacji: success={}, pozycji={}", response.getSuccess(), response.getItems());
+        return response;
+    }
+
+    /**
+     * Zwalnia wszystkie rezerwacje użytkownika jednym wywołaniem.
+     */
+    public ReservationBundleResponse releaseReservations(String userId) {
+        log.info("gRPC: releaseReservations(user={})", userId);
+
+        ReservationBundleRequest request = ReservationBundleRequest.newBuilder()
+                .setUserId(userId)
+                .build();
+
+        ReservationBundleResponse response = GrpcCallGuard.await(call("releaseReservations", stub -> stub.releaseReservations(request)));
+        log.info("Zwolnienie rezerwacji: success={}, pozycji={}", response.getSuccess(), response.getItems());
+        return response;
+    }
+
+    private <T> CompletableFuture<T> call(String rpc,
+                                          Function<InventoryGrpcServiceGrpc.InventoryGrpcServiceFutureStub, ListenableFuture<T>> invocation) {
+        return callGuard.call(DOWNSTREAM, rpc, inventoryStub, invocation);
     }
 }
@@ -0,0 +1,48 @@
+-- Zmiana koszyka pod warunkiem, że nikt go nie zmienił od odczytu (compare-and-set na polu wersji).
+-- KEYS[1] = cart:{userId}, KEYS[2..] = indeksy produktów cart-index:{productNumber} zmieniane razem z koszykiem
+-- ARGV[1] = oczekiwana wersja (brak pola = 0), ARGV[2] = ttl (s), dalej operacje na polach:
+--   'S', pole, wartość  -> HSET
+--   'I', pole, przyrost -> HINCRBY
+--   'D', pole           -> HDEL
+--   'K'                 -> usunięcie wszystkich pozycji (zostaje tylko wersja, żeby nie wróciła do 0)
+--   'A', nr klucza, id  -> SADD KEYS[nr] (koszyk zawiera produkt)
+--   'R', nr klucza, id  -> SREM KEYS[nr]
+-- Pole 'c' (chwila utworzenia hasha, z TIME) zapisywane jest, gdy go brak - po utworzeniu koszyka i po 'K'.
+-- Razem z wersją odróżnia nowy koszyk od usuniętego o tej samej wersji (lokalna pamięć koszyków, CartCache).
+-- Zwraca: pola koszyka po zmianie (HGETALL - zawsze co najmniej pole wersji) albo pustą listę przy konflikcie wersji
+local current = tonumber(redis.call('HGET', KEYS[1], 'v') or '0')
+if current ~= tonumber(ARGV[1]) then
+    return {}
+end
+
+local i = 3
+while i <= #ARGV do
+    local op = ARGV[i]
+    if op == 'S' then
+        redis.call('HSET', KEYS[1], ARGV[i + 1], ARGV[i + 2])
+        i = i + 3
+    elseif op == 'I' then
+        redis.call('HINCRBY', KEYS[1], ARGV[i + 1], ARGV[i + 2])
+        i = i + 3
+    elseif op == 'D' then
+        redis.call('HDEL', KEYS[1], ARGV[i + 1])
+        i = i + 2
+    elseif op == 'K' then
+        redis.call('DEL', KEYS[1])
+        i = i + 1
+    elseif op == 'A' then
+        redis.call('SADD', KEYS[tonumber(ARGV[i + 1])], ARGV[i + 2])
+        i = i + 3
+    elseif op == 'R' then
+        redis.call('SREM', KEYS[tonumber(ARGV[i + 1])], ARGV[i + 2])
+        i = i + 3
+    else
+        return redis.error_reply('Nieznana operacja koszyka: ' .. op)
+    end
+end
+
+local now = redis.call('TIME')
+redis.call('HSETNX', KEYS[1], 'c', now[1] .. string.format('%06d', tonumber(now[2])))
+redis.call('HSET', KEYS[1], 'v', current + 1)
+redis.call('EXPIRE', KEYS[1], ARGV[2])
+return redis.call('HGETALL', KEYS[1])
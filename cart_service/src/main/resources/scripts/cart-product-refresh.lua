@@ -0,0 +1,18 @@
+-- Odświeżenie pozycji jednego produktu w wielu koszykach po aktualizacji produktu.
+-- KEYS[i] = cart:{userId}
+-- ARGV[1] = pole ilości q:{productNumber}, ARGV[2] = pole snapshotu p:{productNumber},
+-- ARGV[3] = pole stanu s:{productNumber}, ARGV[4] = stan magazynowy, ARGV[4 + i] = nowy snapshot dla KEYS[i]
+-- Pozycja zmieniana jest tylko, jeśli nadal jest w koszyku. Wersja i TTL koszyka zostają bez zmian -
+-- równoległe zmiany użytkownika nie dostają przez to konfliktu, a aktualizacja nie przedłuża porzuconego koszyka.
+-- Zwiększany jest za to licznik odświeżeń 'r' - lokalne pamięci koszyków (CartCache) porównują go z wersją.
+-- Zwraca: numery kluczy (1..n), w których pozycji już nie ma - do usunięcia z indeksu
+local stale = {}
+for i = 1, #KEYS do
+    if redis.call('HEXISTS', KEYS[i], ARGV[1]) == 1 then
+        redis.call('HSET', KEYS[i], ARGV[2], ARGV[4 + i], ARGV[3], ARGV[4])
+        redis.call('HINCRBY', KEYS[i], 'r', 1)
+    else
+        stale[#stale + 1] = i
+    end
+end
+return stale
@@ -0,0 +1,24 @@
+-- Przejście biletu checkoutu do nowego statusu - tylko do przodu (wg rangi), bo eventy z różnych topiców
+-- mogą przyjść w innej kolejności, niż powstały.
+-- KEYS[1] = checkout:{checkoutId}, KEYS[2] = checkout-order:{orderId} (opcjonalnie - powiązanie zamówienia z biletem)
+-- ARGV[1] = status, ARGV[2] = ranga statusu, ARGV[3] = kanał powiadomień, ARGV[4] = checkoutId,
+-- ARGV[5] = ttl powiązania (s), dalej pary pole, wartość zapisywane razem ze statusem
+-- Zwraca: 1 - status zmieniony (i opublikowany na kanale), 0 - bilet wygasł albo ma już dalszy status
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return 0
+end
+if KEYS[2] then
+    redis.call('SET', KEYS[2], ARGV[4], 'EX', ARGV[5])
+end
+
+local rank = tonumber(redis.call('HGET', KEYS[1], 'rank') or '0')
+if tonumber(ARGV[2]) <= rank then
+    return 0
+end
+
+redis.call('HSET', KEYS[1], 'status', ARGV[1], 'rank', ARGV[2])
+for i = 6, #ARGV, 2 do
+    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+end
+redis.call('PUBLISH', ARGV[3], ARGV[4])
+return 1
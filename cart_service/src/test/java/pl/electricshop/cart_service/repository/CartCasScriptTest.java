@@ -0,0 +1,148 @@
+package pl.electricshop.cart_service.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import pl.electricshop.cart_service.model.Cart;
+import pl.electricshop.cart_service.model.CartItem;
+import pl.electricshop.cart_service.repository.codec.BinaryCartItemCodec;
+import pl.electricshop.cart_service.repository.codec.JsonCartItemCodec;
+import pl.electricshop.common.money.Money;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Skrypt cart-cas.lua na Redis uruchomionym w procesie - wersjonowanie, operacje na polach i indeksy produktów.
+ */
+class CartCasScriptTest {
+
+    private static RedisServer redisServer;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    private final UUID userId = UUID.randomUUID();
+    private CartStore store;
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate.execute(connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        }, true);
+        // Bez lokalnej pamięci koszyków - każdy odczyt idzie do Redis
+        store = new CartStore(redisTemplate, mock(LegacyCartMapping.class),
+                new CartCache(false, 100, new SimpleMeterRegistry()),
+                List.of(new BinaryCartItemCodec(), new JsonCartItemCodec(new ObjectMapper())), "binary", false);
+    }
+
+    @Test
+    void firstWriteCreatesCartAtVersionOne() {
+        Optional<Cart> cart = store.addItem(userId, item("A", 2), null, 0);
+
+        assertThat(cart).isPresent();
+        assertThat(cart.get().getVersion()).isEqualTo(1);
+        assertThat(cart.get().getItems()).singleElement()
+                .usingRecursiveComparison().isEqualTo(item("A", 2));
+        assertThat(redisTemplate.opsForSet().isMember("cart-index:A", userId.toString())).isTrue();
+        assertThat(redisTemplate.getExpire("cart:" + userId)).isPositive();
+    }
+
+    @Test
+    void staleVersionIsRejectedWithoutWriting() {
+        store.addItem(userId, item("A", 2), null, 0);
+
+        Optional<Cart> stale = store.addItem(userId, item("B", 1), null, 0);
+
+        assertThat(stale).isEmpty();
+        Cart cart = store.find(userId).orElseThrow();
+        assertThat(cart.getVersion()).isEqualTo(1);
+        assertThat(cart.getItems()).extracting(CartItem::getProductNumber).containsExactly("A");
+        assertThat(redisTemplate.hasKey("cart-index:B")).isFalse();
+    }
+
+    @Test
+    void addingTheSameProductIncrementsItsQuantity() {
+        store.addItem(userId, item("A", 2), null, 0);
+
+        Cart cart = store.addItem(userId, item("A", 3), null, 1).orElseThrow();
+
+        assertThat(cart.getVersion()).isEqualTo(2);
+        assertThat(cart.getItems()).singleElement().extracting(CartItem::getQuantity).isEqualTo(5);
+    }
+
+    @Test
+    void setQuantityOverwritesTheQuantity() {
+        store.addItem(userId, item("A", 2), null, 0);
+
+        Cart cart = store.setQuantity(userId, "A", 7, null, 1).orElseThrow();
+
+        assertThat(cart.getItems()).singleElement().extracting(CartItem::getQuantity).isEqualTo(7);
+        assertThat(store.findItem(userId, "A").version()).isEqualTo(2);
+    }
+
+    @Test
+    void removeItemDropsTheItemAndItsIndexEntry() {
+        store.addItems(userId, List.of(item("A", 2), item("B", 1)), null, 0);
+
+        Cart cart = store.removeItem(userId, "A", 1).orElseThrow();
+
+        assertThat(cart.getItems()).extracting(CartItem::getProductNumber).containsExactly("B");
+        assertThat(redisTemplate.opsForSet().isMember("cart-index:A", userId.toString())).isFalse();
+        assertThat(redisTemplate.opsForSet().isMember("cart-index:B", userId.toString())).isTrue();
+    }
+
+    @Test
+    void clearRemovesItemsButKeepsTheVersionGoing() {
+        Cart before = store.addItems(userId, List.of(item("A", 2), item("B", 1)), null, 0).orElseThrow();
+
+        assertThat(store.clear(before)).isTrue();
+
+        Cart cart = store.find(userId).orElseThrow();
+        assertThat(cart.getItems()).isEmpty();
+        assertThat(cart.getVersion()).isEqualTo(2);
+        assertThat(redisTemplate.hasKey("cart-index:A")).isFalse();
+        assertThat(redisTemplate.hasKey("cart-index:B")).isFalse();
+        // Zapis ze starą wersją po wyczyszczeniu też jest odrzucany
+        assertThat(store.clear(before)).isFalse();
+    }
+
+    private CartItem item(String productNumber, int quantity) {
+        return new CartItem(productNumber, "Produkt " + productNumber, quantity,
+                null, Money.ofMinor(999), userId + ":" + productNumber);
+    }
+}
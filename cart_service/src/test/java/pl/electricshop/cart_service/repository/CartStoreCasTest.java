@@ -0,0 +1,181 @@
+package pl.electricshop.cart_service.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import pl.electricshop.cart_service.model.Cart;
+import pl.electricshop.cart_service.model.CartItem;
+import pl.electricshop.cart_service.repository.codec.BinaryCartItemCodec;
+import pl.electricshop.cart_service.repository.codec.JsonCartItemCodec;
+import pl.electricshop.common.money.Money;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Klucze i argumenty skryptu cart-cas.lua budowane przez {@link CartStore} (Redis zastąpiony atrapą).
+ * Działanie samego skryptu sprawdza {@link CartCasScriptTest}.
+ */
+class CartStoreCasTest {
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final CartCache cache = new CartCache(true, 100, new SimpleMeterRegistry());
+    private final BinaryCartItemCodec binaryCodec = new BinaryCartItemCodec();
+    private final UUID userId = UUID.randomUUID();
+
+    private CartStore store;
+    private List<String> keys;
+    private List<String> args;
+    private List<byte[]> scriptResult;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        store = new CartStore(redisTemplate, mock(LegacyCartMapping.class), cache,
+                List.of(binaryCodec, new JsonCartItemCodec(new ObjectMapper())), "binary", false);
+        scriptResult = List.of();
+        when(redisTemplate.execute(any(RedisScript.class), any(RedisSerializer.class), any(RedisSerializer.class),
+                anyList(), any(Object[].class))).thenAnswer(invocation -> {
+            keys = new ArrayList<>(invocation.<List<String>>getArgument(3));
+            args = new ArrayList<>();
+            for (Object arg : (Object[]) invocation.getRawArguments()[4]) {
+                args.add(new String((byte[]) arg, StandardCharsets.UTF_8));
+            }
+            return scriptResult;
+        });
+    }
+
+    @Test
+    void addItemsIndexesEachProductWithItsKeyNumber() {
+        store.addItems(userId, List.of(item("A", 2), item("B", 1)), null, 5);
+
+        assertThat(keys).containsExactly("cart:" + userId, "cart-index:A", "cart-index:B");
+        assertThat(args.subList(0, 2)).containsExactly("5", String.valueOf(CartStore.CART_TTL.toSeconds()));
+        assertThat(operations()).containsExactly(
+                "S p:A", "I q:A 2", "A 2 " + userId,
+                "S p:B", "I q:B 1", "A 3 " + userId);
+    }
+
+    @Test
+    void repeatedProductReusesItsIndexKey() {
+        store.addItems(userId, List.of(item("A", 2), item("A", 3)), null, 0);
+
+        assertThat(keys).containsExactly("cart:" + userId, "cart-index:A");
+        assertThat(operations()).containsExactly(
+                "S p:A", "I q:A 2", "A 2 " + userId,
+                "S p:A", "I q:A 3", "A 2 " + userId);
+    }
+
+    @Test
+    void removeItemDeletesFieldsAndUnindexes() {
+        store.removeItem(userId, "A", 7);
+
+        assertThat(keys).containsExactly("cart:" + userId, "cart-index:A");
+        assertThat(args.get(0)).isEqualTo("7");
+        assertThat(operations()).containsExactly("D q:A", "D p:A", "D s:A", "R 2 " + userId);
+    }
+
+    @Test
+    void clearRemovesAllItemsAndEveryIndexEntry() {
+        Cart cart = new Cart(userId, new ArrayList<>(List.of(item("A", 1), item("B", 4))), null, 3);
+
+        store.clear(cart);
+
+        assertThat(keys).containsExactly("cart:" + userId, "cart-index:A", "cart-index:B");
+        assertThat(args.get(0)).isEqualTo("3");
+        assertThat(operations()).containsExactly("K", "R 2 " + userId, "R 3 " + userId);
+    }
+
+    @Test
+    void reservationDeadlineIsWrittenAfterTheChange() {
+        LocalDateTime until = LocalDateTime.now().plusMinutes(15);
+
+        store.setQuantity(userId, "A", 4, until, 1);
+
+        assertThat(operations()).containsExactly("S q:A 4",
+                "S until " + new String(CartHashLayout.encodeUntil(until), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void versionConflictReturnsEmptyAndLeavesCacheAlone() {
+        scriptResult = List.of();
+
+        Optional<Cart> result = store.setQuantity(userId, "A", 4, null, 1);
+
+        assertThat(result).isEmpty();
+        assertThat(cache.get(userId)).isNull();
+    }
+
+    @Test
+    void successDecodesTheCartReturnedByTheScript() {
+        CartItem item = item("A", 2);
+        scriptResult = List.of(
+                bytes("v"), bytes("6"),
+                bytes("c"), bytes("1700000000000000"),
+                bytes("q:A"), bytes("2"),
+                bytes("p:A"), binaryCodec.encode(userId, item));
+
+        Optional<Cart> result = store.addItem(userId, item, null, 5);
+
+        assertThat(result).isPresent();
+        assertThat(result.get().getVersion()).isEqualTo(6);
+        assertThat(result.get().getItems()).singleElement()
+                .usingRecursiveComparison().isEqualTo(item);
+        assertThat(cache.get(userId)).isNotNull();
+    }
+
+    /**
+     * Operacje po nagłówku (wersja, TTL) jako "kod pola wartość"; snapshot pozycji (binarny) pomijany.
+     */
+    private List<String> operations() {
+        List<String> operations = new ArrayList<>();
+        int i = 2;
+        while (i < args.size()) {
+            String op = args.get(i);
+            switch (op) {
+                case "S" -> {
+                    String field = args.get(i + 1);
+                    operations.add(field.startsWith("p:") ? "S " + field : "S " + field + " " + args.get(i + 2));
+                    i += 3;
+                }
+                case "I", "A", "R" -> {
+                    operations.add(op + " " + args.get(i + 1) + " " + args.get(i + 2));
+                    i += 3;
+                }
+                case "D" -> {
+                    operations.add("D " + args.get(i + 1));
+                    i += 2;
+                }
+                case "K" -> {
+                    operations.add("K");
+                    i += 1;
+                }
+                default -> throw new AssertionError("Nieznana operacja: " + op);
+            }
+        }
+        return operations;
+    }
+
+    private CartItem item(String productNumber, int quantity) {
+        return new CartItem(productNumber, "Produkt " + productNumber, quantity,
+                null, Money.ofMinor(999), userId + ":" + productNumber);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
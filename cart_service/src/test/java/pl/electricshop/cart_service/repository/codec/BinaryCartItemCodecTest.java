@@ -0,0 +1,99 @@
+package pl.electricshop.cart_service.repository.codec;
+
+import org.junit.jupiter.api.Test;
+import pl.electricshop.cart_service.model.CartItem;
+import pl.electricshop.common.money.Money;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BinaryCartItemCodecTest {
+
+    // Flagi formatu - jak w BinaryCartItemCodec
+    private static final int NAME = 1;
+    private static final int PRICE = 1 << 1;
+    private static final int PRICE_RAW = 1 << 2;
+    private static final int DISCOUNT = 1 << 3;
+    private static final int DISCOUNT_RAW = 1 << 4;
+
+    private final BinaryCartItemCodec codec = new BinaryCartItemCodec();
+    private final UUID userId = UUID.randomUUID();
+
+    @Test
+    void roundTripsItemWithDefaultReservationId() {
+        CartItem item = new CartItem("SKU-1", "Czajnik elektryczny", 3,
+                Money.ofMinor(150), Money.ofMinor(12999), userId + ":SKU-1");
+
+        byte[] payload = codec.encode(userId, item);
+
+        assertThat(codec.canDecode(payload)).isTrue();
+        assertThat(new String(payload, StandardCharsets.UTF_8)).doesNotContain(userId.toString());
+        assertThat(codec.decode(userId, "SKU-1", 3, payload)).usingRecursiveComparison().isEqualTo(item);
+    }
+
+    @Test
+    void roundTripsCustomReservationIdAndMissingFields() {
+        CartItem item = new CartItem("SKU-2", null, 1, null, Money.ofMinor(-250), "inna-rezerwacja");
+
+        CartItem decoded = codec.decode(userId, "SKU-2", 1, codec.encode(userId, item));
+
+        assertThat(decoded).usingRecursiveComparison().isEqualTo(item);
+    }
+
+    @Test
+    void roundTripsItemWithoutReservation() {
+        CartItem item = new CartItem("SKU-3", "Żarówka LED ½W", 7, Money.zero(), Money.ofMinor(Long.MAX_VALUE / 4), null);
+
+        CartItem decoded = codec.decode(userId, "SKU-3", 7, codec.encode(userId, item));
+
+        assertThat(decoded).usingRecursiveComparison().isEqualTo(item);
+    }
+
+    @Test
+    void readsLegacyRawDoubleAmounts() {
+        ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+        legacy.write(BinaryCartItemCodec.FORMAT);
+        legacy.write(NAME | PRICE | PRICE_RAW | DISCOUNT | DISCOUNT_RAW);
+        byte[] name = "Kabel".getBytes(StandardCharsets.UTF_8);
+        legacy.write(name.length);
+        legacy.writeBytes(name);
+        legacy.writeBytes(ByteBuffer.allocate(8).putDouble(19.99).array());
+        legacy.writeBytes(ByteBuffer.allocate(8).putDouble(0.1).array());
+
+        CartItem decoded = codec.decode(userId, "SKU-4", 2, legacy.toByteArray());
+
+        assertThat(decoded.getProductName()).isEqualTo("Kabel");
+        assertThat(decoded.getQuantity()).isEqualTo(2);
+        assertThat(decoded.getProductPrice()).isEqualTo(Money.ofMinor(1999));
+        assertThat(decoded.getDiscount()).isEqualTo(Money.ofMinor(10));
+        assertThat(decoded.getReservationId()).isNull();
+    }
+
+    @Test
+    void rejectsNonPlnAmounts() {
+        CartItem item = new CartItem("SKU-5", "X", 1, null, Money.ofMinor(100, Currency.getInstance("EUR")), null);
+
+        assertThatThrownBy(() -> codec.encode(userId, item)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsTruncatedSnapshot() {
+        byte[] payload = codec.encode(userId, new CartItem("SKU-6", "Długa nazwa produktu", 1, null, null, null));
+        byte[] truncated = Arrays.copyOf(payload, payload.length - 3);
+
+        assertThatThrownBy(() -> codec.decode(userId, "SKU-6", 1, truncated)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void doesNotClaimJsonSnapshots() {
+        assertThat(codec.canDecode("{\"productName\":\"X\"}".getBytes(StandardCharsets.UTF_8))).isFalse();
+        assertThat(codec.canDecode(new byte[]{BinaryCartItemCodec.FORMAT})).isFalse();
+    }
+}
@@ -0,0 +1,76 @@
+package pl.electricshop.cart_service.repository.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import pl.electricshop.cart_service.model.CartItem;
+import pl.electricshop.common.money.Money;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JsonCartItemCodecTest {
+
+    private final JsonCartItemCodec codec = new JsonCartItemCodec(new ObjectMapper());
+    private final UUID userId = UUID.randomUUID();
+
+    @Test
+    void roundTripsItemWithAmountsInMinorUnits() {
+        CartItem item = new CartItem("SKU-1", "Czajnik", 2, Money.ofMinor(150), Money.ofMinor(12999), userId + ":SKU-1");
+
+        byte[] payload = codec.encode(userId, item);
+
+        String json = new String(payload, StandardCharsets.UTF_8);
+        assertThat(codec.canDecode(payload)).isTrue();
+        assertThat(json).contains("\"priceMinor\":12999", "\"discountMinor\":150")
+                .doesNotContain("productPrice", "\"discount\"");
+        assertThat(codec.decode(userId, "SKU-1", 2, payload)).usingRecursiveComparison().isEqualTo(item);
+    }
+
+    @Test
+    void omitsMissingFields() {
+        CartItem item = new CartItem("SKU-2", null, 1, null, null, null);
+
+        byte[] payload = codec.encode(userId, item);
+
+        assertThat(new String(payload, StandardCharsets.UTF_8)).isEqualTo("{}");
+        assertThat(codec.decode(userId, "SKU-2", 1, payload)).usingRecursiveComparison().isEqualTo(item);
+    }
+
+    @Test
+    void readsLegacyDoubleAmounts() {
+        byte[] legacy = "{\"productName\":\"Kabel\",\"productPrice\":19.99,\"discount\":0.1,\"reservationId\":\"u:SKU-3\"}"
+                .getBytes(StandardCharsets.UTF_8);
+
+        CartItem decoded = codec.decode(userId, "SKU-3", 4, legacy);
+
+        assertThat(decoded.getProductName()).isEqualTo("Kabel");
+        assertThat(decoded.getQuantity()).isEqualTo(4);
+        assertThat(decoded.getProductPrice()).isEqualTo(Money.ofMinor(1999));
+        assertThat(decoded.getDiscount()).isEqualTo(Money.ofMinor(10));
+        assertThat(decoded.getReservationId()).isEqualTo("u:SKU-3");
+    }
+
+    @Test
+    void prefersMinorUnitsOverLegacyAmounts() {
+        byte[] mixed = "{\"priceMinor\":500,\"productPrice\":4.99}".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(codec.decode(userId, "SKU-4", 1, mixed).getProductPrice()).isEqualTo(Money.ofMinor(500));
+    }
+
+    @Test
+    void rejectsUnreadableSnapshot() {
+        byte[] broken = "{\"priceMinor\":".getBytes(StandardCharsets.UTF_8);
+
+        assertThatThrownBy(() -> codec.decode(userId, "SKU-5", 1, broken)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void doesNotClaimBinarySnapshots() {
+        byte[] binary = new BinaryCartItemCodec().encode(userId, new CartItem("SKU-6", "X", 1, null, null, null));
+
+        assertThat(codec.canDecode(binary)).isFalse();
+    }
+}
@@ -0,0 +1,155 @@
+package pl.electricshop.cart_service.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import pl.electricshop.cart_service.model.Cart;
+import pl.electricshop.cart_service.model.CartItem;
+import pl.electricshop.cart_service.repository.CartStore;
+import pl.electricshop.cart_service.repository.CheckoutTicketStore;
+import pl.electricshop.cart_service.service.gRPC.InventoryGrpcClient;
+import pl.electricshop.common.money.Money;
+import pl.electricshop.grpc.CancelReservationResponse;
+import pl.electricshop.grpc.ProductCartResponse;
+import pl.electricshop.grpc.ReservationResponse;
+import pl.electricshop.grpc.UpdateReservationResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Konflikt wersji koszyka w {@link CartService}: ponowienie na świeżym stanie, wyrównanie rezerwacji
+ * i przywrócenie rezerwacji, gdy próby się wyczerpią ({@link CartStore} zastąpiony atrapą).
+ */
+class CartServiceRetryTest {
+
+    private final CartStore cartStore = mock(CartStore.class);
+    private final ProductCatalog productCatalog = mock(ProductCatalog.class);
+    private final ProductNumberFilter productNumberFilter = mock(ProductNumberFilter.class);
+    private final InventoryGrpcClient inventoryGrpcClient = mock(InventoryGrpcClient.class);
+    private final UUID userId = UUID.randomUUID();
+    private final String reservationId = userId + ":A";
+
+    private CartService cartService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        cartService = new CartService(cartStore, mock(CheckoutTicketStore.class), productCatalog,
+                productNumberFilter, inventoryGrpcClient, mock(KafkaTemplate.class));
+        ReflectionTestUtils.setField(cartService, "maxAttempts", 3);
+        ReflectionTestUtils.setField(cartService, "backoffMs", 0L);
+
+        when(productNumberFilter.mightExist(anyString())).thenReturn(true);
+        when(productCatalog.getProduct("A")).thenReturn(CompletableFuture.completedFuture(
+                ProductCartResponse.newBuilder().setProductNumber("A").setProductName("Produkt A")
+                        .setPriceMinor(999).setCurrency("PLN").build()));
+        when(inventoryGrpcClient.reserveProductAsync("A", 2, userId.toString())).thenReturn(
+                CompletableFuture.completedFuture(ReservationResponse.newBuilder()
+                        .setSuccess(true).setReservationId(reservationId).build()));
+        when(inventoryGrpcClient.updateReservation(anyString(), anyInt()))
+                .thenReturn(UpdateReservationResponse.newBuilder().setSuccess(true).build());
+        when(inventoryGrpcClient.cancelReservation(anyString()))
+                .thenReturn(CancelReservationResponse.newBuilder().setSuccess(true).build());
+    }
+
+    @Test
+    void addToCartRetriesOnConflictWithReservationAlignedToTheFreshCart() {
+        // Między odczytem a zapisem ktoś dodał 1 szt. tego samego produktu
+        when(cartStore.findItem(userId, "A")).thenReturn(
+                new CartStore.VersionedItem(null, 3),
+                new CartStore.VersionedItem(item("A", 1), 4));
+        Cart saved = cart(4, item("A", 3));
+        when(cartStore.addItem(eq(userId), any(CartItem.class), any(), eq(3L))).thenReturn(Optional.empty());
+        when(cartStore.addItem(eq(userId), any(CartItem.class), any(), eq(4L))).thenReturn(Optional.of(saved));
+
+        Cart cart = cartService.addToCart(userId, "A", 2);
+
+        assertThat(cart).isSameAs(saved);
+        verify(inventoryGrpcClient).updateReservation(reservationId, 3);
+        verify(inventoryGrpcClient, never()).cancelReservation(anyString());
+    }
+
+    @Test
+    void addToCartCancelsTheReservationWhenRetriesRunOutAndTheCartHasNoItem() {
+        when(cartStore.findItem(userId, "A")).thenReturn(new CartStore.VersionedItem(null, 3));
+        when(cartStore.addItem(eq(userId), any(CartItem.class), any(), anyLong())).thenReturn(Optional.empty());
+        when(cartStore.find(userId)).thenReturn(Optional.of(cart(5)));
+
+        assertThatThrownBy(() -> cartService.addToCart(userId, "A", 2))
+                .isInstanceOf(IllegalStateException.class);
+
+        verify(cartStore, times(3)).addItem(eq(userId), any(CartItem.class), any(), anyLong());
+        verify(inventoryGrpcClient).cancelReservation(reservationId);
+    }
+
+    @Test
+    void addToCartRestoresTheReservationToTheQuantityInTheCartWhenRetriesRunOut() {
+        when(cartStore.findItem(userId, "A")).thenReturn(new CartStore.VersionedItem(item("A", 1), 3));
+        when(cartStore.addItem(eq(userId), any(CartItem.class), any(), anyLong())).thenReturn(Optional.empty());
+        when(cartStore.find(userId)).thenReturn(Optional.of(cart(5, item("A", 1))));
+
+        assertThatThrownBy(() -> cartService.addToCart(userId, "A", 2))
+                .isInstanceOf(IllegalStateException.class);
+
+        // Ostatnie wywołanie - przywrócenie do 1 szt. z koszyka, wcześniejsze to wyrównania przed ponowieniem
+        verify(inventoryGrpcClient, times(2)).updateReservation(reservationId, 3);
+        verify(inventoryGrpcClient).updateReservation(reservationId, 1);
+        verify(inventoryGrpcClient, never()).cancelReservation(anyString());
+    }
+
+    @Test
+    void addToCartReleasesTheParallelReservationWhenTheProductDoesNotExist() {
+        when(cartStore.findItem(userId, "A")).thenReturn(new CartStore.VersionedItem(item("A", 1), 3));
+        when(productCatalog.getProduct("A")).thenReturn(
+                CompletableFuture.completedFuture(ProductCartResponse.getDefaultInstance()));
+
+        assertThatThrownBy(() -> cartService.addToCart(userId, "A", 2))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        // Rezerwacja wysłana równolegle wraca do 1 szt., którą koszyk już trzymał
+        verify(inventoryGrpcClient).updateReservation(reservationId, 1);
+        verify(cartStore, never()).addItem(any(), any(), any(), anyLong());
+    }
+
+    @Test
+    void updateQuantityRepeatsTheReservationUpdateOnConflict() {
+        when(cartStore.findItem(userId, "A")).thenReturn(
+                new CartStore.VersionedItem(item("A", 1), 1),
+                new CartStore.VersionedItem(item("A", 1), 2));
+        Cart saved = cart(3, item("A", 4));
+        when(cartStore.setQuantity(eq(userId), eq("A"), eq(4), any(), eq(1L))).thenReturn(Optional.empty());
+        when(cartStore.setQuantity(eq(userId), eq("A"), eq(4), any(), eq(2L))).thenReturn(Optional.of(saved));
+
+        Cart cart = cartService.updateQuantity(userId, "A", 4);
+
+        assertThat(cart).isSameAs(saved);
+        verify(inventoryGrpcClient, times(2)).updateReservation(reservationId, 4);
+    }
+
+    private Cart cart(long version, CartItem... items) {
+        return new Cart(userId, new ArrayList<>(List.of(items)), null, version);
+    }
+
+    private CartItem item(String productNumber, int quantity) {
+        return new CartItem(productNumber, "Produkt " + productNumber, quantity,
+                null, Money.ofMinor(999), userId + ":" + productNumber);
+    }
+}
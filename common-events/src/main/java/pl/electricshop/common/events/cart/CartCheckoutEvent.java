@@ -4,8 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import pl.electricshop.common.money.Money;
 
-import java.math.BigDecimal;
 import java.util.List;
 import java.util.UUID;
 
@@ -17,6 +17,7 @@ public class CartCheckoutEvent {
     private UUID userId;
     private String email;
     private UUID addressId;     // Tylko ID!
-    private BigDecimal totalPrice;
+    private Money totalPrice;
     private List<CartItemPayload> items;
+    private UUID checkoutId;    // Bilet checkoutu w Cart Service - przekazywany dalej w OrderCreatedEvent
 }
@@ -4,8 +4,7 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
-
-import java.math.BigDecimal;
+import pl.electricshop.common.money.Money;
 
 @Getter
 @Setter
@@ -15,6 +14,6 @@ public class CartItemPayload {
     private String productNumber;      // Tylko ID
     private String productName;  // Snapshot nazwy
     private Integer quantity;    // Ile sztuk
-    private BigDecimal price;        // Snapshot ceny za sztukę
-    private BigDecimal discount;     // Ewentualny rabat
+    private Money price;         // Snapshot ceny za sztukę
+    private Money discount;      // Ewentualny rabat (kwota na pozycję)
 }
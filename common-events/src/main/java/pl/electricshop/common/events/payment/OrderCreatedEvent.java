@@ -4,8 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import pl.electricshop.common.money.Money;
 
-import java.math.BigDecimal;
 import java.util.List;
 import java.util.UUID;
 
@@ -17,8 +17,9 @@ public class OrderCreatedEvent {
     private UUID orderId;
     private String userId;
     private String email;
-    private BigDecimal amountToPay;
+    private Money amountToPay;
     private String paymentMethod;
     private String currency;
     private List<OrderItemPayload> items;
+    private UUID checkoutId;    // Bilet checkoutu z CartCheckoutEvent (może być null dla starych eventów)
 }
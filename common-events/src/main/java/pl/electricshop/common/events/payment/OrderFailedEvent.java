@@ -11,5 +11,6 @@ public record OrderFailedEvent(
         UUID orderId,                // ID zamówienia, które zawiodło
         List<OrderItemPayload> items, // Lista przedmiotów do zwrócenia na stan
         String reason,               // Powód awarii (np. "PAYMENT_REJECTED", "INVENTORY_TIMEOUT")
-        String email                 // Opcjonalnie do powiadomienia klienta
+        String email,                // Opcjonalnie do powiadomienia klienta
+        UUID checkoutId              // Bilet checkoutu z CartCheckoutEvent (może być null dla starych zamówień)
 ) {}
@@ -4,8 +4,7 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
-
-import java.math.BigDecimal;
+import pl.electricshop.common.money.Money;
 
 @Getter
 @Setter
@@ -15,6 +14,6 @@ public class OrderItemPayload {
     private String productNumber;
     private String productName;
     private Integer quantity;
-    private BigDecimal unitPrice;
-    private BigDecimal totalLinePrice; // quantity * unitPrice
+    private Money unitPrice;
+    private Money totalLinePrice; // quantity * unitPrice
 }
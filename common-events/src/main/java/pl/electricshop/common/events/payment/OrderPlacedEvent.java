@@ -4,8 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import pl.electricshop.common.money.Money;
 
-import java.math.BigDecimal;
 import java.util.List;
 import java.util.UUID;
 
@@ -18,7 +18,7 @@ public class OrderPlacedEvent {
     private String userId;
     private String email;
 
-    private BigDecimal totalPrice;
+    private Money totalPrice;
 
     private List<OrderItemPayload> items;
 
@@ -26,4 +26,5 @@ public class OrderPlacedEvent {
     private String shippingStreet;
 
     private String placedAt;
+    private UUID checkoutId;    // Bilet checkoutu z CartCheckoutEvent (może być null dla starych zamówień)
 }
@@ -0,0 +1,15 @@
+package pl.electricshop.common.events.payment;
+
+import java.util.UUID;
+
+/**
+ * Zdarzenie informujące, że płatność zamówienia została zainicjowana i czeka na klienta.
+ */
+public record PaymentIntentCreatedEvent(
+        UUID orderId,           // ID zamówienia
+        UUID checkoutId,        // Bilet checkoutu z OrderCreatedEvent (może być null)
+        String userId,          // ID użytkownika
+        String paymentId,       // Identyfikator PaymentIntent (Stripe)
+        String clientSecret,    // Sekret do potwierdzenia płatności po stronie klienta
+        String timestamp        // ISO timestamp jako String
+) {}
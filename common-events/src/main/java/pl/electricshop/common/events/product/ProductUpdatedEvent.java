@@ -0,0 +1,20 @@
+package pl.electricshop.common.events.product;
+
+import pl.electricshop.common.money.Money;
+
+import java.math.BigDecimal;
+
+/**
+ * Aktualizacja produktu ({@code product-update-topic}) - dane, z których koszyk buduje snapshot pozycji,
+ * oraz stan magazynowy dla Inventory Service.
+ *
+ * @param discount rabat procentowy (0-100) - nie kwota
+ */
+public record ProductUpdatedEvent(
+        String productNumber,
+        String productName,
+        Money price,
+        BigDecimal discount,
+        Money specialPrice,
+        int quantity) {
+}
@@ -0,0 +1,64 @@
+package pl.electricshop.common.idempotency;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Rdzeń rejestru przetworzonych eventów Kafka - ponowne dostarczenie (restart, rebalans, commit offsetu,
+ * który nie doszedł) nie stosuje efektu eventu drugi raz.
+ * <p>
+ * Id eventu to współrzędne rekordu {@code topic:partition:offset} - przy ponownym dostarczeniu są te same.
+ * Wpis zapisywany jest w transakcji listenera, razem z efektem eventu: wycofanie transakcji wycofuje też wpis.
+ * Sprawdzenie i zapis to jeden {@code INSERT ... ON CONFLICT DO NOTHING RETURNING} na paczkę, bez odczytu
+ * rejestru i bez stanu w pamięci.
+ * <p>
+ * Serwis dziedziczy po tej klasie komponentem, który wnosi konfigurację, transakcję i harmonogram
+ * {@link #purgeExpired()}.
+ */
+@Slf4j
+public abstract class ProcessedEventLedger {
+
+    private final ProcessedEventStore store;
+    private final int retentionDays;
+
+    /**
+     * @param retentionDays jak długo trzymać wpisy - musi przekraczać retencję topiców
+     */
+    protected ProcessedEventLedger(ProcessedEventStore store, int retentionDays) {
+        this.store = store;
+        this.retentionDays = retentionDays;
+    }
+
+    public static String eventId(String topic, int partition, long offset) {
+        return topic + ":" + partition + ":" + offset;
+    }
+
+    /**
+     * Rejestruje eventy w transakcji wywołującego.
+     *
+     * @return id eventów, których grupa jeszcze nie przetworzyła
+     */
+    protected Set<String> claimIds(String consumerGroup, Collection<String> eventIds) {
+        if (eventIds.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> claimed = new HashSet<>(store.insertNew(consumerGroup,
+                new LinkedHashSet<>(eventIds).toArray(String[]::new)));
+        if (claimed.size() < eventIds.size()) {
+            log.warn("Pominięto {} już przetworzonych eventów (grupa {})", eventIds.size() - claimed.size(), consumerGroup);
+        }
+        return claimed;
+    }
+
+    /**
+     * Usuwa wpisy starsze niż okres retencji.
+     */
+    protected void purgeExpired() {
+        int removed = store.deleteOlderThan(LocalDateTime.now().minusDays(retentionDays));
+        if (removed > 0) {
+            log.info("Usunięto {} wpisów rejestru przetworzonych eventów", removed);
+        }
+    }
+}
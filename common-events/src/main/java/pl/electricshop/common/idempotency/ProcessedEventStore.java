@@ -0,0 +1,21 @@
+package pl.electricshop.common.idempotency;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Tabela {@code processed_event} serwisu - unikalne (consumer_group, event_id). Implementuje ją repozytorium
+ * Spring Data serwisu, zapytania zostają w serwisie (schemat, encja).
+ */
+public interface ProcessedEventStore {
+
+    /**
+     * Zapisuje eventy jako przetworzone. Wiersz z konfliktem (event przetworzony albo właśnie przetwarzany
+     * przez inną transakcję - wtedy INSERT czeka na jej wynik) nie jest zwracany.
+     *
+     * @return id eventów zapisanych przez to wywołanie
+     */
+    List<String> insertNew(String group, String[] eventIds);
+
+    int deleteOlderThan(LocalDateTime before);
+}
@@ -0,0 +1,152 @@
+package pl.electricshop.common.money;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Kwota pieniężna w jednostkach drobnych waluty (grosze dla PLN) - niezmienna, bez błędów zaokrągleń
+ * {@code double} i bez alokacji {@link BigDecimal} przy każdym działaniu.
+ * <p>
+ * Na gorących ścieżkach (sumy koszyka) liczymy na samych {@code long} przez {@link #minor()} i metody
+ * statyczne, a obiekt tworzymy dopiero dla wyniku. {@link BigDecimal} tylko na granicach: baza danych,
+ * REST, dane wejściowe z {@code BigDecimal}. Działania na różnych walutach i przepełnienie kończą się
+ * {@link IllegalArgumentException} / {@link ArithmeticException}.
+ * <p>
+ * JSON (eventy Kafka): kwota w PLN zapisywana jest jak dotąd {@link BigDecimal} - liczbą w złotych, więc
+ * konsumenci sprzed wprowadzenia {@code Money} czytają ją bez zmian; inne waluty jako
+ * {@code {"minor": .., "currency": ..}}. Odczyt przyjmuje obie postaci (oraz liczbę jako napis).
+ *
+ * @param minor    kwota w jednostkach drobnych (np. 1999 = 19,99 PLN)
+ * @param currency waluta - liczba miejsc po przecinku wg {@link Currency#getDefaultFractionDigits()}
+ */
+public record Money(long minor, Currency currency) implements Comparable<Money>, Serializable {
+
+    public static final Currency PLN = Currency.getInstance("PLN");
+
+    private static final Money ZERO_PLN = new Money(0, PLN);
+
+    public Money {
+        Objects.requireNonNull(currency, "Waluta kwoty jest wymagana");
+        if (currency.getDefaultFractionDigits() < 0) {
+            throw new IllegalArgumentException("Waluta bez jednostek drobnych: " + currency);
+        }
+    }
+
+    public static Money zero() {
+        return ZERO_PLN;
+    }
+
+    public static Money ofMinor(long minor) {
+        return minor == 0 ? ZERO_PLN : new Money(minor, PLN);
+    }
+
+    public static Money ofMinor(long minor, Currency currency) {
+        return new Money(minor, currency);
+    }
+
+    /**
+     * @param amount kwota w jednostkach głównych; nadmiarowe miejsca po przecinku zaokrąglane HALF_UP
+     * @return null dla null - pola opcjonalne w encjach i eventach
+     */
+    public static Money of(BigDecimal amount) {
+        return of(amount, PLN);
+    }
+
+    public static Money of(BigDecimal amount, Currency currency) {
+        if (amount == null) {
+            return null;
+        }
+        return new Money(amount.setScale(currency.getDefaultFractionDigits(), RoundingMode.HALF_UP)
+                .unscaledValue().longValueExact(), currency);
+    }
+
+    /**
+     * Kwota zapisana wcześniej jako {@code double} (stare snapshoty koszyka, pola proto) - zaokrąglana
+     * do najbliższej jednostki drobnej według zapisu dziesiętnego liczby.
+     */
+    public static Money ofMajor(double amount) {
+        return of(BigDecimal.valueOf(amount), PLN);
+    }
+
+    /**
+     * Odczyt z JSON: liczba lub napis w jednostkach głównych (PLN, jak dawne pola {@link BigDecimal})
+     * albo obiekt {@code {"minor": .., "currency": ..}}.
+     */
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    static Money fromJson(Object value) {
+        if (value instanceof Number || value instanceof String) {
+            return of(new BigDecimal(value.toString().strip()));
+        }
+        if (value instanceof Map<?, ?> fields && fields.get("minor") instanceof Number minor) {
+            Object currency = fields.get("currency");
+            return new Money(minor.longValue(), currency == null ? PLN : Currency.getInstance(currency.toString()));
+        }
+        throw new IllegalArgumentException("Nieprawidłowa kwota w JSON: " + value);
+    }
+
+    /**
+     * Zapis do JSON - postać opisana w dokumentacji klasy.
+     */
+    @JsonValue
+    Object toJson() {
+        if (PLN.equals(currency)) {
+            return toBigDecimal();
+        }
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("minor", minor);
+        fields.put("currency", currency.getCurrencyCode());
+        return fields;
+    }
+
+    public Money plus(Money other) {
+        return new Money(Math.addExact(minor, sameCurrency(other).minor), currency);
+    }
+
+    public Money minus(Money other) {
+        return new Money(Math.subtractExact(minor, sameCurrency(other).minor), currency);
+    }
+
+    public Money times(long quantity) {
+        return new Money(Math.multiplyExact(minor, quantity), currency);
+    }
+
+    public boolean isZero() {
+        return minor == 0;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minor, currency.getDefaultFractionDigits());
+    }
+
+    /**
+     * Wartość pozycji {@code cena × ilość − rabat} w jednostkach drobnych, bez tworzenia obiektów.
+     */
+    public static long lineTotalMinor(long unitMinor, long quantity, long discountMinor) {
+        return Math.subtractExact(Math.multiplyExact(unitMinor, quantity), discountMinor);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minor, sameCurrency(other).minor);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString() + " " + currency.getCurrencyCode();
+    }
+
+    private Money sameCurrency(Money other) {
+        if (!currency.equals(other.currency)) {
+            throw new IllegalArgumentException("Różne waluty: " + currency + " i " + other.currency);
+        }
+        return other;
+    }
+}
@@ -0,0 +1,94 @@
+package pl.electricshop.common.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Filtr Blooma dla kluczy tekstowych - zwarta pamięć "czy ten klucz mógł już wystąpić".
+ * <p>
+ * {@link #mightContain} zwraca false tylko dla kluczy, które na pewno nie zostały dodane; true może być
+ * fałszywym trafieniem (z prawdopodobieństwem ustalonym przy tworzeniu), więc odpowiedź pozytywną trzeba
+ * potwierdzić w źródle prawdy. Bezpieczny wątkowo, bez blokad.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions spodziewana liczba kluczy - po jej przekroczeniu rośnie odsetek fałszywych trafień
+     * @param falsePositiveRate  docelowe prawdopodobieństwo fałszywego trafienia, np. 0.01
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Nieprawidłowe parametry filtra Blooma: "
+                    + expectedInsertions + ", " + falsePositiveRate);
+        }
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitSize = Math.max(64, (bits + 63) / 64 * 64);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+        this.words = new AtomicLongArray(Math.toIntExact(bitSize / 64));
+    }
+
+    public void put(String key) {
+        long hash = hash(key);
+        long step = step(hash);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash + i * step, bitSize);
+            long mask = 1L << bit;
+            int word = (int) (bit >>> 6);
+            if ((words.get(word) & mask) == 0) {
+                words.getAndUpdate(word, value -> value | mask);
+            }
+        }
+    }
+
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        long step = step(hash);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash + i * step, bitSize);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long bitSize() {
+        return bitSize;
+    }
+
+    public int hashCount() {
+        return hashCount;
+    }
+
+    /**
+     * FNV-1a po bajtach UTF-8 z mieszaniem końcowym (fmix64 z MurmurHash3).
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Drugi hash do podwójnego haszowania (h1 + i * h2) - nieparzysty, więc nigdy zerowy.
+     */
+    private static long step(long hash) {
+        return mix(hash ^ 0x9e3779b97f4a7c15L) | 1;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
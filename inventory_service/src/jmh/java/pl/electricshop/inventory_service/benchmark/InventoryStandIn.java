@@ -0,0 +1,129 @@
+package pl.electricshop.inventory_service.benchmark;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.electricshop.inventory_service.InventoryServiceApplication;
+import pl.electricshop.inventory_service.model.Inventory;
+import pl.electricshop.inventory_service.repository.InventoryRepository;
+import pl.electricshop.inventory_service.repository.ReservationStore;
+import pl.electricshop.inventory_service.service.InventoryService;
+import pl.electricshop.inventory_service.service.ProductNumberFilter;
+import pl.electricshop.inventory_service.service.ReservationEngine;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.util.Collection;
+
+/**
+ * Inventory Service uruchomiony w procesie benchmarku: Postgres zastąpiony przez H2 w trybie PostgreSQL
+ * (migracje Flyway jak na produkcji), Redis - przez wbudowany serwer na wolnym porcie.
+ * Kafka, gRPC, Eureka i Config Server są wyłączone - mierzona jest tylko ścieżka rezerwacji.
+ */
+public class InventoryStandIn implements AutoCloseable {
+
+    private final RedisServer redisServer;
+    private final ConfigurableApplicationContext context;
+
+    /**
+     * @param mode wartość {@code inventory.reservation.mode}: database | redis
+     */
+    public InventoryStandIn(String mode) {
+        int redisPort = freePort();
+        try {
+            redisServer = new RedisServer(redisPort);
+            redisServer.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Nie udało się uruchomić wbudowanego Redis", e);
+        }
+
+        context = new SpringApplicationBuilder(InventoryServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.cloud.config.enabled=false",
+                        "--spring.config.import=",
+                        "--eureka.client.enabled=false",
+                        "--spring.main.banner-mode=off",
+                        "--spring.datasource.url=jdbc:h2:mem:inventory-" + mode
+                                + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.hikari.maximum-pool-size=64",
+                        "--spring.jpa.hibernate.ddl-auto=validate",
+                        "--spring.jpa.properties.hibernate.default_schema=inventory",
+                        "--spring.flyway.schemas=inventory",
+                        "--spring.flyway.default-schema=inventory",
+                        "--spring.flyway.create-schemas=true",
+                        "--spring.flyway.table=inventory_schema_version",
+                        "--spring.data.redis.host=localhost",
+                        "--spring.data.redis.port=" + redisPort,
+                        "--spring.kafka.listener.auto-startup=false",
+                        "--grpc.server.port=-1",
+                        "--inventory.reservation.mode=" + mode,
+                        "--inventory.reservation.expiry-listener.enabled=false",
+                        "--inventory.reservation.cleanup-interval-ms=3600000",
+                        "--inventory.reservation.reconcile-interval-ms=3600000",
+                        // Write-behind zapisuje delty zapytaniem specyficznym dla Postgres - w benchmarku stan żyje w Redis
+                        "--inventory.redis.flush-interval-ms=3600000",
+                        "--logging.level.root=WARN",
+                        "--logging.level.pl.electricshop=ERROR");
+    }
+
+    public InventoryService inventoryService() {
+        return context.getBean(InventoryService.class);
+    }
+
+    public ReservationEngine reservationEngine() {
+        return context.getBean(ReservationEngine.class);
+    }
+
+    public ReservationStore reservationStore() {
+        return context.getBean(ReservationStore.class);
+    }
+
+    /**
+     * Ustawia stan produktów (available = quantity, reserved = 0) i czyści Redis - rezerwacje,
+     * indeksy i liczniki trybu redis (zostaną wczytane z bazy przy pierwszym użyciu).
+     */
+    public void resetStock(Collection<String> productNumbers, int quantity) {
+        InventoryRepository inventoryRepository = context.getBean(InventoryRepository.class);
+        context.getBean(TransactionTemplate.class).executeWithoutResult(status -> {
+            for (String productNumber : productNumbers) {
+                Inventory inventory = inventoryRepository.findByProductNumber(productNumber).orElseGet(Inventory::new);
+                inventory.setProductNumber(productNumber);
+                inventory.setAvailableQuantity(quantity);
+                inventory.setReservedQuantity(0);
+                inventoryRepository.save(inventory);
+            }
+        });
+        // Produkty zapisane z pominięciem listenera - filtr SKU inaczej by je odrzucał
+        context.getBean(ProductNumberFilter.class).added(productNumbers);
+        context.getBean(StringRedisTemplate.class).execute((RedisCallback<Void>) connection -> {
+            connection.serverCommands().flushDb();
+            return null;
+        });
+    }
+
+    @Override
+    public void close() {
+        context.close();
+        try {
+            redisServer.stop();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
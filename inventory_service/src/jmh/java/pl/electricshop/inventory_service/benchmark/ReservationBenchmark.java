@@ -0,0 +1,240 @@
+package pl.electricshop.inventory_service.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import pl.electricshop.inventory_service.service.InventoryService;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * Ścieżka rezerwacji {@link InventoryService} pod obciążeniem równoległym: przepustowość (thrpt),
+ * rozkład opóźnień z p99 (sample) i liczba rezerwacji ponad stan.
+ * <p>
+ * Każda udana rezerwacja jest doliczana do licznika wydanych sztuk SKU; wydanie ponad
+ * {@code stockPerProduct} to sprzedaż ponad stan (licznik {@code oversold}). Zwolnienia są odejmowane
+ * przed wywołaniem serwisu, więc licznik nigdy nie zawyża wyniku. Po każdej iteracji stan magazynu
+ * porównywany jest z żywymi rezerwacjami - wykryta rozbieżność przerywa benchmark.
+ * <p>
+ * {@code stockPerProduct=50} to wyprzedaż (walka o ostatnie sztuki, większość prób odrzucona),
+ * {@code 1000000} - ścieżka udanej rezerwacji.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class ReservationBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Shop {
+
+        @Param({"database", "redis"})
+        public String mode;
+
+        @Param({"4"})
+        public int products;
+
+        @Param({"50", "1000000"})
+        public int stockPerProduct;
+
+        InventoryStandIn standIn;
+        InventoryService inventoryService;
+        List<String> productNumbers;
+
+        private final Map<String, AtomicInteger> handedOut = new ConcurrentHashMap<>();
+        private final AtomicLong oversoldTotal = new AtomicLong();
+        private final AtomicLong driftTotal = new AtomicLong();
+
+        @Setup(Level.Trial)
+        public void start() {
+            standIn = new InventoryStandIn(mode);
+            inventoryService = standIn.inventoryService();
+            productNumbers = IntStream.range(0, products).mapToObj(i -> "BENCH-" + i).toList();
+        }
+
+        @Setup(Level.Iteration)
+        public void restock() {
+            standIn.resetStock(productNumbers, stockPerProduct);
+            productNumbers.forEach(productNumber -> handedOut.put(productNumber, new AtomicInteger()));
+        }
+
+        String randomProduct() {
+            return productNumbers.get(ThreadLocalRandom.current().nextInt(productNumbers.size()));
+        }
+
+        /**
+         * Zapisuje sztuki wydane przez udaną rezerwację.
+         *
+         * @return true jeśli wydano ponad stan
+         */
+        boolean handOut(String productNumber, int quantity) {
+            if (handedOut.get(productNumber).addAndGet(quantity) > stockPerProduct) {
+                oversoldTotal.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Zapisuje sztuki zwracane przez zwolnienie - wywoływane przed zwolnieniem w serwisie.
+         */
+        void giveBack(String productNumber, int quantity) {
+            handedOut.get(productNumber).addAndGet(-quantity);
+        }
+
+        /**
+         * Po iteracji: available + żywe rezerwacje musi dać stan początkowy, a rezerwacje nie mogą go przekraczać.
+         */
+        @TearDown(Level.Iteration)
+        public void audit() {
+            for (String productNumber : productNumbers) {
+                int available = standIn.reservationEngine().getAvailableQuantity(productNumber);
+                int reserved = standIn.reservationStore().liveQuantity(productNumber);
+
+                int drift = Math.abs(available + reserved - stockPerProduct);
+                int oversold = Math.max(0, reserved - stockPerProduct) + Math.max(0, -available);
+                if (drift > 0 || oversold > 0) {
+                    driftTotal.addAndGet(drift);
+                    oversoldTotal.addAndGet(oversold);
+                    System.out.printf("%n[audit] %s: available=%d, reserved=%d, stock=%d%n",
+                            productNumber, available, reserved, stockPerProduct);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            standIn.close();
+            if (oversoldTotal.get() > 0 || driftTotal.get() > 0) {
+                throw new IllegalStateException("Sprzedaż ponad stan: " + oversoldTotal.get()
+                        + ", rozbieżność stanu: " + driftTotal.get() + " szt. (tryb " + mode + ")");
+            }
+        }
+    }
+
+    /**
+     * Wyniki per wątek, raportowane przez JMH obok przepustowości.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+
+        /**
+         * Rezerwacje odrzucone z braku stanu.
+         */
+        public long rejected;
+
+        /**
+         * Rezerwacje, które wydały sztuki ponad stan.
+         */
+        public long oversold;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            rejected = 0;
+            oversold = 0;
+        }
+    }
+
+    /**
+     * Rezerwacja przygotowana dla benchmarków update/cancel.
+     */
+    @State(Scope.Thread)
+    public static class Shopper {
+
+        String productNumber;
+        String reservationId;
+        int quantity;
+
+        void reserve(Shop shop) {
+            productNumber = shop.randomProduct();
+            quantity = 1;
+            reservationId = shop.inventoryService.createTemporaryReservation(
+                    UUID.randomUUID().toString(), productNumber, quantity);
+            if (reservationId != null) {
+                shop.handOut(productNumber, quantity);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class UpdatingShopper extends Shopper {
+
+        @Setup(Level.Iteration)
+        public void prepare(Shop shop) {
+            reserve(shop);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CancellingShopper extends Shopper {
+
+        /**
+         * Każde anulowanie potrzebuje nowej rezerwacji. Poziom Invocation jest tu bezpieczny - operacja
+         * (transakcja w bazie + skrypt Redis) trwa o rzędy wielkości dłużej niż narzut JMH.
+         */
+        @Setup(Level.Invocation)
+        public void prepare(Shop shop) {
+            reserve(shop);
+        }
+    }
+
+    @Benchmark
+    public String createTemporaryReservation(Shop shop, Outcomes outcomes) {
+        String productNumber = shop.randomProduct();
+        String reservationId = shop.inventoryService.createTemporaryReservation(
+                UUID.randomUUID().toString(), productNumber, 1);
+        if (reservationId == null) {
+            outcomes.rejected++;
+        } else if (shop.handOut(productNumber, 1)) {
+            outcomes.oversold++;
+        }
+        return reservationId;
+    }
+
+    /**
+     * Przełącza rezerwację wątku między 1 a 2 sztukami.
+     */
+    @Benchmark
+    public int updateReservation(Shop shop, UpdatingShopper shopper, Outcomes outcomes) {
+        if (shopper.reservationId == null) {
+            outcomes.rejected++;
+            return -1;
+        }
+        int target = shopper.quantity == 1 ? 2 : 1;
+        if (target < shopper.quantity) {
+            shop.giveBack(shopper.productNumber, shopper.quantity - target);
+        }
+
+        int result = shop.inventoryService.updateReservation(shopper.reservationId, target);
+        if (result < 0) {
+            if (target < shopper.quantity) {
+                shop.handOut(shopper.productNumber, shopper.quantity - target);
+            }
+            outcomes.rejected++;
+            return result;
+        }
+        if (target > shopper.quantity && shop.handOut(shopper.productNumber, target - shopper.quantity)) {
+            outcomes.oversold++;
+        }
+        shopper.quantity = target;
+        return result;
+    }
+
+    @Benchmark
+    public Object cancelReservation(Shop shop, CancellingShopper shopper, Outcomes outcomes) {
+        if (shopper.reservationId == null) {
+            outcomes.rejected++;
+            return null;
+        }
+        shop.giveBack(shopper.productNumber, shopper.quantity);
+        return shop.inventoryService.cancelReservation(shopper.reservationId);
+    }
+}
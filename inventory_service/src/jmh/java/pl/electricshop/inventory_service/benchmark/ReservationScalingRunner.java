@@ -0,0 +1,83 @@
+package pl.electricshop.inventory_service.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Uruchamia {@link ReservationBenchmark} dla 1, 2, 4, ... N wątków i drukuje zestawienie:
+ * przepustowość, p99 opóźnienia i liczba rezerwacji ponad stan.
+ * <p>
+ * Argumenty: [N (domyślnie liczba rdzeni)] [regex benchmarków (domyślnie wszystkie z ReservationBenchmark)].
+ */
+public class ReservationScalingRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        String include = args.length > 1 ? args[1] : ReservationBenchmark.class.getSimpleName();
+
+        // benchmark + parametry + wątki -> [przepustowość, próbkowanie czasu]
+        Map<String, RunResult[]> results = new LinkedHashMap<>();
+        for (int threads : threadCounts(maxThreads)) {
+            for (RunResult result : new Runner(new OptionsBuilder().include(include).threads(threads).build()).run()) {
+                BenchmarkParams params = result.getParams();
+                RunResult[] pair = results.computeIfAbsent(key(params), k -> new RunResult[2]);
+                pair[params.getMode() == Mode.Throughput ? 0 : 1] = result;
+            }
+        }
+
+        System.out.printf("%n%-28s %-9s %8s %8s %12s %10s %9s %9s%n",
+                "Benchmark", "mode", "stock", "threads", "ops/s", "p99 [ms]", "rejected", "oversold");
+        results.forEach((key, pair) -> {
+            BenchmarkParams params = (pair[0] != null ? pair[0] : pair[1]).getParams();
+            System.out.printf("%-28s %-9s %8s %8d %12s %10s %9s %9s%n",
+                    shortName(params.getBenchmark()),
+                    params.getParam("mode"),
+                    params.getParam("stockPerProduct"),
+                    params.getThreads(),
+                    pair[0] != null ? String.format("%.0f", pair[0].getPrimaryResult().getScore() * 1000) : "-",
+                    pair[1] != null
+                            ? String.format("%.3f", pair[1].getPrimaryResult().getStatistics().getPercentile(99))
+                            : "-",
+                    secondary(pair[0], "rejected"),
+                    secondary(pair[0], "oversold"));
+        });
+    }
+
+    static TreeSet<Integer> threadCounts(int maxThreads) {
+        TreeSet<Integer> counts = new TreeSet<>();
+        for (int threads = 1; threads < maxThreads; threads *= 2) {
+            counts.add(threads);
+        }
+        counts.add(Math.max(1, maxThreads));
+        return counts;
+    }
+
+    private static String key(BenchmarkParams params) {
+        return params.getBenchmark() + params.getParamsKeys().stream().map(params::getParam).toList()
+                + params.getThreads();
+    }
+
+    private static String shortName(String benchmark) {
+        return benchmark.substring(benchmark.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Liczniki {@link ReservationBenchmark.Outcomes} (sumy z iteracji pomiarowych) - raportowane tylko w trybie thrpt.
+     */
+    private static String secondary(RunResult throughput, String counter) {
+        if (throughput == null) {
+            return "-";
+        }
+        Result<?> result = throughput.getSecondaryResults().get(counter);
+        return result != null ? String.format("%.0f", result.getStatistics().getSum()) : "0";
+    }
+}
@@ -0,0 +1,30 @@
+package pl.electricshop.inventory_service.config;
+
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+
+@Configuration
+public class KafkaConfig {
+
+    public static final String BATCH_LISTENER_FACTORY = "batchListenerFactory";
+
+    /**
+     * Fabryka listenerów wsadowych - listener dostaje cały poll (do {@code spring.kafka.consumer.max-poll-records})
+     * i zapisuje go kilkoma zbiorczymi zapytaniami zamiast jednego na rekord.
+     * Offsety commitowane asynchronicznie - commit, który nie dojdzie, kończy się ponownym dostarczeniem,
+     * a to pomija {@link pl.electricshop.inventory_service.service.IdempotencyLedger}.
+     */
+    @Bean(BATCH_LISTENER_FACTORY)
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> batchListenerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setSyncCommits(false);
+        return factory;
+    }
+}
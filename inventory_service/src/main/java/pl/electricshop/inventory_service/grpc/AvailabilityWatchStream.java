@@ -0,0 +1,100 @@
+package pl.electricshop.inventory_service.grpc;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.extern.slf4j.Slf4j;
+import pl.electricshop.grpc.AvailabilityUpdate;
+import pl.electricshop.grpc.WatchAvailabilityRequest;
+import pl.electricshop.inventory_service.service.AvailabilityFeed;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Jeden strumień WatchAvailability: obserwowane SKU i ostatnio wysłane wartości.
+ * Gdy klient nie nadąża (strumień nie jest gotowy), zmiany czekają w {@code unsent} -
+ * nadpisują się, więc po wznowieniu wysyłana jest tylko najnowsza wartość SKU.
+ */
+@Slf4j
+class AvailabilityWatchStream implements StreamObserver<WatchAvailabilityRequest>, AvailabilityFeed.Watcher {
+
+    private final ServerCallStreamObserver<AvailabilityUpdate> responseObserver;
+    private final AvailabilityFeed availabilityFeed;
+
+    private final Set<String> watched = ConcurrentHashMap.newKeySet();
+    private final Map<String, Integer> lastSent = new HashMap<>();
+    private final Map<String, Integer> unsent = new LinkedHashMap<>();
+
+    AvailabilityWatchStream(StreamObserver<AvailabilityUpdate> responseObserver, AvailabilityFeed availabilityFeed) {
+        this.responseObserver = (ServerCallStreamObserver<AvailabilityUpdate>) responseObserver;
+        this.availabilityFeed = availabilityFeed;
+        this.responseObserver.setOnCancelHandler(() -> availabilityFeed.unregister(this));
+        this.responseObserver.setOnReadyHandler(this::flush);
+        availabilityFeed.register(this);
+    }
+
+    @Override
+    public void onNext(WatchAvailabilityRequest request) {
+        if (request.getUnsubscribeCount() > 0) {
+            watched.removeAll(request.getUnsubscribeList());
+            synchronized (this) {
+                request.getUnsubscribeList().forEach(productNumber -> {
+                    lastSent.remove(productNumber);
+                    unsent.remove(productNumber);
+                });
+            }
+        }
+
+        // Nowe SKU - od razu bieżący stan, żeby klient mógł zbudować lokalny widok
+        List<String> subscribed = request.getSubscribeList().stream()
+                .filter(watched::add)
+                .toList();
+        if (!subscribed.isEmpty()) {
+            log.info("gRPC: watchAvailability - subskrypcja {} SKU", subscribed.size());
+            onAvailability(availabilityFeed.currentQuantities(subscribed));
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        log.warn("gRPC: watchAvailability przerwany: {}", t.getMessage());
+        availabilityFeed.unregister(this);
+    }
+
+    @Override
+    public void onCompleted() {
+        availabilityFeed.unregister(this);
+        synchronized (this) {
+            responseObserver.onCompleted();
+        }
+    }
+
+    @Override
+    public Set<String> watchedProducts() {
+        return watched;
+    }
+
+    @Override
+    public synchronized void onAvailability(Map<String, Integer> quantities) {
+        quantities.forEach((productNumber, quantity) -> {
+            if (watched.contains(productNumber) && !quantity.equals(lastSent.get(productNumber))) {
+                unsent.put(productNumber, quantity);
+            }
+        });
+        flush();
+    }
+
+    private synchronized void flush() {
+        Iterator<Map.Entry<String, Integer>> iterator = unsent.entrySet().iterator();
+        while (iterator.hasNext() && responseObserver.isReady() && !responseObserver.isCancelled()) {
+            Map.Entry<String, Integer> entry = iterator.next();
+            Integer previous = lastSent.put(entry.getKey(), entry.getValue());
+            responseObserver.onNext(AvailabilityUpdate.newBuilder()
+                    .setProductNumber(entry.getKey())
+                    .setAvailableQuantity(entry.getValue())
+                    .setDelta(previous == null ? 0 : entry.getValue() - previous)
+                    .build());
+            iterator.remove();
+        }
+    }
+}
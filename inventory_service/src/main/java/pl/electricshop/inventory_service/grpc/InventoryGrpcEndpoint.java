@@ -5,7 +5,14 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.devh.boot.grpc.server.service.GrpcService;
 import pl.electricshop.grpc.*;
+import pl.electricshop.inventory_service.model.api.ReservationItemResult;
+import pl.electricshop.inventory_service.service.AvailabilityFeed;
 import pl.electricshop.inventory_service.service.InventoryService;
+import pl.electricshop.inventory_service.service.ReservationEngine;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @GrpcService
 @Slf4j
@@ -13,6 +20,7 @@ import pl.electricshop.inventory_service.service.InventoryService;
 public class InventoryGrpcEndpoint extends InventoryGrpcServiceGrpc.InventoryGrpcServiceImplBase {
 
     private final InventoryService inventoryService;
+    private final AvailabilityFeed availabilityFeed;
 
     @Override
     public void reserveProduct(ReservationRequest request, StreamObserver<ReservationResponse> responseObserver) {
@@ -118,4 +126,145 @@ public class InventoryGrpcEndpoint extends InventoryGrpcServiceGrpc.InventoryGrp
 
         responseObserver.onCompleted();
     }
+
+    @Override
+    public void reserveProducts(BatchReservationRequest request, StreamObserver<BatchReservationResponse> responseObserver) {
+        String userId = request.getUserId();
+
+        log.info("gRPC: reserveProducts(user={}, items={}, allOrNothing={})",
+                userId, request.getItemsCount(), request.getAllOrNothing());
+
+        // Ta sama pozycja podana kilka razy - sumujemy ilości
+        Map<String, Integer> items = new LinkedHashMap<>();
+        request.getItemsList().forEach(item -> items.merge(item.getProductNumber(), item.getQuantity(), Integer::sum));
+
+        try {
+            responseObserver.onNext(toBatchResponse(
+                    inventoryService.reserveProducts(userId, items, request.getAllOrNothing())));
+        } catch (Exception e) {
+            log.error("Błąd rezerwacji wsadowej: {}", e.getMessage());
+            responseObserver.onNext(batchError(e));
+        }
+
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void cancelReservations(BatchCancelReservationRequest request, StreamObserver<BatchReservationResponse> responseObserver) {
+        log.info("gRPC: cancelReservations(count={})", request.getReservationIdsCount());
+
+        try {
+            responseObserver.onNext(toBatchResponse(
+                    inventoryService.cancelReservations(request.getReservationIdsList())));
+        } catch (Exception e) {
+            log.error("Błąd anulowania wsadowego: {}", e.getMessage());
+            responseObserver.onNext(batchError(e));
+        }
+
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void updateReservations(BatchUpdateReservationRequest request, StreamObserver<BatchReservationResponse> responseObserver) {
+        log.info("gRPC: updateReservations(count={}, allOrNothing={})", request.getItemsCount(), request.getAllOrNothing());
+
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        request.getItemsList().forEach(item -> quantities.put(item.getReservationId(), item.getNewQuantity()));
+
+        try {
+            responseObserver.onNext(toBatchResponse(
+                    inventoryService.updateReservations(quantities, request.getAllOrNothing())));
+        } catch (Exception e) {
+            log.error("Błąd aktualizacji wsadowej: {}", e.getMessage());
+            responseObserver.onNext(batchError(e));
+        }
+
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void extendReservations(ReservationBundleRequest request, StreamObserver<ReservationBundleResponse> responseObserver) {
+        String userId = request.getUserId();
+
+        log.info("gRPC: extendReservations(user={})", userId);
+
+        try {
+            long expiresAt = System.currentTimeMillis() + ReservationEngine.RESERVATION_TTL.toMillis();
+            int items = inventoryService.extendReservations(userId);
+
+            responseObserver.onNext(ReservationBundleResponse.newBuilder()
+                    .setSuccess(items > 0)
+                    .setItems(items)
+                    .setExpiresAt(items > 0 ? expiresAt : 0)
+                    .setMessage(items > 0 ? "Przedłużono rezerwacje" : "Brak rezerwacji do przedłużenia")
+                    .build());
+        } catch (Exception e) {
+            log.error("Błąd przedłużania rezerwacji: {}", e.getMessage());
+            responseObserver.onNext(bundleError(e));
+        }
+
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void releaseReservations(ReservationBundleRequest request, StreamObserver<ReservationBundleResponse> responseObserver) {
+        String userId = request.getUserId();
+
+        log.info("gRPC: releaseReservations(user={})", userId);
+
+        try {
+            int items = inventoryService.releaseReservations(userId).size();
+
+            responseObserver.onNext(ReservationBundleResponse.newBuilder()
+                    .setSuccess(true)
+                    .setItems(items)
+                    .setMessage("Zwolniono rezerwacje: " + items)
+                    .build());
+        } catch (Exception e) {
+            log.error("Błąd zwalniania rezerwacji: {}", e.getMessage());
+            responseObserver.onNext(bundleError(e));
+        }
+
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public StreamObserver<WatchAvailabilityRequest> watchAvailability(StreamObserver<AvailabilityUpdate> responseObserver) {
+        log.info("gRPC: watchAvailability()");
+        return new AvailabilityWatchStream(responseObserver, availabilityFeed);
+    }
+
+    private static BatchReservationResponse toBatchResponse(List<ReservationItemResult> results) {
+        BatchReservationResponse.Builder response = BatchReservationResponse.newBuilder();
+        long succeeded = 0;
+        for (ReservationItemResult result : results) {
+            response.addResults(pl.electricshop.grpc.ReservationItemResult.newBuilder()
+                    .setProductNumber(result.productNumber())
+                    .setReservationId(result.success() ? result.reservationId() : "")
+                    .setSuccess(result.success())
+                    .setMessage(result.message())
+                    .setReservedQuantity(result.quantity()));
+            if (result.success()) {
+                succeeded++;
+            }
+        }
+        return response
+                .setSuccess(succeeded == results.size())
+                .setMessage("Powodzenie: " + succeeded + "/" + results.size())
+                .build();
+    }
+
+    private static ReservationBundleResponse bundleError(Exception e) {
+        return ReservationBundleResponse.newBuilder()
+                .setSuccess(false)
+                .setMessage("Błąd: " + e.getMessage())
+                .build();
+    }
+
+    private static BatchReservationResponse batchError(Exception e) {
+        return BatchReservationResponse.newBuilder()
+                .setSuccess(false)
+                .setMessage("Błąd: " + e.getMessage())
+                .build();
+    }
 }
@@ -2,6 +2,7 @@ package pl.electricshop.inventory_service.model;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.Getter;
 import lombok.Setter;
 import pl.electricshop.common.events.base.BaseEntity;
@@ -15,4 +16,12 @@ public class Inventory extends BaseEntity {
     private String productNumber;
     private Integer availableQuantity;
     private Integer reservedQuantity;
+
+    /**
+     * Liczba kubełków stanu (tryb flash-sale), 0 = zwykły wiersz.
+     */
+    private Integer bucketCount = 0;
+
+    @Version
+    private Long version;
 }
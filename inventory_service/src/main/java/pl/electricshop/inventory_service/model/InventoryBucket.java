@@ -0,0 +1,31 @@
+package pl.electricshop.inventory_service.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import pl.electricshop.common.events.base.BaseEntity;
+
+/**
+ * Kubełek stanu produktu w trybie flash-sale - część available/reserved jednego SKU.
+ */
+@Entity
+@Table(name = "inventory_bucket")
+@Getter
+@Setter
+@NoArgsConstructor
+public class InventoryBucket extends BaseEntity {
+
+    private String productNumber;
+    private Integer bucket;
+    private Integer availableQuantity;
+    private Integer reservedQuantity;
+
+    public InventoryBucket(String productNumber, int bucket, int availableQuantity, int reservedQuantity) {
+        this.productNumber = productNumber;
+        this.bucket = bucket;
+        this.availableQuantity = availableQuantity;
+        this.reservedQuantity = reservedQuantity;
+    }
+}
@@ -0,0 +1,20 @@
+package pl.electricshop.inventory_service.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+import pl.electricshop.common.events.base.BaseEntity;
+
+/**
+ * Wpis rejestru przetworzonych eventów - (grupa konsumenta, id eventu) jest unikalne.
+ */
+@Entity
+@Table(name = "processed_event")
+@Getter
+@Setter
+public class ProcessedEvent extends BaseEntity {
+
+    private String consumerGroup;
+    private String eventId;
+}
@@ -0,0 +1,22 @@
+package pl.electricshop.inventory_service.model.api;
+
+/**
+ * Wynik jednej pozycji operacji wsadowej na rezerwacjach.
+ *
+ * @param quantity ilość rezerwacji po operacji (przy anulowaniu - zwolniona ilość)
+ */
+public record ReservationItemResult(
+        String productNumber,
+        String reservationId,
+        int quantity,
+        boolean success,
+        String message) {
+
+    public static ReservationItemResult ok(String productNumber, String reservationId, int quantity, String message) {
+        return new ReservationItemResult(productNumber, reservationId, quantity, true, message);
+    }
+
+    public static ReservationItemResult failed(String productNumber, String reservationId, String message) {
+        return new ReservationItemResult(productNumber, reservationId, 0, false, message);
+    }
+}
@@ -0,0 +1,111 @@
+package pl.electricshop.inventory_service.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import pl.electricshop.inventory_service.model.InventoryBucket;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface InventoryBucketRepository extends JpaRepository<InventoryBucket, UUID> {
+
+    /**
+     * Rezerwuje w pierwszym kubełku z wystarczającym stanem, licząc od {@code start} (losowy punkt startu
+     * rozkłada ruch). Z {@code skipLocked} kubełki zablokowane przez inne rezerwacje są pomijane
+     * zamiast czekać - równoległe transakcje trafiają w różne wiersze.
+     *
+     * @return 1 jeśli zarezerwowano, 0 jeśli żaden (wolny) kubełek nie ma {@code amount}
+     */
+    @Modifying
+    @Query(value = "UPDATE {h-schema}inventory_bucket b SET " +
+            "available_quantity = b.available_quantity - :amount, " +
+            "reserved_quantity = b.reserved_quantity + :amount, " +
+            "updated_at = CURRENT_TIMESTAMP " +
+            "WHERE b.uuid = (SELECT c.uuid FROM {h-schema}inventory_bucket c " +
+            "WHERE c.product_number = :sku AND c.available_quantity >= :amount " +
+            "ORDER BY (c.bucket + :buckets - :start) % :buckets LIMIT 1 FOR UPDATE SKIP LOCKED) " +
+            "AND b.available_quantity >= :amount",
+            nativeQuery = true)
+    int reserveSkipLocked(String sku, int amount, int start, int buckets);
+
+    @Modifying
+    @Query(value = "UPDATE {h-schema}inventory_bucket b SET " +
+            "available_quantity = b.available_quantity - :amount, " +
+            "reserved_quantity = b.reserved_quantity + :amount, " +
+            "updated_at = CURRENT_TIMESTAMP " +
+            "WHERE b.uuid = (SELECT c.uuid FROM {h-schema}inventory_bucket c " +
+            "WHERE c.product_number = :sku AND c.available_quantity >= :amount " +
+            "ORDER BY (c.bucket + :buckets - :start) % :buckets LIMIT 1 FOR UPDATE) " +
+            "AND b.available_quantity >= :amount",
+            nativeQuery = true)
+    int reserve(String sku, int amount, int start, int buckets);
+
+    /**
+     * Zdejmuje do {@code amount} z reserved kubełków każdego SKU (po kolei, nie schodząc poniżej zera).
+     * Z {@code toAvailable = 1} zdjęta ilość wraca do available (zwolnienie), z 0 - znika (sprzedaż).
+     * Kubełki są najpierw blokowane (FOR UPDATE, w kolejności SKU i numeru kubełka), a podział liczony
+     * z zablokowanych wierszy - równoległa rezerwacja czy drugie zdjęcie nie zmieni ich w trakcie.
+     * Bez {@code @Modifying}, jak zapisy z {@code RETURNING} w {@link InventoryRepository}.
+     *
+     * @return pary [productNumber, zdjęta ilość] zmienionych kubełków
+     */
+    @Transactional
+    @Query(value = "WITH d AS (SELECT * FROM unnest(CAST(:skus AS varchar[]), CAST(:amounts AS int[])) " +
+            "AS d(product_number, amount)), " +
+            "l AS (SELECT b.uuid, b.product_number, b.bucket, b.reserved_quantity FROM {h-schema}inventory_bucket b " +
+            "WHERE b.product_number IN (SELECT product_number FROM d) " +
+            "ORDER BY b.product_number, b.bucket FOR UPDATE), " +
+            "a AS (SELECT l.uuid, LEAST(l.reserved_quantity, GREATEST(d.amount - " +
+            "(SUM(l.reserved_quantity) OVER (PARTITION BY l.product_number ORDER BY l.bucket) - l.reserved_quantity), 0)) AS take " +
+            "FROM l JOIN d ON d.product_number = l.product_number) " +
+            "UPDATE {h-schema}inventory_bucket b SET " +
+            "reserved_quantity = b.reserved_quantity - a.take, " +
+            "available_quantity = b.available_quantity + a.take * :toAvailable, " +
+            "updated_at = CURRENT_TIMESTAMP " +
+            "FROM a WHERE b.uuid = a.uuid AND a.take > 0 " +
+            "RETURNING b.product_number, a.take",
+            nativeQuery = true)
+    List<Object[]> drainReserved(String[] skus, int[] amounts, int toAvailable);
+
+    /**
+     * Zeruje available kubełków (nadpisanie stanu produktu - nowa wartość trafia do puli i jest rozdzielana ponownie).
+     */
+    @Modifying
+    @Query("UPDATE InventoryBucket b SET b.availableQuantity = 0 WHERE b.productNumber IN :skus")
+    int clearAvailable(Collection<String> skus);
+
+    /**
+     * @return pary [productNumber, suma available kubełków]
+     */
+    @Query("SELECT b.productNumber, SUM(b.availableQuantity) FROM InventoryBucket b " +
+            "WHERE b.productNumber IN :skus GROUP BY b.productNumber")
+    List<Object[]> sumAvailable(Collection<String> skus);
+
+    @Query("SELECT COALESCE(SUM(b.availableQuantity), 0) FROM InventoryBucket b WHERE b.productNumber = :sku")
+    int sumAvailable(String sku);
+
+    @Query("SELECT COALESCE(SUM(b.reservedQuantity), 0) FROM InventoryBucket b WHERE b.productNumber = :sku")
+    int sumReserved(String sku);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM InventoryBucket b WHERE b.productNumber = :sku ORDER BY b.bucket")
+    List<InventoryBucket> lockAll(String sku);
+
+    /**
+     * SKU do rozdzielenia: niepusta pula albo kubełek bez stanu, gdy inne go mają.
+     */
+    @Query(value = "SELECT i.product_number FROM {h-schema}inventory i " +
+            "JOIN {h-schema}inventory_bucket b ON b.product_number = i.product_number " +
+            "WHERE i.bucket_count > 0 " +
+            "GROUP BY i.product_number, i.available_quantity " +
+            "HAVING i.available_quantity > 0 OR (MIN(b.available_quantity) = 0 AND MAX(b.available_quantity) > 1)",
+            nativeQuery = true)
+    List<String> findProductsToRebalance();
+}
@@ -1,30 +1,238 @@
 package pl.electricshop.inventory_service.repository;
 
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import pl.electricshop.inventory_service.model.Inventory;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
+/**
+ * Zapisy z {@code RETURNING} ({@link #insertMissing}, {@link #reserveStockBatch}) nie mają {@code @Modifying} -
+ * Spring Data dopuszcza przy nim tylko wynik int/void, a lista wierszy wymaga wykonania jak zapytania
+ * (getResultList). Mają za to jawne {@code @Transactional}, które nadpisuje domyślne readOnly metod repozytorium.
+ */
 @Repository
 public interface InventoryRepository extends JpaRepository<Inventory, UUID> {
     Optional<Inventory> findByProductNumber(String productNumber);
 
+    boolean existsByProductNumber(String productNumber);
+
+    List<Inventory> findAllByProductNumberIn(Collection<String> productNumbers);
+
+    @Query("SELECT i.availableQuantity FROM Inventory i WHERE i.productNumber = :sku")
+    Optional<Integer> findAvailableQuantity(String sku);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT i FROM Inventory i WHERE i.productNumber = :sku")
+    Optional<Inventory> lockByProductNumber(String sku);
+
+    /**
+     * Blokada doradcza Postgres do końca bieżącej transakcji - zadanie okresowe wykonuje jedna instancja naraz.
+     *
+     * @return false, jeśli blokadę trzyma inna transakcja
+     */
+    @Query(value = "SELECT pg_try_advisory_xact_lock(hashtext(:name))", nativeQuery = true)
+    boolean tryAdvisoryLock(String name);
+
+    /**
+     * @return pary [productNumber, bucketCount] produktów w trybie flash-sale
+     */
+    @Query("SELECT i.productNumber, i.bucketCount FROM Inventory i WHERE i.bucketCount > 0")
+    List<Object[]> findShardedProducts();
+
+    /**
+     * Warunkowa rezerwacja: przenosi {@code amount} z available do reserved
+     * tylko jeśli jest wystarczająca ilość. Sprawdzenie i zmiana w jednym UPDATE,
+     * więc równoległe rezerwacje tego samego SKU nie mogą przesprzedać stanu.
+     *
+     * @return 1 jeśli zarezerwowano, 0 jeśli brak stanu lub produktu
+     */
+    @Modifying
+    @Query("UPDATE Inventory i SET " +
+            "i.availableQuantity = i.availableQuantity - :amount, " +
+            "i.reservedQuantity = i.reservedQuantity + :amount, " +
+            "i.version = i.version + 1 " +
+            "WHERE i.productNumber = :sku AND i.availableQuantity >= :amount")
+    int reserveStock(String sku, int amount);
+
+    /**
+     * Warunkowe zwolnienie rezerwacji: przenosi {@code amount} z reserved z powrotem do available.
+     *
+     * @return 1 jeśli zwolniono, 0 jeśli zarezerwowana ilość jest mniejsza niż {@code amount}
+     */
     @Modifying
     @Query("UPDATE Inventory i SET " +
             "i.reservedQuantity = i.reservedQuantity - :amount, " +
-            "i.availableQuantity = i.availableQuantity + :amount " +
+            "i.availableQuantity = i.availableQuantity + :amount, " +
+            "i.version = i.version + 1 " +
             "WHERE i.productNumber = :sku AND i.reservedQuantity >= :amount")
-    void releaseStock(String sku, int amount);
+    int releaseStock(String sku, int amount);
+
+    /**
+     * Zwalnia nadwyżkę reserved ponad {@code liveReserved} z powrotem do available.
+     */
+    @Modifying
+    @Query("UPDATE Inventory i SET " +
+            "i.availableQuantity = i.availableQuantity + (i.reservedQuantity - :liveReserved), " +
+            "i.reservedQuantity = :liveReserved, " +
+            "i.version = i.version + 1 " +
+            "WHERE i.productNumber = :sku AND i.reservedQuantity > :liveReserved")
+    int reconcileReserved(String sku, int liveReserved);
+
+    /**
+     * Dostawa dla paczki SKU jednym INSERT ... ON CONFLICT: nowe produkty są tworzone,
+     * istniejącym available rośnie o podaną ilość. Brak wyścigu "sprawdź, potem wstaw".
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO {h-schema}inventory AS i " +
+            "(uuid, product_number, available_quantity, reserved_quantity, version, created_at, updated_at) " +
+            "SELECT gen_random_uuid(), d.product_number, d.quantity, 0, 0, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP " +
+            "FROM unnest(CAST(:skus AS varchar[]), CAST(:quantities AS int[])) AS d(product_number, quantity) " +
+            "ON CONFLICT (product_number) DO UPDATE SET " +
+            "available_quantity = i.available_quantity + EXCLUDED.available_quantity, " +
+            "version = i.version + 1, " +
+            "updated_at = CURRENT_TIMESTAMP",
+            nativeQuery = true)
+    int upsertAvailable(String[] skus, int[] quantities);
 
     /**
-     * Znajduje produkty z niezerową ilością zarezerwowaną.
+     * Tworzy produkty, których jeszcze nie ma (tryb redis - istniejącym dostawę dolicza licznik w Redis).
+     *
+     * @return SKU utworzonych produktów
+     */
+    @Transactional
+    @Query(value = "INSERT INTO {h-schema}inventory " +
+            "(uuid, product_number, available_quantity, reserved_quantity, version, created_at, updated_at) " +
+            "SELECT gen_random_uuid(), d.product_number, d.quantity, 0, 0, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP " +
+            "FROM unnest(CAST(:skus AS varchar[]), CAST(:quantities AS int[])) AS d(product_number, quantity) " +
+            "ON CONFLICT (product_number) DO NOTHING " +
+            "RETURNING product_number",
+            nativeQuery = true)
+    List<String> insertMissing(String[] skus, int[] quantities);
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE {h-schema}inventory i SET " +
+            "available_quantity = d.quantity, " +
+            "version = i.version + 1, " +
+            "updated_at = CURRENT_TIMESTAMP " +
+            "FROM unnest(CAST(:skus AS varchar[]), CAST(:quantities AS int[])) AS d(product_number, quantity) " +
+            "WHERE i.product_number = d.product_number",
+            nativeQuery = true)
+    int setAvailableBatch(String[] skus, int[] quantities);
+
+    /**
+     * Towar sprzedany: zmniejsza reserved (nie schodząc poniżej zera), available bez zmian.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE {h-schema}inventory i SET " +
+            "reserved_quantity = GREATEST(i.reserved_quantity - d.amount, 0), " +
+            "version = i.version + 1, " +
+            "updated_at = CURRENT_TIMESTAMP " +
+            "FROM unnest(CAST(:skus AS varchar[]), CAST(:amounts AS int[])) AS d(product_number, amount) " +
+            "WHERE i.product_number = d.product_number",
+            nativeQuery = true)
+    int confirmReservedBatch(String[] skus, int[] amounts);
+
+    /**
+     * Zwalnia do {@code amount} z reserved każdego SKU - do available wraca tylko to, co faktycznie zdjęto z reserved.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE {h-schema}inventory i SET " +
+            "available_quantity = i.available_quantity + LEAST(i.reserved_quantity, d.amount), " +
+            "reserved_quantity = GREATEST(i.reserved_quantity - d.amount, 0), " +
+            "version = i.version + 1, " +
+            "updated_at = CURRENT_TIMESTAMP " +
+            "FROM unnest(CAST(:skus AS varchar[]), CAST(:amounts AS int[])) AS d(product_number, amount) " +
+            "WHERE i.product_number = d.product_number AND i.reserved_quantity > 0",
+            nativeQuery = true)
+    int releaseStockUpToBatch(String[] skus, int[] amounts);
+
+    /**
+     * Nakłada paczkę delt liczników (write-behind z Redis) jednym UPDATE ... FROM unnest(...).
+     * Tablice muszą mieć tę samą długość - i-ty element opisuje jeden SKU.
+     * <p>
+     * Paczka jest zapisywana w {@code processed_event} (grupa {@code group}) w tym samym zapytaniu - ponowne
+     * nałożenie tej samej paczki (powtórka po awarii między commitem a sprzątnięciem jej w Redis) nic nie zmienia.
+     *
+     * @return liczba zmienionych wierszy; 0 - paczka była już nałożona
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "WITH batch AS (" +
+            "INSERT INTO {h-schema}processed_event (uuid, consumer_group, event_id, created_at, updated_at) " +
+            "VALUES (gen_random_uuid(), :group, :batchId, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP) " +
+            "ON CONFLICT (consumer_group, event_id) DO NOTHING " +
+            "RETURNING event_id) " +
+            "UPDATE {h-schema}inventory i SET " +
+            "available_quantity = i.available_quantity + d.available_delta, " +
+            "reserved_quantity = i.reserved_quantity + d.reserved_delta, " +
+            "version = i.version + 1, " +
+            "updated_at = CURRENT_TIMESTAMP " +
+            "FROM unnest(CAST(:skus AS varchar[]), CAST(:availableDeltas AS int[]), CAST(:reservedDeltas AS int[])) " +
+            "AS d(product_number, available_delta, reserved_delta), batch " +
+            "WHERE i.product_number = d.product_number",
+            nativeQuery = true)
+    int applyDeltas(String group, String batchId, String[] skus, int[] availableDeltas, int[] reservedDeltas);
+
+    /**
+     * Wsadowa zmiana rezerwacji jednym UPDATE ... FROM unnest(...): dodatnia delta przenosi stan
+     * z available do reserved, ujemna - z powrotem. Wiersz zmienia się tylko wtedy, gdy ani available,
+     * ani reserved nie zejdą poniżej zera - jak w {@link #reserveStock} i {@link #releaseStock}.
+     * SKU w {@code skus} nie mogą się powtarzać.
+     *
+     * @return SKU, których wiersze zostały zmienione
+     */
+    @Transactional
+    @Query(value = "UPDATE {h-schema}inventory i SET " +
+            "available_quantity = i.available_quantity - d.delta, " +
+            "reserved_quantity = i.reserved_quantity + d.delta, " +
+            "version = i.version + 1, " +
+            "updated_at = CURRENT_TIMESTAMP " +
+            "FROM unnest(CAST(:skus AS varchar[]), CAST(:deltas AS int[])) AS d(product_number, delta) " +
+            "WHERE i.product_number = d.product_number " +
+            "AND i.available_quantity >= d.delta AND i.reserved_quantity + d.delta >= 0 " +
+            "RETURNING i.product_number",
+            nativeQuery = true)
+    List<String> reserveStockBatch(String[] skus, int[] deltas);
+
+    @Query("SELECT i.productNumber FROM Inventory i WHERE i.productNumber IN :skus")
+    List<String> findExistingProductNumbers(Collection<String> skus);
+
+    @Query("SELECT i.productNumber FROM Inventory i")
+    List<String> findAllProductNumbers();
+
+    /**
+     * Znajduje produkty z niezerową ilością zarezerwowaną (i produkty w kubełkach, gdzie reserved jest w kubełkach).
      * Używane do cleanup wygasłych rezerwacji.
      */
-    @Query("SELECT i FROM Inventory i WHERE i.reservedQuantity > 0")
+    @Query("SELECT i FROM Inventory i WHERE i.reservedQuantity > 0 OR i.bucketCount > 0")
     List<Inventory> findAllWithReservations();
+
+    /**
+     * SKU paczki rosnąco - argument zapytań {@code ... FROM unnest(...)}. Równoległe paczki blokują wiersze
+     * w jednym porządku, więc nie zakleszczają się nawzajem. Ilości w tej samej kolejności daje {@link #sortedAmounts}.
+     */
+    static String[] sortedSkus(Map<String, Integer> quantities) {
+        return quantities.keySet().stream().sorted().toArray(String[]::new);
+    }
+
+    static int[] sortedAmounts(Map<String, Integer> quantities) {
+        return quantities.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .mapToInt(Map.Entry::getValue)
+                .toArray();
+    }
 }
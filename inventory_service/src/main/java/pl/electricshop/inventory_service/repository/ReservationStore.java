@@ -0,0 +1,301 @@
+package pl.electricshop.inventory_service.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rezerwacje w Redis - jeden pakiet na użytkownika (koszyk) z jednym TTL, plus indeksy.
+ * <pre>
+ * reservation:{userId}     HASH   sku -> quantity (TTL)  - pakiet rezerwacji koszyka
+ * reservations:expiry      ZSET   id -> termin (ms)      - indeks wygaśnięć pozycji
+ * reservations:sku:{sku}   SET    id                     - żywe rezerwacje SKU
+ * reservations:quantity    HASH   id -> quantity         - ilość, czytelna także po wygaśnięciu pakietu
+ * </pre>
+ * Identyfikator pozycji pozostaje {@code userId:productNumber}. Każda zmiana pozycji przesuwa termin
+ * całego pakietu (EXPIRE raz, w indeksie wszystkie jego pozycje), więc pozycje koszyka wygasają razem,
+ * a przedłużenie lub zwolnienie całego koszyka to jedno wywołanie skryptu.
+ * Pozycje zapisane jeszcze jako osobne klucze {@code reservation:{userId}:{sku}} są przenoszone
+ * do pakietu przy pierwszej zmianie, a do tego czasu wygasają i są zwalniane jak dotąd.
+ * <p>
+ * Sprzątanie czyta tylko rezerwacje z minionym terminem (ZRANGEBYSCORE), bez KEYS po keyspace.
+ * Każda zmiana to jeden skrypt Lua, więc pakiet i indeksy nie rozjeżdżają się.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ReservationStore {
+
+    public static final String RESERVATION_KEY_PREFIX = "reservation:";
+    public static final String EXPIRY_INDEX_KEY = "reservations:expiry";
+    public static final String SKU_INDEX_KEY_PREFIX = "reservations:sku:";
+    public static final String QUANTITY_KEY = "reservations:quantity";
+
+    private static final RedisScript<Long> ADD_SCRIPT = script("reservation-add.lua", Long.class);
+    private static final RedisScript<Long> REPLACE_SCRIPT = script("reservation-replace.lua", Long.class);
+    private static final RedisScript<Long> REMOVE_SCRIPT = script("reservation-remove.lua", Long.class);
+    private static final RedisScript<List> CLAIM_EXPIRED_SCRIPT = script("reservation-claim-expired.lua", List.class);
+    private static final RedisScript<Long> LIVE_QUANTITY_SCRIPT = script("reservation-live-quantity.lua", Long.class);
+    private static final RedisScript<List> BATCH_SCRIPT = script("reservation-batch.lua", List.class);
+    private static final RedisScript<Long> EXTEND_SCRIPT = script("reservation-extend.lua", Long.class);
+    private static final RedisScript<List> CLAIM_BUNDLE_SCRIPT = script("reservation-claim-bundle.lua", List.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    public record StoredReservation(String reservationId, String productNumber, int quantity) {
+    }
+
+    /**
+     * Zwiększa rezerwację o {@code quantity} (tworzy ją, jeśli nie istnieje) i przesuwa termin jej pakietu.
+     *
+     * @return łączna ilość rezerwacji
+     */
+    public long add(String reservationId, String productNumber, int quantity, Duration ttl) {
+        return execute(ADD_SCRIPT, reservationId, productNumber,
+                String.valueOf(quantity), String.valueOf(ttl.toSeconds()), deadline(ttl));
+    }
+
+    /**
+     * Nadpisuje ilość istniejącej rezerwacji i przesuwa termin jej pakietu.
+     *
+     * @return poprzednia ilość lub -1 jeśli rezerwacja nie istnieje
+     */
+    public long replace(String reservationId, String productNumber, int quantity, Duration ttl) {
+        return execute(REPLACE_SCRIPT, reservationId, productNumber,
+                String.valueOf(quantity), String.valueOf(ttl.toSeconds()), deadline(ttl));
+    }
+
+    /**
+     * Jak {@link #replace}, ale nadpisuje tylko wtedy, gdy obecna ilość wynosi {@code expected}.
+     *
+     * @return obecna ilość (równa {@code expected} - zapisano) lub -1 jeśli rezerwacja nie istnieje
+     */
+    public long compareAndReplace(String reservationId, String productNumber, int expected, int quantity, Duration ttl) {
+        return execute(REPLACE_SCRIPT, reservationId, productNumber,
+                String.valueOf(quantity), String.valueOf(ttl.toSeconds()), deadline(ttl), String.valueOf(expected));
+    }
+
+    /**
+     * Usuwa rezerwację. Wynik dodatni dostaje tylko jeden z równoległych wywołujących.
+     *
+     * @return ilość usuniętej rezerwacji lub -1 jeśli nie istnieje
+     */
+    public long remove(String reservationId, String productNumber) {
+        return execute(REMOVE_SCRIPT, reservationId, productNumber);
+    }
+
+    /**
+     * Wsadowy odpowiednik {@link #add} - jeden skrypt dla wszystkich pozycji.
+     *
+     * @return łączne ilości rezerwacji, w kolejności {@code reservations}
+     */
+    public List<Long> addAll(List<StoredReservation> reservations, Duration ttl) {
+        return executeBatch("+", reservations, ttl);
+    }
+
+    /**
+     * Wsadowy odpowiednik {@link #remove} - ilość w {@code reservations} jest ignorowana.
+     *
+     * @return ilości usuniętych rezerwacji (-1 jeśli nie istnieje), w kolejności {@code reservations}
+     */
+    public List<Long> removeAll(List<StoredReservation> reservations) {
+        return executeBatch("-", reservations, Duration.ZERO);
+    }
+
+    public Integer getQuantity(String reservationId) {
+        Object quantity = redisTemplate.opsForHash().get(bundleKey(userIdOf(reservationId)), productNumberOf(reservationId));
+        if (quantity == null) {
+            quantity = redisTemplate.opsForValue().get(RESERVATION_KEY_PREFIX + reservationId);
+        }
+        return quantity != null ? Integer.parseInt(quantity.toString()) : null;
+    }
+
+    /**
+     * Przedłuża wszystkie rezerwacje użytkownika - jeden EXPIRE pakietu, bez względu na liczbę pozycji.
+     *
+     * @return liczba pozycji pakietu (0 - brak żywych rezerwacji)
+     */
+    public int extend(String userId, Duration ttl) {
+        Long lines = redisTemplate.execute(EXTEND_SCRIPT, List.of(bundleKey(userId), EXPIRY_INDEX_KEY),
+                userId, String.valueOf(ttl.toSeconds()), deadline(ttl));
+        return lines != null ? lines.intValue() : 0;
+    }
+
+    /**
+     * Przejmuje wszystkie pozycje pakietu użytkownika i usuwa je z pakietu. Stan zwalnia wywołujący
+     * (albo nie - przy złożonym zamówieniu towar opuszcza magazyn). Pozycja dodana między odczytem
+     * pozycji a skryptem zostaje w pakiecie i wygaśnie jak każda inna.
+     */
+    public List<StoredReservation> claimBundle(String userId) {
+        List<String> skus = redisTemplate.<String, String>opsForHash().keys(bundleKey(userId)).stream().toList();
+        return claimBundleItems(userId, skus, "+inf");
+    }
+
+    /**
+     * Przejmuje pozycje wygasłego pakietu użytkownika - tylko te z minionym terminem, bez sprzątania
+     * rezerwacji innych użytkowników. Pakiet już nie istnieje, więc pozycje wskazuje indeks wygaśnięć
+     * (do {@code limit} rezerwacji z minionym terminem).
+     */
+    public List<StoredReservation> claimExpiredBundle(String userId, int limit) {
+        String now = String.valueOf(System.currentTimeMillis());
+        String prefix = userId + ":";
+        List<String> skus = expiredIds(now, limit).stream()
+                .filter(id -> id.startsWith(prefix))
+                .map(ReservationStore::productNumberOf)
+                .toList();
+        return claimBundleItems(userId, skus, now);
+    }
+
+    /**
+     * Przejmuje do {@code limit} rezerwacji, których termin minął - koszt proporcjonalny do liczby wygasłych.
+     * Identyfikatory czytane są z indeksu przed skryptem, żeby przekazać mu wszystkie klucze w KEYS.
+     */
+    public List<StoredReservation> claimExpired(int limit) {
+        String now = String.valueOf(System.currentTimeMillis());
+        Set<String> ids = expiredIds(now, limit);
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<String> keys = new ArrayList<>(List.of(EXPIRY_INDEX_KEY, QUANTITY_KEY));
+        List<Object> args = new ArrayList<>(List.of(now));
+        for (String id : ids) {
+            String productNumber = productNumberOf(id);
+            keys.add(bundleKey(userIdOf(id)));
+            keys.add(RESERVATION_KEY_PREFIX + id);
+            keys.add(SKU_INDEX_KEY_PREFIX + productNumber);
+            args.add(id);
+            args.add(productNumber);
+        }
+        return toStoredReservations(redisTemplate.execute(CLAIM_EXPIRED_SCRIPT, keys, args.toArray()));
+    }
+
+    private Set<String> expiredIds(String now, int limit) {
+        Set<String> ids = redisTemplate.opsForZSet().rangeByScore(EXPIRY_INDEX_KEY,
+                Double.NEGATIVE_INFINITY, Double.parseDouble(now), 0, limit);
+        return ids != null ? ids : Set.of();
+    }
+
+    private List<StoredReservation> claimBundleItems(String userId, List<String> skus, String maxDeadline) {
+        if (skus.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<String> keys = new ArrayList<>(List.of(bundleKey(userId), EXPIRY_INDEX_KEY, QUANTITY_KEY));
+        List<Object> args = new ArrayList<>(List.of(userId, maxDeadline));
+        for (String sku : skus) {
+            keys.add(SKU_INDEX_KEY_PREFIX + sku);
+            args.add(sku);
+        }
+        return toStoredReservations(redisTemplate.execute(CLAIM_BUNDLE_SCRIPT, keys, args.toArray()));
+    }
+
+    /**
+     * Suma ilości żywych rezerwacji produktu.
+     */
+    public int liveQuantity(String productNumber) {
+        Long total = redisTemplate.execute(LIVE_QUANTITY_SCRIPT,
+                List.of(SKU_INDEX_KEY_PREFIX + productNumber, QUANTITY_KEY));
+        return total != null ? total.intValue() : 0;
+    }
+
+    /**
+     * Klucze pakietu i indeksów w kolejności oczekiwanej przez skrypty reservation-*.lua
+     * (i przez KEYS[4..8] skryptów stock-*.lua).
+     */
+    public static List<String> indexKeys(String reservationId, String productNumber) {
+        return List.of(
+                bundleKey(userIdOf(reservationId)),
+                EXPIRY_INDEX_KEY,
+                SKU_INDEX_KEY_PREFIX + productNumber,
+                QUANTITY_KEY,
+                RESERVATION_KEY_PREFIX + reservationId);
+    }
+
+    /**
+     * Klucze jednej pozycji skryptów wsadowych (reservation-batch.lua, stock-batch.lua):
+     * pakiet, zbiór rezerwacji SKU, klucz sprzed pakietów.
+     */
+    public static List<String> itemKeys(String reservationId, String productNumber) {
+        return List.of(
+                bundleKey(userIdOf(reservationId)),
+                SKU_INDEX_KEY_PREFIX + productNumber,
+                RESERVATION_KEY_PREFIX + reservationId);
+    }
+
+    public static String bundleKey(String userId) {
+        return RESERVATION_KEY_PREFIX + userId;
+    }
+
+    private static String userIdOf(String reservationId) {
+        int separator = reservationId.indexOf(':');
+        return separator < 0 ? reservationId : reservationId.substring(0, separator);
+    }
+
+    private static String productNumberOf(String reservationId) {
+        int separator = reservationId.indexOf(':');
+        return separator < 0 ? "" : reservationId.substring(separator + 1);
+    }
+
+    public static String deadline(Duration ttl) {
+        return String.valueOf(System.currentTimeMillis() + ttl.toMillis());
+    }
+
+    private long execute(RedisScript<Long> script, String reservationId, String productNumber, Object... args) {
+        Object[] scriptArgs = new Object[args.length + 2];
+        scriptArgs[0] = reservationId;
+        scriptArgs[1] = productNumber;
+        System.arraycopy(args, 0, scriptArgs, 2, args.length);
+
+        Long result = redisTemplate.execute(script, indexKeys(reservationId, productNumber), scriptArgs);
+        if (result == null) {
+            throw new RuntimeException("Brak odpowiedzi Redis dla rezerwacji: " + reservationId);
+        }
+        return result;
+    }
+
+    private List<Long> executeBatch(String operation, List<StoredReservation> reservations, Duration ttl) {
+        if (reservations.isEmpty()) {
+            return List.of();
+        }
+        List<String> keys = new ArrayList<>(List.of(EXPIRY_INDEX_KEY, QUANTITY_KEY));
+        List<Object> args = new ArrayList<>(List.of(String.valueOf(ttl.toSeconds()), deadline(ttl)));
+        for (StoredReservation reservation : reservations) {
+            keys.addAll(itemKeys(reservation.reservationId(), reservation.productNumber()));
+            args.add(operation);
+            args.add(reservation.productNumber());
+            args.add(reservation.reservationId());
+            args.add(String.valueOf(reservation.quantity()));
+        }
+
+        List<?> raw = redisTemplate.execute(BATCH_SCRIPT, keys, args.toArray());
+        if (raw == null) {
+            throw new RuntimeException("Brak odpowiedzi Redis dla paczki rezerwacji");
+        }
+        return raw.stream()
+                .map(value -> ((Number) value).longValue())
+                .toList();
+    }
+
+    private static List<StoredReservation> toStoredReservations(List<?> raw) {
+        List<StoredReservation> claimed = new ArrayList<>();
+        if (raw == null) {
+            return claimed;
+        }
+        for (int i = 0; i + 2 < raw.size(); i += 3) {
+            claimed.add(new StoredReservation(
+                    raw.get(i).toString(),
+                    raw.get(i + 1).toString(),
+                    Integer.parseInt(raw.get(i + 2).toString())));
+        }
+        return claimed;
+    }
+
+    private static <T> RedisScript<T> script(String name, Class<T> resultType) {
+        return RedisScript.of(new ClassPathResource("scripts/" + name), resultType);
+    }
+}
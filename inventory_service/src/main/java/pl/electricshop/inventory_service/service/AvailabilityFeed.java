@@ -0,0 +1,147 @@
+package pl.electricshop.inventory_service.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Zbiorcze powiadomienia o zmianach dostępności dla obserwatorów (gRPC WatchAvailability).
+ * <p>
+ * SKU zmienione przez {@link InventoryService} trafiają do lokalnego zbioru i co tick
+ * (1000 / {@code inventory.availability.max-updates-per-second} ms) są rozgłaszane jedną wiadomością
+ * na kanale Redis {@value #CHANNEL}, więc widzą je obserwatorzy podłączeni do każdej instancji.
+ * Odebrane SKU są łączone do następnego ticku - jeden odczyt stanu na SKU niezależnie od liczby zmian
+ * i obserwatorów, a obserwator dostaje najwyżej N aktualizacji SKU na sekundę.
+ */
+@Component
+@Slf4j
+public class AvailabilityFeed implements MessageListener {
+
+    public static final String CHANNEL = "inventory:availability";
+
+    private static final String SEPARATOR = "\n";
+
+    /**
+     * Odbiorca zmian - dostaje tylko SKU z {@link #watchedProducts()}.
+     */
+    public interface Watcher {
+
+        Set<String> watchedProducts();
+
+        void onAvailability(Map<String, Integer> quantities);
+    }
+
+    private final ReservationEngine reservationEngine;
+    private final RedisTemplate<String, String> redisTemplate;
+
+    private final Set<String> changed = ConcurrentHashMap.newKeySet();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final Set<Watcher> watchers = ConcurrentHashMap.newKeySet();
+
+    public AvailabilityFeed(RedisMessageListenerContainer listenerContainer,
+                            ReservationEngine reservationEngine,
+                            RedisTemplate<String, String> redisTemplate) {
+        this.reservationEngine = reservationEngine;
+        this.redisTemplate = redisTemplate;
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    /**
+     * Zgłasza zmianę stanu produktu. W transakcji - dopiero po commicie, żeby obserwator nie odczytał starej wartości.
+     */
+    public void changed(String productNumber) {
+        changed(List.of(productNumber));
+    }
+
+    public void changed(Collection<String> productNumbers) {
+        if (productNumbers.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<String> afterCommit = List.copyOf(productNumbers);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    changed.addAll(afterCommit);
+                }
+            });
+        } else {
+            changed.addAll(productNumbers);
+        }
+    }
+
+    public void register(Watcher watcher) {
+        watchers.add(watcher);
+    }
+
+    public void unregister(Watcher watcher) {
+        watchers.remove(watcher);
+    }
+
+    public Map<String, Integer> currentQuantities(Collection<String> productNumbers) {
+        return reservationEngine.getAvailableQuantities(productNumbers);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        pending.addAll(Arrays.asList(new String(message.getBody(), StandardCharsets.UTF_8).split(SEPARATOR)));
+    }
+
+    @Scheduled(fixedDelayString = "#{1000 / ${inventory.availability.max-updates-per-second:5}}")
+    public void tick() {
+        if (!changed.isEmpty()) {
+            redisTemplate.convertAndSend(CHANNEL, String.join(SEPARATOR, drain(changed)));
+        }
+        if (!pending.isEmpty()) {
+            dispatch(drain(pending));
+        }
+    }
+
+    private void dispatch(List<String> productNumbers) {
+        Set<String> watched = new HashSet<>();
+        watchers.forEach(watcher -> watched.addAll(watcher.watchedProducts()));
+        productNumbers.retainAll(watched);
+        if (productNumbers.isEmpty()) {
+            return;
+        }
+
+        Map<String, Integer> quantities = reservationEngine.getAvailableQuantities(productNumbers);
+        for (Watcher watcher : watchers) {
+            Map<String, Integer> subset = new HashMap<>();
+            watcher.watchedProducts().forEach(productNumber -> {
+                Integer quantity = quantities.get(productNumber);
+                if (quantity != null) {
+                    subset.put(productNumber, quantity);
+                }
+            });
+            if (subset.isEmpty()) {
+                continue;
+            }
+            try {
+                watcher.onAvailability(subset);
+            } catch (Exception e) {
+                log.warn("Nie udało się wysłać zmian dostępności do obserwatora: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static List<String> drain(Set<String> source) {
+        List<String> drained = new ArrayList<>();
+        for (Iterator<String> iterator = source.iterator(); iterator.hasNext(); ) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+        return drained;
+    }
+}
@@ -0,0 +1,59 @@
+package pl.electricshop.inventory_service.service;
+
+import jakarta.transaction.Transactional;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pl.electricshop.common.idempotency.ProcessedEventLedger;
+import pl.electricshop.inventory_service.repository.ProcessedEventRepository;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rejestr przetworzonych eventów Kafka listenerów inventory - ponowne dostarczenie nie stosuje zmian stanu
+ * drugi raz. Rejestr i retencja w {@link ProcessedEventLedger}, tu konfiguracja i rekordy wsadowe.
+ */
+@Component
+public class IdempotencyLedger extends ProcessedEventLedger {
+
+    public IdempotencyLedger(ProcessedEventRepository processedEventRepository,
+                             @Value("${inventory.idempotency.retention-days:7}") int retentionDays) {
+        super(processedEventRepository, retentionDays);
+    }
+
+    /**
+     * Rejestruje rekordy w transakcji wywołującego i zwraca wartości tych, których grupa jeszcze nie przetworzyła
+     * (w kolejności rekordów). Rekordy bez wartości (błąd deserializacji) są pomijane.
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public <T> List<T> claim(String consumerGroup, List<ConsumerRecord<String, T>> records) {
+        Map<String, T> byEventId = new LinkedHashMap<>();
+        records.stream()
+                .filter(record -> record.value() != null)
+                .forEach(record -> byEventId.put(eventId(record), record.value()));
+
+        Set<String> claimed = claimIds(consumerGroup, byEventId.keySet());
+        List<T> fresh = new ArrayList<>(claimed.size());
+        byEventId.forEach((eventId, value) -> {
+            if (claimed.contains(eventId)) {
+                fresh.add(value);
+            }
+        });
+        return fresh;
+    }
+
+    public static String eventId(ConsumerRecord<?, ?> record) {
+        return eventId(record.topic(), record.partition(), record.offset());
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.idempotency.cleanup-interval-ms:3600000}",
+            initialDelayString = "${inventory.idempotency.cleanup-interval-ms:3600000}")
+    public void cleanup() {
+        purgeExpired();
+    }
+}
@@ -3,62 +3,56 @@ package pl.electricshop.inventory_service.service;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import pl.electricshop.common.events.payment.OrderFailedEvent;
 import pl.electricshop.common.events.payment.OrderPlacedEvent;
 import pl.electricshop.common.events.product.ProductEvent;
+import pl.electricshop.common.events.product.ProductUpdatedEvent;
+import pl.electricshop.inventory_service.config.KafkaConfig;
 import pl.electricshop.inventory_service.model.Inventory;
 import pl.electricshop.inventory_service.model.api.ProductReservationDTO;
+import pl.electricshop.inventory_service.model.api.ReservationItemResult;
 import pl.electricshop.inventory_service.repository.InventoryRepository;
+import pl.electricshop.inventory_service.repository.ReservationStore;
+import pl.electricshop.inventory_service.repository.ReservationStore.StoredReservation;
 
-import java.time.Duration;
-import java.util.List;
-import java.util.Optional;
-import java.util.Set;
-import java.util.UUID;
+import java.util.*;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class InventoryService {
 
+    private static final String CONSUMER_GROUP = "inventory-service-group";
+
     private final InventoryRepository inventoryRepository;
-    private final RedisTemplate<String, String> redisTemplate;
+    private final ReservationEngine reservationEngine;
+    private final ReservationStore reservationStore;
+    private final AvailabilityFeed availabilityFeed;
+    private final IdempotencyLedger idempotencyLedger;
+    private final ProductNumberFilter productNumberFilter;
 
-    private static final Duration RESERVATION_TTL = Duration.ofMinutes(15);
+    @Value("${inventory.reservation.cleanup-batch-size:500}")
+    private int cleanupBatchSize;
 
     /**
      * Tworzy tymczasową rezerwację produktu.
-     * Klucz Redis: "reservation:{userId}:{productNumber}" -> quantity
+     * Pozycja w pakiecie rezerwacji użytkownika: "reservation:{userId}" -> {productNumber: quantity}
      *
      * @return reservationId (format: "{userId}:{productNumber}") lub null jeśli brak dostępności
      */
-    @Transactional
     public String createTemporaryReservation(String userId, String productNumber, int quantity) {
-        Inventory inventory = inventoryRepository.findByProductNumber(productNumber)
-                .orElseThrow(() -> new RuntimeException("Produkt nie istnieje w magazynie: " + productNumber));
-
-        // Sprawdź czy jest wystarczająca ilość
-        if (inventory.getAvailableQuantity() < quantity) {
-            log.warn("Niewystarczająca ilość produktu {}. Dostępne: {}, żądane: {}",
-                    productNumber, inventory.getAvailableQuantity(), quantity);
-            return null;
+        if (!productNumberFilter.mightExist(productNumber)) {
+            throw new RuntimeException("Produkt nie istnieje w magazynie: " + productNumber);
+        }
+        String reservationId = reservationEngine.reserve(userId, productNumber, quantity);
+        if (reservationId != null) {
+            availabilityFeed.changed(productNumber);
         }
-
-        // Zaktualizuj stan magazynowy
-        inventory.setAvailableQuantity(inventory.getAvailableQuantity() - quantity);
-        inventory.setReservedQuantity(inventory.getReservedQuantity() + quantity);
-        inventoryRepository.save(inventory);
-
-        // Zapisz rezerwację w Redis z TTL
-        String reservationId = userId + ":" + productNumber;
-        String redisKey = "reservation:" + reservationId;
-        redisTemplate.opsForValue().set(redisKey, String.valueOf(quantity), RESERVATION_TTL);
-
-        log.info("Utworzono rezerwację: {} dla {} szt. produktu {}", reservationId, quantity, productNumber);
         return reservationId;
     }
 
@@ -66,24 +60,17 @@ public class InventoryService {
      * Sprawdza dostępną ilość produktu.
      */
     public int getAvailableQuantity(String productNumber) {
-        return inventoryRepository.findByProductNumber(productNumber)
-                .map(Inventory::getAvailableQuantity)
-                .orElse(0);
+        if (!productNumberFilter.mightExist(productNumber)) {
+            return 0;
+        }
+        return reservationEngine.getAvailableQuantity(productNumber);
     }
 
     /**
      * Sprawdza czy produkt jest dostępny w podanej ilości.
      */
     public boolean checkProductAvailability(String productNumber, int requiredQuantity) {
-        Inventory inventory = inventoryRepository.findByProductNumber(productNumber)
-                .orElse(null);
-
-        if (inventory == null) {
-            log.warn("Produkt {} nie istnieje w magazynie", productNumber);
-            return false;
-        }
-
-        return inventory.getAvailableQuantity() >= requiredQuantity;
+        return getAvailableQuantity(productNumber) >= requiredQuantity;
     }
 
     /**
@@ -91,129 +78,192 @@ public class InventoryService {
      *
      * @param reservationId format: "{userId}:{productNumber}"
      */
-    @Transactional
     public ProductReservationDTO cancelReservation(String reservationId) {
-        String redisKey = "reservation:" + reservationId;
-        String quantityStr = redisTemplate.opsForValue().get(redisKey);
+        ProductReservationDTO cancelled = reservationEngine.cancel(reservationId);
+        availabilityFeed.changed(cancelled.productNumber());
+        return cancelled;
+    }
 
-        if (quantityStr == null) {
-            log.warn("Brak rezerwacji do anulowania: {}", reservationId);
-            throw new RuntimeException("Rezerwacja nie istnieje lub wygasła: " + reservationId);
+    /**
+     * Rezerwuje wiele produktów w jednej transakcji. SKU odrzucone przez {@link ProductNumberFilter}
+     * nie trafiają do silnika rezerwacji - przy {@code allOrNothing} cała paczka kończy się bez zapisu.
+     *
+     * @param items productNumber -> ilość
+     */
+    public List<ReservationItemResult> reserveProducts(String userId, Map<String, Integer> items, boolean allOrNothing) {
+        Map<String, Integer> known = new LinkedHashMap<>(items);
+        known.keySet().removeIf(productNumber -> !productNumberFilter.mightExist(productNumber));
+        if (known.size() == items.size()) {
+            return notifyChanged(reservationEngine.reserveAll(userId, items, allOrNothing));
         }
 
-        int quantity = Integer.parseInt(quantityStr);
-
-        // Wyciągnij productNumber z reservationId (format: "userId:productNumber")
-        String[] parts = reservationId.split(":");
-        if (parts.length < 2) {
-            throw new RuntimeException("Nieprawidłowy format reservationId: " + reservationId);
+        Map<String, ReservationItemResult> reserved = new HashMap<>();
+        if (!allOrNothing && !known.isEmpty()) {
+            notifyChanged(reservationEngine.reserveAll(userId, known, false))
+                    .forEach(result -> reserved.put(result.productNumber(), result));
         }
-        String userId = parts[0];
-        String productNumber = parts[1];
-
-        // Przywróć dostępność w magazynie
-        Inventory inventory = inventoryRepository.findByProductNumber(productNumber)
-                .orElseThrow(() -> new RuntimeException("Produkt nie istnieje: " + productNumber));
+        List<ReservationItemResult> results = new ArrayList<>(items.size());
+        for (String productNumber : items.keySet()) {
+            String reservationId = userId + ":" + productNumber;
+            if (reserved.containsKey(productNumber)) {
+                results.add(reserved.get(productNumber));
+            } else if (known.containsKey(productNumber)) {
+                results.add(ReservationItemResult.failed(productNumber, reservationId,
+                        "Nie zarezerwowano - inna pozycja jest niedostępna"));
+            } else {
+                results.add(ReservationItemResult.failed(productNumber, reservationId, "Produkt nie istnieje w magazynie"));
+            }
+        }
+        return results;
+    }
 
-        inventory.setAvailableQuantity(inventory.getAvailableQuantity() + quantity);
-        inventory.setReservedQuantity(Math.max(0, inventory.getReservedQuantity() - quantity));
-        inventoryRepository.save(inventory);
+    /**
+     * Anuluje wiele rezerwacji (np. przy czyszczeniu koszyka).
+     */
+    public List<ReservationItemResult> cancelReservations(List<String> reservationIds) {
+        return notifyChanged(reservationEngine.cancelAll(reservationIds));
+    }
 
-        // Usuń rezerwację z Redis
-        redisTemplate.delete(redisKey);
+    /**
+     * @param quantities reservationId -> nowa ilość
+     */
+    public List<ReservationItemResult> updateReservations(Map<String, Integer> quantities, boolean allOrNothing) {
+        return notifyChanged(reservationEngine.updateAll(quantities, allOrNothing));
+    }
 
-        log.info("Anulowano rezerwację: {} - przywrócono {} szt. produktu {}", reservationId, quantity, productNumber);
-        return new ProductReservationDTO(productNumber, quantity, UUID.fromString(userId));
+    /**
+     * Przedłuża wszystkie rezerwacje użytkownika (cały koszyk) jednym zapisem pakietu.
+     *
+     * @return liczba przedłużonych pozycji (0 - brak żywych rezerwacji)
+     */
+    public int extendReservations(String userId) {
+        return reservationStore.extend(userId, ReservationEngine.RESERVATION_TTL);
     }
 
     /**
-     * Kafka listener - obsługa dodania nowego produktu.
+     * Zwalnia wszystkie rezerwacje użytkownika - pakiet przejmowany jest jednym skryptem,
+     * stan wraca do available jedną operacją na SKU.
+     *
+     * @return zwolnione rezerwacje
      */
-    @KafkaListener(topics = "product-add-topic", groupId = "inventory-service-group")
-    @Transactional
-    public void handleProductAddEvent(ProductEvent event) {
-        log.info("Otrzymano event dodania produktu: {}", event);
-
-        String productNumber = event.productNumber();
-        int quantity = event.quantity();
-
-        // Sprawdź czy produkt już istnieje
-        Optional<Inventory> existing = inventoryRepository.findByProductNumber(productNumber);
-        if (existing.isPresent()) {
-            log.warn("Produkt {} już istnieje w magazynie - aktualizuję ilość", productNumber);
-            Inventory inventory = existing.get();
-            inventory.setAvailableQuantity(inventory.getAvailableQuantity() + quantity);
-            inventoryRepository.save(inventory);
-            return;
+    public List<StoredReservation> releaseReservations(String userId) {
+        List<StoredReservation> released = reservationStore.claimBundle(userId);
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        released.forEach(reservation -> quantities.merge(reservation.productNumber(), reservation.quantity(), Integer::sum));
+        if (!quantities.isEmpty()) {
+            reservationEngine.releaseReserved(quantities);
+            availabilityFeed.changed(quantities.keySet());
         }
+        log.info("Zwolniono {} rezerwacji użytkownika {}", released.size(), userId);
+        return released;
+    }
 
-        // Utwórz nowy rekord inventory
-        Inventory inventory = new Inventory();
-        inventory.setProductNumber(productNumber);
-        inventory.setAvailableQuantity(quantity);
-        inventory.setReservedQuantity(0);
-        inventoryRepository.save(inventory);
-
-        log.info("Utworzono inventory dla produktu {} z ilością {}", productNumber, quantity);
+    private List<ReservationItemResult> notifyChanged(List<ReservationItemResult> results) {
+        availabilityFeed.changed(results.stream()
+                .filter(ReservationItemResult::success)
+                .map(ReservationItemResult::productNumber)
+                .distinct()
+                .toList());
+        return results;
     }
 
     /**
-     * Kafka listener - obsługa aktualizacji produktu.
+     * Kafka listener - obsługa dodania nowych produktów (cała paczka z poll-a naraz).
+     * Ilości tego samego SKU są sumowane i zapisywane jednym INSERT ... ON CONFLICT -
+     * produkt istniejący dostaje dostawę, nowy jest tworzony.
+     * Eventy już przetworzone (ponowne dostarczenie) pomija {@link IdempotencyLedger} - dotyczy wszystkich listenerów.
      */
-    @KafkaListener(topics = "product-update-topic", groupId = "inventory-service-group")
+    @KafkaListener(topics = "product-add-topic", groupId = CONSUMER_GROUP,
+            containerFactory = KafkaConfig.BATCH_LISTENER_FACTORY)
     @Transactional
-    public void handleProductUpdateEvent(ProductEvent event) {
-        log.info("Otrzymano event aktualizacji produktu: {}", event);
-
-        String productNumber = event.productNumber();
-        int newQuantity = event.quantity();
+    public void handleProductAddEvents(List<ConsumerRecord<String, ProductEvent>> records) {
+        log.info("Otrzymano {} eventów dodania produktu", records.size());
 
-        Inventory inventory = inventoryRepository.findByProductNumber(productNumber)
-                .orElseThrow(() -> new RuntimeException("Produkt nie istnieje w magazynie: " + productNumber));
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        idempotencyLedger.claim(CONSUMER_GROUP, records)
+                .forEach(event -> quantities.merge(event.productNumber(), event.quantity(), Integer::sum));
 
-        inventory.setAvailableQuantity(newQuantity);
-        inventoryRepository.save(inventory);
+        reservationEngine.addStock(quantities);
+        availabilityFeed.changed(quantities.keySet());
+        productNumberFilter.added(quantities.keySet());
 
-        log.info("Zaktualizowano inventory dla produktu {} - nowa ilość: {}", productNumber, newQuantity);
+        log.info("Zapisano dostawy dla {} produktów", quantities.size());
     }
 
     /**
-     * Kafka listener - obsługa usunięcia produktu - Płatność przeszła pomyślnie.
+     * Kafka listener - obsługa aktualizacji produktów. Dla SKU wygrywa ostatni event w paczce.
      */
-    @KafkaListener(topics = "order-placed-topic", groupId = "inventory-service-group")
+    @KafkaListener(topics = "product-update-topic", groupId = CONSUMER_GROUP,
+            containerFactory = KafkaConfig.BATCH_LISTENER_FACTORY)
     @Transactional
-    public void handleOrderPlacedEvent(OrderPlacedEvent event) {
-        log.info("Otrzymano event złożenia zamówienia: {}", event);
+    public void handleProductUpdateEvents(List<ConsumerRecord<String, ProductUpdatedEvent>> records) {
+        log.info("Otrzymano {} eventów aktualizacji produktu", records.size());
 
-        event.getItems().forEach(
-                item -> {
-                    String productNumber = item.getProductNumber();
-                    int quantity = item.getQuantity();
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        idempotencyLedger.claim(CONSUMER_GROUP, records)
+                .forEach(event -> quantities.put(event.productNumber(), event.quantity()));
 
-                    Inventory inventory = inventoryRepository.findByProductNumber(productNumber)
-                            .orElseThrow(() -> new RuntimeException("Produkt nie istnieje w magazynie: " + productNumber));
+        reservationEngine.setAvailable(quantities);
+        availabilityFeed.changed(quantities.keySet());
 
-                    // Zmniejsz zarezerwowaną ilość
-                    inventory.setReservedQuantity(Math.max(0, inventory.getReservedQuantity() - quantity));
-                    inventoryRepository.save(inventory);
+        log.info("Zaktualizowano dostępną ilość {} produktów", quantities.size());
+    }
 
-                    log.info("Zamówienie zrealizowane - zaktualizowano inventory dla produktu {}: zarezerwowana ilość zmniejszona o {}",
-                            productNumber, quantity);
-                }
+    /**
+     * Kafka listener - zamówienia opłacone: zarezerwowany towar opuszcza magazyn.
+     * Pozycje wszystkich zamówień z paczki sumowane per SKU.
+     */
+    @KafkaListener(topics = "order-placed-topic", groupId = CONSUMER_GROUP,
+            containerFactory = KafkaConfig.BATCH_LISTENER_FACTORY)
+    @Transactional
+    public void handleOrderPlacedEvents(List<ConsumerRecord<String, OrderPlacedEvent>> records) {
+        log.info("Otrzymano {} eventów złożenia zamówienia", records.size());
+
+        List<OrderPlacedEvent> placed = idempotencyLedger.claim(CONSUMER_GROUP, records);
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        placed.stream()
+                .flatMap(event -> event.getItems().stream())
+                .forEach(item -> quantities.merge(item.getProductNumber(), item.getQuantity(), Integer::sum));
+
+        // Zmniejsz zarezerwowaną ilość
+        reservationEngine.confirmReserved(quantities);
+
+        // Rezerwacje zamówionego koszyka są już rozliczone - przejmujemy pakiety, żeby ich późniejsze
+        // wygaśnięcie nie oddało towaru do available drugi raz. Zwalniamy tylko nadwyżkę ponad zamówienie.
+        Map<String, Map<String, Integer>> orderedByUser = new HashMap<>();
+        placed.stream()
+                .filter(event -> event.getUserId() != null)
+                .forEach(event -> event.getItems().forEach(item -> orderedByUser
+                        .computeIfAbsent(event.getUserId(), userId -> new HashMap<>())
+                        .merge(item.getProductNumber(), item.getQuantity(), Integer::sum)));
+        Map<String, Integer> surplus = new LinkedHashMap<>();
+        orderedByUser.forEach((userId, ordered) -> reservationStore.claimBundle(userId).forEach(reservation -> {
+            int extra = reservation.quantity() - ordered.getOrDefault(reservation.productNumber(), 0);
+            if (extra > 0) {
+                surplus.merge(reservation.productNumber(), extra, Integer::sum);
+            }
+        }));
+        if (!surplus.isEmpty()) {
+            reservationEngine.releaseReserved(surplus);
+            availabilityFeed.changed(surplus.keySet());
+        }
 
-        );
+        log.info("Zamówienia zrealizowane - zmniejszono zarezerwowaną ilość {} produktów", quantities.size());
     }
 
-    @KafkaListener(topics = "order-failed-topic", groupId = "inventory-service-group")
+    @KafkaListener(topics = "order-failed-topic", groupId = CONSUMER_GROUP,
+            containerFactory = KafkaConfig.BATCH_LISTENER_FACTORY)
     @Transactional
-    public void handleOrderFailed(OrderFailedEvent event) {
-        log.info("Odebrano OrderFailedEvent dla zamówienia {}. Zwalniam rezerwację.", event);
-
-        event.items().forEach(
-                item -> {
-                    inventoryRepository.releaseStock(item.getProductNumber(), item.getQuantity());
-                }
-        );
+    public void handleOrdersFailed(List<ConsumerRecord<String, OrderFailedEvent>> records) {
+        log.info("Odebrano {} eventów OrderFailedEvent. Zwalniam rezerwacje.", records.size());
+
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        idempotencyLedger.claim(CONSUMER_GROUP, records).stream()
+                .flatMap(event -> event.items().stream())
+                .forEach(item -> quantities.merge(item.getProductNumber(), item.getQuantity(), Integer::sum));
+
+        reservationEngine.releaseReserved(quantities);
+        availabilityFeed.changed(quantities.keySet());
     }
 
     /**
@@ -225,124 +275,56 @@ public class InventoryService {
      * @param newQuantity nowa ilość do zarezerwowania
      * @return faktycznie zarezerwowana ilość lub -1 jeśli błąd
      */
-    @Transactional
     public int updateReservation(String reservationId, int newQuantity) {
-        String redisKey = "reservation:" + reservationId;
-        String currentQuantityStr = redisTemplate.opsForValue().get(redisKey);
-
-        if (currentQuantityStr == null) {
-            log.warn("Brak rezerwacji do aktualizacji: {}", reservationId);
-            return -1;
+        int result = reservationEngine.update(reservationId, newQuantity);
+        if (result >= 0) {
+            String[] parts = reservationId.split(":");
+            availabilityFeed.changed(parts[parts.length - 1]);
         }
-
-        int currentQuantity = Integer.parseInt(currentQuantityStr);
-
-        // Wyciągnij productNumber z reservationId (format: "userId:productNumber")
-        String[] parts = reservationId.split(":");
-        if (parts.length < 2) {
-            log.error("Nieprawidłowy format reservationId: {}", reservationId);
-            return -1;
-        }
-        String productNumber = parts[1];
-
-        int diff = newQuantity - currentQuantity;
-
-        if (diff == 0) {
-            log.info("Ilość rezerwacji bez zmian: {}", reservationId);
-            return currentQuantity;
-        }
-
-        Inventory inventory = inventoryRepository.findByProductNumber(productNumber)
-                .orElseThrow(() -> new RuntimeException("Produkt nie istnieje: " + productNumber));
-
-        if (diff > 0) {
-            // Trzeba zarezerwować więcej
-            if (inventory.getAvailableQuantity() < diff) {
-                log.warn("Niewystarczająca ilość do zwiększenia rezerwacji {}. Dostępne: {}, potrzebne: {}",
-                        reservationId, inventory.getAvailableQuantity(), diff);
-                return -1;
-            }
-            inventory.setAvailableQuantity(inventory.getAvailableQuantity() - diff);
-            inventory.setReservedQuantity(inventory.getReservedQuantity() + diff);
-        } else {
-            // Trzeba zwolnić część rezerwacji (diff jest ujemny)
-            int toRelease = Math.abs(diff);
-            inventory.setAvailableQuantity(inventory.getAvailableQuantity() + toRelease);
-            inventory.setReservedQuantity(Math.max(0, inventory.getReservedQuantity() - toRelease));
-        }
-
-        inventoryRepository.save(inventory);
-
-        // Aktualizuj Redis z nowym TTL
-        redisTemplate.opsForValue().set(redisKey, String.valueOf(newQuantity), RESERVATION_TTL);
-
-        log.info("Zaktualizowano rezerwację {}: {} -> {} szt.", reservationId, currentQuantity, newQuantity);
-        return newQuantity;
+        return result;
     }
 
     /**
-     * Scheduled job - czyści "osierocone" rezerwacje w bazie danych.
-     * Gdy rezerwacja wygaśnie w Redis (po 15 min), baza nadal ma reservedQuantity > 0.
-     * Ten job sprawdza produkty z rezerwacjami i weryfikuje czy istnieją odpowiadające klucze w Redis.
-     * Jeśli nie - zwalnia reservedQuantity i przywraca availableQuantity.
-     *
-     * Uruchamiany co minutę.
+     * Scheduled job - zwalnia stan wygasłych rezerwacji, których nie obsłużył {@link ReservationExpiryListener}.
+     * Czyta z indeksu wygaśnięć tylko rezerwacje z minionym terminem (paczkami po
+     * {@code inventory.reservation.cleanup-batch-size}) i zwalnia ich ilości - jedną operacją na SKU w paczce.
+     * Koszt zależy od liczby wygasłych rezerwacji, a nie od wielkości katalogu.
      */
-    @Scheduled(fixedRate = 60000)
-    @Transactional
+    @Scheduled(fixedDelayString = "${inventory.reservation.cleanup-interval-ms:300000}")
     public void cleanupExpiredReservations() {
-        log.debug("Rozpoczynam cleanup wygasłych rezerwacji...");
+        List<StoredReservation> expired;
+        do {
+            expired = reservationStore.claimExpired(cleanupBatchSize);
 
-        // Pobierz wszystkie produkty z niezerową rezerwacją
-        List<Inventory> productsWithReservations = inventoryRepository.findAllWithReservations();
+            Map<String, Integer> releasedBySku = new HashMap<>();
+            expired.forEach(reservation -> releasedBySku.merge(
+                    reservation.productNumber(), reservation.quantity(), Integer::sum));
 
-        if (productsWithReservations.isEmpty()) {
-            log.debug("Brak produktów z aktywnymi rezerwacjami.");
-            return;
-        }
+            if (!releasedBySku.isEmpty()) {
+                log.info("Wygasłe rezerwacje: zwalniam {}", releasedBySku);
+                reservationEngine.releaseReserved(releasedBySku);
+            }
+            availabilityFeed.changed(releasedBySku.keySet());
+        } while (expired.size() == cleanupBatchSize);
+    }
 
-        for (Inventory inventory : productsWithReservations) {
+    /**
+     * Scheduled job - siatka bezpieczeństwa dla licznika reserved.
+     * Porównuje go z sumą żywych rezerwacji z indeksu SKU (bez KEYS po keyspace) i zwalnia nadwyżkę,
+     * np. gdy instancja padła między przejęciem wygasłej rezerwacji a zwolnieniem stanu.
+     */
+    @Scheduled(fixedDelayString = "${inventory.reservation.reconcile-interval-ms:1800000}")
+    public void reconcileReservedQuantities() {
+        for (Inventory inventory : inventoryRepository.findAllWithReservations()) {
             String productNumber = inventory.getProductNumber();
+            int liveReserved = reservationStore.liveQuantity(productNumber);
 
-            // Szukaj wszystkich kluczy rezerwacji dla tego produktu
-            Set<String> keys = redisTemplate.keys("reservation:*:" + productNumber);
-
-            if (keys == null || keys.isEmpty()) {
-                // Brak aktywnych rezerwacji w Redis - przywróć stock
-                int orphanedQuantity = inventory.getReservedQuantity();
-                if (orphanedQuantity > 0) {
-                    log.info("Znaleziono osieroconą rezerwację dla produktu {}: {} szt. Przywracam dostępność.",
-                            productNumber, orphanedQuantity);
-
-                    inventory.setAvailableQuantity(inventory.getAvailableQuantity() + orphanedQuantity);
-                    inventory.setReservedQuantity(0);
-                    inventoryRepository.save(inventory);
-                }
-            } else {
-                // Są aktywne rezerwacje - oblicz sumę zarezerwowanych ilości
-                int totalReservedInRedis = 0;
-                for (String key : keys) {
-                    String quantityStr = redisTemplate.opsForValue().get(key);
-                    if (quantityStr != null) {
-                        totalReservedInRedis += Integer.parseInt(quantityStr);
-                    }
-                }
-
-                // Jeśli suma w Redis jest mniejsza niż w bazie - zwolnij różnicę
-                int dbReserved = inventory.getReservedQuantity();
-                if (totalReservedInRedis < dbReserved) {
-                    int diff = dbReserved - totalReservedInRedis;
-                    log.info("Rozbieżność rezerwacji dla produktu {}: DB={}, Redis={}. Przywracam {} szt.",
-                            productNumber, dbReserved, totalReservedInRedis, diff);
-
-                    inventory.setAvailableQuantity(inventory.getAvailableQuantity() + diff);
-                    inventory.setReservedQuantity(totalReservedInRedis);
-                    inventoryRepository.save(inventory);
-                }
+            int released = reservationEngine.reconcileReserved(productNumber, liveReserved);
+            if (released > 0) {
+                availabilityFeed.changed(productNumber);
+                log.info("Rozbieżność rezerwacji dla produktu {}: żywe rezerwacje={}. Przywrócono {} szt.",
+                        productNumber, liveReserved, released);
             }
         }
-
-        log.debug("Cleanup wygasłych rezerwacji zakończony.");
     }
 }
-
@@ -0,0 +1,148 @@
+package pl.electricshop.inventory_service.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.PartitionOffset;
+import org.springframework.kafka.annotation.TopicPartition;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import pl.electricshop.common.events.product.ProductUpdatedEvent;
+import pl.electricshop.common.util.BloomFilter;
+import pl.electricshop.inventory_service.repository.InventoryRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Filtr Blooma SKU obecnych w magazynie - rezerwacje i zapytania o nieznane SKU kończą się bez zapytań
+ * do bazy i Redis.
+ * <p>
+ * Budowany przy starcie i co {@code inventory.sku-filter.rebuild-interval-ms} z tabeli inventory. Nowe SKU
+ * dopisują rekordy {@value #CATALOG_TOPIC} czytane przez każdą instancję (listener dostaw działa w grupie
+ * serwisu, więc widzi je tylko jedna), a instancja obsługująca dostawę - także
+ * {@link InventoryService#handleProductAddEvents} po commicie. SKU dopisane przed utworzeniem wiersza
+ * to tylko przepuszczenie do silnika rezerwacji, który odpowie "nie istnieje". W trakcie przebudowy
+ * nowe SKU trafiają do obu filtrów, a odczyt tabeli zaczyna się po wystawieniu nowego filtra - SKU
+ * zatwierdzone w tym czasie są albo w odczycie, albo dopisane przez listener.
+ * Dopóki pierwsza przebudowa się nie uda, filtr przepuszcza wszystko.
+ */
+@Component
+@Slf4j
+public class ProductNumberFilter {
+
+    static final String CATALOG_TOPIC = "product-catalog-topic";
+
+    private final InventoryRepository inventoryRepository;
+    private final Counter rejected;
+
+    @Value("${inventory.sku-filter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${inventory.sku-filter.expected-products:100000}")
+    private long expectedProducts;
+
+    @Value("${inventory.sku-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    private volatile BloomFilter active;
+    private volatile BloomFilter building;
+
+    public ProductNumberFilter(InventoryRepository inventoryRepository, MeterRegistry meterRegistry) {
+        this.inventoryRepository = inventoryRepository;
+        this.rejected = Counter.builder("inventory.sku.filter.rejected").register(meterRegistry);
+    }
+
+    /**
+     * @return false tylko dla SKU, którego na pewno nie ma w magazynie
+     */
+    public boolean mightExist(String productNumber) {
+        BloomFilter filter = active;
+        if (filter == null || filter.mightContain(productNumber)) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Dopisuje SKU - w transakcji dopiero po jej commicie (wycofany produkt nie trafia do filtra).
+     */
+    public void added(Collection<String> productNumbers) {
+        if (productNumbers.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<String> afterCommit = List.copyOf(productNumbers);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    afterCommit.forEach(ProductNumberFilter.this::put);
+                }
+            });
+        } else {
+            productNumbers.forEach(this::put);
+        }
+    }
+
+    /**
+     * Rekordy katalogu od bieżącego końca topicu - partycje przypisane ręcznie i własna grupa instancji,
+     * więc każda instancja dostaje każdy nowy produkt.
+     */
+    @KafkaListener(id = "inventory-sku-filter", groupId = "inventory-sku-filter-${random.uuid}",
+            autoStartup = "${inventory.sku-filter.enabled:true}",
+            topicPartitions = @TopicPartition(topic = CATALOG_TOPIC,
+                    partitionOffsets = @PartitionOffset(partition = "*", initialOffset = "-1")))
+    public void onCatalogRecord(ConsumerRecord<String, ProductUpdatedEvent> record) {
+        if (record.value() != null) {
+            put(record.key());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.sku-filter.rebuild-interval-ms:3600000}",
+            initialDelayString = "${inventory.sku-filter.rebuild-interval-ms:3600000}")
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            BloomFilter next = new BloomFilter(expectedProducts * 2, falsePositiveRate);
+            building = next;
+            List<String> productNumbers = inventoryRepository.findAllProductNumbers();
+            productNumbers.forEach(next::put);
+            if (productNumbers.size() > expectedProducts * 2) {
+                log.warn("Filtr SKU: {} produktów ponad rozmiar filtra ({}) - zwiększ inventory.sku-filter.expected-products",
+                        productNumbers.size(), expectedProducts * 2);
+            }
+            active = next;
+            log.info("Filtr SKU przebudowany: {} produktów, {} bitów", productNumbers.size(), next.bitSize());
+        } catch (RuntimeException e) {
+            log.warn("Nie udało się przebudować filtra SKU: {}", e.getMessage());
+        } finally {
+            building = null;
+        }
+    }
+
+    private void put(String productNumber) {
+        BloomFilter current = active;
+        if (current != null) {
+            current.put(productNumber);
+        }
+        BloomFilter next = building;
+        if (next != null) {
+            next.put(productNumber);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package pl.electricshop.inventory_service.service;
+
+import pl.electricshop.inventory_service.model.api.ProductReservationDTO;
+import pl.electricshop.inventory_service.model.api.ReservationItemResult;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Silnik rezerwacji - miejsce, w którym żyją liczniki available/reserved.
+ * Implementacja wybierana właściwością {@code inventory.reservation.mode}:
+ * <ul>
+ *     <li>{@code database} (domyślnie) - liczniki w Postgres, rezerwacje w Redis z TTL</li>
+ *     <li>{@code redis} - liczniki w Redis (skrypty Lua), write-behind do Postgres</li>
+ * </ul>
+ */
+public interface ReservationEngine {
+
+    Duration RESERVATION_TTL = Duration.ofMinutes(15);
+
+    /**
+     * @return reservationId (format: "{userId}:{productNumber}") lub null jeśli brak dostępności
+     */
+    String reserve(String userId, String productNumber, int quantity);
+
+    /**
+     * @param reservationId format: "{userId}:{productNumber}"
+     */
+    ProductReservationDTO cancel(String reservationId);
+
+    /**
+     * @return faktycznie zarezerwowana ilość lub -1 jeśli błąd
+     */
+    int update(String reservationId, int newQuantity);
+
+    /**
+     * Rezerwuje wiele produktów jednego użytkownika w jednej operacji.
+     *
+     * @param items        productNumber -> ilość (bez powtórzeń SKU)
+     * @param allOrNothing true - brak stanu dowolnej pozycji oznacza, że nic nie zostaje zarezerwowane
+     * @return wynik każdej pozycji, w kolejności {@code items}
+     */
+    List<ReservationItemResult> reserveAll(String userId, Map<String, Integer> items, boolean allOrNothing);
+
+    /**
+     * Anuluje wiele rezerwacji - każda pozycja niezależnie od pozostałych.
+     */
+    List<ReservationItemResult> cancelAll(List<String> reservationIds);
+
+    /**
+     * @param quantities   reservationId -> nowa ilość
+     * @param allOrNothing true - niepowodzenie dowolnej pozycji oznacza, że żadna rezerwacja się nie zmienia
+     */
+    List<ReservationItemResult> updateAll(Map<String, Integer> quantities, boolean allOrNothing);
+
+    int getAvailableQuantity(String productNumber);
+
+    /**
+     * Dostępne ilości wielu produktów jednym odczytem (produkty spoza magazynu mają 0).
+     */
+    Map<String, Integer> getAvailableQuantities(Collection<String> productNumbers);
+
+    /**
+     * Dostawa towaru: available += quantity, brakujące produkty są tworzone.
+     * Metody przyjmujące mapę productNumber -> ilość obsługują całą paczkę eventów naraz.
+     */
+    void addStock(Map<String, Integer> quantities);
+
+    /**
+     * Nadpisuje dostępną ilość (aktualizacja produktu).
+     */
+    void setAvailable(Map<String, Integer> quantities);
+
+    /**
+     * Zamówienie opłacone: reserved -= quantity (towar opuszcza magazyn).
+     */
+    void confirmReserved(Map<String, Integer> quantities);
+
+    /**
+     * Zwolnienie zarezerwowanego towaru: reserved -= quantity, available += quantity.
+     */
+    void releaseReserved(Map<String, Integer> quantities);
+
+    default void releaseReserved(String productNumber, int quantity) {
+        releaseReserved(Map.of(productNumber, quantity));
+    }
+
+    /**
+     * Uzgadnia licznik reserved z sumą żywych rezerwacji w Redis (siatka bezpieczeństwa).
+     *
+     * @return ilość przywrócona do available
+     */
+    int reconcileReserved(String productNumber, int liveReserved);
+}
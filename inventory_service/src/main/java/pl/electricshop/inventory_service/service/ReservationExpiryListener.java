@@ -0,0 +1,107 @@
+package pl.electricshop.inventory_service.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.listener.KeyspaceEventMessageListener;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import pl.electricshop.inventory_service.repository.ReservationStore;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Zwalnia stan rezerwacji w chwili wygaśnięcia jej klucza w Redis (zdarzenia keyspace {@code expired}).
+ * Wygaśnięcie pakietu {@code reservation:{userId}} przejmuje tylko pozycje tego użytkownika z minionym
+ * terminem (pozycje pakietu mają w indeksie jego termin), pozycja sprzed pakietów
+ * {@code reservation:{userId}:{sku}} jest przejmowana pojedynczo. Ilość wygasłej rezerwacji pozostaje w {@code reservations:quantity}
+ * (kopia "cień" bez TTL).
+ * Zdarzenie trafia do każdej instancji - zwalnia tylko ta, która przejmie rezerwację z indeksu
+ * wygaśnięć. {@link InventoryService#cleanupExpiredReservations()} pozostaje siatką bezpieczeństwa
+ * dla zdarzeń utraconych np. przy zerwanym połączeniu (pub/sub nie gwarantuje dostarczenia)
+ * albo gdy serwer nie ma włączonego {@code notify-keyspace-events}.
+ */
+@Component
+@ConditionalOnProperty(name = "inventory.reservation.expiry-listener.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class ReservationExpiryListener extends KeyspaceEventMessageListener {
+
+    private static final PatternTopic EXPIRED_EVENTS = new PatternTopic("__keyevent@*__:expired");
+
+    private final ReservationStore reservationStore;
+    private final ReservationEngine reservationEngine;
+    private final AvailabilityFeed availabilityFeed;
+    private final int claimLimit;
+
+    public ReservationExpiryListener(RedisMessageListenerContainer listenerContainer,
+                                     ReservationStore reservationStore,
+                                     ReservationEngine reservationEngine,
+                                     AvailabilityFeed availabilityFeed,
+                                     @Value("${inventory.reservation.cleanup-batch-size:500}") int claimLimit) {
+        super(listenerContainer);
+        this.reservationStore = reservationStore;
+        this.reservationEngine = reservationEngine;
+        this.availabilityFeed = availabilityFeed;
+        this.claimLimit = claimLimit;
+        // Bez CONFIG SET - managed Redis go blokuje, a nadpisanie zmieniłoby flagi innych klientów.
+        // notify-keyspace-events (co najmniej "Ex") ustawia konfiguracja serwera (docker-compose)
+        setKeyspaceNotificationsConfigParameter("");
+    }
+
+    @Override
+    protected void doRegister(RedisMessageListenerContainer container) {
+        container.addMessageListener(this, EXPIRED_EVENTS);
+    }
+
+    @Override
+    protected void doHandleMessage(Message message) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        if (!key.startsWith(ReservationStore.RESERVATION_KEY_PREFIX)) {
+            return;
+        }
+
+        String reservationId = key.substring(ReservationStore.RESERVATION_KEY_PREFIX.length());
+        int separator = reservationId.indexOf(':');
+        if (separator < 0) {
+            // Wygasł pakiet - jego pozycje przejmie ta instancja, która pierwsza zdejmie je z indeksu
+            try {
+                releaseBundle(reservationId);
+            } catch (Exception e) {
+                log.error("Błąd zwalniania wygasłego pakietu rezerwacji {}: {}", reservationId, e.getMessage());
+            }
+            return;
+        }
+        String productNumber = reservationId.substring(separator + 1);
+
+        try {
+            long quantity = reservationStore.remove(reservationId, productNumber);
+            if (quantity <= 0) {
+                // Przejęta przez inną instancję, anulowanie albo sweep
+                return;
+            }
+            reservationEngine.releaseReserved(productNumber, (int) quantity);
+            availabilityFeed.changed(productNumber);
+            log.info("Rezerwacja {} wygasła - zwolniono {} szt. produktu {}", reservationId, quantity, productNumber);
+        } catch (Exception e) {
+            log.error("Błąd zwalniania wygasłej rezerwacji {}: {}", reservationId, e.getMessage());
+        }
+    }
+
+    private void releaseBundle(String userId) {
+        List<ReservationStore.StoredReservation> claimed = reservationStore.claimExpiredBundle(userId, claimLimit);
+        if (claimed.isEmpty()) {
+            // Przejęte przez inną instancję albo sweep
+            return;
+        }
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        claimed.forEach(reservation -> quantities.merge(reservation.productNumber(), reservation.quantity(), Integer::sum));
+        reservationEngine.releaseReserved(quantities);
+        availabilityFeed.changed(quantities.keySet());
+        log.info("Pakiet rezerwacji {} wygasł - zwolniono {}", userId, quantities);
+    }
+}
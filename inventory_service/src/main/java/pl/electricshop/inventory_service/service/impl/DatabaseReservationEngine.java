@@ -0,0 +1,442 @@
+package pl.electricshop.inventory_service.service.impl;
+
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import pl.electricshop.inventory_service.model.Inventory;
+import pl.electricshop.inventory_service.model.api.ProductReservationDTO;
+import pl.electricshop.inventory_service.model.api.ReservationItemResult;
+import pl.electricshop.inventory_service.repository.InventoryBucketRepository;
+import pl.electricshop.inventory_service.repository.InventoryRepository;
+import pl.electricshop.inventory_service.repository.ReservationStore;
+import pl.electricshop.inventory_service.repository.ReservationStore.StoredReservation;
+import pl.electricshop.inventory_service.service.ReservationEngine;
+
+import java.util.*;
+
+/**
+ * Domyślny silnik rezerwacji - liczniki w Postgres zmieniane warunkowymi UPDATE,
+ * rezerwacje w Redis ({@link ReservationStore}): pakiet koszyka "reservation:{userId}" (HASH productNumber -> quantity,
+ * jeden TTL 15 min na koszyk) plus indeksy "reservations:expiry", "reservations:sku:{productNumber}"
+ * i "reservations:quantity". Identyfikator rezerwacji to nadal "{userId}:{productNumber}".
+ * Produkty w trybie flash-sale rezerwowane są w kubełkach ({@link ShardedStock}).
+ */
+@Service
+@ConditionalOnProperty(name = "inventory.reservation.mode", havingValue = "database", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class DatabaseReservationEngine implements ReservationEngine {
+
+    private static final int UPDATE_ATTEMPTS = 3;
+
+    private final InventoryRepository inventoryRepository;
+    private final ReservationStore reservationStore;
+    private final ShardedStock shardedStock;
+    private final InventoryBucketRepository bucketRepository;
+
+    @Override
+    @Transactional
+    public String reserve(String userId, String productNumber, int quantity) {
+        if (!reserveStock(productNumber, quantity)) {
+            // Ścieżka błędu - dopiero tu sprawdzamy, czy produkt w ogóle istnieje
+            if (!inventoryRepository.existsByProductNumber(productNumber)) {
+                throw new RuntimeException("Produkt nie istnieje w magazynie: " + productNumber);
+            }
+            log.warn("Niewystarczająca ilość produktu {} do rezerwacji {} szt.", productNumber, quantity);
+            return null;
+        }
+
+        // Zapisz rezerwację w Redis z TTL - kolejne dodanie tego samego produktu zwiększa ilość
+        String reservationId = userId + ":" + productNumber;
+        reservationStore.add(reservationId, productNumber, quantity, RESERVATION_TTL);
+
+        log.info("Utworzono rezerwację: {} dla {} szt. produktu {}", reservationId, quantity, productNumber);
+        return reservationId;
+    }
+
+    @Override
+    @Transactional
+    public ProductReservationDTO cancel(String reservationId) {
+        // Wyciągnij productNumber z reservationId (format: "userId:productNumber")
+        String[] parts = reservationId.split(":");
+        if (parts.length < 2) {
+            throw new RuntimeException("Nieprawidłowy format reservationId: " + reservationId);
+        }
+        String userId = parts[0];
+        String productNumber = parts[1];
+
+        // Usuń rezerwację z Redis - przejęcie jest atomowe, więc stan zwolni tylko jeden wywołujący
+        long removed = reservationStore.remove(reservationId, productNumber);
+        if (removed < 0) {
+            log.warn("Brak rezerwacji do anulowania: {}", reservationId);
+            throw new RuntimeException("Rezerwacja nie istnieje lub wygasła: " + reservationId);
+        }
+        int quantity = (int) removed;
+
+        // Przywróć dostępność w magazynie
+        if (!releaseStock(productNumber, quantity)) {
+            log.warn("Nie zwolniono stanu dla rezerwacji {} - zarezerwowana ilość produktu {} mniejsza niż {}",
+                    reservationId, productNumber, quantity);
+        }
+
+        log.info("Anulowano rezerwację: {} - przywrócono {} szt. produktu {}", reservationId, quantity, productNumber);
+        return new ProductReservationDTO(productNumber, quantity, UUID.fromString(userId));
+    }
+
+    @Override
+    @Transactional
+    public int update(String reservationId, int newQuantity) {
+        // Wyciągnij productNumber z reservationId (format: "userId:productNumber")
+        String[] parts = reservationId.split(":");
+        if (parts.length < 2) {
+            log.error("Nieprawidłowy format reservationId: {}", reservationId);
+            return -1;
+        }
+        String productNumber = parts[1];
+
+        for (int attempt = 0; attempt < UPDATE_ATTEMPTS; attempt++) {
+            Integer currentQuantity = reservationStore.getQuantity(reservationId);
+            if (currentQuantity == null) {
+                log.warn("Brak rezerwacji do aktualizacji: {}", reservationId);
+                return -1;
+            }
+            int diff = newQuantity - currentQuantity;
+
+            // Najpierw stan w bazie, jak w reserve() - Redis zmieniamy dopiero po udanym UPDATE
+            if (diff > 0 && !reserveStock(productNumber, diff)) {
+                log.warn("Niewystarczająca ilość do zwiększenia rezerwacji {}. Potrzebne: {}", reservationId, diff);
+                return -1;
+            }
+
+            // Nadpisz ilość w Redis tylko, jeśli nikt jej w międzyczasie nie zmienił
+            long previous = reservationStore.compareAndReplace(reservationId, productNumber,
+                    currentQuantity, newQuantity, RESERVATION_TTL);
+            if (previous == currentQuantity) {
+                if (diff < 0 && !releaseStock(productNumber, -diff)) {
+                    log.warn("Nie zwolniono {} szt. produktu {} dla rezerwacji {}", -diff, productNumber, reservationId);
+                }
+                log.info("Zaktualizowano rezerwację {}: {} -> {} szt.", reservationId, currentQuantity, newQuantity);
+                return newQuantity;
+            }
+
+            // Równoległa zmiana rezerwacji - oddaj zarezerwowaną różnicę i policz ją od nowa
+            if (diff > 0) {
+                releaseStock(productNumber, diff);
+            }
+            if (previous < 0) {
+                log.warn("Rezerwacja {} zniknęła w trakcie aktualizacji", reservationId);
+                return -1;
+            }
+        }
+
+        log.warn("Nie zaktualizowano rezerwacji {} - zmieniana równolegle {} razy", reservationId, UPDATE_ATTEMPTS);
+        return -1;
+    }
+
+    @Override
+    @Transactional
+    public List<ReservationItemResult> reserveAll(String userId, Map<String, Integer> items, boolean allOrNothing) {
+        if (items.isEmpty()) {
+            return List.of();
+        }
+
+        // Jeden UPDATE dla wszystkich SKU - każdy wiersz warunkowo, jak w reserve()
+        Set<String> applied = applyReservedDeltas(items);
+        boolean complete = applied.size() == items.size();
+        boolean rollback = allOrNothing && !complete;
+        if (rollback) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        }
+        Set<String> reserved = rollback ? Set.of() : applied;
+        Set<String> existing = complete
+                ? items.keySet()
+                : new HashSet<>(inventoryRepository.findExistingProductNumbers(items.keySet()));
+
+        List<StoredReservation> toStore = new ArrayList<>();
+        for (String productNumber : reserved) {
+            toStore.add(new StoredReservation(userId + ":" + productNumber, productNumber, items.get(productNumber)));
+        }
+        Map<String, Long> totals = new HashMap<>();
+        List<Long> storedTotals = reservationStore.addAll(toStore, RESERVATION_TTL);
+        for (int i = 0; i < toStore.size(); i++) {
+            totals.put(toStore.get(i).productNumber(), storedTotals.get(i));
+        }
+
+        List<ReservationItemResult> results = new ArrayList<>();
+        for (String productNumber : items.keySet()) {
+            String reservationId = userId + ":" + productNumber;
+            if (totals.containsKey(productNumber)) {
+                results.add(ReservationItemResult.ok(productNumber, reservationId,
+                        totals.get(productNumber).intValue(), "Rezerwacja utworzona"));
+            } else if (!existing.contains(productNumber)) {
+                results.add(ReservationItemResult.failed(productNumber, reservationId, "Produkt nie istnieje w magazynie"));
+            } else if (applied.contains(productNumber)) {
+                results.add(ReservationItemResult.failed(productNumber, reservationId,
+                        "Nie zarezerwowano - inna pozycja jest niedostępna"));
+            } else {
+                results.add(ReservationItemResult.failed(productNumber, reservationId, "Brak wystarczającej ilości produktu"));
+            }
+        }
+
+        log.info("Rezerwacja wsadowa użytkownika {}: {}/{} pozycji", userId, totals.size(), items.size());
+        return results;
+    }
+
+    @Override
+    @Transactional
+    public List<ReservationItemResult> cancelAll(List<String> reservationIds) {
+        List<StoredReservation> toRemove = new ArrayList<>();
+        for (String reservationId : new LinkedHashSet<>(reservationIds)) {
+            String[] parts = reservationId.split(":");
+            toRemove.add(new StoredReservation(reservationId, parts.length < 2 ? "" : parts[1], 0));
+        }
+
+        // Przejęcie z indeksu wygaśnięć jak w cancel() - stan zwalnia tylko jeden wywołujący
+        List<Long> removed = reservationStore.removeAll(toRemove);
+        Map<String, Integer> released = new LinkedHashMap<>();
+        for (int i = 0; i < toRemove.size(); i++) {
+            if (removed.get(i) > 0) {
+                released.merge(toRemove.get(i).productNumber(), (int) -removed.get(i), Integer::sum);
+            }
+        }
+
+        Set<String> applied = applyReservedDeltas(released);
+        released.keySet().stream()
+                .filter(productNumber -> !applied.contains(productNumber))
+                .forEach(productNumber -> log.warn("Nie zwolniono stanu produktu {} - zarezerwowana ilość mniejsza niż {}",
+                        productNumber, -released.get(productNumber)));
+
+        List<ReservationItemResult> results = new ArrayList<>();
+        for (int i = 0; i < toRemove.size(); i++) {
+            StoredReservation reservation = toRemove.get(i);
+            long quantity = removed.get(i);
+            results.add(quantity < 0
+                    ? ReservationItemResult.failed(reservation.productNumber(), reservation.reservationId(),
+                    "Rezerwacja nie istnieje lub wygasła")
+                    : ReservationItemResult.ok(reservation.productNumber(), reservation.reservationId(),
+                    (int) quantity, "Anulowano rezerwację"));
+        }
+
+        log.info("Anulowanie wsadowe: {} rezerwacji, zwolniono stan {} produktów", toRemove.size(), applied.size());
+        return results;
+    }
+
+    @Override
+    @Transactional
+    public List<ReservationItemResult> updateAll(Map<String, Integer> quantities, boolean allOrNothing) {
+        List<StoredReservation> toReplace = new ArrayList<>();
+        quantities.forEach((reservationId, quantity) -> {
+            String[] parts = reservationId.split(":");
+            toReplace.add(new StoredReservation(reservationId, parts.length < 2 ? "" : parts[1], quantity));
+        });
+
+        // Najpierw stan w bazie, jak w update() - Redis zmieniamy dopiero po udanym UPDATE
+        List<Integer> current = new ArrayList<>();
+        Map<String, Integer> increases = new LinkedHashMap<>();
+        for (StoredReservation reservation : toReplace) {
+            Integer quantity = reservationStore.getQuantity(reservation.reservationId());
+            current.add(quantity);
+            if (quantity != null && reservation.quantity() > quantity) {
+                increases.merge(reservation.productNumber(), reservation.quantity() - quantity, Integer::sum);
+            }
+        }
+        Set<String> applied = applyReservedDeltas(increases);
+        Set<String> failed = new HashSet<>(increases.keySet());
+        failed.removeAll(applied);
+        boolean rollback = allOrNothing && !failed.isEmpty();
+        if (rollback) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        }
+
+        // Nadpisz ilości w Redis tylko, jeśli nikt ich w międzyczasie nie zmienił
+        Map<String, Integer> releases = new LinkedHashMap<>();
+        List<ReservationItemResult> results = new ArrayList<>();
+        for (int i = 0; i < toReplace.size(); i++) {
+            StoredReservation reservation = toReplace.get(i);
+            Integer currentQuantity = current.get(i);
+            if (currentQuantity == null) {
+                results.add(ReservationItemResult.failed(reservation.productNumber(), reservation.reservationId(),
+                        "Rezerwacja nie istnieje lub wygasła"));
+                continue;
+            }
+            if (rollback || failed.contains(reservation.productNumber())) {
+                results.add(ReservationItemResult.failed(reservation.productNumber(), reservation.reservationId(),
+                        failed.contains(reservation.productNumber())
+                                ? "Brak wystarczającej ilości produktu"
+                                : "Nie zaktualizowano - inna pozycja jest niedostępna"));
+                continue;
+            }
+            int diff = reservation.quantity() - currentQuantity;
+            long previous = reservationStore.compareAndReplace(reservation.reservationId(), reservation.productNumber(),
+                    currentQuantity, reservation.quantity(), RESERVATION_TTL);
+            if (previous == currentQuantity) {
+                if (diff < 0) {
+                    releases.merge(reservation.productNumber(), -diff, Integer::sum);
+                }
+                results.add(ReservationItemResult.ok(reservation.productNumber(), reservation.reservationId(),
+                        reservation.quantity(), "Rezerwacja zaktualizowana"));
+                continue;
+            }
+            // Równoległa zmiana rezerwacji - oddaj zarezerwowaną różnicę, bieżąca ilość zostaje
+            if (diff > 0) {
+                releases.merge(reservation.productNumber(), diff, Integer::sum);
+            }
+            log.warn("Rezerwacja {} zmieniona równolegle - pozostawiono bieżącą ilość", reservation.reservationId());
+            results.add(ReservationItemResult.failed(reservation.productNumber(), reservation.reservationId(),
+                    previous < 0 ? "Rezerwacja nie istnieje lub wygasła" : "Rezerwacja zmieniona równolegle"));
+        }
+
+        // Nieudane zwolnienie tylko logujemy, jak w update() - nie psuje rezerwacji
+        Map<String, Integer> releaseDeltas = new LinkedHashMap<>();
+        releases.forEach((productNumber, amount) -> releaseDeltas.put(productNumber, -amount));
+        Set<String> released = applyReservedDeltas(releaseDeltas);
+        releases.forEach((productNumber, amount) -> {
+            if (!released.contains(productNumber)) {
+                log.warn("Nie zwolniono {} szt. produktu {}", amount, productNumber);
+            }
+        });
+
+        log.info("Aktualizacja wsadowa: {} rezerwacji, niedostępne produkty: {}", toReplace.size(), failed);
+        return results;
+    }
+
+    private boolean reserveStock(String productNumber, int amount) {
+        return shardedStock.isSharded(productNumber)
+                ? shardedStock.reserve(productNumber, amount)
+                : inventoryRepository.reserveStock(productNumber, amount) == 1;
+    }
+
+    private boolean releaseStock(String productNumber, int amount) {
+        if (shardedStock.isSharded(productNumber)) {
+            return shardedStock.drainReserved(Map.of(productNumber, amount), true).isEmpty();
+        }
+        return inventoryRepository.releaseStock(productNumber, amount) == 1;
+    }
+
+    /**
+     * @param deltas productNumber -> zmiana reserved (available zmienia się przeciwnie)
+     * @return SKU, dla których zmiana została zapisana
+     */
+    private Set<String> applyReservedDeltas(Map<String, Integer> deltas) {
+        if (deltas.isEmpty()) {
+            return Set.of();
+        }
+        // Produkty w kubełkach osobno - każdy swoją ścieżką, reszta jednym UPDATE
+        Set<String> sharded = shardedStock.shardedOf(deltas.keySet());
+        Map<String, Integer> regular = new LinkedHashMap<>(deltas);
+        regular.keySet().removeAll(sharded);
+
+        Set<String> applied = regular.isEmpty()
+                ? new HashSet<>()
+                : new HashSet<>(inventoryRepository.reserveStockBatch(skus(regular), amounts(regular)));
+        for (String productNumber : sharded) {
+            int delta = deltas.get(productNumber);
+            if (delta > 0 ? reserveStock(productNumber, delta) : releaseStock(productNumber, -delta)) {
+                applied.add(productNumber);
+            }
+        }
+        return applied;
+    }
+
+    @Override
+    public int getAvailableQuantity(String productNumber) {
+        if (shardedStock.isSharded(productNumber)) {
+            return getAvailableQuantities(List.of(productNumber)).get(productNumber);
+        }
+        return inventoryRepository.findByProductNumber(productNumber)
+                .map(Inventory::getAvailableQuantity)
+                .orElse(0);
+    }
+
+    @Override
+    public Map<String, Integer> getAvailableQuantities(Collection<String> productNumbers) {
+        Map<String, Integer> quantities = new HashMap<>();
+        productNumbers.forEach(productNumber -> quantities.put(productNumber, 0));
+        inventoryRepository.findAllByProductNumberIn(productNumbers)
+                .forEach(inventory -> quantities.put(inventory.getProductNumber(), inventory.getAvailableQuantity()));
+        shardedStock.addBucketAvailability(quantities);
+        return quantities;
+    }
+
+    @Override
+    @Transactional
+    public void addStock(Map<String, Integer> quantities) {
+        if (!quantities.isEmpty()) {
+            inventoryRepository.upsertAvailable(skus(quantities), amounts(quantities));
+        }
+    }
+
+    @Override
+    @Transactional
+    public void setAvailable(Map<String, Integer> quantities) {
+        if (!quantities.isEmpty()) {
+            // Produkty w kubełkach: nowa wartość trafia do puli, kubełki zostaną napełnione przy rozdzieleniu
+            Set<String> sharded = shardedStock.shardedOf(quantities.keySet());
+            if (!sharded.isEmpty()) {
+                bucketRepository.clearAvailable(sharded);
+            }
+            warnMissing(quantities, inventoryRepository.setAvailableBatch(skus(quantities), amounts(quantities)));
+        }
+    }
+
+    @Override
+    @Transactional
+    public void confirmReserved(Map<String, Integer> quantities) {
+        if (!quantities.isEmpty()) {
+            warnMissing(quantities, inventoryRepository.confirmReservedBatch(skus(quantities), amounts(quantities)));
+            shardedStock.drainReserved(shardedSubset(quantities), false);
+        }
+    }
+
+    @Override
+    @Transactional
+    public void releaseReserved(Map<String, Integer> quantities) {
+        if (!quantities.isEmpty()) {
+            inventoryRepository.releaseStockUpToBatch(skus(quantities), amounts(quantities));
+            shardedStock.drainReserved(shardedSubset(quantities), true);
+        }
+    }
+
+    private Map<String, Integer> shardedSubset(Map<String, Integer> quantities) {
+        Map<String, Integer> subset = new HashMap<>();
+        shardedStock.shardedOf(quantities.keySet()).forEach(sku -> subset.put(sku, quantities.get(sku)));
+        return subset;
+    }
+
+    private static void warnMissing(Map<String, Integer> quantities, int updated) {
+        if (updated < quantities.size()) {
+            log.warn("Zaktualizowano {} z {} produktów - pozostałych nie ma w magazynie: {}",
+                    updated, quantities.size(), quantities.keySet());
+        }
+    }
+
+    private static String[] skus(Map<String, Integer> quantities) {
+        return InventoryRepository.sortedSkus(quantities);
+    }
+
+    private static int[] amounts(Map<String, Integer> quantities) {
+        return InventoryRepository.sortedAmounts(quantities);
+    }
+
+    @Override
+    @Transactional
+    public int reconcileReserved(String productNumber, int liveReserved) {
+        if (shardedStock.isSharded(productNumber)) {
+            int diff = bucketRepository.sumReserved(productNumber) - liveReserved;
+            if (diff <= 0) {
+                return 0;
+            }
+            return diff - shardedStock.drainReserved(Map.of(productNumber, diff), true)
+                    .getOrDefault(productNumber, 0);
+        }
+        Inventory inventory = inventoryRepository.findByProductNumber(productNumber).orElse(null);
+        if (inventory == null || inventory.getReservedQuantity() <= liveReserved) {
+            return 0;
+        }
+        int diff = inventory.getReservedQuantity() - liveReserved;
+        return inventoryRepository.reconcileReserved(productNumber, liveReserved) == 0 ? 0 : diff;
+    }
+}
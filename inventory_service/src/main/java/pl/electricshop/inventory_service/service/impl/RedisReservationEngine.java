@@ -0,0 +1,402 @@
+package pl.electricshop.inventory_service.service.impl;
+
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import pl.electricshop.inventory_service.model.Inventory;
+import pl.electricshop.inventory_service.model.api.ProductReservationDTO;
+import pl.electricshop.inventory_service.model.api.ReservationItemResult;
+import pl.electricshop.inventory_service.repository.InventoryRepository;
+import pl.electricshop.inventory_service.repository.ReservationStore;
+import pl.electricshop.inventory_service.service.ReservationEngine;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Silnik rezerwacji z licznikami w Redis (tryb {@code inventory.reservation.mode=redis}).
+ * <p>
+ * Klucze:
+ * <pre>
+ * stock:{sku}        HASH available, reserved  - liczniki autorytatywne
+ * stock:delta:{sku}  HASH available, reserved  - delty czekające na zapis do Postgres
+ * stock:dirty        SET  sku                  - SKU z niezapisanymi deltami
+ * stock:flush:{id}   HASH sku -> "available:reserved" - paczka delt w trakcie zapisu do Postgres
+ * stock:flush:pending ZSET id (czas utworzenia)  - paczki niesprzątnięte po zapisie
+ * </pre>
+ * plus klucze rezerwacji i ich indeksy z {@link ReservationStore}, aktualizowane w tym samym skrypcie.
+ * Każda operacja to jeden skrypt Lua (jeden round-trip). Licznik jest ładowany z bazy
+ * przy pierwszym użyciu SKU i nigdy nie jest usuwany, więc baza różni się od Redis
+ * wyłącznie o delty, które zapisuje {@link StockWriteBehindFlusher}.
+ * Skrypty dostają wszystkie klucze, których dotykają, w KEYS (także skrypty wsadowe - po kilka kluczy na pozycję).
+ */
+@Service
+@ConditionalOnProperty(name = "inventory.reservation.mode", havingValue = "redis")
+@RequiredArgsConstructor
+@Slf4j
+public class RedisReservationEngine implements ReservationEngine {
+
+    static final String STOCK_KEY_PREFIX = "stock:";
+    static final String DELTA_KEY_PREFIX = "stock:delta:";
+    static final String DIRTY_KEY = "stock:dirty";
+
+    private static final long NOT_LOADED = -3;
+
+    private static final RedisScript<Long> RESERVE_SCRIPT = script("stock-reserve.lua");
+    private static final RedisScript<Long> RELEASE_SCRIPT = script("stock-release.lua");
+    private static final RedisScript<Long> UPDATE_SCRIPT = script("stock-update.lua");
+    private static final RedisScript<Long> ADJUST_SCRIPT = script("stock-adjust.lua");
+    private static final RedisScript<Long> HYDRATE_SCRIPT = script("stock-hydrate.lua");
+    private static final RedisScript<List> BATCH_SCRIPT = script("stock-batch.lua", List.class);
+
+    private final InventoryRepository inventoryRepository;
+    private final RedisTemplate<String, String> redisTemplate;
+
+    @Override
+    public String reserve(String userId, String productNumber, int quantity) {
+        String reservationId = userId + ":" + productNumber;
+
+        long result = executeLoaded(RESERVE_SCRIPT, productNumber,
+                reservationKeys(productNumber, reservationId),
+                String.valueOf(quantity), String.valueOf(RESERVATION_TTL.toSeconds()), productNumber,
+                reservationId, ReservationStore.deadline(RESERVATION_TTL));
+
+        if (result < 0) {
+            log.warn("Niewystarczająca ilość produktu {} do rezerwacji {} szt.", productNumber, quantity);
+            return null;
+        }
+
+        log.info("Utworzono rezerwację: {} dla {} szt. produktu {}", reservationId, quantity, productNumber);
+        return reservationId;
+    }
+
+    @Override
+    public ProductReservationDTO cancel(String reservationId) {
+        String[] parts = reservationId.split(":");
+        if (parts.length < 2) {
+            throw new RuntimeException("Nieprawidłowy format reservationId: " + reservationId);
+        }
+        String userId = parts[0];
+        String productNumber = parts[1];
+
+        long quantity = executeLoaded(RELEASE_SCRIPT, productNumber,
+                reservationKeys(productNumber, reservationId), productNumber, reservationId);
+
+        if (quantity < 0) {
+            log.warn("Brak rezerwacji do anulowania: {}", reservationId);
+            throw new RuntimeException("Rezerwacja nie istnieje lub wygasła: " + reservationId);
+        }
+
+        log.info("Anulowano rezerwację: {} - przywrócono {} szt. produktu {}", reservationId, quantity, productNumber);
+        return new ProductReservationDTO(productNumber, (int) quantity, UUID.fromString(userId));
+    }
+
+    @Override
+    public int update(String reservationId, int newQuantity) {
+        String[] parts = reservationId.split(":");
+        if (parts.length < 2) {
+            log.error("Nieprawidłowy format reservationId: {}", reservationId);
+            return -1;
+        }
+        String productNumber = parts[1];
+
+        long result = executeLoaded(UPDATE_SCRIPT, productNumber,
+                reservationKeys(productNumber, reservationId),
+                String.valueOf(newQuantity), String.valueOf(RESERVATION_TTL.toSeconds()), productNumber,
+                reservationId, ReservationStore.deadline(RESERVATION_TTL));
+
+        if (result < 0) {
+            log.warn("Nie udało się zaktualizować rezerwacji {} (kod {})", reservationId, result);
+            return -1;
+        }
+
+        log.info("Zaktualizowano rezerwację {} -> {} szt.", reservationId, newQuantity);
+        return (int) result;
+    }
+
+    @Override
+    public List<ReservationItemResult> reserveAll(String userId, Map<String, Integer> items, boolean allOrNothing) {
+        List<BatchItem> batch = new ArrayList<>();
+        items.forEach((productNumber, quantity) ->
+                batch.add(new BatchItem("+", productNumber, userId + ":" + productNumber, quantity)));
+        return executeBatch(batch, allOrNothing, "Rezerwacja utworzona");
+    }
+
+    @Override
+    public List<ReservationItemResult> cancelAll(List<String> reservationIds) {
+        List<BatchItem> batch = new ArrayList<>();
+        for (String reservationId : new LinkedHashSet<>(reservationIds)) {
+            batch.add(new BatchItem("-", productNumberOf(reservationId), reservationId, 0));
+        }
+        return executeBatch(batch, false, "Anulowano rezerwację");
+    }
+
+    @Override
+    public List<ReservationItemResult> updateAll(Map<String, Integer> quantities, boolean allOrNothing) {
+        List<BatchItem> batch = new ArrayList<>();
+        quantities.forEach((reservationId, quantity) ->
+                batch.add(new BatchItem("=", productNumberOf(reservationId), reservationId, quantity)));
+        return executeBatch(batch, allOrNothing, "Rezerwacja zaktualizowana");
+    }
+
+    @Override
+    public int getAvailableQuantity(String productNumber) {
+        Object available = redisTemplate.opsForHash().get(STOCK_KEY_PREFIX + productNumber, "available");
+        if (available != null) {
+            return Integer.parseInt(available.toString());
+        }
+        // Licznik jeszcze niezaładowany - baza jest aktualna
+        return inventoryRepository.findByProductNumber(productNumber)
+                .map(Inventory::getAvailableQuantity)
+                .orElse(0);
+    }
+
+    @Override
+    public Map<String, Integer> getAvailableQuantities(Collection<String> productNumbers) {
+        List<String> skus = List.copyOf(productNumbers);
+        List<Object> cached = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            skus.forEach(productNumber -> connection.hashCommands().hGet(
+                    (STOCK_KEY_PREFIX + productNumber).getBytes(StandardCharsets.UTF_8),
+                    "available".getBytes(StandardCharsets.UTF_8)));
+            return null;
+        });
+
+        Map<String, Integer> quantities = new HashMap<>();
+        List<String> notLoaded = new ArrayList<>();
+        for (int i = 0; i < skus.size(); i++) {
+            Object available = cached.get(i);
+            if (available != null) {
+                quantities.put(skus.get(i), Integer.parseInt(available.toString()));
+            } else {
+                notLoaded.add(skus.get(i));
+                quantities.put(skus.get(i), 0);
+            }
+        }
+        // Liczniki jeszcze niezaładowane - baza jest aktualna
+        if (!notLoaded.isEmpty()) {
+            inventoryRepository.findAllByProductNumberIn(notLoaded)
+                    .forEach(inventory -> quantities.put(inventory.getProductNumber(), inventory.getAvailableQuantity()));
+        }
+        return quantities;
+    }
+
+    /**
+     * Nowe produkty trafiają do bazy jednym INSERT ... ON CONFLICT DO NOTHING,
+     * istniejącym dostawa jest doliczana do licznika w Redis.
+     */
+    @Override
+    @Transactional
+    public void addStock(Map<String, Integer> quantities) {
+        if (quantities.isEmpty()) {
+            return;
+        }
+        Set<String> created = new HashSet<>(inventoryRepository.insertMissing(
+                InventoryRepository.sortedSkus(quantities),
+                InventoryRepository.sortedAmounts(quantities)));
+        quantities.forEach((productNumber, quantity) -> {
+            if (!created.contains(productNumber)) {
+                adjustEach(productNumber, quantity, 0, "", false);
+            }
+        });
+    }
+
+    @Override
+    public void setAvailable(Map<String, Integer> quantities) {
+        quantities.forEach((productNumber, quantity) ->
+                adjustEach(productNumber, 0, 0, String.valueOf(quantity), false));
+    }
+
+    @Override
+    public void confirmReserved(Map<String, Integer> quantities) {
+        quantities.forEach((productNumber, quantity) -> adjustEach(productNumber, 0, -quantity, "", false));
+    }
+
+    @Override
+    public void releaseReserved(Map<String, Integer> quantities) {
+        quantities.forEach((productNumber, quantity) -> adjustEach(productNumber, 0, -quantity, "", true));
+    }
+
+    /**
+     * {@link #adjust} dla jednej pozycji paczki - nieznany produkt nie przerywa pozostałych.
+     */
+    private void adjustEach(String productNumber, int availableDelta, int reservedDelta,
+                            String absoluteAvailable, boolean release) {
+        try {
+            adjust(productNumber, availableDelta, reservedDelta, absoluteAvailable, release);
+        } catch (RuntimeException e) {
+            log.warn("Pominięto zmianę licznika produktu {}: {}", productNumber, e.getMessage());
+        }
+    }
+
+    @Override
+    public int reconcileReserved(String productNumber, int liveReserved) {
+        Object reserved = redisTemplate.opsForHash().get(STOCK_KEY_PREFIX + productNumber, "reserved");
+        if (reserved == null) {
+            return 0;
+        }
+        int diff = Integer.parseInt(reserved.toString()) - liveReserved;
+        if (diff <= 0) {
+            return 0;
+        }
+        releaseReserved(productNumber, diff);
+        return diff;
+    }
+
+    private void adjust(String productNumber, int availableDelta, int reservedDelta,
+                        String absoluteAvailable, boolean release) {
+        executeLoaded(ADJUST_SCRIPT, productNumber,
+                List.of(STOCK_KEY_PREFIX + productNumber, DELTA_KEY_PREFIX + productNumber, DIRTY_KEY),
+                String.valueOf(availableDelta), String.valueOf(reservedDelta), productNumber,
+                absoluteAvailable, release ? "1" : "0");
+    }
+
+    /**
+     * Wykonuje skrypt; jeśli licznik SKU nie jest jeszcze w Redis - ładuje go z bazy i ponawia raz.
+     */
+    private long executeLoaded(RedisScript<Long> script, String productNumber, List<String> keys, Object... args) {
+        Long result = redisTemplate.execute(script, keys, args);
+        if (result != null && result == NOT_LOADED) {
+            hydrate(productNumber);
+            result = redisTemplate.execute(script, keys, args);
+        }
+        if (result == null) {
+            throw new RuntimeException("Brak odpowiedzi Redis dla produktu: " + productNumber);
+        }
+        return result;
+    }
+
+    private void hydrate(String productNumber) {
+        Inventory inventory = inventoryRepository.findByProductNumber(productNumber)
+                .orElseThrow(() -> new RuntimeException("Produkt nie istnieje w magazynie: " + productNumber));
+
+        Long loaded = redisTemplate.execute(HYDRATE_SCRIPT, List.of(STOCK_KEY_PREFIX + productNumber),
+                String.valueOf(inventory.getAvailableQuantity()), String.valueOf(inventory.getReservedQuantity()));
+        if (loaded != null && loaded == 1) {
+            log.info("Załadowano licznik produktu {} do Redis: available={}, reserved={}",
+                    productNumber, inventory.getAvailableQuantity(), inventory.getReservedQuantity());
+        }
+    }
+
+    private record BatchItem(String operation, String productNumber, String reservationId, int quantity) {
+    }
+
+    /**
+     * Wykonuje stock-batch.lua dla wszystkich pozycji naraz. Jeśli któryś licznik nie jest załadowany,
+     * skrypt niczego nie zmienia - ładujemy liczniki z bazy i ponawiamy raz, bez SKU nieobecnych w magazynie.
+     */
+    private List<ReservationItemResult> executeBatch(List<BatchItem> items, boolean allOrNothing, String successMessage) {
+        if (items.isEmpty()) {
+            return List.of();
+        }
+
+        long[][] outcome = runBatchScript(items, allOrNothing);
+        Set<String> unknown = new HashSet<>();
+        boolean reloaded = false;
+        for (int i = 0; i < items.size(); i++) {
+            String productNumber = items.get(i).productNumber();
+            if (outcome[i][0] == NOT_LOADED && !unknown.contains(productNumber)) {
+                reloaded = true;
+                if (!inventoryRepository.existsByProductNumber(productNumber)) {
+                    unknown.add(productNumber);
+                } else {
+                    hydrate(productNumber);
+                }
+            }
+        }
+
+        List<BatchItem> known = items.stream()
+                .filter(item -> !unknown.contains(item.productNumber()))
+                .toList();
+        if (allOrNothing && !unknown.isEmpty()) {
+            // Nieznany produkt przekreśla całą paczkę - pozostałe pozycje pomijamy bez ponawiania
+            for (int i = 0; i < items.size(); i++) {
+                outcome[i] = new long[]{0, 0};
+            }
+        } else if (reloaded) {
+            long[][] retried = runBatchScript(known, allOrNothing);
+            int k = 0;
+            for (int i = 0; i < items.size(); i++) {
+                if (!unknown.contains(items.get(i).productNumber())) {
+                    outcome[i] = retried[k++];
+                }
+            }
+        }
+
+        List<ReservationItemResult> results = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            BatchItem item = items.get(i);
+            long status = unknown.contains(item.productNumber()) ? NOT_LOADED : outcome[i][0];
+            String message = switch ((int) status) {
+                case 1 -> successMessage;
+                case -1 -> "Rezerwacja nie istnieje lub wygasła";
+                case -2 -> "Brak wystarczającej ilości produktu";
+                case -3 -> "Produkt nie istnieje w magazynie";
+                default -> "Pominięto - inna pozycja się nie powiodła";
+            };
+            results.add(status == 1
+                    ? ReservationItemResult.ok(item.productNumber(), item.reservationId(), (int) outcome[i][1], message)
+                    : ReservationItemResult.failed(item.productNumber(), item.reservationId(), message));
+        }
+
+        log.info("Operacja wsadowa na {} rezerwacjach: {} udanych", items.size(),
+                results.stream().filter(ReservationItemResult::success).count());
+        return results;
+    }
+
+    /**
+     * @return para [status, ilość] dla każdej pozycji
+     */
+    private long[][] runBatchScript(List<BatchItem> items, boolean allOrNothing) {
+        List<String> keys = new ArrayList<>(List.of(DIRTY_KEY, ReservationStore.EXPIRY_INDEX_KEY, ReservationStore.QUANTITY_KEY));
+        List<Object> args = new ArrayList<>(List.of(
+                String.valueOf(RESERVATION_TTL.toSeconds()), ReservationStore.deadline(RESERVATION_TTL),
+                allOrNothing ? "1" : "0"));
+        for (BatchItem item : items) {
+            keys.add(STOCK_KEY_PREFIX + item.productNumber());
+            keys.add(DELTA_KEY_PREFIX + item.productNumber());
+            keys.addAll(ReservationStore.itemKeys(item.reservationId(), item.productNumber()));
+            args.add(item.operation());
+            args.add(item.productNumber());
+            args.add(item.reservationId());
+            args.add(String.valueOf(item.quantity()));
+        }
+
+        List<?> raw = redisTemplate.execute(BATCH_SCRIPT, keys, args.toArray());
+        if (raw == null) {
+            throw new RuntimeException("Brak odpowiedzi Redis dla paczki rezerwacji");
+        }
+        long[][] outcome = new long[items.size()][];
+        for (int i = 0; i < items.size(); i++) {
+            outcome[i] = new long[]{((Number) raw.get(2 * i)).longValue(), ((Number) raw.get(2 * i + 1)).longValue()};
+        }
+        return outcome;
+    }
+
+    private static String productNumberOf(String reservationId) {
+        String[] parts = reservationId.split(":");
+        return parts.length < 2 ? "" : parts[1];
+    }
+
+    private static List<String> reservationKeys(String productNumber, String reservationId) {
+        List<String> keys = new ArrayList<>(List.of(
+                STOCK_KEY_PREFIX + productNumber,
+                DELTA_KEY_PREFIX + productNumber,
+                DIRTY_KEY));
+        keys.addAll(ReservationStore.indexKeys(reservationId, productNumber));
+        return keys;
+    }
+
+    static <T> RedisScript<T> script(String name, Class<T> resultType) {
+        return RedisScript.of(new ClassPathResource("scripts/" + name), resultType);
+    }
+
+    private static RedisScript<Long> script(String name) {
+        return script(name, Long.class);
+    }
+}
@@ -0,0 +1,300 @@
+package pl.electricshop.inventory_service.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import pl.electricshop.inventory_service.model.Inventory;
+import pl.electricshop.inventory_service.model.InventoryBucket;
+import pl.electricshop.inventory_service.repository.InventoryBucketRepository;
+import pl.electricshop.inventory_service.repository.InventoryRepository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tryb flash-sale dla gorących SKU (tryb {@code inventory.reservation.mode=database}).
+ * <p>
+ * Stan produktu z {@code inventory.sharding.products} jest rozłożony na {@code inventory.sharding.buckets}
+ * wierszy {@code inventory_bucket}. Rezerwacja wybiera kubełek od losowego punktu startu i pomija kubełki
+ * zablokowane przez inne transakcje (SKIP LOCKED), więc równoległe rezerwacje nie czekają w kolejce
+ * na jeden wiersz. Wiersz {@code inventory} jest pulą nierozdzieloną: trafiają do niej dostawy, a
+ * {@link #rebalance} rozdziela ją (razem z resztkami kubełków) po równo w zadaniu okresowym.
+ * <p>
+ * Rozdzielanie blokuje pulę i wszystkie kubełki SKU, więc nie działa na ścieżce rezerwacji: rezerwacja, która
+ * nie znajdzie kubełka mimo wystarczającego stanu łącznego, kończy się odmową i zgłasza SKU do rozdzielenia
+ * w najbliższym przebiegu zadania (najwyżej {@code inventory.sharding.rebalance-interval-ms}). Każde
+ * rozdzielenie to osobna, krótka transakcja. Przegląd wszystkich SKU wykonuje jedna instancja naraz
+ * (blokada doradcza Postgres), zgłoszone SKU - instancja, której rezerwacja je zgłosiła.
+ */
+@Component
+@ConditionalOnProperty(name = "inventory.reservation.mode", havingValue = "database", matchIfMissing = true)
+@Slf4j
+public class ShardedStock {
+
+    private static final String REBALANCE_LOCK = "inventory-sharding-rebalance";
+
+    private final InventoryRepository inventoryRepository;
+    private final InventoryBucketRepository bucketRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate separateTransaction;
+
+    @Value("${inventory.sharding.products:}")
+    private List<String> configuredProducts;
+
+    @Value("${inventory.sharding.buckets:16}")
+    private int bucketCount;
+
+    /**
+     * productNumber -> liczba kubełków
+     */
+    private final Map<String, Integer> sharded = new ConcurrentHashMap<>();
+
+    /**
+     * productNumber -> największa rezerwacja, która nie zmieściła się w żadnym kubełku od ostatniego przebiegu
+     */
+    private final Map<String, Integer> shortfalls = new ConcurrentHashMap<>();
+
+    public ShardedStock(InventoryRepository inventoryRepository,
+                        InventoryBucketRepository bucketRepository,
+                        TransactionTemplate transactionTemplate) {
+        this.inventoryRepository = inventoryRepository;
+        this.bucketRepository = bucketRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.separateTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.separateTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public boolean isSharded(String productNumber) {
+        return sharded.containsKey(productNumber);
+    }
+
+    /**
+     * @return SKU spośród {@code productNumbers}, które są w trybie flash-sale
+     */
+    public Set<String> shardedOf(Collection<String> productNumbers) {
+        if (sharded.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> result = new HashSet<>();
+        productNumbers.stream().filter(sharded::containsKey).forEach(result::add);
+        return result;
+    }
+
+    /**
+     * Rezerwuje {@code amount} w jednym kubełku. Wywoływane w transakcji silnika rezerwacji.
+     *
+     * @return true jeśli zarezerwowano; false także wtedy, gdy stan łączny wystarcza, ale trzeba go najpierw
+     * rozdzielić - SKU trafia wtedy do najbliższego przebiegu {@link #rebalanceAll}
+     */
+    public boolean reserve(String productNumber, int amount) {
+        int buckets = sharded.getOrDefault(productNumber, 1);
+        int start = ThreadLocalRandom.current().nextInt(buckets);
+
+        if (bucketRepository.reserveSkipLocked(productNumber, amount, start, buckets) == 1) {
+            return true;
+        }
+        // Wszystkie kubełki ze stanem były zajęte - tym razem czekamy na blokadę jednego z nich
+        if (bucketRepository.reserve(productNumber, amount, start, buckets) == 1) {
+            return true;
+        }
+        // Żaden kubełek osobno nie ma tyle - jeśli łącznie wystarczy, stan rozdzieli zadanie okresowe
+        int pool = inventoryRepository.findAvailableQuantity(productNumber).orElse(0);
+        if (pool + bucketRepository.sumAvailable(productNumber) >= amount) {
+            shortfalls.merge(productNumber, amount, Math::max);
+            log.debug("Produkt {}: {} szt. nie mieści się w żadnym kubełku - rozdzielenie w następnym przebiegu",
+                    productNumber, amount);
+        }
+        return false;
+    }
+
+    /**
+     * Zdejmuje ilości z reserved kubełków.
+     *
+     * @param toAvailable true - zwolnienie (ilość wraca do available), false - sprzedaż
+     * @return productNumber -> ilość, której nie było w reserved kubełków (pusta - zdjęto całość)
+     */
+    public Map<String, Integer> drainReserved(Map<String, Integer> quantities, boolean toAvailable) {
+        if (quantities.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, Integer> missing = new HashMap<>(quantities);
+        for (Object[] row : bucketRepository.drainReserved(
+                InventoryRepository.sortedSkus(quantities),
+                InventoryRepository.sortedAmounts(quantities),
+                toAvailable ? 1 : 0)) {
+            missing.merge((String) row[0], -((Number) row[1]).intValue(), Integer::sum);
+        }
+        missing.values().removeIf(amount -> amount <= 0);
+        if (!missing.isEmpty()) {
+            log.warn("Kubełki nie miały w reserved pełnej ilości do zdjęcia - brakuje: {}", missing);
+        }
+        return missing;
+    }
+
+    /**
+     * Dodaje do {@code quantities} stan kubełków produktów w trybie flash-sale.
+     */
+    public void addBucketAvailability(Map<String, Integer> quantities) {
+        Set<String> shardedProducts = shardedOf(quantities.keySet());
+        if (shardedProducts.isEmpty()) {
+            return;
+        }
+        for (Object[] row : bucketRepository.sumAvailable(shardedProducts)) {
+            quantities.merge((String) row[0], ((Number) row[1]).intValue(), Integer::sum);
+        }
+    }
+
+    /**
+     * Rozdziela pulę i stan kubełków po równo. Blokuje wiersz puli i wszystkie kubełki SKU - zawsze we własnej
+     * transakcji, zatwierdzanej od razu (nigdy w transakcji rezerwacji).
+     *
+     * @param minimum kubełek 0 dostaje co najmniej tyle (jeśli stan łączny pozwala) - rezerwacja, która
+     *                wywołała rozdzielenie, musi się zmieścić w jednym kubełku
+     */
+    public void rebalance(String productNumber, int minimum) {
+        separateTransaction.executeWithoutResult(status -> {
+            Inventory inventory = inventoryRepository.lockByProductNumber(productNumber).orElse(null);
+            if (inventory == null || inventory.getBucketCount() == 0) {
+                return;
+            }
+            List<InventoryBucket> buckets = bucketRepository.lockAll(productNumber);
+            int total = inventory.getAvailableQuantity()
+                    + buckets.stream().mapToInt(InventoryBucket::getAvailableQuantity).sum();
+
+            int others = buckets.size() - 1;
+            int first = others == 0 ? total : Math.min(total, Math.max(minimum, total / buckets.size()));
+            int rest = total - first;
+            for (int i = 0; i < buckets.size(); i++) {
+                buckets.get(i).setAvailableQuantity(i == 0
+                        ? first
+                        : rest / others + (i - 1 < rest % others ? 1 : 0));
+            }
+            inventory.setAvailableQuantity(0);
+            log.debug("Rozdzielono stan produktu {} ({} szt.) na {} kubełków", productNumber, total, buckets.size());
+        });
+    }
+
+    /**
+     * Okresowo rozdziela SKU zgłoszone przez rezerwacje tej instancji, a na jednej instancji naraz także pule
+     * (dostawy) i wyczerpane kubełki wszystkich SKU; odświeża listę SKU w kubełkach.
+     */
+    @Scheduled(fixedDelayString = "${inventory.sharding.rebalance-interval-ms:1000}")
+    public void rebalanceAll() {
+        refreshSharded();
+        if (sharded.isEmpty()) {
+            return;
+        }
+        for (String productNumber : Set.copyOf(shortfalls.keySet())) {
+            Integer minimum = shortfalls.remove(productNumber);
+            if (minimum != null) {
+                tryRebalance(productNumber, minimum);
+            }
+        }
+        // Transakcja trzyma tylko blokadę doradczą; każde rozdzielenie zatwierdza się osobno
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!inventoryRepository.tryAdvisoryLock(REBALANCE_LOCK)) {
+                return;
+            }
+            for (String productNumber : bucketRepository.findProductsToRebalance()) {
+                tryRebalance(productNumber, 0);
+            }
+        });
+    }
+
+    private void tryRebalance(String productNumber, int minimum) {
+        try {
+            rebalance(productNumber, minimum);
+        } catch (Exception e) {
+            log.warn("Nie udało się rozdzielić stanu produktu {}: {}", productNumber, e.getMessage());
+        }
+    }
+
+    /**
+     * Przy starcie włącza kubełki dla SKU z konfiguracji i wyłącza dla SKU, które z niej usunięto.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void applyConfiguration() {
+        Set<String> configured = new HashSet<>(configuredProducts);
+        configured.removeIf(String::isBlank);
+        refreshSharded();
+
+        for (String productNumber : configured) {
+            if (sharded.get(productNumber) == null || sharded.get(productNumber) != bucketCount) {
+                shard(productNumber, bucketCount);
+            }
+        }
+        for (String productNumber : Set.copyOf(sharded.keySet())) {
+            if (!configured.contains(productNumber)) {
+                unshard(productNumber);
+            }
+        }
+        refreshSharded();
+        if (!sharded.isEmpty()) {
+            log.info("Produkty w trybie flash-sale: {}", sharded);
+        }
+    }
+
+    /**
+     * Przenosi stan wiersza do {@code buckets} kubełków: reserved do kubełka 0, available do puli
+     * (rozdzielanej od razu).
+     */
+    void shard(String productNumber, int buckets) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Inventory inventory = inventoryRepository.lockByProductNumber(productNumber).orElse(null);
+            if (inventory == null) {
+                log.warn("Pominięto tryb flash-sale dla {} - produkt nie istnieje w magazynie", productNumber);
+                return;
+            }
+            if (inventory.getBucketCount() > 0) {
+                mergeBuckets(inventory);
+            }
+
+            List<InventoryBucket> created = new ArrayList<>();
+            for (int i = 0; i < buckets; i++) {
+                created.add(new InventoryBucket(productNumber, i, 0, i == 0 ? inventory.getReservedQuantity() : 0));
+            }
+            bucketRepository.saveAll(created);
+            inventory.setReservedQuantity(0);
+            inventory.setBucketCount(buckets);
+        });
+        rebalance(productNumber, 0);
+        log.info("Włączono tryb flash-sale dla produktu {} ({} kubełków)", productNumber, buckets);
+    }
+
+    /**
+     * Scala kubełki z powrotem w jeden wiersz.
+     */
+    void unshard(String productNumber) {
+        transactionTemplate.executeWithoutResult(status ->
+                inventoryRepository.lockByProductNumber(productNumber).ifPresent(this::mergeBuckets));
+        log.info("Wyłączono tryb flash-sale dla produktu {}", productNumber);
+    }
+
+    private void mergeBuckets(Inventory inventory) {
+        List<InventoryBucket> buckets = bucketRepository.lockAll(inventory.getProductNumber());
+        inventory.setAvailableQuantity(inventory.getAvailableQuantity()
+                + buckets.stream().mapToInt(InventoryBucket::getAvailableQuantity).sum());
+        inventory.setReservedQuantity(inventory.getReservedQuantity()
+                + buckets.stream().mapToInt(InventoryBucket::getReservedQuantity).sum());
+        inventory.setBucketCount(0);
+        bucketRepository.deleteAll(buckets);
+        // Usunięcie przed ewentualnym utworzeniem nowych kubełków o tych samych numerach
+        bucketRepository.flush();
+    }
+
+    private void refreshSharded() {
+        Map<String, Integer> current = new HashMap<>();
+        for (Object[] row : inventoryRepository.findShardedProducts()) {
+            current.put((String) row[0], ((Number) row[1]).intValue());
+        }
+        sharded.keySet().retainAll(current.keySet());
+        sharded.putAll(current);
+    }
+}
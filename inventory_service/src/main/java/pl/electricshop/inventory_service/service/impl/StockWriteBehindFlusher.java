@@ -0,0 +1,134 @@
+package pl.electricshop.inventory_service.service.impl;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pl.electricshop.inventory_service.repository.InventoryRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Write-behind liczników z Redis do tabeli inventory (tryb {@code inventory.reservation.mode=redis}).
+ * Co {@code inventory.redis.flush-interval-ms} przenosi paczkę zaległych delt jednym skryptem Lua do
+ * {@code stock:flush:{batchId}} i nakłada ją jednym UPDATE ... FROM unnest(...).
+ * <p>
+ * Paczka jest usuwana z Redis dopiero po commicie w bazie. Jeśli zapis się nie uda albo proces zginie
+ * po drodze, paczka zostaje w {@value #PENDING_KEY} i po {@code inventory.redis.flush-retry-after-ms} nakłada ją
+ * ponownie dowolna instancja. Id paczki trafia do {@code processed_event} w tym samym zapytaniu co delty,
+ * więc paczka już zapisana (awaria między commitem a sprzątnięciem) nie jest nakładana drugi raz.
+ */
+@Component
+@ConditionalOnProperty(name = "inventory.reservation.mode", havingValue = "redis")
+@RequiredArgsConstructor
+@Slf4j
+public class StockWriteBehindFlusher {
+
+    static final String PENDING_KEY = "stock:flush:pending";
+    static final String BATCH_KEY_PREFIX = "stock:flush:";
+
+    private static final String LEDGER_GROUP = "stock-write-behind";
+    private static final RedisScript<List> DRAIN_SCRIPT = RedisReservationEngine.script("stock-drain.lua", List.class);
+
+    private final InventoryRepository inventoryRepository;
+    private final RedisTemplate<String, String> redisTemplate;
+
+    @Value("${inventory.redis.flush-batch-size:500}")
+    private int batchSize;
+
+    @Value("${inventory.redis.flush-retry-after-ms:30000}")
+    private long retryAfterMs;
+
+    @Scheduled(fixedDelayString = "${inventory.redis.flush-interval-ms:1000}")
+    public void flush() {
+        retryPending();
+        int flushed;
+        do {
+            flushed = flushBatch();
+        } while (flushed == batchSize);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        log.info("Zapisuję zaległe delty liczników przed zamknięciem...");
+        flush();
+    }
+
+    private int flushBatch() {
+        Set<String> skus = redisTemplate.opsForSet().distinctRandomMembers(RedisReservationEngine.DIRTY_KEY, batchSize);
+        if (skus == null || skus.isEmpty()) {
+            return 0;
+        }
+
+        String batchId = UUID.randomUUID().toString();
+        List<String> keys = new ArrayList<>(List.of(RedisReservationEngine.DIRTY_KEY, PENDING_KEY, BATCH_KEY_PREFIX + batchId));
+        skus.forEach(sku -> keys.add(RedisReservationEngine.DELTA_KEY_PREFIX + sku));
+        List<Object> args = new ArrayList<>(List.of(batchId, String.valueOf(System.currentTimeMillis())));
+        args.addAll(skus);
+
+        List<?> drained = redisTemplate.execute(DRAIN_SCRIPT, keys, args.toArray());
+        if (drained != null && !drained.isEmpty()) {
+            Map<String, String> batch = new TreeMap<>();
+            for (int i = 0; i + 2 < drained.size(); i += 3) {
+                batch.put(drained.get(i).toString(), drained.get(i + 1) + ":" + drained.get(i + 2));
+            }
+            apply(batchId, batch);
+        }
+        return skus.size();
+    }
+
+    /**
+     * Paczki, które nie zostały sprzątnięte w {@code flush-retry-after-ms} (błąd bazy, awaria instancji).
+     */
+    private void retryPending() {
+        Set<String> stale = redisTemplate.opsForZSet()
+                .rangeByScore(PENDING_KEY, 0, System.currentTimeMillis() - retryAfterMs);
+        if (stale == null) {
+            return;
+        }
+        for (String batchId : stale) {
+            Map<String, String> batch = new TreeMap<>();
+            redisTemplate.opsForHash().entries(BATCH_KEY_PREFIX + batchId)
+                    .forEach((sku, deltas) -> batch.put(sku.toString(), deltas.toString()));
+            log.warn("Write-behind: ponawiam zapis paczki {} ({} produktów)", batchId, batch.size());
+            apply(batchId, batch);
+        }
+    }
+
+    /**
+     * @param batch SKU -> "delta available:delta reserved", posortowane po SKU - równoległe paczki
+     *              (inne instancje, listenery) blokują wiersze w tej samej kolejności
+     */
+    private void apply(String batchId, Map<String, String> batch) {
+        String[] skus = batch.keySet().toArray(String[]::new);
+        int[] availableDeltas = new int[skus.length];
+        int[] reservedDeltas = new int[skus.length];
+        for (int i = 0; i < skus.length; i++) {
+            String[] deltas = batch.get(skus[i]).split(":");
+            availableDeltas[i] = Integer.parseInt(deltas[0]);
+            reservedDeltas[i] = Integer.parseInt(deltas[1]);
+        }
+        try {
+            int updated = skus.length == 0 ? 0
+                    : inventoryRepository.applyDeltas(LEDGER_GROUP, batchId, skus, availableDeltas, reservedDeltas);
+            log.debug("Write-behind: paczka {} - delty {} produktów ({} wierszy)", batchId, skus.length, updated);
+        } catch (Exception e) {
+            log.error("Write-behind: zapis paczki {} do bazy nieudany, zostaje w Redis do ponowienia: {}",
+                    batchId, e.getMessage());
+            return;
+        }
+        // Najpierw paczka, potem wpis w kolejce - awaria pomiędzy zostawia pusty wpis, sprzątany przy ponowieniu
+        redisTemplate.delete(BATCH_KEY_PREFIX + batchId);
+        redisTemplate.opsForZSet().remove(PENDING_KEY, batchId);
+    }
+}
@@ -0,0 +1,2 @@
+-- Optimistic locking for inventory rows
+ALTER TABLE inventory ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,14 @@
+-- Tryb flash-sale: stan gorącego SKU rozłożony na kubełki, żeby rezerwacje nie czekały na blokadę jednego wiersza.
+-- Dla SKU z bucket_count > 0 wiersz inventory jest pulą nierozdzieloną (available), a reserved żyje w kubełkach.
+ALTER TABLE inventory ADD COLUMN IF NOT EXISTS bucket_count INT NOT NULL DEFAULT 0;
+
+CREATE TABLE IF NOT EXISTS inventory_bucket (
+    uuid UUID PRIMARY KEY,
+    product_number VARCHAR(100) NOT NULL REFERENCES inventory (product_number) ON DELETE CASCADE,
+    bucket INT NOT NULL,
+    available_quantity INT NOT NULL DEFAULT 0,
+    reserved_quantity INT NOT NULL DEFAULT 0,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    UNIQUE (product_number, bucket)
+);
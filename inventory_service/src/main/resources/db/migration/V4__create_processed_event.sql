@@ -0,0 +1,12 @@
+-- Rejestr przetworzonych eventów Kafka (idempotentna konsumpcja).
+-- Wpis powstaje w tej samej transakcji co efekt eventu, więc ponowne dostarczenie jest pomijane.
+CREATE TABLE IF NOT EXISTS processed_event (
+    uuid UUID PRIMARY KEY,
+    consumer_group VARCHAR(100) NOT NULL,
+    event_id VARCHAR(255) NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    UNIQUE (consumer_group, event_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_processed_event_created_at ON processed_event (created_at);
@@ -0,0 +1,20 @@
+-- Dodaje ilość do pozycji pakietu rezerwacji użytkownika i przesuwa termin całego pakietu.
+-- KEYS[1] = reservation:{userId} (pakiet), KEYS[2] = reservations:expiry, KEYS[3] = reservations:sku:{sku},
+-- KEYS[4] = reservations:quantity, KEYS[5] = reservation:{userId}:{sku} (pozycja sprzed pakietów)
+-- ARGV[1] = reservationId, ARGV[2] = sku, ARGV[3] = quantity, ARGV[4] = ttl (s), ARGV[5] = termin (epoch ms)
+-- Zwraca: łączną ilość rezerwacji
+local legacy = redis.call('GET', KEYS[5])
+if legacy then
+    redis.call('HINCRBY', KEYS[1], ARGV[2], legacy)
+    redis.call('DEL', KEYS[5])
+end
+local total = redis.call('HINCRBY', KEYS[1], ARGV[2], ARGV[3])
+redis.call('HSET', KEYS[4], ARGV[1], total)
+redis.call('SADD', KEYS[3], ARGV[1])
+-- Jeden TTL pakietu - termin w indeksie przesuwa się dla wszystkich jego pozycji
+redis.call('EXPIRE', KEYS[1], ARGV[4])
+local user = string.match(ARGV[1], '^([^:]*):')
+for _, sku in ipairs(redis.call('HKEYS', KEYS[1])) do
+    redis.call('ZADD', KEYS[2], ARGV[5], user .. ':' .. sku)
+end
+return total
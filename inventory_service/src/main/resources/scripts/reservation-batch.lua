@@ -0,0 +1,56 @@
+-- Wsadowe zmiany rezerwacji - jeden round-trip zamiast skryptu na pozycję.
+-- KEYS[1] = reservations:expiry, KEYS[2] = reservations:quantity,
+-- dalej trójki kluczy na pozycję: reservation:{userId} (pakiet), reservations:sku:{sku},
+-- reservation:{reservationId} (pozycja sprzed pakietów)
+-- ARGV[1] = ttl (s), ARGV[2] = termin wygaśnięcia (epoch ms), dalej czwórki: operacja, sku, reservationId, ilość
+--   '+' jak reservation-add.lua     - zwraca łączną ilość
+--   '=' jak reservation-replace.lua - zwraca poprzednią ilość lub -1
+--   '-' jak reservation-remove.lua  - zwraca ilość przejętej rezerwacji lub -1
+-- Pakiety zmienione przez '+' i '=' dostają nowy TTL i termin raz, po wszystkich pozycjach.
+-- Zwraca listę wyników w kolejności pozycji
+local result = {}
+local touched = {}
+for i = 3, #ARGV, 4 do
+    local op, sku, id, qty = ARGV[i], ARGV[i + 1], ARGV[i + 2], ARGV[i + 3]
+    local k = 2 + (i - 3) / 4 * 3
+    local user = string.match(id, '^([^:]*):') or ''
+    local bundle, skuIndex, legacyKey = KEYS[k + 1], KEYS[k + 2], KEYS[k + 3]
+    local value
+    if op ~= '-' then
+        local legacy = redis.call('GET', legacyKey)
+        if legacy then
+            redis.call('HINCRBY', bundle, sku, legacy)
+            redis.call('DEL', legacyKey)
+        end
+    end
+    if op == '+' then
+        value = redis.call('HINCRBY', bundle, sku, qty)
+        redis.call('HSET', KEYS[2], id, value)
+        redis.call('SADD', skuIndex, id)
+        touched[user] = bundle
+    elseif op == '=' then
+        value = tonumber(redis.call('HGET', bundle, sku)) or -1
+        if value >= 0 then
+            redis.call('HSET', bundle, sku, qty)
+            redis.call('HSET', KEYS[2], id, qty)
+            touched[user] = bundle
+        end
+    elseif redis.call('ZREM', KEYS[1], id) == 1 then
+        value = tonumber(redis.call('HGET', KEYS[2], id)) or tonumber(redis.call('HGET', bundle, sku))
+                or tonumber(redis.call('GET', legacyKey)) or 0
+        redis.call('HDEL', bundle, sku)
+        redis.call('DEL', legacyKey)
+        redis.call('HDEL', KEYS[2], id)
+        redis.call('SREM', skuIndex, id)
+    else
+        value = -1
+    end
+    table.insert(result, value)
+end
+for user, bundle in pairs(touched) do
+    redis.call('EXPIRE', bundle, ARGV[1])
+    for _, sku in ipairs(redis.call('HKEYS', bundle)) do
+        redis.call('ZADD', KEYS[1], ARGV[2], user .. ':' .. sku)
+    end
+end
+return result
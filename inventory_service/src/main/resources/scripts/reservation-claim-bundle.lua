@@ -0,0 +1,30 @@
+-- Przejmuje podane pozycje pakietu rezerwacji użytkownika.
+-- Pozycje przejęte wcześniej (anulowanie, sprzątanie) są pomijane - decyduje ZREM z indeksu wygaśnięć.
+-- KEYS[1] = reservation:{userId}, KEYS[2] = reservations:expiry, KEYS[3] = reservations:quantity,
+-- KEYS[3 + n] = reservations:sku:{sku} n-tej pozycji
+-- ARGV[1] = userId, ARGV[2] = najpóźniejszy termin przejmowanych pozycji (epoch ms) albo '+inf' - wszystkie,
+-- ARGV[2 + n] = sku n-tej pozycji
+-- Z terminem pomijane są pozycje z późniejszym terminem (pakiet założony od nowa po wygaśnięciu)
+-- i tylko przejęte pozycje znikają z pakietu; z '+inf' podane pozycje znikają z pakietu zawsze.
+-- Zwraca płaską listę: reservationId, sku, quantity, ...
+local all = ARGV[2] == '+inf'
+local result = {}
+for n = 1, #ARGV - 2 do
+    local sku = ARGV[2 + n]
+    local id = ARGV[1] .. ':' .. sku
+    local deadline = tonumber(redis.call('ZSCORE', KEYS[2], id))
+    local claimed = deadline ~= nil and (all or deadline <= tonumber(ARGV[2]))
+            and redis.call('ZREM', KEYS[2], id) == 1
+    if claimed then
+        local qty = redis.call('HGET', KEYS[3], id) or redis.call('HGET', KEYS[1], sku) or '0'
+        redis.call('HDEL', KEYS[3], id)
+        redis.call('SREM', KEYS[3 + n], id)
+        table.insert(result, id)
+        table.insert(result, sku)
+        table.insert(result, tostring(qty))
+    end
+    if claimed or all then
+        redis.call('HDEL', KEYS[1], sku)
+    end
+end
+return result
@@ -0,0 +1,39 @@
+-- Przejmuje rezerwacje odczytane z indeksu wygaśnięć (ZRANGEBYSCORE), których termin wciąż jest miniony
+-- i których pakiet faktycznie wygasł. Rezerwacje wciąż żyjące (np. przesunięty zegar) dostają nowy termin
+-- z PTTL pakietu; przejęte lub przedłużone w międzyczasie są pomijane.
+-- KEYS[1] = reservations:expiry, KEYS[2] = reservations:quantity,
+-- dalej trójki kluczy na rezerwację: reservation:{userId} (pakiet), reservation:{reservationId}
+-- (pozycja sprzed pakietów), reservations:sku:{sku}
+-- ARGV[1] = teraz (epoch ms), dalej pary: reservationId, sku
+-- Zwraca płaską listę: reservationId, sku, quantity, ...
+local now = tonumber(ARGV[1])
+local result = {}
+for i = 2, #ARGV, 2 do
+    local id, sku = ARGV[i], ARGV[i + 1]
+    local k = 2 + (i - 2) / 2 * 3
+    local bundle, legacyKey, skuIndex = KEYS[k + 1], KEYS[k + 2], KEYS[k + 3]
+    local deadline = tonumber(redis.call('ZSCORE', KEYS[1], id))
+    if deadline ~= nil and deadline <= now then
+        local ttl
+        if redis.call('HEXISTS', bundle, sku) == 1 then
+            ttl = redis.call('PTTL', bundle)
+        else
+            -- pozycja sprzed pakietów
+            ttl = redis.call('PTTL', legacyKey)
+        end
+        if ttl > 0 then
+            redis.call('ZADD', KEYS[1], now + ttl, id)
+        else
+            local qty = redis.call('HGET', KEYS[2], id) or '0'
+            redis.call('ZREM', KEYS[1], id)
+            redis.call('HDEL', bundle, sku)
+            redis.call('DEL', legacyKey)
+            redis.call('HDEL', KEYS[2], id)
+            redis.call('SREM', skuIndex, id)
+            table.insert(result, id)
+            table.insert(result, sku)
+            table.insert(result, tostring(qty))
+        end
+    end
+end
+return result
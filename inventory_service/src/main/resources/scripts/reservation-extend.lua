@@ -0,0 +1,13 @@
+-- Przedłuża cały pakiet rezerwacji użytkownika: jeden EXPIRE i nowy termin pozycji w indeksie.
+-- KEYS[1] = reservation:{userId}, KEYS[2] = reservations:expiry
+-- ARGV[1] = userId, ARGV[2] = ttl (s), ARGV[3] = termin (epoch ms)
+-- Zwraca: liczbę pozycji pakietu (0 - pakiet nie istnieje lub wygasł)
+local skus = redis.call('HKEYS', KEYS[1])
+if #skus == 0 then
+    return 0
+end
+redis.call('EXPIRE', KEYS[1], ARGV[2])
+for _, sku in ipairs(skus) do
+    redis.call('ZADD', KEYS[2], ARGV[3], ARGV[1] .. ':' .. sku)
+end
+return #skus
@@ -0,0 +1,7 @@
+-- Suma ilości żywych rezerwacji jednego SKU (bez KEYS/SCAN po całym keyspace).
+-- KEYS[1] = reservations:sku:{sku}, KEYS[2] = reservations:quantity
+local total = 0
+for _, id in ipairs(redis.call('SMEMBERS', KEYS[1])) do
+    total = total + (tonumber(redis.call('HGET', KEYS[2], id)) or 0)
+end
+return total
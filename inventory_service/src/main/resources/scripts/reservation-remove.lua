@@ -0,0 +1,16 @@
+-- Usuwa pozycję z pakietu wraz z wpisami w indeksach (termin pozostałych pozycji się nie zmienia).
+-- Tylko jeden wywołujący (anulowanie albo sprzątanie wygasłych) może ją "przejąć" - decyduje ZREM
+-- z indeksu wygaśnięć.
+-- KEYS jak w reservation-add.lua, ARGV[1] = reservationId, ARGV[2] = sku
+-- Zwraca: ilość przejętej rezerwacji lub -1 jeśli nie istnieje / przejęta wcześniej
+if redis.call('ZREM', KEYS[2], ARGV[1]) == 0 then
+    return -1
+end
+local qty = tonumber(redis.call('HGET', KEYS[4], ARGV[1]))
+        or tonumber(redis.call('HGET', KEYS[1], ARGV[2]))
+        or tonumber(redis.call('GET', KEYS[5])) or 0
+redis.call('HDEL', KEYS[1], ARGV[2])
+redis.call('DEL', KEYS[5])
+redis.call('HDEL', KEYS[4], ARGV[1])
+redis.call('SREM', KEYS[3], ARGV[1])
+return qty
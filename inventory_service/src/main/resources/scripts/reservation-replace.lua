@@ -0,0 +1,24 @@
+-- Nadpisuje ilość istniejącej pozycji pakietu i przesuwa termin całego pakietu.
+-- KEYS/ARGV jak w reservation-add.lua (ARGV[3] = nowa ilość),
+-- opcjonalnie ARGV[6] = oczekiwana obecna ilość - przy innej pozycja zostaje bez zmian (compare-and-set)
+-- Zwraca: poprzednią ilość lub -1 jeśli rezerwacja nie istnieje
+local legacy = redis.call('GET', KEYS[5])
+if legacy then
+    redis.call('HINCRBY', KEYS[1], ARGV[2], legacy)
+    redis.call('DEL', KEYS[5])
+end
+local previous = tonumber(redis.call('HGET', KEYS[1], ARGV[2]))
+if previous == nil then
+    return -1
+end
+if ARGV[6] and previous ~= tonumber(ARGV[6]) then
+    return previous
+end
+redis.call('HSET', KEYS[1], ARGV[2], ARGV[3])
+redis.call('HSET', KEYS[4], ARGV[1], ARGV[3])
+redis.call('EXPIRE', KEYS[1], ARGV[4])
+local user = string.match(ARGV[1], '^([^:]*):')
+for _, sku in ipairs(redis.call('HKEYS', KEYS[1])) do
+    redis.call('ZADD', KEYS[2], ARGV[5], user .. ':' .. sku)
+end
+return previous
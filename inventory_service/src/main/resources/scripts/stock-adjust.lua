@@ -0,0 +1,29 @@
+-- Zmiana liczników spoza ścieżki rezerwacji (eventy produktowe i zamówieniowe).
+-- KEYS[1] = stock:{sku}, KEYS[2] = stock:delta:{sku}, KEYS[3] = stock:dirty
+-- ARGV[1] = delta available, ARGV[2] = delta reserved, ARGV[3] = sku,
+-- ARGV[4] = opcjonalnie nowa bezwzględna wartość available (nadpisuje ARGV[1]),
+-- ARGV[5] = '1' - zwolnienie: available rośnie dokładnie o tyle, o ile zmalało reserved (nadpisuje ARGV[1])
+-- reserved nigdy nie schodzi poniżej zera.
+-- Zwraca: 1 = OK, -3 = licznik niezaładowany
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return -3
+end
+local available = tonumber(redis.call('HGET', KEYS[1], 'available'))
+local reserved = tonumber(redis.call('HGET', KEYS[1], 'reserved'))
+local dAvailable = tonumber(ARGV[1])
+if ARGV[4] ~= nil and ARGV[4] ~= '' then
+    dAvailable = tonumber(ARGV[4]) - available
+end
+local dReserved = math.max(tonumber(ARGV[2]), 0 - reserved)
+if ARGV[5] == '1' then
+    dAvailable = 0 - dReserved
+end
+if dAvailable == 0 and dReserved == 0 then
+    return 1
+end
+redis.call('HINCRBY', KEYS[1], 'available', dAvailable)
+redis.call('HINCRBY', KEYS[1], 'reserved', dReserved)
+redis.call('HINCRBY', KEYS[2], 'available', dAvailable)
+redis.call('HINCRBY', KEYS[2], 'reserved', dReserved)
+redis.call('SADD', KEYS[3], ARGV[3])
+return 1
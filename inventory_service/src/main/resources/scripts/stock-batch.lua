@@ -0,0 +1,106 @@
+-- Wsadowe operacje na rezerwacjach wielu SKU (ReserveProducts / UpdateReservations / CancelReservations).
+-- Najpierw sprawdza wszystkie pozycje, dopiero potem zmienia liczniki - przy all-or-nothing
+-- nic nie jest zmieniane, jeśli którakolwiek pozycja się nie powiedzie.
+-- KEYS[1] = stock:dirty, KEYS[2] = reservations:expiry, KEYS[3] = reservations:quantity,
+-- dalej piątki kluczy na pozycję: stock:{sku}, stock:delta:{sku}, reservation:{userId} (pakiet),
+-- reservations:sku:{sku}, reservation:{reservationId} (pozycja sprzed pakietów)
+-- ARGV[1] = ttl (s), ARGV[2] = termin wygaśnięcia (epoch ms), ARGV[3] = '1' - all-or-nothing,
+-- dalej czwórki: operacja ('+' zwiększ, '=' ustaw, '-' anuluj), sku, reservationId, ilość
+-- Zwraca płaską listę par: status, ilość rezerwacji po operacji (przy anulowaniu - zwolniona ilość)
+-- Status: 1 = OK, 0 = pominięta (all-or-nothing), -1 = brak rezerwacji, -2 = brak stanu,
+-- -3 = licznik niezaładowany (wtedy nic nie jest zmieniane)
+-- Pakiety zmienione przez '+' i '=' dostają nowy TTL i termin raz, po wszystkich pozycjach.
+local items = {}
+local remaining = {}
+local failed = false
+local notLoaded = false
+local touched = {}
+
+for i = 4, #ARGV, 4 do
+    local k = 3 + (i - 4) / 4 * 5
+    local item = { op = ARGV[i], sku = ARGV[i + 1], id = ARGV[i + 2], qty = tonumber(ARGV[i + 3]), diff = 0, status = 1 }
+    item.user = string.match(item.id, '^([^:]*):') or ''
+    item.stockKey = KEYS[k + 1]
+    item.deltaKey = KEYS[k + 2]
+    item.bundle = KEYS[k + 3]
+    item.skuIndex = KEYS[k + 4]
+    item.legacy = KEYS[k + 5]
+    if remaining[item.sku] == nil then
+        remaining[item.sku] = tonumber(redis.call('HGET', item.stockKey, 'available')) or false
+    end
+    if remaining[item.sku] == false then
+        item.status = -3
+        notLoaded = true
+    else
+        -- pozycja pakietu albo klucz sprzed pakietów (przenoszony do pakietu przy zapisie)
+        local current = tonumber(redis.call('HGET', item.bundle, item.sku)) or tonumber(redis.call('GET', item.legacy))
+        if item.op == '+' then
+            item.diff = item.qty
+            item.qty = (current or 0) + item.qty
+        elseif item.op == '=' then
+            if current == nil then
+                item.status = -1
+            else
+                item.diff = item.qty - current
+            end
+        elseif not redis.call('ZSCORE', KEYS[2], item.id) then
+            item.status = -1
+        end
+        if item.status == 1 then
+            if item.diff > 0 and remaining[item.sku] < item.diff then
+                item.status = -2
+            else
+                remaining[item.sku] = remaining[item.sku] - item.diff
+            end
+        end
+    end
+    if item.status < 0 then
+        failed = true
+    end
+    table.insert(items, item)
+end
+
+local apply = not notLoaded and not (failed and ARGV[3] == '1')
+local result = {}
+for _, item in ipairs(items) do
+    if item.status == 1 and not apply then
+        item.status = 0
+    end
+    if item.status == 1 then
+        local stockKey = item.stockKey
+        local deltaKey = item.deltaKey
+        if item.op == '-' then
+            redis.call('ZREM', KEYS[2], item.id)
+            item.qty = tonumber(redis.call('HGET', KEYS[3], item.id)) or tonumber(redis.call('HGET', item.bundle, item.sku))
+                    or tonumber(redis.call('GET', item.legacy)) or 0
+            redis.call('HDEL', item.bundle, item.sku)
+            redis.call('DEL', item.legacy)
+            redis.call('HDEL', KEYS[3], item.id)
+            redis.call('SREM', item.skuIndex, item.id)
+            -- jak w stock-release.lua: reserved nie schodzi poniżej zera
+            item.diff = 0 - math.min(item.qty, tonumber(redis.call('HGET', stockKey, 'reserved')))
+        else
+            redis.call('DEL', item.legacy)
+            redis.call('HSET', item.bundle, item.sku, item.qty)
+            redis.call('HSET', KEYS[3], item.id, item.qty)
+            redis.call('SADD', item.skuIndex, item.id)
+            touched[item.user] = item.bundle
+        end
+        if item.diff ~= 0 then
+            redis.call('HINCRBY', stockKey, 'available', 0 - item.diff)
+            redis.call('HINCRBY', stockKey, 'reserved', item.diff)
+            redis.call('HINCRBY', deltaKey, 'available', 0 - item.diff)
+            redis.call('HINCRBY', deltaKey, 'reserved', item.diff)
+            redis.call('SADD', KEYS[1], item.sku)
+        end
+    end
+    table.insert(result, item.status)
+    table.insert(result, item.status == 1 and item.qty or 0)
+end
+for user, bundle in pairs(touched) do
+    redis.call('EXPIRE', bundle, ARGV[1])
+    for _, sku in ipairs(redis.call('HKEYS', bundle)) do
+        redis.call('ZADD', KEYS[2], ARGV[2], user .. ':' .. sku)
+    end
+end
+return result
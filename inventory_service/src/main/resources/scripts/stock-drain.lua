@@ -0,0 +1,25 @@
+-- Przenosi zaległe delty wskazanych SKU do paczki write-behind. Delty znikają z Redis dopiero,
+-- gdy paczka zostanie sprzątnięta po commicie w bazie - do tego czasu paczka czeka w stock:flush:pending.
+-- KEYS[1] = stock:dirty, KEYS[2] = stock:flush:pending, KEYS[3] = stock:flush:{batchId},
+-- KEYS[4..] = stock:delta:{sku} w kolejności ARGV[3..]
+-- ARGV[1] = batchId, ARGV[2] = czas utworzenia paczki (epoch ms), ARGV[3..] = sku
+-- Zwraca płaską listę: sku, delta available, delta reserved, sku, ... (tylko niezerowe delty)
+local result = {}
+for i = 3, #ARGV do
+    local sku = ARGV[i]
+    local key = KEYS[i + 1]
+    local available = tonumber(redis.call('HGET', key, 'available')) or 0
+    local reserved = tonumber(redis.call('HGET', key, 'reserved')) or 0
+    redis.call('DEL', key)
+    redis.call('SREM', KEYS[1], sku)
+    if available ~= 0 or reserved ~= 0 then
+        redis.call('HSET', KEYS[3], sku, available .. ':' .. reserved)
+        table.insert(result, sku)
+        table.insert(result, tostring(available))
+        table.insert(result, tostring(reserved))
+    end
+end
+if #result > 0 then
+    redis.call('ZADD', KEYS[2], ARGV[2], ARGV[1])
+end
+return result
@@ -0,0 +1,8 @@
+-- Ładuje licznik z bazy, tylko jeśli jeszcze go nie ma (liczniki nie są nigdy usuwane).
+-- KEYS[1] = stock:{sku}
+-- ARGV[1] = available, ARGV[2] = reserved
+if redis.call('EXISTS', KEYS[1]) == 1 then
+    return 0
+end
+redis.call('HSET', KEYS[1], 'available', ARGV[1], 'reserved', ARGV[2])
+return 1
@@ -0,0 +1,25 @@
+-- Anulowanie rezerwacji: przejmij pozycję z indeksu wygaśnięć, usuń ją z pakietu i oddaj ilość do available.
+-- KEYS jak w stock-reserve.lua
+-- ARGV[1] = sku, ARGV[2] = reservationId
+-- Zwraca: zwolnioną ilość, -1 = rezerwacja nie istnieje, -3 = licznik niezaładowany
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return -3
+end
+if redis.call('ZREM', KEYS[5], ARGV[2]) == 0 then
+    return -1
+end
+local qty = tonumber(redis.call('HGET', KEYS[7], ARGV[2]))
+        or tonumber(redis.call('HGET', KEYS[4], ARGV[1]))
+        or tonumber(redis.call('GET', KEYS[8])) or 0
+redis.call('HDEL', KEYS[4], ARGV[1])
+redis.call('DEL', KEYS[8])
+redis.call('HDEL', KEYS[7], ARGV[2])
+redis.call('SREM', KEYS[6], ARGV[2])
+-- reserved nigdy nie schodzi poniżej zera - do available wraca tylko to, co faktycznie zdjęto z reserved
+local released = math.min(qty, tonumber(redis.call('HGET', KEYS[1], 'reserved')))
+redis.call('HINCRBY', KEYS[1], 'available', released)
+redis.call('HINCRBY', KEYS[1], 'reserved', 0 - released)
+redis.call('HINCRBY', KEYS[2], 'available', released)
+redis.call('HINCRBY', KEYS[2], 'reserved', 0 - released)
+redis.call('SADD', KEYS[3], ARGV[1])
+return qty
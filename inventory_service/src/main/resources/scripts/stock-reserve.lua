@@ -0,0 +1,34 @@
+-- Rezerwacja: sprawdź i zmniejsz available, zwiększ pozycję pakietu rezerwacji użytkownika i zaindeksuj ją.
+-- KEYS[1] = stock:{sku}, KEYS[2] = stock:delta:{sku}, KEYS[3] = stock:dirty, KEYS[4] = reservation:{userId},
+-- KEYS[5] = reservations:expiry, KEYS[6] = reservations:sku:{sku}, KEYS[7] = reservations:quantity,
+-- KEYS[8] = reservation:{userId}:{sku} (pozycja sprzed pakietów)
+-- ARGV[1] = quantity, ARGV[2] = ttl (s), ARGV[3] = sku, ARGV[4] = reservationId, ARGV[5] = termin (epoch ms)
+-- Zwraca: 1 = OK, -1 = brak stanu, -3 = licznik niezaładowany
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return -3
+end
+local qty = tonumber(ARGV[1])
+local available = tonumber(redis.call('HGET', KEYS[1], 'available'))
+if available < qty then
+    return -1
+end
+redis.call('HINCRBY', KEYS[1], 'available', -qty)
+redis.call('HINCRBY', KEYS[1], 'reserved', qty)
+redis.call('HINCRBY', KEYS[2], 'available', -qty)
+redis.call('HINCRBY', KEYS[2], 'reserved', qty)
+redis.call('SADD', KEYS[3], ARGV[3])
+local legacy = redis.call('GET', KEYS[8])
+if legacy then
+    redis.call('HINCRBY', KEYS[4], ARGV[3], legacy)
+    redis.call('DEL', KEYS[8])
+end
+local total = redis.call('HINCRBY', KEYS[4], ARGV[3], qty)
+redis.call('HSET', KEYS[7], ARGV[4], total)
+redis.call('SADD', KEYS[6], ARGV[4])
+-- Jeden TTL pakietu - termin w indeksie przesuwa się dla wszystkich jego pozycji
+redis.call('EXPIRE', KEYS[4], ARGV[2])
+local user = string.match(ARGV[4], '^([^:]*):')
+for _, sku in ipairs(redis.call('HKEYS', KEYS[4])) do
+    redis.call('ZADD', KEYS[5], ARGV[5], user .. ':' .. sku)
+end
+return 1
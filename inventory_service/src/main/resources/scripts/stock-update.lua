@@ -0,0 +1,36 @@
+-- Zmiana ilości pozycji pakietu (w górę warunkowo, w dół zawsze) z przesunięciem terminu całego pakietu.
+-- KEYS jak w stock-reserve.lua
+-- ARGV[1] = nowa ilość, ARGV[2] = ttl (s), ARGV[3] = sku, ARGV[4] = reservationId, ARGV[5] = termin (epoch ms)
+-- Zwraca: nową ilość, -1 = brak rezerwacji, -2 = brak stanu, -3 = licznik niezaładowany
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return -3
+end
+local legacy = redis.call('GET', KEYS[8])
+if legacy then
+    redis.call('HINCRBY', KEYS[4], ARGV[3], legacy)
+    redis.call('DEL', KEYS[8])
+end
+local current = tonumber(redis.call('HGET', KEYS[4], ARGV[3]))
+if current == nil then
+    return -1
+end
+local target = tonumber(ARGV[1])
+local diff = target - current
+if diff > 0 and tonumber(redis.call('HGET', KEYS[1], 'available')) < diff then
+    return -2
+end
+if diff ~= 0 then
+    redis.call('HINCRBY', KEYS[1], 'available', -diff)
+    redis.call('HINCRBY', KEYS[1], 'reserved', diff)
+    redis.call('HINCRBY', KEYS[2], 'available', -diff)
+    redis.call('HINCRBY', KEYS[2], 'reserved', diff)
+    redis.call('SADD', KEYS[3], ARGV[3])
+end
+redis.call('HSET', KEYS[4], ARGV[3], target)
+redis.call('HSET', KEYS[7], ARGV[4], target)
+redis.call('EXPIRE', KEYS[4], ARGV[2])
+local user = string.match(ARGV[4], '^([^:]*):')
+for _, sku in ipairs(redis.call('HKEYS', KEYS[4])) do
+    redis.call('ZADD', KEYS[5], ARGV[5], user .. ':' .. sku)
+end
+return target
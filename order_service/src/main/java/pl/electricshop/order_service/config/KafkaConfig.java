@@ -0,0 +1,19 @@
+package pl.electricshop.order_service.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ContainerCustomizer;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+
+@Configuration
+public class KafkaConfig {
+
+    /**
+     * Offsety commitowane asynchronicznie - commit, który nie dojdzie, kończy się ponownym dostarczeniem,
+     * a to pomija {@link pl.electricshop.order_service.service.IdempotencyLedger}.
+     */
+    @Bean
+    public ContainerCustomizer<Object, Object, ConcurrentMessageListenerContainer<Object, Object>> asyncCommits() {
+        return container -> container.getContainerProperties().setSyncCommits(false);
+    }
+}
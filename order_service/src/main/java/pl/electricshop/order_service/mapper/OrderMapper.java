@@ -6,11 +6,13 @@ import org.mapstruct.Mapping;
 import org.mapstruct.MappingTarget;
 import pl.electricshop.common.events.cart.CartCheckoutEvent;
 import pl.electricshop.common.events.cart.CartItemPayload;
+import pl.electricshop.common.money.Money;
 import pl.electricshop.order_service.api.AddressDTO;
 import pl.electricshop.order_service.model.AddressSnapshot;
 import pl.electricshop.order_service.model.Order;
 import pl.electricshop.order_service.model.OrderItem;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Mapper(componentModel = "spring", imports = {LocalDateTime.class})
@@ -56,6 +58,13 @@ public interface OrderMapper {
     @Mapping(target = "orderedProductPrice", source = "price")
     OrderItem mapToOrderItem(CartItemPayload payload);
 
+    /**
+     * Kwoty z eventów ({@link Money}) w encjach zostają jako {@code numeric} - bez zmiany schematu.
+     */
+    default BigDecimal toAmount(Money money) {
+        return money != null ? money.toBigDecimal() : null;
+    }
+
     @AfterMapping
     default void linkOrderItems(@MappingTarget Order order) {
         if (order.getOrderItems() != null) {
@@ -44,6 +44,12 @@ public class Order extends BaseEntity {
 
     private String paymentId;
 
+    /**
+     * Bilet checkoutu w Cart Service - przekazywany w eventach zamówienia, żeby status biletu nie zależał
+     * od kolejności przetwarzania topiców.
+     */
+    private UUID checkoutId;
+
     @PrePersist
     public void generateId() {
         if (this.orderNumber == null) {
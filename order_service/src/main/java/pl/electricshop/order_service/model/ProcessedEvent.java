@@ -0,0 +1,21 @@
+package pl.electricshop.order_service.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+import pl.electricshop.common.events.base.BaseEntity;
+
+/**
+ * Wpis rejestru przetworzonych eventów - (grupa konsumenta, id eventu) jest unikalne.
+ */
+@Table(name = "processed_event")
+@Entity
+@Getter
+@Setter
+public class ProcessedEvent extends BaseEntity {
+
+    private String consumerGroup;
+
+    private String eventId;
+}
@@ -0,0 +1,39 @@
+package pl.electricshop.order_service.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import pl.electricshop.common.idempotency.ProcessedEventStore;
+import pl.electricshop.order_service.model.ProcessedEvent;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface ProcessedEventRepository extends JpaRepository<ProcessedEvent, UUID>, ProcessedEventStore {
+
+    /**
+     * Zapisuje eventy jako przetworzone. Wiersz z konfliktem (event przetworzony albo właśnie przetwarzany
+     * przez inną transakcję - wtedy INSERT czeka na jej wynik) nie jest zwracany.
+     *
+     * INSERT ... RETURNING bez {@code @Modifying} (ten dopuszcza tylko wynik int/void), ale z zapisem w transakcji.
+     *
+     * @return id eventów zapisanych przez to wywołanie
+     */
+    @Transactional
+    @Query(value = "INSERT INTO {h-schema}processed_event (uuid, consumer_group, event_id, created_at, updated_at) " +
+            "SELECT gen_random_uuid(), :group, e.event_id, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP " +
+            "FROM unnest(CAST(:eventIds AS varchar[])) AS e(event_id) " +
+            "ON CONFLICT (consumer_group, event_id) DO NOTHING " +
+            "RETURNING event_id",
+            nativeQuery = true)
+    List<String> insertNew(String group, String[] eventIds);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ProcessedEvent p WHERE p.createdAt < :before")
+    int deleteOlderThan(LocalDateTime before);
+}
@@ -0,0 +1,41 @@
+package pl.electricshop.order_service.service;
+
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.adapter.ConsumerRecordMetadata;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import pl.electricshop.common.idempotency.ProcessedEventLedger;
+import pl.electricshop.order_service.repository.ProcessedEventRepository;
+
+import java.util.List;
+
+/**
+ * Rejestr przetworzonych eventów Kafka - ponowne dostarczenie nie tworzy drugiego zamówienia
+ * i nie wysyła drugi raz eventów do Payment/Inventory. Rejestr i retencja w {@link ProcessedEventLedger}.
+ */
+@Component
+public class IdempotencyLedger extends ProcessedEventLedger {
+
+    public IdempotencyLedger(ProcessedEventRepository processedEventRepository,
+                             @Value("${order.idempotency.retention-days:7}") int retentionDays) {
+        super(processedEventRepository, retentionDays);
+    }
+
+    /**
+     * Rejestruje event w transakcji wywołującego.
+     *
+     * @return true jeśli grupa jeszcze go nie przetworzyła
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public boolean claim(String consumerGroup, ConsumerRecordMetadata metadata) {
+        String eventId = eventId(metadata.topic(), metadata.partition(), metadata.offset());
+        return !claimIds(consumerGroup, List.of(eventId)).isEmpty();
+    }
+
+    @Scheduled(fixedDelayString = "${order.idempotency.cleanup-interval-ms:3600000}",
+            initialDelayString = "${order.idempotency.cleanup-interval-ms:3600000}")
+    public void cleanup() {
+        purgeExpired();
+    }
+}
@@ -1,13 +1,14 @@
 package pl.electricshop.order_service.service;
 
 
+import org.springframework.kafka.listener.adapter.ConsumerRecordMetadata;
 import pl.electricshop.common.events.cart.CartCheckoutEvent;
 
 import java.util.UUID;
 
 public interface OrderService {
 
-    void proccessOrder(CartCheckoutEvent event);
+    void proccessOrder(CartCheckoutEvent event, ConsumerRecordMetadata metadata);
 
     void finalizeOrder(UUID orderId, String paymentId);
 }
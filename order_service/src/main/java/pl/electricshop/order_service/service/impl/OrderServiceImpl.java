@@ -5,18 +5,21 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.adapter.ConsumerRecordMetadata;
 import org.springframework.stereotype.Service;
 import pl.electricshop.common.events.cart.CartCheckoutEvent;
 import pl.electricshop.common.events.payment.*;
+import pl.electricshop.common.money.Money;
 import pl.electricshop.order_service.api.AddressDTO;
 import pl.electricshop.order_service.client.UserServiceClient;
 import pl.electricshop.order_service.mapper.OrderMapper;
 import pl.electricshop.order_service.model.Order;
+import pl.electricshop.order_service.model.OrderItem;
 import pl.electricshop.order_service.model.enums.OrderStatus;
 import pl.electricshop.order_service.repository.OrderRepository;
+import pl.electricshop.order_service.service.IdempotencyLedger;
 import pl.electricshop.order_service.service.OrderService;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
@@ -27,19 +30,26 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 @Slf4j
 public class OrderServiceImpl implements OrderService {
+    private static final String CONSUMER_GROUP = "order-group";
+
     private final OrderRepository orderRepository;
     private final KafkaTemplate<String, Object> kafkaTemplate;
     private final UserServiceClient userClient;
     private final OrderMapper orderMapper;
+    private final IdempotencyLedger idempotencyLedger;
 
     /**
      * Główna metoda "Place Order".
      * Nie jest wywoływana przez REST Controller, ale przez KAFKĘ z Cart Service!
+     * Ponowne dostarczenie eventu pomija {@link IdempotencyLedger} (dotyczy wszystkich listenerów).
      */
     @Override
     @Transactional
-    @KafkaListener(topics = "cart-checkout-topic", groupId = "order-group")
-    public void proccessOrder(CartCheckoutEvent event) {
+    @KafkaListener(topics = "cart-checkout-topic", groupId = CONSUMER_GROUP)
+    public void proccessOrder(CartCheckoutEvent event, ConsumerRecordMetadata metadata) {
+        if (!idempotencyLedger.claim(CONSUMER_GROUP, metadata)) {
+            return;
+        }
         log.info("Rozpoczynam tworzenie zamówienia dla: {}", event.getEmail());
         // 1. Uruchamiamy pobieranie adresu i rezerwację wirtualnych wątkach
         CompletableFuture<AddressDTO> addressFuture = CompletableFuture.supplyAsync(
@@ -52,14 +62,26 @@ public class OrderServiceImpl implements OrderService {
 
 
         Order order = orderMapper.createOrderEntity(event, addressDTO);
+        order.setCheckoutId(event.getCheckoutId());
 
         Order savedOrder = orderRepository.save(order);
 
-        notifyPaymentService(savedOrder);
+        notifyPaymentService(savedOrder, event.getCheckoutId());
 
         log.info("Zamówienie utworzone pomyślnie dla: {}, ID: {}", event.getEmail(), savedOrder.getUuid());
     }
 
+    private OrderItemPayload toPayload(OrderItem item) {
+        Money unitPrice = Money.of(item.getOrderedProductPrice());
+        return new OrderItemPayload(
+                item.getProductNumber(),
+                item.getProductName(),
+                item.getQuantity(),
+                unitPrice,
+                unitPrice.times(item.getQuantity())
+        );
+    }
+
     private AddressDTO fetchAddressOrThrow(UUID addressId) {
         try {
             return userClient.getAddressById(addressId);
@@ -69,26 +91,21 @@ public class OrderServiceImpl implements OrderService {
         }
     }
 
-    private void notifyPaymentService(Order order) {
+    private void notifyPaymentService(Order order, UUID checkoutId) {
 
         List<OrderItemPayload> orderItems = order.getOrderItems().stream()
-                .map(item -> new OrderItemPayload(
-                        item.getProductNumber(),
-                        item.getProductName(),
-                        item.getQuantity(),
-                        item.getOrderedProductPrice(),
-                        item.getOrderedProductPrice().multiply(BigDecimal.valueOf(item.getQuantity()))
-                ))
+                .map(this::toPayload)
                 .toList();
 
         OrderCreatedEvent paymentEvent = new OrderCreatedEvent(
                 order.getUuid(),
                 order.getUserId(),
                 order.getEmail(),
-                order.getTotalAmount(),
+                Money.of(order.getTotalAmount()),
                 "BLIK",
-                "PLN",
-                orderItems
+                Money.PLN.getCurrencyCode(),
+                orderItems,
+                checkoutId
         );
 
         log.info("Wysyłam zdarzenie OrderCreatedEvent do usługi płatności dla zamówienia: {}", order.getUuid());
@@ -102,14 +119,7 @@ public class OrderServiceImpl implements OrderService {
 
         // 1. Mapowanie pozycji zamówienia na Payload (dla maila)
         List<OrderItemPayload> itemPayloads = order.getOrderItems().stream()
-                .map(item -> new OrderItemPayload(
-                        item.getProductNumber(),
-                        item.getProductName(),
-                        item.getQuantity(),
-                        item.getOrderedProductPrice(),
-                        item.getOrderedProductPrice()
-                                .multiply(BigDecimal.valueOf(item.getQuantity()))
-                ))
+                .map(this::toPayload)
                 .collect(Collectors.toList());
 
         order.setPaymentId(paymentId);
@@ -118,28 +128,35 @@ public class OrderServiceImpl implements OrderService {
                 order.getUuid().toString(),
                 order.getUserId(),
                 order.getEmail(),
-                order.getTotalAmount(),
+                Money.of(order.getTotalAmount()),
                 itemPayloads,
                 order.getAddressSnapshot().getCity(),
                 order.getAddressSnapshot().getStreet(),
-                LocalDateTime.now().toString());
+                LocalDateTime.now().toString(),
+                order.getCheckoutId());
         order.setOrderStatus(OrderStatus.PAID);
         orderRepository.save(order);
         // 3. Wysłanie
         kafkaTemplate.send("order-placed-topic", event);
     }
 
-    @KafkaListener(topics = "payment-succeeded-topic", groupId = "order-group")
+    @KafkaListener(topics = "payment-succeeded-topic", groupId = CONSUMER_GROUP)
     @Transactional
-    public void handlePaymentSucceeded(PaymentSucceededEvent event) {
+    public void handlePaymentSucceeded(PaymentSucceededEvent event, ConsumerRecordMetadata metadata) {
+        if (!idempotencyLedger.claim(CONSUMER_GROUP, metadata)) {
+            return;
+        }
         log.info("Otrzymano potwierdzenie płatności: {}", event.orderId());
         finalizeOrder(UUID.fromString(event.orderId()), event.paymentId());
         log.info("Zamówienie {} zostało sfinalizowane po płatności.", event.orderId());
     }
 
-    @KafkaListener(topics = "payment-failed-topic", groupId = "order-group")
+    @KafkaListener(topics = "payment-failed-topic", groupId = CONSUMER_GROUP)
     @Transactional
-    public void handlePaymentFailed(PaymentFailedEvent event) {
+    public void handlePaymentFailed(PaymentFailedEvent event, ConsumerRecordMetadata metadata) {
+        if (!idempotencyLedger.claim(CONSUMER_GROUP, metadata)) {
+            return;
+        }
         log.warn("Płatność nieudana dla zamówienia: {}. Powód: {}", event.orderId(), event.errorMessage());
         UUID orderId = UUID.fromString(event.orderId());
         orderRepository.findById(orderId).ifPresent(order -> {
@@ -150,17 +167,11 @@ public class OrderServiceImpl implements OrderService {
             // 2. Wysłanie eventu do Inventory, aby zwolnić blokadę (jeśli była)
             OrderFailedEvent failedEvent = new OrderFailedEvent(order.getUuid(),
                     order.getOrderItems().stream()
-                            .map(item -> new OrderItemPayload(
-                                    item.getProductNumber(),
-                                    item.getProductName(),
-                                    item.getQuantity(),
-                                    item.getOrderedProductPrice(),
-                                    item.getOrderedProductPrice()
-                                            .multiply(BigDecimal.valueOf(item.getQuantity()))
-                            ))
+                            .map(this::toPayload)
                             .collect(Collectors.toList()),
                     "PAYMENT_REJECTED",
-                    order.getEmail()
+                    order.getEmail(),
+                    order.getCheckoutId()
             );
             kafkaTemplate.send("order-failed-topic", failedEvent);
 
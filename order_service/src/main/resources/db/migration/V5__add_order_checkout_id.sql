@@ -0,0 +1,5 @@
+SET search_path TO orders;
+
+-- Bilet checkoutu z Cart Service - przekazywany w OrderPlacedEvent i OrderFailedEvent
+ALTER TABLE orders
+ADD COLUMN checkout_id UUID;
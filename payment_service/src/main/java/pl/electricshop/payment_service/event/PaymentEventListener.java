@@ -11,11 +11,11 @@ import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import pl.electricshop.common.events.payment.OrderCreatedEvent;
 import pl.electricshop.common.events.payment.PaymentFailedEvent;
+import pl.electricshop.common.events.payment.PaymentIntentCreatedEvent;
 import pl.electricshop.common.events.payment.PaymentSucceededEvent;
 import pl.electricshop.payment_service.model.Payment;
 import pl.electricshop.payment_service.repository.PaymentRepository;
 
-import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -26,6 +26,7 @@ import java.util.stream.Collectors;
 public class PaymentEventListener {
 
     private final PaymentRepository paymentRepository;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
 
     @KafkaListener(topics = "order-created-topic", groupId = "payment-service-group")
     @Transactional
@@ -42,8 +43,8 @@ public class PaymentEventListener {
         }
 
         PaymentIntentCreateParams params = PaymentIntentCreateParams.builder()
-                .setAmount(event.getAmountToPay().multiply(new BigDecimal(100)).longValue())
-                .setCurrency("pln")
+                .setAmount(event.getAmountToPay().minor())
+                .setCurrency(event.getAmountToPay().currency().getCurrencyCode().toLowerCase())
                 .setAutomaticPaymentMethods(
                         PaymentIntentCreateParams.AutomaticPaymentMethods.builder().setEnabled(true).build()
                 )
@@ -58,8 +59,8 @@ public class PaymentEventListener {
             Payment payment = new Payment();
             payment.setOrderId(event.getOrderId());
             payment.setUserId(event.getUserId());
-            payment.setAmount(event.getAmountToPay());
-            payment.setCurrency(event.getCurrency());
+            payment.setAmount(event.getAmountToPay().toBigDecimal());
+            payment.setCurrency(event.getAmountToPay().currency().getCurrencyCode());
             payment.setPaymentMethod(event.getPaymentMethod());
             payment.setPgPaymentId(intent.getId());
             payment.setClientSecret(intent.getClientSecret());
@@ -70,6 +71,17 @@ public class PaymentEventListener {
 
             log.info("Zainicjowano płatność Stripe: {}. Czekam na ruch użytkownika.", intent.getId());
 
+            // Cart Service udostępnia clientSecret klientowi przez status biletu checkoutu
+            kafkaTemplate.send("payment-intent-created-topic", event.getOrderId().toString(),
+                    new PaymentIntentCreatedEvent(
+                            event.getOrderId(),
+                            event.getCheckoutId(),
+                            event.getUserId(),
+                            intent.getId(),
+                            intent.getClientSecret(),
+                            Instant.now().toString()
+                    ));
+
 
         } catch (StripeException e) {
             log.error("Błąd Stripe przy tworzeniu Intent", e);
@@ -0,0 +1,77 @@
+package pl.electricshop.product_service.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.JdbcTemplate;
+import pl.electricshop.product_service.exception.APIException;
+import pl.electricshop.product_service.service.ProductService;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wyszukiwanie produktów po frazie na syntetycznym katalogu ({@code catalogSize}, domyślnie 1 mln produktów):
+ * <ul>
+ *     <li>{@code search} - {@link ProductService#getAllProducts} z frazą: indeks pełnotekstowy + trigramy,
+ *     ranking, pierwsza strona (10) z liczbą wszystkich trafień, mapowanie do DTO</li>
+ *     <li>{@code likeScan} - dotychczasowe zapytanie {@code lower(product_name) LIKE '%fraza%'} (strona + count)
+ *     dla porównania - bez indeksu, pełny skan tabeli</li>
+ * </ul>
+ * Frazy: popularne słowo, dwa słowa, słowo z literówką (LIKE nic nie znajdzie) i polska fraza bez znaków.
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class ProductSearchBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Catalog {
+
+        @Param({"1000000"})
+        public int catalogSize;
+
+        @Param({"laptop", "samsung ultra", "lptop", "sluchawki"})
+        public String keyword;
+
+        ProductStandIn standIn;
+        ProductService productService;
+        JdbcTemplate jdbcTemplate;
+
+        @Setup(Level.Trial)
+        public void start() {
+            standIn = new ProductStandIn();
+            standIn.ensureCatalog(catalogSize);
+            productService = standIn.productService();
+            jdbcTemplate = standIn.jdbcTemplate();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            standIn.close();
+        }
+    }
+
+    @Benchmark
+    public void search(Catalog catalog, Blackhole blackhole) {
+        try {
+            blackhole.consume(catalog.productService.getAllProducts(0, 10, null, null, catalog.keyword, null));
+        } catch (APIException noResults) {
+            blackhole.consume(noResults);
+        }
+    }
+
+    @Benchmark
+    public void likeScan(Catalog catalog, Blackhole blackhole) {
+        String pattern = "%" + catalog.keyword.toLowerCase() + "%";
+        List<String> page = catalog.jdbcTemplate.queryForList(
+                "SELECT product_number FROM " + ProductStandIn.SCHEMA + ".products " +
+                        "WHERE lower(product_name) LIKE ? ORDER BY product_name LIMIT 10", String.class, pattern);
+        Long total = catalog.jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM " + ProductStandIn.SCHEMA + ".products WHERE lower(product_name) LIKE ?",
+                Long.class, pattern);
+        blackhole.consume(page);
+        blackhole.consume(total);
+    }
+}
@@ -0,0 +1,108 @@
+package pl.electricshop.product_service.benchmark;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import pl.electricshop.product_service.ProductServiceApplication;
+import pl.electricshop.product_service.service.ProductService;
+
+/**
+ * Product Service uruchomiony w procesie benchmarku na prawdziwym Postgres (wyszukiwanie używa tsvector
+ * i pg_trgm, których H2 nie ma) - domyślnie baza z docker-compose, schemat {@value #SCHEMA} z migracjami Flyway.
+ * Kafka, gRPC, Eureka, Config Server i pamięć listowań (Redis) są wyłączone - mierzone są zapytania do bazy.
+ * <p>
+ * Połączenie: zmienne {@code POSTGRES_HOST}, {@code POSTGRES_PORT}, {@code POSTGRES_DB}, {@code POSTGRES_USER},
+ * {@code POSTGRES_PASSWORD} - jak w zadaniu Flyway w build.gradle.
+ */
+public class ProductStandIn implements AutoCloseable {
+
+    static final String SCHEMA = "products_bench";
+
+    private static final String[] KINDS = {"Laptop", "Smartfon", "Telewizor", "Słuchawki", "Monitor", "Tablet",
+            "Głośnik", "Router", "Drukarka", "Kamera", "Odkurzacz", "Pralka"};
+    private static final String[] BRANDS = {"Dell", "Samsung", "Sony", "LG", "Lenovo", "Apple", "Xiaomi", "Philips",
+            "Asus", "Canon", "HP", "JBL", "Bosch", "Acer"};
+    private static final String[] LINES = {"Pro", "Max", "Ultra", "Lite", "Plus", "Mini", "Air", "Neo"};
+    private static final String[] FEATURES = {"bezprzewodowy", "energooszczędny", "wodoodporny", "przenośny",
+            "gamingowy", "biurowy", "składany", "cichy"};
+
+    private final ConfigurableApplicationContext context;
+
+    public ProductStandIn() {
+        String url = "jdbc:postgresql://" + env("POSTGRES_HOST", "localhost") + ":" + env("POSTGRES_PORT", "5433")
+                + "/" + env("POSTGRES_DB", "electric_shop_db");
+        context = new SpringApplicationBuilder(ProductServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.cloud.config.enabled=false",
+                        "--spring.config.import=",
+                        "--eureka.client.enabled=false",
+                        "--spring.main.banner-mode=off",
+                        "--spring.datasource.url=" + url,
+                        "--spring.datasource.username=" + env("POSTGRES_USER", "electric_user"),
+                        "--spring.datasource.password=" + env("POSTGRES_PASSWORD", "electric_password"),
+                        "--spring.jpa.hibernate.ddl-auto=validate",
+                        "--spring.jpa.properties.hibernate.default_schema=" + SCHEMA,
+                        "--spring.flyway.schemas=" + SCHEMA,
+                        "--spring.flyway.default-schema=" + SCHEMA,
+                        "--spring.flyway.table=product_schema_version",
+                        "--spring.kafka.admin.auto-create=false",
+                        "--grpc.server.port=-1",
+                        "--product.listing-cache.enabled=false",
+                        "--management.health.redis.enabled=false",
+                        "--project.image=images/",
+                        "--project.default=default_image.png",
+                        "--image.base.url=http://localhost/images",
+                        "--logging.level.root=WARN",
+                        "--logging.level.pl.electricshop=ERROR");
+    }
+
+    public ProductService productService() {
+        return context.getBean(ProductService.class);
+    }
+
+    public JdbcTemplate jdbcTemplate() {
+        return context.getBean(JdbcTemplate.class);
+    }
+
+    /**
+     * Dopełnia syntetyczny katalog do {@code size} produktów (jednym INSERT ... SELECT z generate_series)
+     * i odświeża statystyki planera. Katalog zostaje w schemacie między uruchomieniami.
+     */
+    public void ensureCatalog(int size) {
+        JdbcTemplate jdbc = jdbcTemplate();
+        Integer existing = jdbc.queryForObject("SELECT count(*) FROM " + SCHEMA + ".products", Integer.class);
+        if (existing != null && existing >= size) {
+            return;
+        }
+        int from = existing == null ? 1 : existing + 1;
+        jdbc.update("INSERT INTO " + SCHEMA + ".products " +
+                        "(uuid, product_number, product_name, image, description, price, discount, special_price, " +
+                        "quantity, created_at, updated_at) " +
+                        "SELECT gen_random_uuid(), 'BN-' || lpad(to_hex(g), 8, '0'), " +
+                        "(CAST(? AS text[]))[1 + g % ?] || ' ' || (CAST(? AS text[]))[1 + (g / 7) % ?] || ' ' || " +
+                        "(CAST(? AS text[]))[1 + (g / 11) % ?] || ' ' || (g % 997), " +
+                        "'default_image.png', " +
+                        "'Produkt ' || g || ': ' || (CAST(? AS text[]))[1 + (g / 13) % ?] || ' sprzęt z gwarancją producenta', " +
+                        "10 + g % 5000, 0, 10 + g % 5000, g % 100, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP " +
+                        "FROM generate_series(?, ?) AS g",
+                array(KINDS), KINDS.length, array(BRANDS), BRANDS.length, array(LINES), LINES.length,
+                array(FEATURES), FEATURES.length, from, size);
+        jdbc.execute("ANALYZE " + SCHEMA + ".products");
+    }
+
+    private static String array(String[] values) {
+        return "{" + String.join(",", values) + "}";
+    }
+
+    private static String env(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
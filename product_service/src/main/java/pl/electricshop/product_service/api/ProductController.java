@@ -3,6 +3,7 @@ package pl.electricshop.product_service.api;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import pl.electricshop.product_service.api.dto.response.ProductCursorResponse;
 import pl.electricshop.product_service.api.dto.response.ProductResponse;
 import pl.electricshop.product_service.service.ProductService;
 
@@ -26,4 +27,22 @@ public class ProductController {
                 pageNumber, pageSize, sortBy, sortOrder, keyword, category);
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * Listowanie kursorem: kolejna strona przez {@code cursor=<nextCursor>}, koszt strony nie rośnie z jej numerem.
+     * Sortowanie: productName, price, specialPrice, createdAt. {@code withTotal=true} dolicza totalElements.
+     */
+    @GetMapping("/scroll")
+    public ResponseEntity<ProductCursorResponse> getProductsByCursor(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") Integer pageSize,
+            @RequestParam(defaultValue = "productName") String sortBy,
+            @RequestParam(defaultValue = "asc") String sortOrder,
+            @RequestParam(required = false) String category,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
+
+        ProductCursorResponse response = productService.getProductsByCursor(
+                cursor, pageSize, sortBy, sortOrder, category, withTotal);
+        return ResponseEntity.ok(response);
+    }
 }
@@ -0,0 +1,25 @@
+package pl.electricshop.product_service.api.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import pl.electricshop.product_service.api.dto.ProductDTO;
+
+import java.util.List;
+
+/**
+ * Strona listowania kursorem - {@code nextCursor} pobiera następną stronę (null na ostatniej),
+ * {@code totalElements} tylko na życzenie (withTotal=true), inaczej null.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductCursorResponse {
+    private List<ProductDTO> content;
+    private Integer pageSize;
+    private String nextCursor;
+    private boolean lastPage;
+    private Long totalElements;
+}
@@ -2,6 +2,7 @@ package pl.electricshop.product_service.api.dto.response;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.Setter;
 import pl.electricshop.product_service.api.dto.ProductDTO;
 
@@ -9,6 +10,7 @@ import java.util.List;
 
 @Getter
 @Setter
+@NoArgsConstructor
 @AllArgsConstructor
 public class ProductResponse {
     private List<ProductDTO> content;
@@ -0,0 +1,23 @@
+package pl.electricshop.product_service.config;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+import pl.electricshop.product_service.service.ProductCatalogPublisher;
+
+@Configuration
+public class KafkaConfig {
+
+    /**
+     * Topic katalogu kompaktowany - broker trzyma tylko ostatni rekord każdego produktu.
+     */
+    @Bean
+    public NewTopic productCatalogTopic(@Value("${product.catalog.partitions:3}") int partitions) {
+        return TopicBuilder.name(ProductCatalogPublisher.CATALOG_TOPIC)
+                .partitions(partitions)
+                .compact()
+                .build();
+    }
+}
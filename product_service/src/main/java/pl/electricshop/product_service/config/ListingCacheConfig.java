@@ -0,0 +1,26 @@
+package pl.electricshop.product_service.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import pl.electricshop.product_service.service.ProductListingCache;
+
+/**
+ * Subskrypcja kanału nowych wersji katalogu - każda instancja porzuca L1 pamięci listowań po zmianie na innej.
+ */
+@Configuration
+@ConditionalOnProperty(name = "product.listing-cache.enabled", havingValue = "true", matchIfMissing = true)
+public class ListingCacheConfig {
+
+    @Bean
+    public RedisMessageListenerContainer listingCacheListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       ProductListingCache listingCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(listingCache, new ChannelTopic(ProductListingCache.CHANNEL));
+        return container;
+    }
+}
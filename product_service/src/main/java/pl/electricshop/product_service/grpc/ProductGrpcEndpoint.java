@@ -4,12 +4,19 @@ import io.grpc.stub.StreamObserver;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.devh.boot.grpc.server.service.GrpcService;
+import org.springframework.data.domain.PageRequest;
+import pl.electricshop.common.money.Money;
 import pl.electricshop.grpc.ProductCartRequest;
 import pl.electricshop.grpc.ProductCartResponse;
 import pl.electricshop.grpc.ProductGrpcServiceGrpc;
+import pl.electricshop.grpc.ProductNumbersRequest;
+import pl.electricshop.grpc.ProductNumbersResponse;
+import pl.electricshop.grpc.ProductsCartRequest;
+import pl.electricshop.grpc.ProductsCartResponse;
 import pl.electricshop.product_service.model.Product;
 import pl.electricshop.product_service.repository.ProductRepository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Slf4j
@@ -17,6 +24,8 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class ProductGrpcEndpoint extends ProductGrpcServiceGrpc.ProductGrpcServiceImplBase {
 
+    private static final int MAX_PRODUCT_NUMBERS_PAGE = 10_000;
+
     private final ProductRepository productRepository;
 
     @Override
@@ -30,18 +39,8 @@ public class ProductGrpcEndpoint extends ProductGrpcServiceGrpc.ProductGrpcServi
         ProductCartResponse response;
 
         if (productOpt.isPresent()) {
-            Product product = productOpt.get();
-
             // 2. Mapujemy Entity (Baza) -> Protobuf (gRPC)
-            response = ProductCartResponse.newBuilder()
-                    .setProductNumber(product.getProductNumber())
-                    .setProductName(product.getProductName())
-                    .setPrice(product.getPrice() != null ? product.getPrice().doubleValue() : 0.0)
-                    .setImage(product.getImage() != null ? product.getImage() : "")
-                    .setDiscount(product.getDiscount() != null ? product.getDiscount().intValue() : 0)
-                    .setSpecialPrice(product.getSpecialPrice() != null ? product.getSpecialPrice().intValue() : 0)
-                    .setQuantity(product.getQuantity() != null ? product.getQuantity() : 0)
-                    .build();
+            response = toCartResponse(productOpt.get());
         } else {
             // 3. Obsługa przypadku, gdy produkt nie istnieje
             log.warn("Product not found via gRPC: {}", productNumber);
@@ -55,4 +54,55 @@ public class ProductGrpcEndpoint extends ProductGrpcServiceGrpc.ProductGrpcServi
         // 5. Zamykamy strumień (ważne!)
         responseObserver.onCompleted();
     }
-}
\ No newline at end of file
+
+    /**
+     * Wiele produktów jednym zapytaniem (WHERE product_number IN ...). Nieistniejące są pomijane w odpowiedzi.
+     */
+    @Override
+    public void getProductsForCart(ProductsCartRequest request, StreamObserver<ProductsCartResponse> responseObserver) {
+        log.info("gRPC call: getProductsForCart for {} products", request.getProductNumbersCount());
+
+        List<Product> products = request.getProductNumbersCount() == 0
+                ? List.of()
+                : productRepository.findByProductNumberIn(request.getProductNumbersList());
+
+        if (products.size() < request.getProductNumbersCount()) {
+            log.warn("Products not found via gRPC: {} of {}",
+                    request.getProductNumbersCount() - products.size(), request.getProductNumbersCount());
+        }
+
+        responseObserver.onNext(ProductsCartResponse.newBuilder()
+                .addAllProducts(products.stream().map(this::toCartResponse).toList())
+                .build());
+        responseObserver.onCompleted();
+    }
+
+    /**
+     * Strona numerów produktów (tylko kolumna product_number) - Cart Service buduje z nich filtr znanych SKU.
+     */
+    @Override
+    public void listProductNumbers(ProductNumbersRequest request, StreamObserver<ProductNumbersResponse> responseObserver) {
+        int limit = Math.min(Math.max(request.getLimit(), 1), MAX_PRODUCT_NUMBERS_PAGE);
+        List<String> productNumbers = productRepository.findProductNumbersAfter(request.getAfter(), PageRequest.of(0, limit));
+
+        responseObserver.onNext(ProductNumbersResponse.newBuilder()
+                .addAllProductNumbers(productNumbers)
+                .build());
+        responseObserver.onCompleted();
+    }
+
+    private ProductCartResponse toCartResponse(Product product) {
+        return ProductCartResponse.newBuilder()
+                .setProductNumber(product.getProductNumber())
+                .setProductName(product.getProductName())
+                .setPrice(product.getPrice() != null ? product.getPrice().doubleValue() : 0.0)
+                .setImage(product.getImage() != null ? product.getImage() : "")
+                .setDiscount(product.getDiscount() != null ? product.getDiscount().intValue() : 0)
+                .setSpecialPrice(product.getSpecialPrice() != null ? product.getSpecialPrice().intValue() : 0)
+                .setQuantity(product.getQuantity() != null ? product.getQuantity() : 0)
+                .setPriceMinor(product.getPrice() != null ? Money.of(product.getPrice()).minor() : 0)
+                .setSpecialPriceMinor(product.getSpecialPrice() != null ? Money.of(product.getSpecialPrice()).minor() : 0)
+                .setCurrency(Money.PLN.getCurrencyCode())
+                .build();
+    }
+}
@@ -1,16 +1,56 @@
 package pl.electricshop.product_service.repository;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import pl.electricshop.product_service.model.Product;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, UUID> , JpaSpecificationExecutor<Product> {
+
+    /**
+     * Produkty pasujące do frazy: pełnotekstowo (nazwa + opis, słowa jako prefiksy, indeks GIN na search_vector)
+     * albo nazwą podobną do frazy mimo literówek (pg_trgm, indeks GIN trigramów). Opcjonalnie tylko z kategorii.
+     * Funkcje f_unaccent i product_search_query - migracja V6.
+     */
+    String SEARCH_FROM = "FROM {h-schema}products p " +
+            "WHERE (p.search_vector @@ {h-schema}product_search_query(CAST(:keyword AS text)) " +
+            "OR {h-schema}f_unaccent(lower(CAST(:keyword AS text))) <% {h-schema}f_unaccent(lower(p.product_name))) " +
+            "AND (CAST(:category AS text) IS NULL OR EXISTS (SELECT 1 FROM {h-schema}product_categories pc " +
+            "JOIN {h-schema}categories c ON c.uuid = pc.category_id " +
+            "WHERE pc.product_id = p.uuid AND c.category_name LIKE CAST(:category AS text))) ";
+
+    /**
+     * Strona id produktów pasujących do frazy, od najtrafniejszych: ranking pełnotekstowy (trafienie w nazwie
+     * waży więcej niż w opisie) plus podobieństwo nazwy do frazy.
+     *
+     * @param category nazwa kategorii albo null - wszystkie
+     */
+    @Query(value = "SELECT p.uuid " + SEARCH_FROM +
+            "ORDER BY ts_rank_cd(p.search_vector, {h-schema}product_search_query(CAST(:keyword AS text))) " +
+            "+ word_similarity({h-schema}f_unaccent(lower(CAST(:keyword AS text))), " +
+            "{h-schema}f_unaccent(lower(p.product_name))) DESC, p.product_name, p.uuid",
+            countQuery = "SELECT count(*) " + SEARCH_FROM,
+            nativeQuery = true)
+    Page<UUID> searchProductIds(String keyword, String category, Pageable pageable);
+
     boolean existsByProductNameIgnoreCase(String productName);
 
     Optional<Product> findByProductNumber(String productNumber);
+
+    List<Product> findByProductNumberIn(Collection<String> productNumbers);
+
+    /**
+     * Strona numerów produktów po {@code after} - keyset po unikalnym indeksie product_number, bez zapytania count.
+     */
+    @Query("SELECT p.productNumber FROM Product p WHERE p.productNumber > :after ORDER BY p.productNumber")
+    List<String> findProductNumbersAfter(String after, Pageable page);
 }
@@ -0,0 +1,81 @@
+package pl.electricshop.product_service.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+import pl.electricshop.common.events.product.ProductUpdatedEvent;
+import pl.electricshop.common.money.Money;
+import pl.electricshop.product_service.model.Product;
+import pl.electricshop.product_service.repository.ProductRepository;
+
+/**
+ * Katalog produktów dla replik w innych serwisach - topic kompaktowany {@value #CATALOG_TOPIC}
+ * z kluczem = numer produktu. Po kompakcji zostaje ostatni stan każdego produktu, więc nowa instancja
+ * konsumenta odtwarza cały katalog czytając topic od początku. Usunięty produkt to tombstone (wartość null).
+ */
+@Slf4j
+@Component
+public class ProductCatalogPublisher {
+
+    public static final String CATALOG_TOPIC = "product-catalog-topic";
+
+    private static final int REPUBLISH_PAGE_SIZE = 500;
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final ProductRepository productRepository;
+    private final boolean republishOnStartup;
+
+    public ProductCatalogPublisher(KafkaTemplate<String, Object> kafkaTemplate,
+                                   ProductRepository productRepository,
+                                   @Value("${product.catalog.republish-on-startup:false}") boolean republishOnStartup) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.productRepository = productRepository;
+        this.republishOnStartup = republishOnStartup;
+    }
+
+    public static ProductUpdatedEvent toEvent(Product product) {
+        return new ProductUpdatedEvent(
+                product.getProductNumber(),
+                product.getProductName(),
+                Money.of(product.getPrice()),
+                product.getDiscount(),
+                Money.of(product.getSpecialPrice()),
+                product.getQuantity() != null ? product.getQuantity() : 0);
+    }
+
+    public void published(Product product) {
+        kafkaTemplate.send(CATALOG_TOPIC, product.getProductNumber(), toEvent(product));
+    }
+
+    public void removed(String productNumber) {
+        kafkaTemplate.send(CATALOG_TOPIC, productNumber, null);
+    }
+
+    /**
+     * Pełny katalog na topic - dla produktów sprzed wprowadzenia topicu lub po utracie danych brokera.
+     * Włączane jednorazowo przez {@code product.catalog.republish-on-startup}.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void republishCatalog() {
+        if (!republishOnStartup) {
+            return;
+        }
+        long count = 0;
+        Page<Product> page = productRepository.findAll(PageRequest.of(0, REPUBLISH_PAGE_SIZE, Sort.by("productNumber")));
+        while (true) {
+            page.forEach(this::published);
+            count += page.getNumberOfElements();
+            if (!page.hasNext()) {
+                break;
+            }
+            page = productRepository.findAll(page.nextPageable());
+        }
+        log.info("Opublikowano katalog {} produktów na {}", count, CATALOG_TOPIC);
+    }
+}
@@ -0,0 +1,288 @@
+package pl.electricshop.product_service.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Dwupoziomowa pamięć odpowiedzi listowania katalogu: L1 w procesie (LRU, krótki TTL) i L2 w Redis
+ * (JSON, wspólny dla instancji), klucz = znormalizowane parametry zapytania.
+ * <p>
+ * Każdy wpis ma wersję katalogu z chwili obliczenia. Wersja to licznik {@value #VERSION_KEY} w Redis, podbijany
+ * po commicie każdej zmiany produktu ({@link #invalidate}) i rozgłaszany na kanale {@value #CHANNEL} - wpisy
+ * starszych wersji przestają być czytane od razu na wszystkich instancjach, a w Redis wygasają same (TTL).
+ * Utracona wiadomość pub/sub kosztuje najwyżej {@code l1-ttl-ms} nieaktualnego L1; odczyt L2 zawsze
+ * sprawdza bieżącą wersję w Redis.
+ * <p>
+ * Ochrona przed lawiną przy braku wpisu: w instancji jedno obliczenie na klucz (pozostałe wątki czekają
+ * na jego wynik), między instancjami blokada {@code SET NX} - reszta czeka do {@code lock-wait-ms}
+ * na wpis w L2, potem liczy sama. Niedostępny Redis oznacza samo L1 i zapytanie do bazy.
+ */
+@Slf4j
+@Component
+public class ProductListingCache implements MessageListener {
+
+    public static final String VERSION_KEY = "product-listing:version";
+    public static final String CHANNEL = "product-listing:invalidated";
+
+    private static final String ENTRY_PREFIX = "product-listing:";
+    private static final String LOCK_PREFIX = "product-listing-lock:";
+    private static final long LOCK_POLL_MS = 20;
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final long l1TtlMs;
+    private final Duration l2Ttl;
+    private final Duration lockTtl;
+    private final long lockWaitMs;
+
+    private final AtomicLong version = new AtomicLong(-1);
+    private final Map<String, Entry> local;
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Counter l1Hits;
+    private final Counter l2Hits;
+    private final Counter misses;
+
+    private record Entry(long version, Object value, long expiresAt) {
+    }
+
+    public ProductListingCache(StringRedisTemplate redisTemplate,
+                               ObjectMapper objectMapper,
+                               MeterRegistry meterRegistry,
+                               @Value("${product.listing-cache.enabled:true}") boolean enabled,
+                               @Value("${product.listing-cache.l1-max-entries:1000}") int l1MaxEntries,
+                               @Value("${product.listing-cache.l1-ttl-ms:5000}") long l1TtlMs,
+                               @Value("${product.listing-cache.l2-ttl-seconds:300}") long l2TtlSeconds,
+                               @Value("${product.listing-cache.lock-ttl-ms:3000}") long lockTtlMs,
+                               @Value("${product.listing-cache.lock-wait-ms:1000}") long lockWaitMs) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.l1TtlMs = l1TtlMs;
+        this.l2Ttl = Duration.ofSeconds(l2TtlSeconds);
+        this.lockTtl = Duration.ofMillis(lockTtlMs);
+        this.lockWaitMs = lockWaitMs;
+        this.local = Collections.synchronizedMap(new LinkedHashMap<>(Math.min(l1MaxEntries, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > l1MaxEntries;
+            }
+        });
+        this.l1Hits = Counter.builder("product.listing.cache").tag("result", "l1").register(meterRegistry);
+        this.l2Hits = Counter.builder("product.listing.cache").tag("result", "l2").register(meterRegistry);
+        this.misses = Counter.builder("product.listing.cache").tag("result", "miss").register(meterRegistry);
+    }
+
+    /**
+     * Odpowiedź z L1, L2 albo z {@code loader} (zapamiętywana w obu). Wyjątek loadera nie jest zapamiętywany -
+     * dostają go też wątki, które czekały na to samo obliczenie.
+     *
+     * @param key znormalizowane parametry zapytania
+     */
+    public <T> T get(String key, Class<T> type, Supplier<T> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Entry entry = local.get(key);
+        if (entry != null && entry.version() == version.get() && entry.expiresAt() > System.currentTimeMillis()) {
+            l1Hits.increment();
+            return type.cast(entry.value());
+        }
+
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            return type.cast(await(running));
+        }
+        try {
+            T value = loadShared(key, type, loader);
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Unieważnia wszystkie listowania - w transakcji dopiero po jej commicie, żeby odczyt sprzed commitu
+     * nie trafił do pamięci pod nową wersją.
+     */
+    public void invalidate() {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bumpVersion();
+                }
+            });
+        } else {
+            bumpVersion();
+        }
+    }
+
+    /**
+     * Nowa wersja katalogu z innej instancji (kanał {@value #CHANNEL}, treść: numer wersji).
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        advance(Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8)));
+    }
+
+    private <T> T loadShared(String key, Class<T> type, Supplier<T> loader) {
+        long current;
+        try {
+            String stored = redisTemplate.opsForValue().get(VERSION_KEY);
+            current = advance(stored == null ? 0 : Long.parseLong(stored));
+        } catch (RuntimeException e) {
+            log.warn("Redis niedostępny - listowanie bez L2: {}", e.getMessage());
+            misses.increment();
+            return loader.get();
+        }
+
+        String entryKey = ENTRY_PREFIX + current + ":" + key;
+        T cached = readShared(entryKey, type);
+        if (cached != null) {
+            l2Hits.increment();
+            remember(key, current, cached);
+            return cached;
+        }
+
+        String lockKey = LOCK_PREFIX + current + ":" + key;
+        Boolean acquired = lock(lockKey);
+        boolean owner = Boolean.TRUE.equals(acquired);
+        try {
+            if (Boolean.FALSE.equals(acquired)) {
+                // Inna instancja już liczy ten wpis - czekamy na niego zamiast drugiego zapytania do bazy
+                long deadline = System.currentTimeMillis() + lockWaitMs;
+                while (System.currentTimeMillis() < deadline) {
+                    sleep();
+                    cached = readShared(entryKey, type);
+                    if (cached != null) {
+                        l2Hits.increment();
+                        remember(key, current, cached);
+                        return cached;
+                    }
+                }
+            }
+            misses.increment();
+            T value = loader.get();
+            writeShared(entryKey, value);
+            remember(key, current, value);
+            return value;
+        } finally {
+            if (owner) {
+                unlock(lockKey);
+            }
+        }
+    }
+
+    /**
+     * @return true - blokada nasza, false - trzyma ją inna instancja, null - Redis niedostępny (liczymy bez blokady)
+     */
+    private Boolean lock(String lockKey) {
+        try {
+            return redisTemplate.opsForValue().setIfAbsent(lockKey, "1", lockTtl);
+        } catch (RuntimeException e) {
+            log.warn("Nie udało się założyć blokady {}: {}", lockKey, e.getMessage());
+            return null;
+        }
+    }
+
+    private void unlock(String lockKey) {
+        try {
+            redisTemplate.delete(lockKey);
+        } catch (RuntimeException e) {
+            // Blokada wygaśnie sama po lock-ttl-ms
+            log.warn("Nie udało się zdjąć blokady {}: {}", lockKey, e.getMessage());
+        }
+    }
+
+    private <T> T readShared(String entryKey, Class<T> type) {
+        try {
+            String json = redisTemplate.opsForValue().get(entryKey);
+            return json == null ? null : objectMapper.readValue(json, type);
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Nie udało się odczytać wpisu {} - pomijam: {}", entryKey, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeShared(String entryKey, Object value) {
+        try {
+            redisTemplate.opsForValue().set(entryKey, objectMapper.writeValueAsString(value), l2Ttl);
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Nie udało się zapisać wpisu {}: {}", entryKey, e.getMessage());
+        }
+    }
+
+    private void remember(String key, long entryVersion, Object value) {
+        if (entryVersion >= version.get()) {
+            local.put(key, new Entry(entryVersion, value, System.currentTimeMillis() + l1TtlMs));
+        }
+    }
+
+    private void bumpVersion() {
+        try {
+            Long next = redisTemplate.opsForValue().increment(VERSION_KEY);
+            if (next != null) {
+                advance(next);
+                redisTemplate.convertAndSend(CHANNEL, Long.toString(next));
+            }
+        } catch (RuntimeException e) {
+            // Bez Redis inne instancje zobaczą zmianę po l1-ttl-ms; lokalnie czyścimy od razu
+            local.clear();
+            log.warn("Nie udało się podbić wersji katalogu: {}", e.getMessage());
+        }
+    }
+
+    private long advance(long seen) {
+        return version.accumulateAndGet(seen, Math::max);
+    }
+
+    private static Object await(CompletableFuture<Object> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(LOCK_POLL_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Przerwano oczekiwanie na wpis listowania", e);
+        }
+    }
+}
@@ -4,12 +4,22 @@ package pl.electricshop.product_service.service;
 import jakarta.transaction.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import pl.electricshop.product_service.api.dto.ProductDTO;
+import pl.electricshop.product_service.api.dto.response.ProductCursorResponse;
 import pl.electricshop.product_service.api.dto.response.ProductResponse;
 public interface ProductService {
 
     ProductResponse getAllProducts(Integer pageNumber, Integer pageSize, String sortBy,
                                    String sortOrder, String keyword, String category);
 
+    /**
+     * Listowanie kursorem (keyset) - bez OFFSET; zapytanie count tylko przy {@code withTotal}.
+     *
+     * @param cursor {@code nextCursor} poprzedniej strony albo null - pierwsza strona; kursor niesie
+     *               sortowanie, więc {@code sortBy}/{@code sortOrder} dotyczą tylko pierwszej strony
+     */
+    ProductCursorResponse getProductsByCursor(String cursor, Integer pageSize, String sortBy, String sortOrder,
+                                              String category, boolean withTotal);
+
 //    ProductResponse searchByCategory(String categoryNumber, Integer pageNumber,
 //                                            Integer pageSize, String sortBy, String sortOrder);
 //
@@ -14,6 +14,7 @@ import pl.electricshop.product_service.mapper.CategoryMapper;
 import pl.electricshop.product_service.model.Category;
 import pl.electricshop.product_service.repository.CategoryRepository;
 import pl.electricshop.product_service.service.CategoryService;
+import pl.electricshop.product_service.service.ProductListingCache;
 
 import java.util.List;
 
@@ -22,6 +23,7 @@ import java.util.List;
 public class CategoryServiceImpl implements CategoryService {
     private final CategoryRepository categoryRepository;
     private final CategoryMapper categoryMapper;
+    private final ProductListingCache listingCache;
 
 
 
@@ -46,6 +48,7 @@ public class CategoryServiceImpl implements CategoryService {
         }
 
         Category savedCategory = categoryRepository.save(categoryMapper.toEntity(categoryDTO));
+        listingCache.invalidate();
         return categoryMapper.toDTO(savedCategory);
     }
 
@@ -55,6 +58,8 @@ public class CategoryServiceImpl implements CategoryService {
 
         existingCategory.setCategoryName(categoryDTO.getCategoryName());
         Category updatedCategory = categoryRepository.save(existingCategory);
+        // Listowania niosą nazwę kategorii i są wyszukiwane po niej
+        listingCache.invalidate();
         return categoryMapper.toDTO(updatedCategory);
     }
 
@@ -64,6 +69,7 @@ public class CategoryServiceImpl implements CategoryService {
     public void deleteCategoryById(String categoryNumber) {
         Category existingCategory = fetchCategoryById(categoryNumber);
         categoryRepository.delete(existingCategory);
+        listingCache.invalidate();
     }
 
     private Category fetchCategoryById(String categoryNumber) {
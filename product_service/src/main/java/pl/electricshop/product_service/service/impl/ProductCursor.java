@@ -0,0 +1,108 @@
+package pl.electricshop.product_service.service.impl;
+
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import pl.electricshop.product_service.model.Product;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Pozycja listowania kursorem: pole i kierunek sortowania oraz klucz ostatniego produktu strony
+ * (wartość pola + uuid, które rozstrzyga remisy). Dla klienta to nieprzezroczysty napis Base64 (URL-safe).
+ */
+record ProductCursor(SortField field, Sort.Direction direction, Object key, UUID uuid) {
+
+    private static final String SEPARATOR = "\n";
+
+    /**
+     * Pola, po których można listować kursorem - każde ma indeks złożony (pole, uuid), migracja V7.
+     */
+    enum SortField {
+        PRODUCT_NAME("productName", value -> value),
+        PRICE("price", BigDecimal::new),
+        SPECIAL_PRICE("specialPrice", BigDecimal::new),
+        CREATED_AT("createdAt", LocalDateTime::parse);
+
+        private final String attribute;
+        private final Function<String, ?> parser;
+
+        SortField(String attribute, Function<String, ?> parser) {
+            this.attribute = attribute;
+            this.parser = parser;
+        }
+
+        static SortField of(String attribute) {
+            for (SortField field : values()) {
+                if (field.attribute.equals(attribute)) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException("Cursor listing can be sorted only by productName, price, specialPrice or createdAt");
+        }
+
+        Object keyOf(Product product) {
+            return switch (this) {
+                case PRODUCT_NAME -> product.getProductName();
+                case PRICE -> product.getPrice();
+                case SPECIAL_PRICE -> product.getSpecialPrice();
+                case CREATED_AT -> product.getCreatedAt();
+            };
+        }
+    }
+
+    static ProductCursor after(Product last, SortField field, Sort.Direction direction) {
+        return new ProductCursor(field, direction, field.keyOf(last), last.getUuid());
+    }
+
+    String encode() {
+        String raw = field.attribute + SEPARATOR + direction.name() + SEPARATOR + uuid + SEPARATOR + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static ProductCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            // Wartość klucza na końcu - nazwa produktu może zawierać separator
+            String[] parts = raw.split(SEPARATOR, 4);
+            SortField field = SortField.of(parts[0]);
+            return new ProductCursor(field, Sort.Direction.valueOf(parts[1]), field.parser.apply(parts[3]),
+                    UUID.fromString(parts[2]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    /**
+     * Produkty za kluczem kursora w kierunku sortowania: {@code (pole, uuid) > (klucz, uuid)} (malejąco {@code <}).
+     * Warunek {@code pole >= klucz} jest nadmiarowy - daje Postgres początek zakresu indeksu (pole, uuid),
+     * bez niego skan szedłby od początku indeksu.
+     */
+    Specification<Product> remaining() {
+        return (root, query, cb) -> {
+            Path<Comparable<Object>> path = root.get(field.attribute);
+            Path<UUID> id = root.get("uuid");
+            @SuppressWarnings("unchecked")
+            Comparable<Object> value = (Comparable<Object>) key;
+            boolean ascending = direction.isAscending();
+
+            Predicate range = ascending ? cb.greaterThanOrEqualTo(path, value) : cb.lessThanOrEqualTo(path, value);
+            Predicate beyond = ascending ? cb.greaterThan(path, value) : cb.lessThan(path, value);
+            Predicate tie = cb.and(cb.equal(path, value), ascending ? cb.greaterThan(id, uuid) : cb.lessThan(id, uuid));
+            return cb.and(range, cb.or(beyond, tie));
+        };
+    }
+
+    /**
+     * Sortowanie zgodne z indeksem (pole, uuid).
+     */
+    static Sort sort(SortField field, Sort.Direction direction) {
+        return Sort.by(direction, field.attribute, "uuid");
+    }
+}
@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -14,6 +15,7 @@ import org.springframework.web.multipart.MultipartFile;
 import pl.electricshop.common.events.cart.CartCheckoutEvent;
 import pl.electricshop.common.events.product.ProductEvent;
 import pl.electricshop.product_service.api.dto.ProductDTO;
+import pl.electricshop.product_service.api.dto.response.ProductCursorResponse;
 import pl.electricshop.product_service.api.dto.response.ProductResponse;
 import pl.electricshop.product_service.errors.AppError;
 import pl.electricshop.product_service.exception.APIException;
@@ -23,12 +25,20 @@ import pl.electricshop.product_service.model.Category;
 import pl.electricshop.product_service.model.Product;
 import pl.electricshop.product_service.repository.CategoryRepository;
 import pl.electricshop.product_service.repository.ProductRepository;
+import pl.electricshop.product_service.service.ProductCatalogPublisher;
+import pl.electricshop.product_service.service.ProductListingCache;
 import pl.electricshop.product_service.service.ProductService;
 
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -40,6 +50,8 @@ public class ProductServiceImpl implements ProductService {
     private final FileServiceImpl fileService;
     private final ProductMapper productMapper;
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final ProductCatalogPublisher catalogPublisher;
+    private final ProductListingCache listingCache;
 
     @Value("${project.image}")
     private String imagePath;
@@ -54,12 +66,57 @@ public class ProductServiceImpl implements ProductService {
     @Override
     public ProductResponse getAllProducts(Integer pageNumber, Integer pageSize, String sortBy,
                                           String sortOrder, String keyword, String category) {
+        if (keyword != null && !keyword.isBlank()) {
+            String phrase = keyword.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+            return listingCache.get(listingKey("search", pageNumber, pageSize, phrase, category),
+                    ProductResponse.class, () -> searchProducts(pageNumber, pageSize, phrase, category));
+        }
         Pageable pageDetails = getPageDetails(pageNumber, pageSize, sortBy, sortOrder);
 
-        Specification<Product> spec = buildProductSpecification(keyword, category);
-        Page<Product> pageProducts = productRepository.findAll(spec, pageDetails);
+        // Klucz z ustalonego już Pageable - brak sortowania i jego domyślna wartość dają ten sam wpis
+        return listingCache.get(listingKey("page", pageDetails.getPageNumber(), pageDetails.getPageSize(),
+                        pageDetails.getSort().toString(), category),
+                ProductResponse.class, () -> {
+                    Specification<Product> spec = buildProductSpecification(category);
+                    return mapToProductResponse(productRepository.findAll(spec, pageDetails));
+                });
+    }
+
+    @Override
+    public ProductCursorResponse getProductsByCursor(String cursor, Integer pageSize, String sortBy, String sortOrder,
+                                                     String category, boolean withTotal) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be greater than 0");
+        }
+        ProductCursor position = cursor == null || cursor.isEmpty() ? null : ProductCursor.decode(cursor);
+        ProductCursor.SortField field = position != null ? position.field()
+                : ProductCursor.SortField.of(sortBy == null || sortBy.isEmpty() ? "productName" : sortBy);
+        Sort.Direction direction = position != null ? position.direction()
+                : Sort.Direction.fromOptionalString(sortOrder).orElse(Sort.Direction.ASC);
+
+        String key = listingKey("scroll", field.name() + ":" + direction.name(), pageSize,
+                position == null ? "" : cursor, category) + ":" + withTotal;
+        return listingCache.get(key, ProductCursorResponse.class,
+                () -> scroll(position, field, direction, pageSize, category, withTotal));
+    }
 
-        return mapToProductResponse(pageProducts);
+    private ProductCursorResponse scroll(ProductCursor position, ProductCursor.SortField field,
+                                         Sort.Direction direction, int pageSize, String category, boolean withTotal) {
+        Specification<Product> filter = buildProductSpecification(category);
+        Specification<Product> spec = position == null ? filter : filter.and(position.remaining());
+
+        // Jeden produkt ponad stronę mówi, czy jest następna - bez zapytania count
+        List<Product> products = productRepository.findBy(spec, query -> query
+                .sortBy(ProductCursor.sort(field, direction))
+                .limit(pageSize + 1)
+                .all());
+        boolean lastPage = products.size() <= pageSize;
+        List<Product> page = lastPage ? products : products.subList(0, pageSize);
+
+        String nextCursor = lastPage ? null
+                : ProductCursor.after(page.get(page.size() - 1), field, direction).encode();
+        Long totalElements = withTotal ? productRepository.count(filter) : null;
+        return new ProductCursorResponse(toDTOs(page), pageSize, nextCursor, lastPage, totalElements);
     }
 
 //    @Override
@@ -123,6 +180,8 @@ public class ProductServiceImpl implements ProductService {
 
 
         kafkaTemplate.send("product-add-topic", event);
+        catalogPublisher.published(savedProduct);
+        listingCache.invalidate();
         return savedProductDTO;
     }
 
@@ -136,7 +195,11 @@ public class ProductServiceImpl implements ProductService {
         Product updatedProduct = productRepository.save(product);
 
 
-        kafkaTemplate.send("product-update-topic", productMapper.toDTO(updatedProduct));
+        // Klucz = numer produktu - kolejne aktualizacje tego samego produktu trafiają do konsumentów po kolei
+        kafkaTemplate.send("product-update-topic", updatedProduct.getProductNumber(),
+                ProductCatalogPublisher.toEvent(updatedProduct));
+        catalogPublisher.published(updatedProduct);
+        listingCache.invalidate();
         return productMapper.toDTO(updatedProduct);
     }
 
@@ -155,6 +218,7 @@ public class ProductServiceImpl implements ProductService {
 
         product.setImage(fileName);
         Product updatedProduct = productRepository.save(product);
+        listingCache.invalidate();
         ProductDTO updatedProductDTO = productMapper.toDTO(updatedProduct);
         updatedProductDTO.setImage(constructImageUrl(updatedProduct.getImage()));
         return updatedProductDTO;
@@ -165,6 +229,8 @@ public class ProductServiceImpl implements ProductService {
     public void deleteProductById(String productNumber) {
         Product product = fetchProductById(productNumber);
         productRepository.delete(product);
+        catalogPublisher.removed(productNumber);
+        listingCache.invalidate();
     }
 
     private Pageable getPageDetails(Integer pageNumber, Integer pageSize, String sortBy, String sortOrder) {
@@ -187,17 +253,41 @@ public class ProductServiceImpl implements ProductService {
         return PageRequest.of(pageNumber, pageSize, sortByAndOrder);
     }
 
-    private Specification<Product> buildProductSpecification(String keyword, String category) {
-        Specification<Product> spec = Specification.where(null);
-        if (keyword != null && !keyword.isEmpty()) {
-            spec = spec.and((root, query, criteriaBuilder) ->
-                    criteriaBuilder.like(criteriaBuilder.lower(root.get("productName")),
-                            "%" + keyword.toLowerCase() + "%"));
+    /**
+     * Wyszukiwanie frazy indeksem pełnotekstowym (nazwa + opis, tolerancja literówek w nazwie) -
+     * wyniki zawsze od najtrafniejszych, sortBy/sortOrder dotyczą tylko listowania bez frazy.
+     */
+    private ProductResponse searchProducts(Integer pageNumber, Integer pageSize, String keyword, String category) {
+        if (pageNumber < 0 || pageSize <= 0) {
+            throw new IllegalArgumentException("Page number must be non-negative and page size must be greater than 0");
         }
+        Page<UUID> ids = productRepository.searchProductIds(keyword.strip(),
+                category == null || category.isEmpty() ? null : category, PageRequest.of(pageNumber, pageSize));
+
+        // Encje jednym zapytaniem po kluczu, w kolejności rankingu
+        Map<UUID, Product> byId = productRepository.findAllById(ids.getContent()).stream()
+                .collect(Collectors.toMap(Product::getUuid, Function.identity()));
+        List<Product> ranked = ids.getContent().stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .toList();
+        return mapToProductResponse(new PageImpl<>(ranked, ids.getPageable(), ids.getTotalElements()));
+    }
+
+    /**
+     * Klucz pamięci listowań ze znormalizowanych parametrów (pusta kategoria = brak filtra).
+     */
+    private static String listingKey(String kind, Object position, Object pageSize, String order, String category) {
+        return kind + ":" + position + ":" + pageSize + ":" + order + ":"
+                + (category == null || category.isEmpty() ? "" : category);
+    }
+
+    private Specification<Product> buildProductSpecification(String category) {
+        Specification<Product> spec = Specification.where(null);
 
         if (category != null && !category.isEmpty()) {
             spec = spec.and((root, query, criteriaBuilder) ->
-                    criteriaBuilder.like(root.get("category").get("categoryName"), category));
+                    criteriaBuilder.like(root.join("categories").get("categoryName"), category));
         }
         return spec;
     }
@@ -206,15 +296,8 @@ public class ProductServiceImpl implements ProductService {
     private ProductResponse mapToProductResponse(Page<Product> productPage) {
         if (productPage.isEmpty()) throw new APIException(AppError.ERROR_NO_PRODUCTS);
 
-        List<ProductDTO> productDTOS = productPage.getContent().stream()
-                .map(product -> {
-                    ProductDTO productDTO = productMapper.toDTO(product);
-                    productDTO.setImage(constructImageUrl(product.getImage()));
-                    return productDTO;
-                })
-                .toList();
         return new ProductResponse(
-                productDTOS,
+                toDTOs(productPage.getContent()),
                 productPage.getNumber(),
                 productPage.getSize(),
                 productPage.getTotalElements(),
@@ -222,6 +305,16 @@ public class ProductServiceImpl implements ProductService {
                 productPage.isLast());
     }
 
+    private List<ProductDTO> toDTOs(List<Product> products) {
+        return products.stream()
+                .map(product -> {
+                    ProductDTO productDTO = productMapper.toDTO(product);
+                    productDTO.setImage(constructImageUrl(product.getImage()));
+                    return productDTO;
+                })
+                .toList();
+    }
+
     private String constructImageUrl(String imageName) {
         return imageBaseUrl.endsWith("/") ? imageBaseUrl + imageName : imageBaseUrl + "/" + imageName;
     }
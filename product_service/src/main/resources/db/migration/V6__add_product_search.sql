@@ -0,0 +1,32 @@
+-- Wyszukiwanie produktów: tsvector (nazwa + opis) z indeksem GIN zamiast LIKE '%fraza%'
+-- oraz trigramy nazwy (pg_trgm) - tolerancja literówek
+CREATE EXTENSION IF NOT EXISTS unaccent SCHEMA public;
+CREATE EXTENSION IF NOT EXISTS pg_trgm SCHEMA public;
+
+-- unaccent() jest STABLE (słownik szukany w search_path) - do kolumny generowanej i indeksów
+-- potrzebna wersja IMMUTABLE ze wskazanym słownikiem
+CREATE OR REPLACE FUNCTION f_unaccent(value TEXT) RETURNS TEXT
+    LANGUAGE sql IMMUTABLE PARALLEL SAFE
+AS $$ SELECT public.unaccent('public.unaccent'::regdictionary, value) $$;
+
+-- Fraza użytkownika jako tsquery: słowa bez polskich znaków, każde jako prefiks (laptop -> laptop:*
+-- trafia też w "laptopy", "laptopa"), połączone AND. Fraza bez liter i cyfr daje pusty tsquery.
+CREATE OR REPLACE FUNCTION product_search_query(phrase TEXT) RETURNS tsquery
+    LANGUAGE sql IMMUTABLE PARALLEL SAFE
+AS $$
+SELECT to_tsquery('simple', coalesce(string_agg(quote_literal(word) || ':*', ' & '), ''))
+FROM regexp_split_to_table(${flyway:defaultSchema}.f_unaccent(lower(phrase)), '[^[:alnum:]]+') AS word
+WHERE word <> ''
+$$;
+
+-- Konfiguracja 'simple' (Postgres nie ma polskiego stemmera) - odmianę pokrywa dopasowanie prefiksu.
+-- Nazwa z wagą A, opis z wagą B (ranking ts_rank_cd)
+ALTER TABLE products ADD COLUMN search_vector TSVECTOR GENERATED ALWAYS AS (
+    setweight(to_tsvector('simple', f_unaccent(coalesce(product_name, ''))), 'A') ||
+    setweight(to_tsvector('simple', f_unaccent(coalesce(description, ''))), 'B')
+) STORED;
+
+CREATE INDEX idx_products_search_vector ON products USING GIN (search_vector);
+
+-- Literówki: word_similarity frazy do nazwy (operator <%)
+CREATE INDEX idx_products_name_trgm ON products USING GIN (f_unaccent(lower(product_name)) public.gin_trgm_ops);
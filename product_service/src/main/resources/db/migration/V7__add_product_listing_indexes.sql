@@ -0,0 +1,10 @@
+-- Listowanie kursorem (GET /api/v1/products/scroll): indeks (pole sortowania, uuid) na każde dozwolone pole -
+-- strona to zakres indeksu od klucza z kursora, bez OFFSET i sortowania w pamięci (także malejąco)
+CREATE INDEX idx_products_name_uuid ON products(product_name, uuid);
+CREATE INDEX idx_products_price_uuid ON products(price, uuid);
+CREATE INDEX idx_products_special_price_uuid ON products(special_price, uuid);
+CREATE INDEX idx_products_created_at_uuid ON products(created_at, uuid);
+
+-- Zastąpione indeksami złożonymi o tym samym pierwszym polu
+DROP INDEX IF EXISTS idx_products_product_name;
+DROP INDEX IF EXISTS idx_products_price;
@@ -0,0 +1,63 @@
+package pl.electricshop.product_service.service.impl;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import pl.electricshop.product_service.service.impl.ProductCursor.SortField;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProductCursorTest {
+
+    private final UUID uuid = UUID.randomUUID();
+
+    @Test
+    void productNameContainingSeparatorRoundTrips() {
+        ProductCursor cursor = new ProductCursor(SortField.PRODUCT_NAME, Sort.Direction.ASC,
+                "Lampa\nbiurkowa\n" + uuid + "\nDESC", uuid);
+
+        assertThat(ProductCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void productNameEndingWithSeparatorRoundTrips() {
+        ProductCursor cursor = new ProductCursor(SortField.PRODUCT_NAME, Sort.Direction.DESC, "Kabel\n\n", uuid);
+
+        assertThat(ProductCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void priceAndDateKeysRoundTrip() {
+        ProductCursor price = new ProductCursor(SortField.SPECIAL_PRICE, Sort.Direction.ASC, new BigDecimal("1299.90"), uuid);
+        ProductCursor created = new ProductCursor(SortField.CREATED_AT, Sort.Direction.DESC,
+                LocalDateTime.of(2024, 3, 1, 12, 30, 15, 123_000_000), uuid);
+
+        assertThat(ProductCursor.decode(price.encode())).isEqualTo(price);
+        assertThat(ProductCursor.decode(created.encode())).isEqualTo(created);
+    }
+
+    @Test
+    void encodedCursorIsUrlSafe() {
+        String encoded = new ProductCursor(SortField.PRODUCT_NAME, Sort.Direction.ASC, "Żarówka ?/+=", uuid).encode();
+
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        String unknownField = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(("quantity\nASC\n" + uuid + "\n5").getBytes(StandardCharsets.UTF_8));
+        String missingKey = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(("price\nASC\n" + uuid).getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> ProductCursor.decode("nie-base64!")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ProductCursor.decode(unknownField)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ProductCursor.decode(missingKey)).isInstanceOf(IllegalArgumentException.class);
+    }
+}